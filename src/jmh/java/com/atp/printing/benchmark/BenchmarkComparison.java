@@ -0,0 +1,74 @@
+package com.atp.printing.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prints the score and allocation change of every benchmark between two JSON result files.
+ *
+ * Usage: BenchmarkComparison baseline.json candidate.json
+ */
+public final class BenchmarkComparison {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkComparison baseline.json candidate.json");
+            System.exit(2);
+        }
+
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> candidate = read(new File(args[1]));
+
+        System.out.printf("%-75s %14s %14s %9s %12s %12s%n",
+                "Benchmark", "Baseline", "Candidate", "Change", "B/op before", "B/op after");
+
+        for (Map.Entry<String, JsonNode> entry : candidate.entrySet()) {
+            JsonNode after = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            double scoreAfter = after.path("primaryMetric").path("score").asDouble();
+            String unit = after.path("primaryMetric").path("scoreUnit").asText();
+
+            if (before == null) {
+                System.out.printf("%-75s %14s %14.3f %9s %12s %12.0f  %s%n",
+                        entry.getKey(), "-", scoreAfter, "new", "-", allocation(after), unit);
+                continue;
+            }
+
+            double scoreBefore = before.path("primaryMetric").path("score").asDouble();
+            double change = scoreBefore == 0 ? 0 : (scoreAfter - scoreBefore) / scoreBefore * 100;
+            System.out.printf("%-75s %14.3f %14.3f %+8.1f%% %12.0f %12.0f  %s%n",
+                    entry.getKey(), scoreBefore, scoreAfter, change, allocation(before), allocation(after), unit);
+        }
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            results.put(key(result), result);
+        }
+        return results;
+    }
+
+    // Benchmark name plus any @Param values, so parameterised runs are compared like for like
+    private static String key(JsonNode result) {
+        StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                .replace("com.atp.printing.", ""));
+        result.path("params").fields().forEachRemaining(param ->
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+        return key.toString();
+    }
+
+    private static double allocation(JsonNode result) {
+        return result.path("secondaryMetrics").path(ALLOCATION).path("score").asDouble(Double.NaN);
+    }
+}
@@ -0,0 +1,45 @@
+package com.atp.printing.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+
+/**
+ * Runs the benchmark suite with allocation profiling and writes JSON results to
+ * benchmarks/results/{label}.json, which {@link BenchmarkComparison} can diff between releases.
+ *
+ * Usage: BenchmarkRunner [label] [include-regex]
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String label = args.length > 0 ? args[0] : "local";
+        String include = args.length > 1 ? args[1] : "com\\.atp\\.printing\\..*Benchmark";
+
+        File results = new File("benchmarks/results", label + ".json");
+        results.getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(2)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getPath())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,30 @@
+package com.atp.printing.benchmark;
+
+import java.lang.reflect.Field;
+
+/**
+ * Helpers for building services outside the Spring context
+ */
+public final class Fixtures {
+
+    public static final String JWT_SECRET = "mySecretKeyForJWTTokenGenerationAndValidation1234567890";
+    public static final String RAZORPAY_SECRET = "5whJcIpm54O98WsRw9onLgJv";
+    public static final String UPLOAD_FOLDER = "atp-files";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Set a field that Spring would normally inject with @Value
+     */
+    public static <T> T inject(T target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+            return target;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + fieldName + " on " + target.getClass().getSimpleName(), e);
+        }
+    }
+}
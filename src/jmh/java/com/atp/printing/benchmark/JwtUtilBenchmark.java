@@ -0,0 +1,49 @@
+package com.atp.printing.benchmark;
+
+import com.atp.printing.security.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Printer token handling, which runs on every WebSocket handshake and printer REST call
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class JwtUtilBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String printerToken;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        Fixtures.inject(jwtUtil, "secret", Fixtures.JWT_SECRET);
+        Fixtures.inject(jwtUtil, "expiration", 86_400_000L);
+        Fixtures.inject(jwtUtil, "printerExpiration", 31_536_000_000L);
+
+        printerToken = jwtUtil.generatePrinterToken(42L, "Library Ground Floor");
+    }
+
+    @Benchmark
+    public String generatePrinterToken() {
+        return jwtUtil.generatePrinterToken(42L, "Library Ground Floor");
+    }
+
+    @Benchmark
+    public Boolean validatePrinterToken() {
+        return jwtUtil.validatePrinterToken(printerToken);
+    }
+
+    @Benchmark
+    public Long extractPrinterId() {
+        return jwtUtil.extractPrinterId(printerToken);
+    }
+}
@@ -0,0 +1,120 @@
+package com.atp.printing.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.JsonEncoder;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import com.atp.printing.logging.LogSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a per-request log line on the calling thread, for the old synchronous console setup
+ * and the async JSON pipeline in logback-spring.xml. Output goes to a discarding stream, so
+ * the numbers are formatting and hand-off cost, not terminal or disk speed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+public class LoggingBenchmark {
+
+    @Param({"sync-pattern", "sync-json", "async-json"})
+    private String pipeline;
+
+    private LoggerContext context;
+    private Logger logger;
+    private LogSampler sampler;
+
+    private final String sessionId = "3f2b8c1e-9d4a-4f6b-8e2c-7a1d5b9e0c44";
+
+    @Setup
+    public void setUp() {
+        context = new LoggerContext();
+        sampler = new LogSampler(100);
+
+        OutputStreamAppender<ILoggingEvent> output = new OutputStreamAppender<>();
+        output.setContext(context);
+        output.setOutputStream(OutputStream.nullOutputStream());
+        output.setEncoder("sync-pattern".equals(pipeline) ? patternEncoder() : jsonEncoder());
+        output.start();
+
+        Appender<ILoggingEvent> appender = output;
+        if ("async-json".equals(pipeline)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(0);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(output);
+            async.start();
+            appender = async;
+        }
+
+        logger = context.getLogger("com.atp.printing.controller.SessionController");
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void infoPerRequest() {
+        logger.info("Getting session status: {}", sessionId);
+    }
+
+    @Benchmark
+    public void infoSampled() {
+        if (sampler.sample("session.status")) {
+            logger.info("Getting session status: {}", sessionId);
+        }
+    }
+
+    @Benchmark
+    public void debugDisabled() {
+        logger.debug("Received WebSocket message: {}", sessionId);
+    }
+
+    private Encoder<ILoggingEvent> patternEncoder() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss} - %msg%n");
+        encoder.start();
+        return encoder;
+    }
+
+    private Encoder<ILoggingEvent> jsonEncoder() {
+        JsonEncoder encoder = new JsonEncoder();
+        encoder.setContext(context);
+        encoder.setWithSequenceNumber(false);
+        encoder.setWithNanoseconds(false);
+        encoder.setWithContext(false);
+        encoder.setWithArguments(false);
+        encoder.setWithMessage(false);
+        encoder.setWithFormattedMessage(true);
+        encoder.start();
+        return encoder;
+    }
+}
@@ -0,0 +1,88 @@
+package com.atp.printing.benchmark;
+
+import com.atp.printing.metrics.PrintMetrics;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the print lifecycle instrumentation per recorded event, with and without the
+ * percentile histograms configured in application.yml. Compare against the Cloudinary and
+ * Razorpay round trips it wraps, which are in the hundreds of milliseconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class PrintMetricsBenchmark {
+
+    @Param({"plain", "histogram"})
+    private String distribution;
+
+    private PrintMetrics printMetrics;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        if ("histogram".equals(distribution)) {
+            registry.config().meterFilter(new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .percentiles(0.5, 0.95, 0.99)
+                            .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                            .maximumExpectedValue((double) Duration.ofSeconds(60).toNanos())
+                            .build()
+                            .merge(config);
+                }
+            });
+        }
+
+        printMetrics = new PrintMetrics(registry);
+        printMetrics.printerConnected(42L);
+    }
+
+    @Benchmark
+    public Timer.Sample baseline() {
+        // Timer.Sample alone: one nanoTime read and an allocation
+        return printMetrics.start();
+    }
+
+    @Benchmark
+    public void recordUpload() {
+        Timer.Sample sample = printMetrics.start();
+        printMetrics.recordUpload(sample, PrintMetrics.SUCCESS);
+    }
+
+    @Benchmark
+    public void recordRazorpay() {
+        Timer.Sample sample = printMetrics.start();
+        printMetrics.recordRazorpay(sample, "create_order", PrintMetrics.SUCCESS);
+    }
+
+    @Benchmark
+    public void recordHeartbeat() {
+        printMetrics.recordHeartbeat(42L);
+    }
+
+    @Benchmark
+    public void countPayment() {
+        printMetrics.countPayment("captured");
+    }
+}
@@ -0,0 +1,46 @@
+package com.atp.printing.benchmark;
+
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.service.QRCodeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QR code rendering, done once per upload
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class QRCodeBenchmark {
+
+    @Param({"300"})
+    private int size;
+
+    private QRCodeService qrCodeService;
+    private String data;
+
+    @Setup
+    public void setUp() {
+        qrCodeService = new QRCodeService(new PrintMetrics(new SimpleMeterRegistry()));
+        data = "https://atp-print.netlify.app/session/3f2b8c1e-9d4a-4f6b-8e2c-7a1d5b9e0c44";
+    }
+
+    @Benchmark
+    public byte[] generateQRCodeBytes() {
+        return qrCodeService.generateQRCodeBytes(data, size, size);
+    }
+
+    @Benchmark
+    public String generateQRCodeDataUri() {
+        return qrCodeService.generateQRCodeDataUri(data, size, size);
+    }
+}
@@ -0,0 +1,136 @@
+package com.atp.printing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session insert rate with IDENTITY ids (one round trip per row, as Hibernate must insert
+ * immediately to learn the id) against a pooled sequence with JDBC batching, the setup in
+ * application.yml. Each invocation inserts one batch of rows in one transaction, so scores are
+ * rows per second.
+ *
+ * Needs a Postgres to write to: -Dbenchmark.db.url, -Dbenchmark.db.user, -Dbenchmark.db.password
+ * (defaults match the docker-compose database). Rows go to scratch tables that are dropped on
+ * teardown.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class SessionInsertBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"true", "false"})
+    private boolean reWriteBatchedInserts;
+
+    private Connection connection;
+    private PreparedStatement identityInsert;
+    private PreparedStatement sequenceInsert;
+    private PreparedStatement nextIdBlock;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("benchmark.db.user", "atpuser"));
+        properties.setProperty("password", System.getProperty("benchmark.db.password", "atppassword"));
+        properties.setProperty("reWriteBatchedInserts", Boolean.toString(reWriteBatchedInserts));
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.db.url", "jdbc:postgresql://localhost:5432/atpdb"), properties);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_sessions_identity, bench_sessions_sequence");
+            statement.execute("DROP SEQUENCE IF EXISTS bench_sessions_seq");
+            statement.execute("CREATE TABLE bench_sessions_identity (id BIGSERIAL PRIMARY KEY, "
+                    + "session_id VARCHAR(100) NOT NULL UNIQUE, printer_id BIGINT NOT NULL, status VARCHAR(20) NOT NULL, "
+                    + "created_at TIMESTAMP NOT NULL, expires_at TIMESTAMP NOT NULL)");
+            statement.execute("CREATE TABLE bench_sessions_sequence (id BIGINT PRIMARY KEY, "
+                    + "session_id VARCHAR(100) NOT NULL UNIQUE, printer_id BIGINT NOT NULL, status VARCHAR(20) NOT NULL, "
+                    + "created_at TIMESTAMP NOT NULL, expires_at TIMESTAMP NOT NULL)");
+            statement.execute("CREATE SEQUENCE bench_sessions_seq INCREMENT BY " + BATCH_SIZE);
+        }
+        connection.setAutoCommit(false);
+
+        identityInsert = connection.prepareStatement("INSERT INTO bench_sessions_identity "
+                + "(session_id, printer_id, status, created_at, expires_at) VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+        sequenceInsert = connection.prepareStatement("INSERT INTO bench_sessions_sequence "
+                + "(id, session_id, printer_id, status, created_at, expires_at) VALUES (?, ?, ?, ?, ?, ?)");
+        nextIdBlock = connection.prepareStatement("SELECT nextval('bench_sessions_seq')");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_sessions_identity, bench_sessions_sequence");
+            statement.execute("DROP SEQUENCE IF EXISTS bench_sessions_seq");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long identity() throws SQLException {
+        long lastId = 0;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            bind(identityInsert, 1, now);
+            identityInsert.executeUpdate();
+            try (ResultSet keys = identityInsert.getGeneratedKeys()) {
+                keys.next();
+                lastId = keys.getLong(1);
+            }
+        }
+        connection.commit();
+        return lastId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int[] pooledSequenceBatch() throws SQLException {
+        long firstId;
+        try (ResultSet block = nextIdBlock.executeQuery()) {
+            block.next();
+            firstId = block.getLong(1);
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            sequenceInsert.setLong(1, firstId + i);
+            bind(sequenceInsert, 2, now);
+            sequenceInsert.addBatch();
+        }
+        int[] counts = sequenceInsert.executeBatch();
+        connection.commit();
+        return counts;
+    }
+
+    private static void bind(PreparedStatement insert, int first, Timestamp now) throws SQLException {
+        insert.setString(first, UUID.randomUUID().toString());
+        insert.setLong(first + 1, 1L);
+        insert.setString(first + 2, "ACTIVE");
+        insert.setTimestamp(first + 3, now);
+        insert.setTimestamp(first + 4, now);
+    }
+}
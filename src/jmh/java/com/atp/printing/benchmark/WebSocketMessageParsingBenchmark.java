@@ -0,0 +1,95 @@
+package com.atp.printing.benchmark;
+
+import com.atp.printing.websocket.BinaryFrameCodec;
+import com.atp.printing.websocket.FrameBufferPool;
+import com.atp.printing.websocket.message.JsonMessageDecoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of printer agent messages. readTree is the original tree-based handling and is kept
+ * as the baseline; streamingJson and binaryFrame are the decoders PrinterWebSocketHandler uses
+ * now. BenchmarkRunner adds the GC profiler, so gc.alloc.rate.norm gives bytes per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class WebSocketMessageParsingBenchmark {
+
+    private static final Map<String, String> MESSAGES = Map.of(
+            "heartbeat", "{\"event\":\"heartbeat\"}",
+            "print_status", "{\"event\":\"print_status\",\"sessionId\":\"3f2b8c1e-9d4a-4f6b-8e2c-7a1d5b9e0c44\","
+                    + "\"status\":\"COMPLETED\",\"pagesPrinted\":12}",
+            "printer_status", "{\"event\":\"printer_status\",\"status\":\"ONLINE\","
+                    + "\"paperLevel\":80,\"tonerLevel\":45,\"queueLength\":0}"
+    );
+
+    @Param({"heartbeat", "print_status", "printer_status"})
+    private String event;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BinaryFrameCodec frameCodec = new BinaryFrameCodec(new FrameBufferPool(4096, 4));
+    private final JsonMessageDecoder jsonDecoder = new JsonMessageDecoder();
+    private String payload;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() {
+        payload = MESSAGES.get(event);
+
+        frame = ByteBuffer.allocate(256);
+        switch (event) {
+            case "print_status" -> frameCodec.writePrintStatus(frame, "3f2b8c1e-9d4a-4f6b-8e2c-7a1d5b9e0c44",
+                    "COMPLETED", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+            case "printer_status" -> {
+                byte[] status = "ONLINE".getBytes(StandardCharsets.US_ASCII);
+                frame.put(BinaryFrameCodec.VERSION).put(BinaryFrameCodec.PRINTER_STATUS)
+                        .put((byte) status.length).put(status);
+            }
+            default -> frame.put(BinaryFrameCodec.VERSION).put(BinaryFrameCodec.HEARTBEAT);
+        }
+        frame.flip();
+    }
+
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws Exception {
+        JsonNode jsonNode = objectMapper.readTree(payload);
+        String type = jsonNode.get("event").asText();
+        blackhole.consume(type);
+
+        switch (type) {
+            case "print_status" -> {
+                blackhole.consume(jsonNode.get("sessionId").asText());
+                blackhole.consume(jsonNode.get("status").asText());
+            }
+            case "printer_status" -> blackhole.consume(jsonNode.get("status").asText());
+            default -> {
+            }
+        }
+    }
+
+    @Benchmark
+    public void streamingJson(Blackhole blackhole) {
+        blackhole.consume(jsonDecoder.decode(payload));
+    }
+
+    @Benchmark
+    public void binaryFrame(Blackhole blackhole) {
+        frame.position(0);
+        blackhole.consume(frameCodec.decode(frame));
+    }
+}
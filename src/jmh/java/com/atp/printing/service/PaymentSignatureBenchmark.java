@@ -0,0 +1,37 @@
+package com.atp.printing.service;
+
+import com.atp.printing.benchmark.Fixtures;
+import com.atp.printing.metrics.PrintMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Razorpay checkout signature, computed on every payment verification.
+ * Lives in the service package because generateSignature is package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PaymentSignatureBenchmark {
+
+    private PaymentService paymentService;
+
+    @Setup
+    public void setUp() {
+        paymentService = new PaymentService(null, null, null, new PrintMetrics(new SimpleMeterRegistry()), null);
+        Fixtures.inject(paymentService, "razorpaySecret", Fixtures.RAZORPAY_SECRET);
+    }
+
+    @Benchmark
+    public String generateSignature() {
+        return paymentService.generateSignature("order_NZ3kQ8v1xYb2Lm", "pay_NZ3kV7hYt9Qw1s");
+    }
+}
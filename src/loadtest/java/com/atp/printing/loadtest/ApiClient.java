@@ -0,0 +1,164 @@
+package com.atp.printing.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Blocking client for the REST endpoints used by kiosks and printer agents
+ */
+final class ApiClient {
+
+    // Smallest well-formed single page PDF, so upload validation and page counting see a real file
+    private static final byte[] PDF = ("%PDF-1.4\n1 0 obj<</Type/Catalog/Pages 2 0 R>>endobj\n"
+            + "2 0 obj<</Type/Pages/Kids[3 0 R]/Count 1>>endobj\n"
+            + "3 0 obj<</Type/Page/Parent 2 0 R/MediaBox[0 0 595 842]>>endobj\n"
+            + "trailer<</Root 1 0 R>>\n%%EOF\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpClient httpClient;
+    private final URI baseUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] razorpaySecret;
+
+    ApiClient(HttpClient httpClient, URI baseUrl, String razorpaySecret) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.razorpaySecret = razorpaySecret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    record PrinterCredentials(long id, String token) {
+    }
+
+    PrinterCredentials registerPrinter(int index) throws IOException, InterruptedException {
+        JsonNode data = postJson("/api/printer/register", null, Map.of(
+                "name", "loadtest-printer-" + index,
+                "location", "Load test rack " + (index / 100),
+                "pricePerPageBw", 2.5,
+                "pricePerPageColor", 5.0,
+                "colorSupported", true));
+        return new PrinterCredentials(data.get("id").asLong(), data.get("jwtToken").asText());
+    }
+
+    String createSession(PrinterCredentials printer) throws IOException, InterruptedException {
+        return postJson("/api/session/create", printer.token(), Map.of("printerId", printer.id()))
+                .get("sessionId").asText();
+    }
+
+    /**
+     * Upload the fixture PDF and return the amount to pay in paise
+     */
+    int upload(PrinterCredentials printer, String sessionId, int pageCount) throws IOException, InterruptedException {
+        String boundary = "----loadtest" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(PDF.length + 512);
+        field(body, boundary, "pageCount", Integer.toString(pageCount));
+        field(body, boundary, "colorMode", "BW");
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"loadtest.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(PDF);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        // The session goes in the query so upload admission can rate-limit it per session
+        HttpRequest request = request("/api/upload?sessionId=" + sessionId, printer.token())
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return (int) Math.round(send(request).get("amount").asDouble() * 100);
+    }
+
+    String createOrder(PrinterCredentials printer, String sessionId, int amountInPaise)
+            throws IOException, InterruptedException {
+        return postJson("/api/session/" + sessionId + "/create-order", printer.token(),
+                Map.of("amount", amountInPaise)).get("orderId").asText();
+    }
+
+    /**
+     * Complete checkout with a payment id and signature shaped like Razorpay's
+     */
+    void completePayment(PrinterCredentials printer, String sessionId, String orderId)
+            throws IOException, InterruptedException {
+        String paymentId = "pay_" + UUID.randomUUID().toString().replace("-", "").substring(0, 14);
+        postJson("/api/session/" + sessionId + "/payment/complete", printer.token(), Map.of(
+                "razorpay_order_id", orderId,
+                "razorpay_payment_id", paymentId,
+                "razorpay_signature", sign(orderId + "|" + paymentId)));
+    }
+
+    String status(PrinterCredentials printer, String sessionId) throws IOException, InterruptedException {
+        HttpRequest request = request("/api/session/" + sessionId + "/status", printer.token()).GET().build();
+        return send(request).get("status").asText();
+    }
+
+    void printerStatus(PrinterCredentials printer, String sessionId, String status, String traceparent)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = request("/api/printer/status", printer.token());
+        if (traceparent != null) {
+            request.header("traceparent", traceparent);
+        }
+        send(json(request, Map.of("sessionId", sessionId, "status", status)));
+    }
+
+    private JsonNode postJson(String path, String token, Map<String, Object> body)
+            throws IOException, InterruptedException {
+        return send(json(request(path, token), body));
+    }
+
+    private HttpRequest json(HttpRequest.Builder request, Map<String, Object> body) throws IOException {
+        return request.header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(Duration.ofSeconds(30));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private JsonNode send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(request.method() + " " + request.uri().getPath()
+                    + " returned " + response.statusCode());
+        }
+
+        JsonNode data = objectMapper.readTree(response.body()).path("data");
+        if (data.isMissingNode() || data.isNull()) {
+            throw new IOException(request.method() + " " + request.uri().getPath() + " returned no data");
+        }
+        return data;
+    }
+
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(razorpaySecret, "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void field(ByteArrayOutputStream body, String boundary, String name, String value) {
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,113 @@
+package com.atp.printing.loadtest;
+
+import com.atp.printing.loadtest.ApiClient.PrinterCredentials;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One kiosk customer repeating the full flow until the step ends:
+ * create session, upload, create order, complete payment, poll status until printed.
+ */
+final class CustomerSimulator implements Runnable {
+
+    private final ApiClient api;
+    private final List<PrinterCredentials> printers;
+    private final LoadTestOptions options;
+    private final StageStats stats;
+    private final LongAdder completedFlows;
+    private final long deadlineNanos;
+
+    CustomerSimulator(ApiClient api, List<PrinterCredentials> printers, LoadTestOptions options,
+                      StageStats stats, LongAdder completedFlows, long deadlineNanos) {
+        this.api = api;
+        this.printers = printers;
+        this.options = options;
+        this.stats = stats;
+        this.completedFlows = completedFlows;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadlineNanos && !Thread.currentThread().isInterrupted()) {
+            PrinterCredentials printer = printers.get(ThreadLocalRandom.current().nextInt(printers.size()));
+            try {
+                if (runFlow(printer)) {
+                    completedFlows.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean runFlow(PrinterCredentials printer) throws InterruptedException {
+        long flowStart = System.nanoTime();
+        Stage stage = Stage.CREATE_SESSION;
+
+        try {
+            long start = System.nanoTime();
+            String sessionId = api.createSession(printer);
+            stats.record(stage, start);
+
+            stage = Stage.UPLOAD;
+            start = System.nanoTime();
+            int amount = api.upload(printer, sessionId, options.pageCount());
+            stats.record(stage, start);
+
+            stage = Stage.CREATE_ORDER;
+            start = System.nanoTime();
+            String orderId = api.createOrder(printer, sessionId, amount);
+            stats.record(stage, start);
+
+            stage = Stage.COMPLETE_PAYMENT;
+            start = System.nanoTime();
+            api.completePayment(printer, sessionId, orderId);
+            stats.record(stage, start);
+
+            stage = Stage.PRINT_WAIT;
+            if (!awaitPrinted(printer, sessionId)) {
+                stats.error(Stage.PRINT_WAIT);
+                return false;
+            }
+            stats.record(Stage.PRINT_WAIT, start);
+            stats.record(Stage.END_TO_END, flowStart);
+            return true;
+
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            stats.error(stage);
+            return false;
+        }
+    }
+
+    private boolean awaitPrinted(PrinterCredentials printer, String sessionId) throws Exception {
+        long giveUpAt = System.nanoTime() + options.printTimeout().toNanos();
+
+        while (System.nanoTime() < giveUpAt) {
+            long start = System.nanoTime();
+            String status;
+            try {
+                status = api.status(printer, sessionId);
+                stats.record(Stage.POLL_STATUS, start);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                stats.error(Stage.POLL_STATUS);
+                status = null;
+            }
+
+            if ("COMPLETED".equals(status)) {
+                return true;
+            }
+            if ("FAILED".equals(status) || "EXPIRED".equals(status)) {
+                return false;
+            }
+            Thread.sleep(options.pollInterval().toMillis());
+        }
+        return false;
+    }
+}
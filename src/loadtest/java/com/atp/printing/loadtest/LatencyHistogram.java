@@ -0,0 +1,74 @@
+package com.atp.printing.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram in microseconds. Values below 64us are exact and every
+ * power of two above that is split into 32 linear sub-buckets, so reported percentiles are
+ * within about 3% of the true value.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sum.add(micros);
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    double meanMillis() {
+        long n = total.sum();
+        return n == 0 ? 0 : sum.sum() / 1_000.0 / n;
+    }
+
+    /**
+     * Value at the given quantile (0..1) in milliseconds
+     */
+    double percentileMillis(double quantile) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i) / 1_000.0;
+            }
+        }
+        return upperBound(BUCKETS - 1) / 1_000.0;
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (micros >>> magnitude) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package com.atp.printing.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects step results and prints per-stage latency tables and the saturation point
+ */
+final class LoadReport {
+
+    record StepResult(int customers, double seconds, long flows, StageStats stats, int printersConnected) {
+
+        double throughput() {
+            return flows / seconds;
+        }
+
+        double errorRate() {
+            long errors = stats.totalErrors();
+            long attempts = flows + errors;
+            return attempts == 0 ? 0 : (double) errors / attempts;
+        }
+    }
+
+    private final LoadTestOptions options;
+    private final List<StepResult> steps = new ArrayList<>();
+
+    LoadReport(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    void addConnectStats(StageStats stats, int connected) {
+        LatencyHistogram connect = stats.latency(Stage.WS_CONNECT);
+        System.out.printf("WebSocket connect: %d ok, %d failed, p50 %.1f ms, p99 %.1f ms, p999 %.1f ms%n",
+                connected, stats.errors(Stage.WS_CONNECT), connect.percentileMillis(0.5),
+                connect.percentileMillis(0.99), connect.percentileMillis(0.999));
+    }
+
+    void addStep(int customers, double seconds, long flows, StageStats stats, int printersConnected) {
+        steps.add(new StepResult(customers, seconds, flows, stats, printersConnected));
+    }
+
+    StepResult lastStep() {
+        return steps.get(steps.size() - 1);
+    }
+
+    void printStep(StepResult step) {
+        System.out.printf("%n== %d customers, %.0f s: %d flows (%.1f/s), error rate %.2f%%, %d printers connected%n",
+                step.customers(), step.seconds(), step.flows(), step.throughput(), step.errorRate() * 100,
+                step.printersConnected());
+        System.out.printf("%-17s %10s %10s %10s %10s %10s %8s%n",
+                "stage", "count", "mean ms", "p50 ms", "p99 ms", "p999 ms", "errors");
+
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram latency = step.stats().latency(stage);
+            long errors = step.stats().errors(stage);
+            if (latency.count() == 0 && errors == 0) {
+                continue;
+            }
+            System.out.printf("%-17s %10d %10.1f %10.1f %10.1f %10.1f %8d%n",
+                    stage, latency.count(), latency.meanMillis(), latency.percentileMillis(0.5),
+                    latency.percentileMillis(0.99), latency.percentileMillis(0.999), errors);
+        }
+    }
+
+    void printSummary() {
+        System.out.printf("%n== Summary%n%10s %12s %12s %12s%n", "customers", "flows/s", "e2e p99 ms", "errors %");
+        for (StepResult step : steps) {
+            System.out.printf("%10d %12.1f %12.1f %12.2f%n", step.customers(), step.throughput(),
+                    step.stats().latency(Stage.END_TO_END).percentileMillis(0.99), step.errorRate() * 100);
+        }
+
+        StepResult saturated = saturationStep();
+        if (saturated == null) {
+            System.out.println("No saturation within the tested range; increase --customers");
+        } else {
+            System.out.printf("Saturation at %d concurrent customers: %.1f flows/s, end-to-end p99 %.1f ms%n",
+                    saturated.customers(), saturated.throughput(),
+                    saturated.stats().latency(Stage.END_TO_END).percentileMillis(0.99));
+        }
+    }
+
+    /**
+     * First step where errors exceed the limit, or throughput grew by less than the configured
+     * fraction over the previous step
+     */
+    private StepResult saturationStep() {
+        StepResult previous = null;
+        for (StepResult step : steps) {
+            if (step.errorRate() > options.maxErrorRate()) {
+                return step;
+            }
+            if (previous != null
+                    && step.throughput() < previous.throughput() * (1 + options.saturationGain())) {
+                return step;
+            }
+            previous = step;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.atp.printing.loadtest;
+
+import com.atp.printing.loadtest.ApiClient.PrinterCredentials;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives one service instance with simulated printer agents and kiosk customers.
+ *
+ * Printers are registered and connected first and stay connected for the whole run. Customers
+ * are then run in steps of increasing concurrency (closed model: each customer starts its next
+ * flow as soon as the previous one ends), and each step reports throughput and per-stage
+ * latency. The first step where throughput stops growing or errors climb is the saturation point.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        ExecutorService httpExecutor = Executors.newFixedThreadPool(64);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(httpExecutor)
+                .build();
+        ApiClient api = new ApiClient(httpClient, options.baseUrl(), options.razorpaySecret());
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        ExecutorService restExecutor = Executors.newFixedThreadPool(64);
+        AtomicReference<StageStats> stats = new AtomicReference<>(new StageStats());
+        AtomicInteger connected = new AtomicInteger();
+        LoadReport report = new LoadReport(options);
+
+        try {
+            System.out.printf("Registering %d printers against %s%n", options.printers(), options.baseUrl());
+            List<PrinterCredentials> printers = registerPrinters(api, options.printers());
+
+            List<PrinterAgentSimulator> agents = new ArrayList<>(printers.size());
+            for (PrinterCredentials printer : printers) {
+                agents.add(new PrinterAgentSimulator(printer, options, api, scheduler, restExecutor, stats, connected));
+            }
+            connectAgents(agents, httpClient);
+            System.out.printf("%d of %d printer agents connected%n", connected.get(), agents.size());
+            report.addConnectStats(stats.get(), connected.get());
+
+            for (int customers : options.customerSteps()) {
+                StageStats stepStats = new StageStats();
+                stats.set(stepStats);
+                LongAdder completed = new LongAdder();
+
+                long start = System.nanoTime();
+                runStep(api, printers, options, stepStats, completed, customers, start);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                report.addStep(customers, seconds, completed.sum(), stepStats, connected.get());
+                report.printStep(report.lastStep());
+
+                if (connected.get() == 0) {
+                    System.out.println("All printer agents disconnected, stopping");
+                    break;
+                }
+            }
+
+            report.printSummary();
+            agents.forEach(PrinterAgentSimulator::close);
+
+        } finally {
+            scheduler.shutdownNow();
+            restExecutor.shutdownNow();
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    private static List<PrinterCredentials> registerPrinters(ApiClient api, int count) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<PrinterCredentials>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> api.registerPrinter(index)));
+            }
+
+            List<PrinterCredentials> printers = new ArrayList<>(count);
+            for (Future<PrinterCredentials> future : futures) {
+                printers.add(future.get());
+            }
+            return printers;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Connects in waves so the handshakes themselves do not become the first saturation point
+    private static void connectAgents(List<PrinterAgentSimulator> agents, HttpClient httpClient) {
+        int wave = 100;
+        for (int i = 0; i < agents.size(); i += wave) {
+            List<CompletableFuture<Void>> handshakes = new ArrayList<>(wave);
+            for (PrinterAgentSimulator agent : agents.subList(i, Math.min(i + wave, agents.size()))) {
+                handshakes.add(agent.connect(httpClient));
+            }
+            CompletableFuture.allOf(handshakes.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    private static void runStep(ApiClient api, List<PrinterCredentials> printers, LoadTestOptions options,
+                                StageStats stats, LongAdder completed, int customers, long start)
+            throws InterruptedException {
+        long deadline = start + options.stepDuration().toNanos();
+        ExecutorService pool = Executors.newFixedThreadPool(customers);
+
+        for (int i = 0; i < customers; i++) {
+            pool.execute(new CustomerSimulator(api, printers, options, stats, completed, deadline));
+        }
+
+        pool.shutdown();
+        // In-flight flows may run past the deadline by up to one print timeout
+        if (!pool.awaitTermination(options.stepDuration().plus(options.printTimeout()).toSeconds() + 30,
+                TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+    }
+}
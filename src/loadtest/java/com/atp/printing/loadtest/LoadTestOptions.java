@@ -0,0 +1,104 @@
+package com.atp.printing.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options. Every option has a default suited to a single local instance.
+ */
+record LoadTestOptions(
+        URI baseUrl,
+        int printers,
+        List<Integer> customerSteps,
+        Duration stepDuration,
+        Duration heartbeatInterval,
+        Duration printTime,
+        Duration pollInterval,
+        Duration printTimeout,
+        int pageCount,
+        String razorpaySecret,
+        double saturationGain,
+        double maxErrorRate
+) {
+
+    static final String USAGE = """
+            Usage: LoadTest [options]
+              --base-url URL           Service under test (http://localhost:8080)
+              --printers N             Simulated printer agents (1000)
+              --customers N,N,...      Concurrent customers per step (10,50,100,250,500,1000,2000)
+              --step-seconds N         Duration of each step (60)
+              --heartbeat-seconds N    Printer heartbeat interval (30)
+              --print-millis N         Simulated print time per job (500)
+              --poll-millis N          Status poll interval (250)
+              --print-timeout-seconds N  Give up waiting for COMPLETED after (60)
+              --pages N                Page count declared for each upload (3)
+              --razorpay-secret S      Secret the service signs checkouts with
+              --saturation-gain F      Throughput gain below which a step counts as saturated (0.1)
+              --max-error-rate F       Error rate above which a step counts as saturated (0.01)
+
+            Run the service with the fake-providers profile so no real Cloudinary or Razorpay
+            calls are made.
+            """;
+
+    static LoadTestOptions parse(String[] args) {
+        URI baseUrl = URI.create("http://localhost:8080");
+        int printers = 1000;
+        List<Integer> steps = List.of(10, 50, 100, 250, 500, 1000, 2000);
+        long stepSeconds = 60;
+        long heartbeatSeconds = 30;
+        long printMillis = 500;
+        long pollMillis = 250;
+        long printTimeoutSeconds = 60;
+        int pages = 3;
+        String secret = "5whJcIpm54O98WsRw9onLgJv";
+        double saturationGain = 0.1;
+        double maxErrorRate = 0.01;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--base-url" -> baseUrl = URI.create(required(args[i], value));
+                case "--printers" -> printers = Integer.parseInt(required(args[i], value));
+                case "--customers" -> steps = parseSteps(required(args[i], value));
+                case "--step-seconds" -> stepSeconds = Long.parseLong(required(args[i], value));
+                case "--heartbeat-seconds" -> heartbeatSeconds = Long.parseLong(required(args[i], value));
+                case "--print-millis" -> printMillis = Long.parseLong(required(args[i], value));
+                case "--poll-millis" -> pollMillis = Long.parseLong(required(args[i], value));
+                case "--print-timeout-seconds" -> printTimeoutSeconds = Long.parseLong(required(args[i], value));
+                case "--pages" -> pages = Integer.parseInt(required(args[i], value));
+                case "--razorpay-secret" -> secret = required(args[i], value);
+                case "--saturation-gain" -> saturationGain = Double.parseDouble(required(args[i], value));
+                case "--max-error-rate" -> maxErrorRate = Double.parseDouble(required(args[i], value));
+                case "--help" -> throw new IllegalArgumentException(USAGE);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+            i++;
+        }
+
+        return new LoadTestOptions(baseUrl, printers, steps, Duration.ofSeconds(stepSeconds),
+                Duration.ofSeconds(heartbeatSeconds), Duration.ofMillis(printMillis), Duration.ofMillis(pollMillis),
+                Duration.ofSeconds(printTimeoutSeconds), pages, secret, saturationGain, maxErrorRate);
+    }
+
+    URI webSocketUri(String token) {
+        String scheme = "https".equals(baseUrl.getScheme()) ? "wss" : "ws";
+        return URI.create(scheme + "://" + baseUrl.getAuthority() + "/ws/printer?token=" + token);
+    }
+
+    private static String required(String option, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " needs a value\n" + USAGE);
+        }
+        return value;
+    }
+
+    private static List<Integer> parseSteps(String value) {
+        List<Integer> steps = new ArrayList<>();
+        for (String step : value.split(",")) {
+            steps.add(Integer.parseInt(step.trim()));
+        }
+        return List.copyOf(steps);
+    }
+}
@@ -0,0 +1,212 @@
+package com.atp.printing.loadtest;
+
+import com.atp.printing.loadtest.ApiClient.PrinterCredentials;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * One printer agent holding a WebSocket connection: sends heartbeats, and answers print jobs
+ * with a print_status message plus the PRINTING and COMPLETED status calls a real agent makes.
+ */
+final class PrinterAgentSimulator implements WebSocket.Listener {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAX_CONNECT_ATTEMPTS = 10;
+
+    private final PrinterCredentials printer;
+    private final LoadTestOptions options;
+    private final ApiClient api;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService restExecutor;
+    private final AtomicReference<StageStats> stats;
+    private final AtomicInteger connected;
+
+    private final StringBuilder partial = new StringBuilder();
+    private final AtomicLong heartbeatSentAt = new AtomicLong();
+    private final AtomicLong jobsReceived = new AtomicLong();
+    private final AtomicBoolean disconnected = new AtomicBoolean();
+
+    private WebSocket webSocket;
+    // The WebSocket API allows one outstanding send, so sends are chained
+    private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+
+    PrinterAgentSimulator(PrinterCredentials printer, LoadTestOptions options, ApiClient api,
+                          ScheduledExecutorService scheduler, ExecutorService restExecutor,
+                          AtomicReference<StageStats> stats, AtomicInteger connected) {
+        this.printer = printer;
+        this.options = options;
+        this.api = api;
+        this.scheduler = scheduler;
+        this.restExecutor = restExecutor;
+        this.stats = stats;
+        this.connected = connected;
+    }
+
+    CompletableFuture<Void> connect(HttpClient httpClient) {
+        return connect(httpClient, 1);
+    }
+
+    private CompletableFuture<Void> connect(HttpClient httpClient, int attempt) {
+        long start = System.nanoTime();
+        return httpClient.newWebSocketBuilder()
+                .buildAsync(options.webSocketUri(printer.token()), this)
+                .handle((ws, error) -> {
+                    if (error != null) {
+                        // The server sheds handshake bursts with 429/503 and a jittered Retry-After
+                        long retryAfter = retryAfterSeconds(error);
+                        if (retryAfter >= 0 && attempt < MAX_CONNECT_ATTEMPTS) {
+                            return CompletableFuture.runAsync(() -> { },
+                                            CompletableFuture.delayedExecutor(retryAfter, TimeUnit.SECONDS))
+                                    .thenCompose(ignored -> connect(httpClient, attempt + 1));
+                        }
+                        stats.get().error(Stage.WS_CONNECT);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    stats.get().record(Stage.WS_CONNECT, start);
+                    webSocket = ws;
+                    connected.incrementAndGet();
+
+                    // Spread heartbeats over the interval instead of sending them in lockstep
+                    long interval = options.heartbeatInterval().toMillis();
+                    scheduler.scheduleAtFixedRate(this::heartbeat,
+                            ThreadLocalRandom.current().nextLong(interval), interval, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Seconds to wait before retrying a rejected handshake, or -1 if the failure is not retryable
+     */
+    private static long retryAfterSeconds(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (!(cause instanceof WebSocketHandshakeException rejected)) {
+            return -1;
+        }
+        int status = rejected.getResponse().statusCode();
+        if (status != 429 && status != 503) {
+            return -1;
+        }
+        return rejected.getResponse().headers().firstValueAsLong("Retry-After").orElse(1);
+    }
+
+    long getJobsReceived() {
+        return jobsReceived.get();
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String message = partial.toString();
+            partial.setLength(0);
+            handle(message);
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        disconnect();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        disconnect();
+        stats.get().error(Stage.HEARTBEAT_RTT);
+    }
+
+    private void disconnect() {
+        if (disconnected.compareAndSet(false, true)) {
+            connected.decrementAndGet();
+        }
+    }
+
+    private void handle(String message) {
+        try {
+            JsonNode json = OBJECT_MAPPER.readTree(message);
+            switch (json.path("event").asText()) {
+                case "heartbeat_ack" -> {
+                    long sentAt = heartbeatSentAt.getAndSet(0);
+                    if (sentAt != 0) {
+                        stats.get().record(Stage.HEARTBEAT_RTT, sentAt);
+                    }
+                }
+                case "print_job" -> printJob(json.path("sessionId").asText(), json.path("traceparent").asText(null));
+                default -> {
+                }
+            }
+        } catch (Exception e) {
+            stats.get().error(Stage.HEARTBEAT_RTT);
+        }
+    }
+
+    private void printJob(String sessionId, String traceparent) {
+        jobsReceived.incrementAndGet();
+        send(printStatus(sessionId, "PRINTING", traceparent));
+        restExecutor.execute(() -> reportStatus(sessionId, "PRINTING", traceparent));
+
+        scheduler.schedule(() -> {
+            send(printStatus(sessionId, "COMPLETED", traceparent));
+            restExecutor.execute(() -> reportStatus(sessionId, "COMPLETED", traceparent));
+        }, options.printTime().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Echoes the job's traceparent like a real agent, so agent replies join the server trace
+    private static String printStatus(String sessionId, String status, String traceparent) {
+        return "{\"event\":\"print_status\",\"sessionId\":\"" + sessionId + "\",\"status\":\"" + status + "\""
+                + (traceparent != null ? ",\"traceparent\":\"" + traceparent + "\"" : "") + "}";
+    }
+
+    private void reportStatus(String sessionId, String status, String traceparent) {
+        long start = System.nanoTime();
+        try {
+            api.printerStatus(printer, sessionId, status, traceparent);
+            stats.get().record(Stage.PRINTER_STATUS, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            stats.get().error(Stage.PRINTER_STATUS);
+        }
+    }
+
+    private void heartbeat() {
+        // An unanswered heartbeat is not overwritten, so a stalled server shows up as long RTTs
+        if (heartbeatSentAt.compareAndSet(0, System.nanoTime())) {
+            send("{\"event\":\"heartbeat\"}");
+        }
+    }
+
+    private synchronized void send(String message) {
+        if (webSocket == null || webSocket.isOutputClosed()) {
+            return;
+        }
+        WebSocket ws = webSocket;
+        lastSend = lastSend.handle((previous, error) -> null)
+                .thenCompose(ignored -> ws.sendText(message, true));
+    }
+
+    void close() {
+        if (webSocket != null && !webSocket.isOutputClosed()) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+}
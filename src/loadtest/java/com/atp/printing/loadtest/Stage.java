@@ -0,0 +1,18 @@
+package com.atp.printing.loadtest;
+
+/**
+ * Measured steps of the simulated customer and printer agent flows
+ */
+enum Stage {
+    CREATE_SESSION,
+    UPLOAD,
+    CREATE_ORDER,
+    COMPLETE_PAYMENT,
+    POLL_STATUS,
+    // Payment completed until the session was seen COMPLETED
+    PRINT_WAIT,
+    END_TO_END,
+    WS_CONNECT,
+    HEARTBEAT_RTT,
+    PRINTER_STATUS
+}
@@ -0,0 +1,45 @@
+package com.atp.printing.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and error counts per stage for one load step
+ */
+final class StageStats {
+
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> errors = new EnumMap<>(Stage.class);
+
+    StageStats() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+            errors.put(stage, new LongAdder());
+        }
+    }
+
+    void record(Stage stage, long startNanos) {
+        latencies.get(stage).recordNanos(System.nanoTime() - startNanos);
+    }
+
+    void error(Stage stage) {
+        errors.get(stage).increment();
+    }
+
+    LatencyHistogram latency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    long errors(Stage stage) {
+        return errors.get(stage).sum();
+    }
+
+    long totalErrors() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+}
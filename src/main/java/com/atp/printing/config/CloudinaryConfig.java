@@ -5,8 +5,10 @@ import com.cloudinary.utils.ObjectUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
+@Profile("!fake-providers")
 public class CloudinaryConfig {
 
     @Value("${cloudinary.cloud-name}")
@@ -18,13 +20,17 @@ public class CloudinaryConfig {
     @Value("${cloudinary.api-secret}")
     private String apiSecret;
 
+    @Value("${cloudinary.timeout-seconds}")
+    private Integer timeoutSeconds;
+
     @Bean
     public Cloudinary cloudinary() {
         return new Cloudinary(ObjectUtils.asMap(
                 "cloud_name", cloudName,
                 "api_key", apiKey,
                 "api_secret", apiSecret,
-                "secure", true
+                "secure", true,
+                "timeout", timeoutSeconds
         ));
     }
 }
\ No newline at end of file
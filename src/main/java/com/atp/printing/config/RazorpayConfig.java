@@ -5,8 +5,10 @@ import com.razorpay.RazorpayException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
+@Profile("!fake-providers")
 public class RazorpayConfig {
 
     @Value("${razorpay.key-id}")
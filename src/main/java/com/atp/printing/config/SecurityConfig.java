@@ -31,21 +31,26 @@ public class SecurityConfig {
                         // Public endpoints
                         .requestMatchers(
                                 "/api/printer/register",
+                                "/api/auth/admin/token",
                                 "/api/session/create",
                                 "/api/session/*/upload-request",
+                                "/api/session/*/upload-callback",
                                 "/api/session/*/create-order",
                                 "/api/session/*/payment/complete",
                                 "/api/session/*",
                                 "/api/payment/webhook",
                                 "/ws/**",
+                                // Only reachable on the internal management port
                                 "/actuator/**",
                                 "/error"
                         ).permitAll()
+                        // Operator endpoints - printer tokens never carry this role
+                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
                         // Protected endpoints - require printer authentication
                         .requestMatchers(
                                 "/api/printer/status",
                                 "/api/printer/heartbeat"
-                        ).authenticated()
+                        ).hasRole("PRINTER")
                         // All other requests require authentication
                         .anyRequest().authenticated()
                 )
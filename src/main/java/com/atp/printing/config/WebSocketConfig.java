@@ -1,5 +1,6 @@
 package com.atp.printing.config;
 
+import com.atp.printing.websocket.PrinterHandshakeInterceptor;
 import com.atp.printing.websocket.PrinterWebSocketHandler;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
@@ -13,10 +14,12 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final PrinterWebSocketHandler printerWebSocketHandler;
+    private final PrinterHandshakeInterceptor printerHandshakeInterceptor;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(printerWebSocketHandler, "/ws/printer")
+                .addInterceptors(printerHandshakeInterceptor)
                 .setAllowedOrigins("*"); // Configure properly in production
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.atp.printing.controller;
+
+import com.atp.printing.dto.ApiResponseDto;
+import com.atp.printing.dto.CursorPageDto;
+import com.atp.printing.dto.UsageStatsDto;
+import com.atp.printing.entity.ArchivedSession;
+import com.atp.printing.entity.Payment;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.UsageRollup;
+import com.atp.printing.repository.projection.PaymentSummary;
+import com.atp.printing.repository.projection.SessionSummary;
+import com.atp.printing.security.UploadAdmissionFilter;
+import com.atp.printing.security.UploadLimits;
+import com.atp.printing.service.ExportService;
+import com.atp.printing.service.ReportService;
+import com.atp.printing.service.UsageAggregationService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.Callable;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private static final MediaType ARROW_STREAM = new MediaType("application", "vnd.apache.arrow.stream");
+
+    private final ReportService reportService;
+    private final ExportService exportService;
+    private final UsageAggregationService usageAggregationService;
+    private final UploadAdmissionFilter uploadAdmissionFilter;
+
+    @GetMapping("/printers/{printerId}/sessions")
+    public ResponseEntity<ApiResponseDto<CursorPageDto<SessionSummary>>> getPrinterSessions(
+            @PathVariable Long printerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+
+        try {
+            return ResponseEntity.ok(ApiResponseDto.success(
+                    reportService.getPrinterSessions(printerId, cursor, limit)));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponseDto.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<ApiResponseDto<CursorPageDto<SessionSummary>>> getSessions(
+            @RequestParam(required = false) Session.SessionStatus status,
+            @RequestParam(required = false, defaultValue = "24") Integer sinceHours,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+
+        try {
+            CursorPageDto<SessionSummary> page = status != null
+                    ? reportService.getSessionsByStatus(status, cursor, limit)
+                    : reportService.getRecentSessions(LocalDateTime.now().minusHours(sinceHours), cursor, limit);
+            return ResponseEntity.ok(ApiResponseDto.success(page));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponseDto.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/payments")
+    public ResponseEntity<ApiResponseDto<CursorPageDto<PaymentSummary>>> getPayments(
+            @RequestParam(required = false) Payment.PaymentStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+
+        try {
+            CursorPageDto<PaymentSummary> page;
+            if (status != null) {
+                page = reportService.getPaymentsByStatus(status, cursor, limit);
+            } else {
+                LocalDateTime end = to != null ? to : LocalDateTime.now();
+                LocalDateTime start = from != null ? from : end.minusDays(1);
+                page = reportService.getPaymentsBetweenDates(start, end, cursor, limit);
+            }
+            return ResponseEntity.ok(ApiResponseDto.success(page));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponseDto.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/archive/sessions/{sessionId}")
+    public ResponseEntity<ApiResponseDto<ArchivedSession>> getArchivedSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(ApiResponseDto.success(reportService.getArchivedSession(sessionId)));
+
+        } catch (Exception e) {
+            return ResponseEntity.status(404).body(ApiResponseDto.error("Archived session not found"));
+        }
+    }
+
+    @GetMapping("/archive/printers/{printerId}/sessions")
+    public ResponseEntity<ApiResponseDto<CursorPageDto<SessionSummary>>> getArchivedPrinterSessions(
+            @PathVariable Long printerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+
+        try {
+            return ResponseEntity.ok(ApiResponseDto.success(
+                    reportService.getArchivedPrinterSessions(printerId, cursor, limit)));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponseDto.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stats/usage")
+    public ResponseEntity<ApiResponseDto<UsageStatsDto>> getUsage(
+            @RequestParam(required = false) Long printerId,
+            @RequestParam(required = false, defaultValue = "HOUR") UsageRollup.Granularity granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from
+                : (granularity == UsageRollup.Granularity.HOUR ? end.minusDays(1) : end.minusDays(30));
+
+        return ResponseEntity.ok(ApiResponseDto.success(
+                usageAggregationService.getUsage(printerId, granularity, start, end)));
+    }
+
+    @GetMapping("/upload-limits")
+    public ResponseEntity<ApiResponseDto<UploadLimits>> getUploadLimits() {
+        return ResponseEntity.ok(ApiResponseDto.success(uploadAdmissionFilter.getLimits()));
+    }
+
+    /**
+     * Replace the upload limits on this instance, e.g. to shed load during a Cloudinary incident
+     */
+    @PutMapping("/upload-limits")
+    public ResponseEntity<ApiResponseDto<UploadLimits>> updateUploadLimits(@RequestBody UploadLimits limits) {
+        uploadAdmissionFilter.update(limits);
+        return ResponseEntity.ok(ApiResponseDto.success(limits));
+    }
+
+    @GetMapping("/exports/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(
+            @PathVariable String dataset,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false, defaultValue = "csv") String format,
+            @RequestParam(required = false, defaultValue = "true") Boolean gzip,
+            HttpServletRequest request) {
+
+        ExportService.Dataset target;
+        try {
+            target = ExportService.Dataset.valueOf(dataset.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+
+        ExportService.Format outputFormat;
+        try {
+            outputFormat = ExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean arrow = outputFormat == ExportService.Format.ARROW;
+        boolean compressed = gzip && !arrow;
+
+        ExportService.ExportSlot slot = exportService.tryStartExport();
+        if (slot == null) {
+            log.warn("Rejected {} export, too many exports running", target);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+
+        // The body may never run (client gone before dispatch, executor full, timeout), so the
+        // slot is also released when the async request ends
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ExportService.ExportSlot.class,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                        slot.release();
+                    }
+                });
+
+        log.info("{} export requested as {} for {} to {}", target, outputFormat, from, to);
+
+        StreamingResponseBody body = out -> exportService.export(slot, target, outputFormat, from, to, compressed, out);
+        String fileName = target.name().toLowerCase().replace('_', '-')
+                + (arrow ? ".arrows" : ".csv" + (compressed ? ".gz" : ""));
+        MediaType contentType = arrow ? ARROW_STREAM
+                : compressed ? MediaType.APPLICATION_OCTET_STREAM
+                : new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(contentType)
+                .body(body);
+    }
+}
@@ -0,0 +1,65 @@
+package com.atp.printing.controller;
+
+import com.atp.printing.dto.AdminLoginDto;
+import com.atp.printing.dto.ApiResponseDto;
+import com.atp.printing.security.JwtUtil;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Issues admin tokens for the /api/admin endpoints. The admin credential is configured
+ * separately from printers, so registering a printer never grants access to reports or limits.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/auth")
+public class AuthController {
+
+    private final JwtUtil jwtUtil;
+    private final PasswordEncoder passwordEncoder;
+    private final String adminUsername;
+    private final String adminPasswordHash;
+
+    public AuthController(JwtUtil jwtUtil,
+                          PasswordEncoder passwordEncoder,
+                          @Value("${app.admin.username}") String adminUsername,
+                          @Value("${app.admin.password-hash}") String adminPasswordHash) {
+        this.jwtUtil = jwtUtil;
+        this.passwordEncoder = passwordEncoder;
+        this.adminUsername = adminUsername;
+        this.adminPasswordHash = adminPasswordHash;
+    }
+
+    @PostMapping("/admin/token")
+    public ResponseEntity<ApiResponseDto<String>> adminToken(@Valid @RequestBody AdminLoginDto dto) {
+        if (adminPasswordHash == null || adminPasswordHash.isBlank()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponseDto.error("Admin login is not configured"));
+        }
+
+        // Always check the password, so a wrong username takes as long as a wrong password
+        boolean passwordMatches = passwordEncoder.matches(dto.getPassword(), adminPasswordHash);
+        boolean usernameMatches = MessageDigest.isEqual(
+                dto.getUsername().getBytes(StandardCharsets.UTF_8), adminUsername.getBytes(StandardCharsets.UTF_8));
+
+        if (!passwordMatches || !usernameMatches) {
+            log.warn("Rejected admin login for {}", dto.getUsername());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponseDto.error("Invalid credentials"));
+        }
+
+        log.info("Issued admin token for {}", dto.getUsername());
+        return ResponseEntity.ok(ApiResponseDto.success("Admin token issued", jwtUtil.generateAdminToken(adminUsername)));
+    }
+}
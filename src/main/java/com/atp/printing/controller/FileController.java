@@ -3,6 +3,9 @@ package com.atp.printing.controller;
 import com.atp.printing.dto.ApiResponseDto;
 import com.atp.printing.dto.UploadResponseDto;
 import com.atp.printing.entity.Session;
+import com.atp.printing.exception.DocumentAnalysisException;
+import com.atp.printing.logging.LogContext;
+import com.atp.printing.logging.LogSampler;
 import com.atp.printing.service.SessionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,14 +23,19 @@ import java.util.Map;
 public class FileController {
 
     private final SessionService sessionService;
+    private final LogSampler logSampler;
 
+    /**
+     * sessionId may be a query parameter or a form field. Only the query form is limited per
+     * session, since upload admission does not read the multipart body to find it
+     */
     @PostMapping("/upload")
     public ResponseEntity<ApiResponseDto<Map<String, Object>>> uploadFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam("sessionId") String sessionId,
-            @RequestParam("pageCount") Integer pageCount,
             @RequestParam("colorMode") String colorMode) {
 
+        LogContext.putSession(sessionId);
         log.info("File upload request for session: {}", sessionId);
 
         if (file.isEmpty()) {
@@ -45,12 +53,12 @@ public class FileController {
         String contentType = file.getContentType();
         if (contentType == null || !isValidFileType(contentType)) {
             return ResponseEntity.badRequest()
-                    .body(ApiResponseDto.error("Invalid file type. Allowed: PDF, DOCX, JPG, PNG"));
+                    .body(ApiResponseDto.error("Invalid file type. Allowed: PDF, JPG, PNG"));
         }
 
         try {
             Session.ColorMode mode = Session.ColorMode.valueOf(colorMode.toUpperCase());
-            UploadResponseDto uploadResponse = sessionService.uploadFile(sessionId, file, pageCount, mode);
+            UploadResponseDto uploadResponse = sessionService.uploadFile(sessionId, file, mode);
 
             // Get updated session to include QR code URL
             com.atp.printing.entity.Session session = sessionService.findBySessionId(sessionId);
@@ -59,7 +67,7 @@ public class FileController {
             response.put("cloudinaryUrl", uploadResponse.getUploadUrl());
             response.put("fileName", file.getOriginalFilename());
             response.put("fileSize", file.getSize());
-            response.put("pageCount", pageCount);
+            response.put("pageCount", session.getPageCount());
             response.put("colorMode", colorMode);
             response.put("amount", session.getAmount());
             response.put("sessionId", sessionId);
@@ -69,6 +77,11 @@ public class FileController {
                     ApiResponseDto.success("File uploaded successfully", response)
             );
 
+        } catch (DocumentAnalysisException e) {
+            log.warn("Rejected upload for session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.status(e.isRetryable() ? 503 : 422)
+                    .body(ApiResponseDto.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("File upload failed", e);
             return ResponseEntity.internalServerError()
@@ -80,7 +93,9 @@ public class FileController {
     public ResponseEntity<ApiResponseDto<Map<String, Object>>> getFileDetails(
             @PathVariable String sessionId) {
 
-        log.info("Getting file details for session: {}", sessionId);
+        if (logSampler.sample("file.details")) {
+            log.info("Getting file details for session: {}", sessionId);
+        }
 
         try {
             Session session = sessionService.findBySessionId(sessionId);
@@ -105,7 +120,6 @@ public class FileController {
 
     private boolean isValidFileType(String contentType) {
         return contentType.equals("application/pdf") ||
-                contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document") ||
                 contentType.equals("image/jpeg") ||
                 contentType.equals("image/jpg") ||
                 contentType.equals("image/png");
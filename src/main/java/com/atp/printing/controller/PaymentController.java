@@ -2,6 +2,7 @@ package com.atp.printing.controller;
 
 import com.atp.printing.dto.*;
 import com.atp.printing.entity.Session;
+import com.atp.printing.exception.InvalidStateTransitionException;
 import com.atp.printing.service.PaymentService;
 import com.atp.printing.service.SessionService;
 import com.atp.printing.service.WebSocketService;
@@ -24,12 +25,13 @@ public class PaymentController {
     @PostMapping("/session/{sessionId}/create-order")
     public ResponseEntity<ApiResponseDto<PaymentOrderResponseDto>> createOrder(
             @PathVariable String sessionId,
-            @Valid @RequestBody PaymentOrderDto dto) {
+            @Valid @RequestBody(required = false) PaymentOrderDto dto) {
 
         log.info("Creating payment order for session: {}", sessionId);
 
         try {
-            PaymentOrderResponseDto response = paymentService.createOrder(sessionId, dto.getAmount());
+            PaymentOrderResponseDto response = paymentService.createOrder(sessionId,
+                    dto != null ? dto.getAmount() : null);
             return ResponseEntity.ok(ApiResponseDto.success("Order created", response));
 
         } catch (Exception e) {
@@ -59,7 +61,7 @@ public class PaymentController {
 
             try {
                 webSocketService.sendPrintJob(session);
-                sessionService.updateSessionStatus(sessionId, Session.SessionStatus.PRINTING);
+                sessionService.transitionStatus(sessionId, Session.SessionStatus.PAID, Session.SessionStatus.PRINTING);
             } catch (Exception e) {
                 log.error("Failed to send print job", e);
                 // Payment is still successful, but printing failed
@@ -73,6 +75,11 @@ public class PaymentController {
 
             return ResponseEntity.ok(ApiResponseDto.success("Payment completed", response));
 
+        } catch (InvalidStateTransitionException e) {
+            log.warn("Payment for session {} not accepted: {}", sessionId, e.getMessage());
+            return ResponseEntity.status(409)
+                    .body(ApiResponseDto.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("Failed to complete payment", e);
             return ResponseEntity.internalServerError()
@@ -3,8 +3,10 @@ package com.atp.printing.controller;
 import com.atp.printing.dto.*;
 import com.atp.printing.entity.Printer;
 import com.atp.printing.entity.Session;
+import com.atp.printing.exception.InvalidStateTransitionException;
 import com.atp.printing.service.PrinterService;
 import com.atp.printing.service.SessionService;
+import com.atp.printing.tracing.PrintTracing;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,6 +21,7 @@ public class PrinterController {
 
     private final PrinterService printerService;
     private final SessionService sessionService;
+    private final PrintTracing printTracing;
 
     @PostMapping("/register")
     public ResponseEntity<ApiResponseDto<PrinterResponseDto>> registerPrinter(
@@ -36,6 +39,7 @@ public class PrinterController {
             @RequestHeader("Authorization") String authHeader) {
 
         log.info("Updating status for session: {}", dto.getSessionId());
+        printTracing.tagCurrent(dto.getSessionId(), null);
 
         try {
             Session.SessionStatus status;
@@ -60,6 +64,11 @@ public class PrinterController {
                     ApiResponseDto.success("Status updated successfully", "OK")
             );
 
+        } catch (InvalidStateTransitionException e) {
+            log.warn("Rejected status update for session {}: {}", dto.getSessionId(), e.getMessage());
+            return ResponseEntity.status(409)
+                    .body(ApiResponseDto.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("Failed to update status", e);
             return ResponseEntity.internalServerError()
@@ -1,10 +1,15 @@
 package com.atp.printing.controller;
 
 import com.atp.printing.dto.*;
+import com.atp.printing.logging.LogSampler;
+import com.atp.printing.service.CloudinaryService;
 import com.atp.printing.service.SessionService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +20,12 @@ import org.springframework.web.bind.annotation.*;
 public class SessionController {
 
     private final SessionService sessionService;
+    private final CloudinaryService cloudinaryService;
+    private final ObjectMapper objectMapper;
+    private final LogSampler logSampler;
+
+    @Value("${app.upload.callback-max-age-seconds}")
+    private Long callbackMaxAgeSeconds;
 
     @PostMapping("/create")
     public ResponseEntity<ApiResponseDto<SessionResponseDto>> createSession(
@@ -37,7 +48,9 @@ public class SessionController {
     public ResponseEntity<ApiResponseDto<SessionResponseDto>> getSession(
             @PathVariable String sessionId) {
 
-        log.info("Getting session details: {}", sessionId);
+        if (logSampler.sample("session.details")) {
+            log.info("Getting session details: {}", sessionId);
+        }
 
         try {
             SessionResponseDto response = sessionService.getSessionDetails(sessionId);
@@ -61,6 +74,10 @@ public class SessionController {
             UploadResponseDto response = sessionService.generateUploadUrl(sessionId, dto);
             return ResponseEntity.ok(ApiResponseDto.success("Upload URL generated", response));
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponseDto.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("Failed to generate upload URL", e);
             return ResponseEntity.internalServerError()
@@ -68,11 +85,49 @@ public class SessionController {
         }
     }
 
+    /**
+     * Completion notification from Cloudinary for a direct upload. Any answer other than 2xx
+     * makes Cloudinary send it again.
+     */
+    @PostMapping("/{sessionId}/upload-callback")
+    public ResponseEntity<String> uploadCallback(
+            @PathVariable String sessionId,
+            @RequestBody String payload,
+            @RequestHeader(value = "X-Cld-Timestamp", required = false) String timestamp,
+            @RequestHeader(value = "X-Cld-Signature", required = false) String signature) {
+
+        if (!cloudinaryService.verifyNotification(payload, timestamp, signature, callbackMaxAgeSeconds)) {
+            log.error("Upload notification signature verification failed for session: {}", sessionId);
+            return ResponseEntity.badRequest().body("Invalid signature");
+        }
+
+        try {
+            StorageNotificationDto notification = objectMapper.readValue(payload, StorageNotificationDto.class);
+            if (!"upload".equals(notification.getNotificationType())) {
+                return ResponseEntity.ok("Ignored");
+            }
+
+            sessionService.completeDirectUpload(sessionId, notification);
+            return ResponseEntity.ok("Upload processed");
+
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Unusable upload notification for session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+
+        } catch (Exception e) {
+            log.error("Upload notification processing failed", e);
+            return ResponseEntity.internalServerError().body("Upload notification processing failed");
+        }
+    }
+
     @GetMapping("/{sessionId}/status")
     public ResponseEntity<ApiResponseDto<SessionStatusDto>> getSessionStatus(
             @PathVariable String sessionId) {
 
-        log.info("Getting session status: {}", sessionId);
+        // Kiosks poll this endpoint until the job is printed
+        if (logSampler.sample("session.status")) {
+            log.info("Getting session status: {}", sessionId);
+        }
 
         try {
             SessionStatusDto response = sessionService.getSessionStatus(sessionId);
@@ -0,0 +1,55 @@
+package com.atp.printing.document;
+
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Keys for content-addressed storage (stored_objects.content_hash), in two namespaces that
+ * never meet:
+ * <ul>
+ *     <li>documents uploaded through the service are keyed by the hex SHA-256 of the bytes it
+ *     read and priced, 64 characters with no prefix</li>
+ *     <li>documents uploaded straight to storage are keyed by "md5:" and the MD5 storage
+ *     reports, the only digest available without downloading the file again</li>
+ * </ul>
+ * So the same document uploaded both ways is stored twice. That is deliberate: MD5 collisions
+ * can be crafted, and a proxied upload sharing an MD5 key would let a cheaply priced document
+ * take over the stored copy of a different one.
+ */
+public final class ContentKeys {
+
+    public static final String STORAGE_MD5_PREFIX = "md5:";
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Pattern MD5_HEX = Pattern.compile("[0-9a-fA-F]{32}");
+
+    private ContentKeys() {
+    }
+
+    /**
+     * Key for a document the service read itself
+     */
+    public static String ofSha256(byte[] digest) {
+        if (digest.length != 32) {
+            throw new IllegalArgumentException("Expected a SHA-256 digest, got " + digest.length + " bytes");
+        }
+        return HEX.formatHex(digest);
+    }
+
+    /**
+     * Key for a direct upload, from the etag storage reported
+     *
+     * @return null if the etag is not an MD5
+     */
+    public static String ofStorageEtag(String etag) {
+        if (etag == null || !MD5_HEX.matcher(etag).matches()) {
+            return null;
+        }
+        return STORAGE_MD5_PREFIX + etag.toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean isStorageKey(String key) {
+        return key.startsWith(STORAGE_MD5_PREFIX);
+    }
+}
@@ -0,0 +1,9 @@
+package com.atp.printing.document;
+
+/**
+ * What the server knows about an uploaded document
+ *
+ * @param contentHash storage key of the file, see {@link ContentKeys}
+ */
+public record DocumentAnalysis(String contentHash, DocumentType type, int pageCount) {
+}
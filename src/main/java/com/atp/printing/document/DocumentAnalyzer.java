@@ -0,0 +1,159 @@
+package com.atp.printing.document;
+
+import com.atp.printing.exception.DocumentAnalysisException;
+import com.atp.printing.metrics.PrintMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Works out what an uploaded document is and how many pages it has, so the price never
+ * depends on what the client claims.
+ *
+ * The file is hashed on the calling thread (one sequential read, which also sniffs the type).
+ * Results are cached by that hash, so a document that has been seen before costs nothing more.
+ * New documents are counted on a small bounded pool: when its queue is full the upload is
+ * refused rather than queued without limit, and a count that runs past the time limit is
+ * cancelled. See {@link PdfPageCounter} for its memory bounds.
+ *
+ * DOCX files are recognised but refused: a Word document has no pages until it is laid out,
+ * and the only count in the file is the one the client's word processor wrote into it.
+ */
+@Slf4j
+@Component
+public class DocumentAnalyzer {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final PrintMetrics printMetrics;
+    private final long timeoutMs;
+    private final PdfPageCounter pdfPageCounter;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, DocumentAnalysis> cache;
+
+    public DocumentAnalyzer(PrintMetrics printMetrics,
+                            @Value("${app.document.threads}") int threads,
+                            @Value("${app.document.queue-size}") int queueSize,
+                            @Value("${app.document.timeout-ms}") long timeoutMs,
+                            @Value("${app.document.max-object-stream-bytes}") int maxObjectStreamBytes,
+                            @Value("${app.document.cache-size}") int cacheSize) {
+        this.printMetrics = printMetrics;
+        this.timeoutMs = timeoutMs;
+        this.pdfPageCounter = new PdfPageCounter(maxObjectStreamBytes);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("document-analysis-"));
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DocumentAnalysis> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @throws DocumentAnalysisException if the file is not a supported document, cannot be counted
+     *                                   within the limits, or the pool is saturated (retryable)
+     */
+    public DocumentAnalysis analyze(MultipartFile file) throws IOException {
+        byte[] head = new byte[DocumentType.SNIFF_LENGTH];
+        int headLength = 0;
+        MessageDigest digest = sha256();
+
+        try (InputStream in = file.getInputStream()) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (headLength < head.length) {
+                    int copied = Math.min(read, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        DocumentType type = DocumentType.sniff(head, headLength);
+        if (type == null) {
+            printMetrics.countDocumentAnalysis("unsupported");
+            throw new DocumentAnalysisException("File is not a PDF, JPG or PNG document", false);
+        }
+        if (type == DocumentType.DOCX) {
+            printMetrics.countDocumentAnalysis("unsupported");
+            throw new DocumentAnalysisException("Word documents cannot be priced; save the document as a PDF and upload that", false);
+        }
+
+        String contentHash = ContentKeys.ofSha256(digest.digest());
+        DocumentAnalysis cached = cache.get(contentHash);
+        if (cached != null) {
+            printMetrics.countDocumentAnalysis("cached");
+            return cached;
+        }
+
+        DocumentAnalysis analysis = new DocumentAnalysis(contentHash, type, countPages(file, type));
+        cache.put(contentHash, analysis);
+        printMetrics.countDocumentAnalysis("counted");
+        log.debug("Counted {} pages in {} document {}", analysis.pageCount(), type, contentHash);
+        return analysis;
+    }
+
+    private int countPages(MultipartFile file, DocumentType type) {
+        if (type == DocumentType.IMAGE) {
+            return 1;
+        }
+
+        Future<Integer> count;
+        try {
+            count = executor.submit(() -> pdfPageCounter.count(file.getBytes()));
+        } catch (RejectedExecutionException e) {
+            printMetrics.countDocumentAnalysis("rejected");
+            throw new DocumentAnalysisException("Too many documents are being processed, please retry", true);
+        }
+
+        try {
+            return count.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            count.cancel(true);
+            printMetrics.countDocumentAnalysis("timeout");
+            throw new DocumentAnalysisException("Document is too complex to count its pages", false);
+        } catch (ExecutionException e) {
+            log.warn("Could not count pages of {} document: {}", type, e.getCause().getMessage());
+            printMetrics.countDocumentAnalysis("unreadable");
+            throw new DocumentAnalysisException("Could not read the pages of this " + type + " document", false);
+        } catch (InterruptedException e) {
+            count.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DocumentAnalysisException("Upload was interrupted", true);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.atp.printing.document;
+
+/**
+ * Kind of printable document, decided from the file's leading bytes rather than the
+ * content type the client declared
+ */
+public enum DocumentType {
+    PDF,
+    DOCX,
+    IMAGE;
+
+    static final int SNIFF_LENGTH = 8;
+
+    /**
+     * @return the type whose signature the bytes start with, or null if none matches
+     */
+    static DocumentType sniff(byte[] head, int length) {
+        if (startsWith(head, length, '%', 'P', 'D', 'F', '-')) {
+            return PDF;
+        }
+        // DOCX is a ZIP package. It is only recognised so it can be refused with a useful message
+        if (startsWith(head, length, 'P', 'K', 0x03, 0x04)) {
+            return DOCX;
+        }
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)
+                || startsWith(head, length, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return IMAGE;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package com.atp.printing.document;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wraps one JPEG in a single-page PDF. The JPEG bytes are embedded as they are (DCTDecode),
+ * so nothing is decoded or re-encoded here.
+ */
+final class PdfImageWriter {
+
+    private final ByteArrayOutputStream out;
+    private final List<Integer> offsets = new ArrayList<>();
+
+    private PdfImageWriter(int capacity) {
+        this.out = new ByteArrayOutputStream(capacity);
+    }
+
+    /**
+     * @param pageWidth  page width in points
+     * @param pageHeight page height in points
+     * @param x          left edge of the image in points
+     * @param y          bottom edge of the image in points
+     * @param width      width the image is drawn at in points
+     * @param height     height the image is drawn at in points
+     */
+    static byte[] write(byte[] jpeg, int pixelWidth, int pixelHeight, boolean grayscale,
+                        double pageWidth, double pageHeight,
+                        double x, double y, double width, double height) {
+        PdfImageWriter writer = new PdfImageWriter(jpeg.length + 1024);
+        // Binary marker comment so transfer tools treat the file as binary
+        writer.ascii("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+        writer.object("<</Type/Catalog/Pages 2 0 R>>");
+        writer.object("<</Type/Pages/Kids[3 0 R]/Count 1>>");
+        writer.object("<</Type/Page/Parent 2 0 R/MediaBox[0 0 " + number(pageWidth) + " " + number(pageHeight) + "]"
+                + "/Resources<</XObject<</Im0 5 0 R>>>>/Contents 4 0 R>>");
+
+        String content = "q " + number(width) + " 0 0 " + number(height) + " " + number(x) + " " + number(y)
+                + " cm /Im0 Do Q";
+        writer.object("<</Length " + content.length() + ">>\nstream\n" + content + "\nendstream");
+
+        writer.begin();
+        writer.ascii("<</Type/XObject/Subtype/Image/Width " + pixelWidth + "/Height " + pixelHeight
+                + "/ColorSpace/" + (grayscale ? "DeviceGray" : "DeviceRGB")
+                + "/BitsPerComponent 8/Filter/DCTDecode/Length " + jpeg.length + ">>\nstream\n");
+        writer.out.writeBytes(jpeg);
+        writer.ascii("\nendstream\nendobj\n");
+
+        int xref = writer.out.size();
+        StringBuilder table = new StringBuilder("xref\n0 ").append(writer.offsets.size() + 1).append('\n')
+                .append("0000000000 65535 f \n");
+        for (int offset : writer.offsets) {
+            table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offset));
+        }
+        table.append("trailer\n<</Size ").append(writer.offsets.size() + 1).append("/Root 1 0 R>>\n")
+                .append("startxref\n").append(xref).append("\n%%EOF\n");
+        writer.ascii(table.toString());
+
+        return writer.out.toByteArray();
+    }
+
+    private void object(String body) {
+        begin();
+        ascii(body + "\nendobj\n");
+    }
+
+    private void begin() {
+        offsets.add(out.size());
+        ascii(offsets.size() + " 0 obj\n");
+    }
+
+    private void ascii(String value) {
+        out.writeBytes(value.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,705 @@
+package com.atp.printing.document;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the page count of a PDF from its page tree, the way a viewer finds it: the last
+ * startxref leads to the cross-reference sections (tables, or streams from PDF 1.5, followed
+ * back through /Prev with the newest entry for each object winning), the trailer's /Root to the
+ * catalog, and the catalog's /Pages to the root of the page tree. Its /Count is the number of
+ * pages that will print.
+ *
+ * Page objects are never counted by scanning for them: pages left behind by earlier revisions
+ * or outside the tree would be charged for, and leaves without a /Type entry would be free.
+ * A file whose page tree cannot be resolved this way (a broken cross-reference, an object that
+ * is not where its entry says, a stream filter other than FlateDecode) is refused rather than
+ * guessed at.
+ *
+ * The file is held in memory while it is counted, which the 10MB multipart limit bounds.
+ * Compressed cross-reference and object streams are inflated up to maxObjectStreamBytes each.
+ * Counting stops with an InterruptedIOException once its thread is interrupted, so a caller
+ * enforcing a time limit can cancel it.
+ */
+final class PdfPageCounter {
+
+    private static final byte[] STARTXREF = {'s', 't', 'a', 'r', 't', 'x', 'r', 'e', 'f'};
+    private static final int INITIAL_STREAM_SIZE = 64 * 1024;
+    private static final int MAX_NESTING = 32;
+
+    private static final Name TYPE = new Name("Type");
+    private static final Name PAGES = new Name("Pages");
+    private static final Name XREF = new Name("XRef");
+    private static final Name OBJECT_STREAM = new Name("ObjStm");
+    private static final Name FLATE = new Name("FlateDecode");
+
+    private final int maxObjectStreamBytes;
+
+    PdfPageCounter(int maxObjectStreamBytes) {
+        this.maxObjectStreamBytes = maxObjectStreamBytes;
+    }
+
+    int count(byte[] pdf) throws IOException {
+        return new Document(pdf).pageCount();
+    }
+
+    /**
+     * One file being resolved: its merged cross-reference and the object streams opened so far
+     */
+    private final class Document {
+
+        private final byte[] pdf;
+        private final Map<Long, XrefEntry> xref = new HashMap<>();
+        private final Map<Long, ObjectStream> objectStreams = new HashMap<>();
+        private final Set<Long> resolving = new HashSet<>();
+        private Map<Name, Object> trailer;
+
+        Document(byte[] pdf) {
+            this.pdf = pdf;
+        }
+
+        int pageCount() throws IOException {
+            readXref(startxref());
+
+            Map<Name, Object> catalog = dictionary(resolve(trailer.get(new Name("Root"))), "catalog");
+            Map<Name, Object> pages = dictionary(resolve(catalog.get(PAGES)), "page tree");
+            Object type = pages.get(TYPE);
+            if (type != null && !PAGES.equals(type)) {
+                throw new IOException("Catalog /Pages is not a page tree node");
+            }
+
+            if (!(resolve(pages.get(new Name("Count"))) instanceof Long count) || count < 1 || count > Integer.MAX_VALUE) {
+                throw new IOException("Page tree has no page count");
+            }
+            // Every kid holds at least one page, so a root claiming fewer pages than kids is lying
+            if (!(resolve(pages.get(new Name("Kids"))) instanceof List<?> kids) || kids.isEmpty() || kids.size() > count) {
+                throw new IOException("Page tree /Kids does not match its /Count");
+            }
+            return count.intValue();
+        }
+
+        private long startxref() throws IOException {
+            for (int i = pdf.length - STARTXREF.length; i >= 0; i--) {
+                if (Arrays.equals(pdf, i, i + STARTXREF.length, STARTXREF, 0, STARTXREF.length)) {
+                    Parser parser = new Parser(pdf, i + STARTXREF.length, pdf.length);
+                    if (parser.next() instanceof Long offset) {
+                        return offset;
+                    }
+                    break;
+                }
+            }
+            throw new IOException("No startxref");
+        }
+
+        /**
+         * Merge the cross-reference sections from the newest back. The newest trailer is the one
+         * that names the catalog.
+         */
+        private void readXref(long offset) throws IOException {
+            Set<Long> seen = new HashSet<>();
+            Long next = offset;
+            while (next != null) {
+                if (!seen.add(next) || next < 0 || next >= pdf.length) {
+                    throw new IOException("Cross-reference chain is broken at " + next);
+                }
+                Parser parser = new Parser(pdf, next.intValue(), pdf.length);
+                Map<Name, Object> section;
+                if (Keyword.XREF.equals(parser.next())) {
+                    section = readTable(parser);
+                    // A hybrid file keeps objects only PDF 1.5 readers should see in a stream
+                    if (section.get(new Name("XRefStm")) instanceof Long stream) {
+                        readStream(stream);
+                    }
+                } else {
+                    section = readStream(next);
+                }
+                if (trailer == null) {
+                    trailer = section;
+                }
+                next = section.get(new Name("Prev")) instanceof Long prev ? prev : null;
+            }
+        }
+
+        private Map<Name, Object> readTable(Parser parser) throws IOException {
+            while (true) {
+                Object token = parser.next();
+                if (Keyword.TRAILER.equals(token)) {
+                    return dictionary(parser.next(), "trailer");
+                }
+                if (!(token instanceof Long start) || !(parser.next() instanceof Long length)) {
+                    throw new IOException("Cross-reference table is malformed");
+                }
+                for (long i = 0; i < length; i++) {
+                    Object offset = parser.next();
+                    Object generation = parser.next();
+                    Object kind = parser.next();
+                    if (!(offset instanceof Long at) || !(generation instanceof Long)
+                            || !(Keyword.IN_USE.equals(kind) || Keyword.FREE.equals(kind))) {
+                        throw new IOException("Cross-reference table is malformed");
+                    }
+                    xref.putIfAbsent(start + i, new XrefEntry(Keyword.IN_USE.equals(kind) ? 1 : 0, at, 0));
+                }
+            }
+        }
+
+        private Map<Name, Object> readStream(long offset) throws IOException {
+            IndirectObject object = parseObjectAt(offset);
+            Map<Name, Object> dictionary = dictionary(object.value(), "cross-reference stream");
+            if (!XREF.equals(dictionary.get(TYPE)) || object.streamStart() < 0) {
+                throw new IOException("No cross-reference at " + offset);
+            }
+
+            long[] widths = integers(dictionary.get(new Name("W")), 3, "/W");
+            if (!(dictionary.get(new Name("Size")) instanceof Long size)) {
+                throw new IOException("Cross-reference stream has no /Size");
+            }
+            long[] index = dictionary.containsKey(new Name("Index"))
+                    ? integers(dictionary.get(new Name("Index")), -1, "/Index")
+                    : new long[]{0, size};
+            int width = (int) (widths[0] + widths[1] + widths[2]);
+            if (index.length % 2 != 0 || width == 0 || widths[0] > 8 || widths[1] > 8 || widths[2] > 8) {
+                throw new IOException("Cross-reference stream layout is malformed");
+            }
+
+            Bytes data = decode(object);
+            int position = 0;
+            for (int i = 0; i < index.length; i += 2) {
+                for (long number = index[i]; number < index[i] + index[i + 1]; number++) {
+                    if (position + width > data.size()) {
+                        throw new IOException("Cross-reference stream is truncated");
+                    }
+                    int type = widths[0] == 0 ? 1 : (int) field(data.data(), position, (int) widths[0]);
+                    long second = field(data.data(), position + (int) widths[0], (int) widths[1]);
+                    long third = field(data.data(), position + (int) (widths[0] + widths[1]), (int) widths[2]);
+                    // Unknown entry types are references to the null object
+                    xref.putIfAbsent(number, new XrefEntry(type == 1 || type == 2 ? type : 0, second, third));
+                    position += width;
+                }
+            }
+            return dictionary;
+        }
+
+        private Object resolve(Object value) throws IOException {
+            if (!(value instanceof Ref ref)) {
+                return value;
+            }
+            XrefEntry entry = xref.get(ref.number());
+            if (entry == null || entry.type() == 0) {
+                throw new IOException("Object " + ref.number() + " is not in the cross-reference");
+            }
+            if (!resolving.add(ref.number())) {
+                throw new IOException("Object " + ref.number() + " refers to itself");
+            }
+            try {
+                if (entry.type() == 2) {
+                    return objectStream(entry.second()).object(ref.number(), entry.third());
+                }
+                IndirectObject object = parseObjectAt(entry.second());
+                if (object.number() != ref.number()) {
+                    throw new IOException("Object " + ref.number() + " is not at its cross-reference offset");
+                }
+                return object.value();
+            } finally {
+                resolving.remove(ref.number());
+            }
+        }
+
+        private ObjectStream objectStream(long number) throws IOException {
+            ObjectStream cached = objectStreams.get(number);
+            if (cached != null) {
+                return cached;
+            }
+            XrefEntry entry = xref.get(number);
+            if (entry == null || entry.type() != 1) {
+                throw new IOException("Object stream " + number + " is not in the cross-reference");
+            }
+            IndirectObject object = parseObjectAt(entry.second());
+            Map<Name, Object> dictionary = dictionary(object.value(), "object stream");
+            if (object.number() != number || !OBJECT_STREAM.equals(dictionary.get(TYPE)) || object.streamStart() < 0) {
+                throw new IOException("Object " + number + " is not an object stream");
+            }
+            if (!(dictionary.get(new Name("N")) instanceof Long count) || count < 0
+                    || !(dictionary.get(new Name("First")) instanceof Long first) || first < 0) {
+                throw new IOException("Object stream " + number + " has no /N or /First");
+            }
+
+            Bytes data = decode(object);
+            if (first > data.size()) {
+                throw new IOException("Object stream " + number + " header is truncated");
+            }
+            Parser header = new Parser(data.data(), 0, first.intValue());
+            long[] numbers = new long[(int) Math.min(count, data.size())];
+            long[] offsets = new long[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                if (!(header.next() instanceof Long objectNumber) || !(header.next() instanceof Long offset)) {
+                    throw new IOException("Object stream " + number + " header is malformed");
+                }
+                numbers[i] = objectNumber;
+                offsets[i] = first + offset;
+            }
+
+            ObjectStream stream = new ObjectStream(data, numbers, offsets);
+            objectStreams.put(number, stream);
+            return stream;
+        }
+
+        private IndirectObject parseObjectAt(long offset) throws IOException {
+            if (offset < 0 || offset >= pdf.length) {
+                throw new IOException("Object offset " + offset + " is outside the file");
+            }
+            Parser parser = new Parser(pdf, (int) offset, pdf.length);
+            if (!(parser.next() instanceof Long number) || !(parser.next() instanceof Long)
+                    || !Keyword.OBJ.equals(parser.next())) {
+                throw new IOException("No object at offset " + offset);
+            }
+            Object value = parser.next();
+            int streamStart = -1;
+            if (value instanceof Map<?, ?> && parser.peekKeyword(Keyword.STREAM)) {
+                parser.next();
+                streamStart = parser.streamStart();
+            }
+            return new IndirectObject(number, value, streamStart);
+        }
+
+        /**
+         * The stream's data with its filter and PNG predictor undone
+         */
+        private Bytes decode(IndirectObject object) throws IOException {
+            Map<Name, Object> dictionary = dictionary(object.value(), "stream");
+            if (!(resolve(dictionary.get(new Name("Length"))) instanceof Long length)
+                    || length < 0 || object.streamStart() + length > pdf.length) {
+                throw new IOException("Stream of object " + object.number() + " has no usable /Length");
+            }
+
+            Object filter = dictionary.get(new Name("Filter"));
+            Object parameters = dictionary.get(new Name("DecodeParms"));
+            if (filter instanceof List<?> filters && filters.size() == 1) {
+                filter = filters.get(0);
+                parameters = parameters instanceof List<?> list && list.size() == 1 ? list.get(0) : parameters;
+            }
+            if (filter == null) {
+                return new Bytes(Arrays.copyOfRange(pdf, object.streamStart(), object.streamStart() + length.intValue()),
+                        length.intValue());
+            }
+            if (!FLATE.equals(filter)) {
+                throw new IOException("Stream of object " + object.number() + " uses an unsupported filter " + filter);
+            }
+
+            Bytes inflated = inflate(object.streamStart(), length.intValue());
+            if (parameters instanceof Map<?, ?> map && map.get(new Name("Predictor")) instanceof Long predictor
+                    && predictor > 1) {
+                if (predictor < 10) {
+                    throw new IOException("Stream of object " + object.number() + " uses an unsupported predictor");
+                }
+                Object columns = map.get(new Name("Columns"));
+                return unpredict(inflated, columns instanceof Long value ? value.intValue() : 1);
+            }
+            return inflated;
+        }
+
+        private Bytes inflate(int offset, int length) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(pdf, offset, length);
+                byte[] data = new byte[Math.min(INITIAL_STREAM_SIZE, maxObjectStreamBytes)];
+                int size = 0;
+                while (!inflater.finished()) {
+                    checkInterrupted();
+                    if (size == data.length) {
+                        if (size >= maxObjectStreamBytes) {
+                            throw new IOException("Stream exceeds " + maxObjectStreamBytes + " bytes");
+                        }
+                        data = Arrays.copyOf(data, (int) Math.min((long) size * 2, maxObjectStreamBytes));
+                    }
+                    int inflated = inflater.inflate(data, size, data.length - size);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new ZipException("Stream is truncated");
+                    }
+                    size += inflated;
+                }
+                return new Bytes(data, size);
+            } catch (DataFormatException e) {
+                throw new ZipException("Stream is corrupt: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Undo PNG row prediction (PDF predictors 10-15): each row starts with its filter type byte
+     */
+    private static Bytes unpredict(Bytes encoded, int columns) throws IOException {
+        if (columns < 1) {
+            throw new IOException("Predictor /Columns is not positive");
+        }
+        int rows = encoded.size() / (columns + 1);
+        byte[] decoded = new byte[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            int in = row * (columns + 1);
+            int out = row * columns;
+            int filter = encoded.data()[in++];
+            for (int i = 0; i < columns; i++) {
+                int raw = encoded.data()[in + i] & 0xFF;
+                int left = i > 0 ? decoded[out + i - 1] & 0xFF : 0;
+                int up = row > 0 ? decoded[out - columns + i] & 0xFF : 0;
+                int upLeft = row > 0 && i > 0 ? decoded[out - columns + i - 1] & 0xFF : 0;
+                int value = switch (filter) {
+                    case 0 -> raw;
+                    case 1 -> raw + left;
+                    case 2 -> raw + up;
+                    case 3 -> raw + (left + up) / 2;
+                    case 4 -> raw + paeth(left, up, upLeft);
+                    default -> throw new IOException("Unknown PNG row filter " + filter);
+                };
+                decoded[out + i] = (byte) value;
+            }
+        }
+        return new Bytes(decoded, decoded.length);
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        if (toLeft <= toUp && toLeft <= toUpLeft) {
+            return left;
+        }
+        return toUp <= toUpLeft ? up : upLeft;
+    }
+
+    private static long field(byte[] data, int offset, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Name, Object> dictionary(Object value, String what) throws IOException {
+        if (!(value instanceof Map<?, ?>)) {
+            throw new IOException("Expected a dictionary for the " + what);
+        }
+        return (Map<Name, Object>) value;
+    }
+
+    /**
+     * @param length the number of integers required, or -1 for any even-sized array
+     */
+    private static long[] integers(Object value, int length, String what) throws IOException {
+        if (!(value instanceof List<?> list) || (length >= 0 && list.size() != length)) {
+            throw new IOException("Cross-reference stream " + what + " is malformed");
+        }
+        long[] integers = new long[list.size()];
+        for (int i = 0; i < integers.length; i++) {
+            if (!(list.get(i) instanceof Long integer) || integer < 0) {
+                throw new IOException("Cross-reference stream " + what + " is malformed");
+            }
+            integers[i] = integer;
+        }
+        return integers;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Page count cancelled");
+        }
+    }
+
+    /**
+     * @param type   0 free, 1 at a file offset, 2 inside an object stream
+     * @param second the file offset, or the number of the object stream
+     * @param third  the index within the object stream
+     */
+    private record XrefEntry(int type, long second, long third) {
+    }
+
+    /**
+     * @param streamStart offset of the stream data in the file, or -1 if the object has none
+     */
+    private record IndirectObject(long number, Object value, int streamStart) {
+    }
+
+    private record Bytes(byte[] data, int size) {
+    }
+
+    private record ObjectStream(Bytes data, long[] numbers, long[] offsets) {
+
+        Object object(long number, long index) throws IOException {
+            if (index < 0 || index >= numbers.length || numbers[(int) index] != number
+                    || offsets[(int) index] >= data.size()) {
+                throw new IOException("Object " + number + " is not in its object stream");
+            }
+            return new Parser(data.data(), (int) offsets[(int) index], data.size()).next();
+        }
+    }
+
+    private record Name(String value) {
+
+        @Override
+        public String toString() {
+            return "/" + value;
+        }
+    }
+
+    private record Ref(long number) {
+    }
+
+    private record Keyword(String value) {
+
+        static final Keyword OBJ = new Keyword("obj");
+        static final Keyword STREAM = new Keyword("stream");
+        static final Keyword XREF = new Keyword("xref");
+        static final Keyword TRAILER = new Keyword("trailer");
+        static final Keyword IN_USE = new Keyword("n");
+        static final Keyword FREE = new Keyword("f");
+        static final Keyword NULL = new Keyword("null");
+    }
+
+    /**
+     * Reads PDF objects: integers come back as Long, names as Name, arrays as List, dictionaries
+     * as Map, "n g R" as Ref and any other bare word as Keyword. Reals, strings and the PDF null
+     * are parsed over but carry nothing this class needs.
+     */
+    private static final class Parser {
+
+        private static final Object OTHER = new Object();
+        private static final boolean[] REGULAR = new boolean[256];
+
+        static {
+            for (int b = '!'; b < 127; b++) {
+                REGULAR[b] = "()<>[]{}/%".indexOf(b) < 0;
+            }
+        }
+
+        private final byte[] data;
+        private final int limit;
+        private int position;
+        private int depth;
+
+        Parser(byte[] data, int from, int to) {
+            this.data = data;
+            this.position = from;
+            this.limit = to;
+        }
+
+        Object next() throws IOException {
+            checkInterrupted();
+            skipWhitespace();
+            if (position >= limit) {
+                throw new IOException("Unexpected end of data");
+            }
+
+            int b = data[position] & 0xFF;
+            if (b == '/') {
+                position++;
+                return new Name(name());
+            }
+            if (b == '[') {
+                position++;
+                return array();
+            }
+            if (b == '<' && position + 1 < limit && data[position + 1] == '<') {
+                position += 2;
+                return dictionary();
+            }
+            if (b == '<') {
+                skipPast('>');
+                return OTHER;
+            }
+            if (b == '(') {
+                skipLiteralString();
+                return OTHER;
+            }
+            if (!REGULAR[b]) {
+                throw new IOException("Unexpected '" + (char) b + "'");
+            }
+
+            String word = word();
+            long integer = integer(word);
+            if (integer < 0) {
+                return keywordOrOther(word);
+            }
+            // "<number> <generation> R" is a reference
+            int mark = position;
+            skipWhitespace();
+            if (position < limit && REGULAR[data[position] & 0xFF]) {
+                long generation = integer(word());
+                skipWhitespace();
+                if (generation >= 0 && position < limit && data[position] == 'R'
+                        && (position + 1 == limit || !REGULAR[data[position + 1] & 0xFF])) {
+                    position++;
+                    return new Ref(integer);
+                }
+            }
+            position = mark;
+            return integer;
+        }
+
+        boolean peekKeyword(Keyword keyword) throws IOException {
+            int mark = position;
+            skipWhitespace();
+            boolean matches = position < limit && REGULAR[data[position] & 0xFF] && keyword.value().equals(word());
+            position = mark;
+            return matches;
+        }
+
+        /**
+         * Offset of stream data after the stream keyword and its end of line
+         */
+        int streamStart() {
+            if (position < limit && data[position] == '\r') {
+                position++;
+            }
+            if (position < limit && data[position] == '\n') {
+                position++;
+            }
+            return position;
+        }
+
+        private List<Object> array() throws IOException {
+            enter();
+            List<Object> values = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (position < limit && data[position] == ']') {
+                    position++;
+                    depth--;
+                    return values;
+                }
+                values.add(next());
+            }
+        }
+
+        private Map<Name, Object> dictionary() throws IOException {
+            enter();
+            Map<Name, Object> values = new LinkedHashMap<>();
+            while (true) {
+                skipWhitespace();
+                if (position + 1 < limit && data[position] == '>' && data[position + 1] == '>') {
+                    position += 2;
+                    depth--;
+                    return values;
+                }
+                if (!(next() instanceof Name key)) {
+                    throw new IOException("Dictionary key is not a name");
+                }
+                Object value = next();
+                // A null value is the same as the key being absent
+                if (!Keyword.NULL.equals(value)) {
+                    values.put(key, value);
+                }
+            }
+        }
+
+        private void enter() throws IOException {
+            if (++depth > MAX_NESTING) {
+                throw new IOException("Objects are nested too deeply");
+            }
+        }
+
+        private String name() throws IOException {
+            StringBuilder name = new StringBuilder();
+            while (position < limit && REGULAR[data[position] & 0xFF]) {
+                int b = data[position++] & 0xFF;
+                if (b == '#' && position + 1 < limit) {
+                    int high = Character.digit(data[position], 16);
+                    int low = Character.digit(data[position + 1], 16);
+                    if (high < 0 || low < 0) {
+                        throw new IOException("Malformed name escape");
+                    }
+                    b = high << 4 | low;
+                    position += 2;
+                }
+                name.append((char) b);
+            }
+            return name.toString();
+        }
+
+        private String word() {
+            int start = position;
+            while (position < limit && REGULAR[data[position] & 0xFF]) {
+                position++;
+            }
+            return new String(data, start, position - start, StandardCharsets.US_ASCII);
+        }
+
+        private static Object keywordOrOther(String word) {
+            char first = word.charAt(0);
+            boolean numeric = first == '+' || first == '-' || first == '.' || Character.isDigit(first);
+            return numeric ? OTHER : new Keyword(word);
+        }
+
+        /**
+         * @return the word as a non-negative integer, or -1 if it is not one
+         */
+        private static long integer(String word) {
+            if (word.isEmpty() || word.length() > 18) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int digit = word.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (position < limit) {
+                int b = data[position] & 0xFF;
+                if (b == '%') {
+                    while (position < limit && data[position] != '\r' && data[position] != '\n') {
+                        position++;
+                    }
+                } else if (REGULAR[b] || "()<>[]{}/".indexOf(b) >= 0) {
+                    return;
+                } else {
+                    position++;
+                }
+            }
+        }
+
+        private void skipPast(char end) throws IOException {
+            while (position < limit && data[position] != end) {
+                position++;
+            }
+            if (position == limit) {
+                throw new IOException("Unterminated hex string");
+            }
+            position++;
+        }
+
+        private void skipLiteralString() throws IOException {
+            int nesting = 0;
+            while (position < limit) {
+                byte b = data[position++];
+                if (b == '\\') {
+                    position++;
+                } else if (b == '(') {
+                    nesting++;
+                } else if (b == ')' && --nesting == 0) {
+                    return;
+                }
+            }
+            throw new IOException("Unterminated string");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.atp.printing.document;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Turns an uploaded photo or scan into a print-ready single-page A4 PDF.
+ *
+ * The page takes the image's orientation and the image is fitted inside the margins. Pixels
+ * beyond what the printer can use at the configured resolution are dropped while decoding
+ * (source subsampling), so the decoded image is never much larger than the output and never
+ * more than maxSourcePixels. Scaling, and grey conversion for black and white jobs, are done in
+ * horizontal bands forked on the calling fork-join pool. The result is JPEG-compressed and
+ * embedded in the PDF as it is.
+ *
+ * Instances are stateless and safe to share.
+ */
+public class PrintRenderer {
+
+    private static final double A4_SHORT_POINTS = 595.28;
+    private static final double A4_LONG_POINTS = 841.89;
+    private static final double MARGIN_POINTS = 18;
+    private static final double POINTS_PER_INCH = 72;
+
+    // Rows per band below which scaling is not split further
+    private static final int BAND_ROWS = 256;
+
+    private final int dpi;
+    private final long maxSourcePixels;
+    private final float jpegQuality;
+
+    public PrintRenderer(int dpi, long maxSourcePixels, float jpegQuality) {
+        this.dpi = dpi;
+        this.maxSourcePixels = maxSourcePixels;
+        this.jpegQuality = jpegQuality;
+    }
+
+    public byte[] render(byte[] image, boolean grayscale) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return render(reader, grayscale);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private byte[] render(ImageReader reader, boolean grayscale) throws IOException {
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+
+        boolean landscape = sourceWidth > sourceHeight;
+        double pageWidth = landscape ? A4_LONG_POINTS : A4_SHORT_POINTS;
+        double pageHeight = landscape ? A4_SHORT_POINTS : A4_LONG_POINTS;
+
+        // Fit inside the margins, keeping the aspect ratio
+        double areaWidth = pageWidth - 2 * MARGIN_POINTS;
+        double areaHeight = pageHeight - 2 * MARGIN_POINTS;
+        double fit = Math.min(areaWidth / sourceWidth, areaHeight / sourceHeight);
+        double drawWidth = sourceWidth * fit;
+        double drawHeight = sourceHeight * fit;
+
+        // Output pixels: what the drawn size holds at the target resolution, never upscaled
+        double scale = Math.min(1.0, drawWidth * dpi / POINTS_PER_INCH / sourceWidth);
+        int targetWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int targetHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+
+        int subsampling = Math.max(1, (int) Math.floor(1 / scale));
+        while ((long) (sourceWidth / subsampling) * (sourceHeight / subsampling) > maxSourcePixels) {
+            subsampling++;
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage source = reader.read(0, param);
+
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight,
+                grayscale ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        new ScaleBand(source, target, 0, targetHeight).invoke();
+        source.flush();
+
+        byte[] jpeg = encodeJpeg(target);
+        return PdfImageWriter.write(jpeg, targetWidth, targetHeight, grayscale,
+                pageWidth, pageHeight,
+                (pageWidth - drawWidth) / 2, (pageHeight - drawHeight) / 2, drawWidth, drawHeight);
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Draws rows [from, to) of the target. Each band renders through its own sub-image, so bands
+     * write to disjoint rows and never share a Graphics2D.
+     */
+    private static final class ScaleBand extends RecursiveAction {
+
+        private final BufferedImage source;
+        private final BufferedImage target;
+        private final int from;
+        private final int to;
+
+        ScaleBand(BufferedImage source, BufferedImage target, int from, int to) {
+            this.source = source;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BAND_ROWS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScaleBand(source, target, from, middle), new ScaleBand(source, target, middle, to));
+                return;
+            }
+
+            BufferedImage band = target.getSubimage(0, from, target.getWidth(), to - from);
+            Graphics2D graphics = band.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // Transparent areas print as paper
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, band.getWidth(), band.getHeight());
+                graphics.drawImage(source, 0, -from, target.getWidth(), target.getHeight(), null);
+            } finally {
+                graphics.dispose();
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.atp.printing.dto;
 
 import jakarta.validation.constraints.Min;
-import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,7 +11,6 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class PaymentOrderDto {
-    @NotNull(message = "Amount is required")
     @Min(value = 1, message = "Amount must be at least 1")
-    private Integer amount; // in paise
+    private Integer amount; // in paise, optional; checked against the amount computed at upload
 }
\ No newline at end of file
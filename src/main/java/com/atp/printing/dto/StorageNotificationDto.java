@@ -0,0 +1,38 @@
+package com.atp.printing.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The fields of a Cloudinary upload notification the app uses
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageNotificationDto {
+    @JsonProperty("notification_type")
+    private String notificationType;
+
+    @JsonProperty("public_id")
+    private String publicId;
+
+    @JsonProperty("secure_url")
+    private String secureUrl;
+
+    private String format;
+
+    // Reported for PDFs, which are stored as image resources
+    private Integer pages;
+
+    private Long bytes;
+
+    // MD5 of the content
+    private String etag;
+
+    @JsonProperty("original_filename")
+    private String originalFilename;
+}
@@ -1,7 +1,6 @@
 package com.atp.printing.dto;
 
 import com.atp.printing.entity.Session;
-import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -20,10 +19,6 @@ public class UploadRequestDto {
     @NotBlank(message = "Content type is required")
     private String contentType;
 
-    @NotNull(message = "Page count is required")
-    @Min(value = 1, message = "Page count must be at least 1")
-    private Integer pageCount;
-
     @NotNull(message = "Color mode is required")
     private Session.ColorMode colorMode;
 }
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -13,4 +15,6 @@ public class UploadResponseDto {
     private String uploadUrl;
     private String fileKey;
     private Long expiresIn;
+    // Form fields to post with the file for direct uploads
+    private Map<String, Object> uploadParams;
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.atp.printing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageBucketDto {
+    private LocalDateTime bucketStart;
+    private Double revenue;
+    private Long pages;
+    private Long jobs;
+    private Long failures;
+}
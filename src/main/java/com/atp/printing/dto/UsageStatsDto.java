@@ -0,0 +1,25 @@
+package com.atp.printing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageStatsDto {
+    private Long printerId;
+    private String granularity;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Double totalRevenue;
+    private Long totalPages;
+    private Long totalJobs;
+    private Long totalFailures;
+    private List<UsageBucketDto> buckets;
+}
@@ -17,4 +17,6 @@ public class WebSocketMessageDto {
     private Integer pageCount;
     private String colorMode;
     private Object metadata;
+    // W3C trace context of the server span; agents echo it on print_status and status calls
+    private String traceparent;
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.atp.printing.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcType;
+import org.hibernate.dialect.PostgreSQLEnumJdbcType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Finished session moved out of the live sessions table. Read-only.
+ */
+@Entity
+@Immutable
+@Table(name = "sessions_archive")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedSession {
+
+    @Id
+    private Long id;
+
+    @Column(name = "session_id", nullable = false, unique = true, length = 100)
+    private String sessionId;
+
+    @Column(name = "printer_id", nullable = false)
+    private Long printerId;
+
+    @Column(name = "file_url", length = 500)
+    private String fileUrl;
+
+    @Column(name = "file_name", length = 255)
+    private String fileName;
+
+    @Column(name = "file_key", length = 500)
+    private String fileKey;
+
+    // SHA-256 of the document, the key of its stored_objects row; null for pre-dedup uploads
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "page_count")
+    private Integer pageCount;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(name = "color_mode", columnDefinition = "color_mode")
+    private Session.ColorMode colorMode;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(nullable = false, columnDefinition = "session_status")
+    private Session.SessionStatus status;
+
+    @Column(name = "amount")
+    private Double amount;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(name = "payment_status", nullable = false, columnDefinition = "session_payment_status")
+    private Session.PaymentStatus paymentStatus;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
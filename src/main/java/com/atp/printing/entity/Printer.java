@@ -6,12 +6,16 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.JdbcType;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.dialect.PostgreSQLEnumJdbcType;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "printers")
+@DynamicUpdate
 @Data
 @Builder
 @NoArgsConstructor
@@ -19,7 +23,8 @@ import java.time.LocalDateTime;
 public class Printer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "printers_seq")
+    @SequenceGenerator(name = "printers_seq", sequenceName = "printers_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 100)
@@ -32,7 +37,8 @@ public class Printer {
     private String jwtToken;
 
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false, length = 20)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(nullable = false, columnDefinition = "printer_status")
     private PrinterStatus status = PrinterStatus.OFFLINE;
 
     @Column(name = "last_heartbeat")
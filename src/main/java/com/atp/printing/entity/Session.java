@@ -6,12 +6,16 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.JdbcType;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.dialect.PostgreSQLEnumJdbcType;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "sessions")
+@DynamicUpdate
 @Data
 @Builder
 @NoArgsConstructor
@@ -19,7 +23,8 @@ import java.time.LocalDateTime;
 public class Session {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sessions_seq")
+    @SequenceGenerator(name = "sessions_seq", sequenceName = "sessions_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "session_id", nullable = false, unique = true, length = 100)
@@ -38,22 +43,29 @@ public class Session {
     @Column(name = "file_key", length = 500)
     private String fileKey;
 
+    // SHA-256 of the document, the key of its stored_objects row; null for pre-dedup uploads
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "page_count")
     private Integer pageCount;
 
     @Enumerated(EnumType.STRING)
-    @Column(name = "color_mode", length = 20)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(name = "color_mode", columnDefinition = "color_mode")
     private ColorMode colorMode;
 
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false, length = 20)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(nullable = false, columnDefinition = "session_status")
     private SessionStatus status = SessionStatus.ACTIVE;
 
     @Column(name = "amount")
     private Double amount;
 
     @Enumerated(EnumType.STRING)
-    @Column(name = "payment_status", nullable = false, length = 20)
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    @Column(name = "payment_status", nullable = false, columnDefinition = "session_payment_status")
     private PaymentStatus paymentStatus = PaymentStatus.PENDING;
 
     @Column(name = "expires_at", nullable = false)
@@ -67,6 +79,10 @@ public class Session {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     public enum SessionStatus {
         ACTIVE,
         UPLOADED,
@@ -81,6 +97,7 @@ public class Session {
         PENDING,
         PAID,
         FAILED,
+        REFUND_REQUIRED,
         REFUNDED
     }
 
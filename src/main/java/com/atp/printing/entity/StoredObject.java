@@ -0,0 +1,47 @@
+package com.atp.printing.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A distinct uploaded document and the number of sessions referencing it. Rows are only
+ * written through {@link com.atp.printing.repository.StoredObjectRepository}, which adjusts
+ * the count in place.
+ */
+@Entity
+@Immutable
+@Table(name = "stored_objects")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredObject {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "public_id", nullable = false, length = 500)
+    private String publicId;
+
+    @Column(nullable = false, length = 500)
+    private String url;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_used_at", nullable = false)
+    private LocalDateTime lastUsedAt;
+}
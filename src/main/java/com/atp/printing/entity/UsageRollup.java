@@ -0,0 +1,57 @@
+package com.atp.printing.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Usage counters for one printer over one time bucket. Rows are only written through
+ * {@link com.atp.printing.repository.UsageRollupRepository#addToBucket}, which adds deltas in place.
+ */
+@Entity
+@Immutable
+@Table(name = "usage_rollups")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageRollup {
+
+    @Id
+    private Long id;
+
+    @Column(name = "printer_id", nullable = false)
+    private Long printerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Granularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(nullable = false)
+    private Double revenue;
+
+    @Column(nullable = false)
+    private Long pages;
+
+    @Column(nullable = false)
+    private Long jobs;
+
+    @Column(nullable = false)
+    private Long failures;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public enum Granularity {
+        HOUR,
+        DAY
+    }
+}
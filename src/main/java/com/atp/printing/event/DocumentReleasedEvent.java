@@ -0,0 +1,15 @@
+package com.atp.printing.event;
+
+/**
+ * Published when a session stops referencing its document (expiry, deletion or a replacing upload).
+ * The reference is dropped once the publishing transaction commits.
+ *
+ * @param contentHash key of the stored object, or null for uploads made before deduplication
+ * @param fileKey     public id of the file, deleted outright when there is no content hash
+ */
+public record DocumentReleasedEvent(
+        String sessionId,
+        String contentHash,
+        String fileKey
+) {
+}
@@ -0,0 +1,15 @@
+package com.atp.printing.event;
+
+import com.atp.printing.document.DocumentType;
+import com.atp.printing.entity.Session;
+
+/**
+ * Published when a session's document has been stored, for work that follows the upload
+ */
+public record DocumentUploadedEvent(
+        String sessionId,
+        String contentHash,
+        DocumentType type,
+        Session.ColorMode colorMode
+) {
+}
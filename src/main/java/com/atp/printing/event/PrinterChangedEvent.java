@@ -0,0 +1,9 @@
+package com.atp.printing.event;
+
+/**
+ * Published when a printer is registered or its name, prices or colour support change
+ */
+public record PrinterChangedEvent(
+        Long printerId
+) {
+}
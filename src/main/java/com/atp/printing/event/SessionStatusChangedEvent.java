@@ -0,0 +1,29 @@
+package com.atp.printing.event;
+
+import com.atp.printing.entity.Session;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by the session state machine after a status or payment status transition has been applied
+ */
+public record SessionStatusChangedEvent(
+        String sessionId,
+        Long printerId,
+        Session.SessionStatus fromStatus,
+        Session.SessionStatus toStatus,
+        Session.PaymentStatus fromPaymentStatus,
+        Session.PaymentStatus toPaymentStatus,
+        Integer pageCount,
+        Double amount,
+        LocalDateTime occurredAt
+) {
+
+    public boolean isStatusChange() {
+        return fromStatus != toStatus;
+    }
+
+    public boolean isPaymentStatusChange() {
+        return fromPaymentStatus != toPaymentStatus;
+    }
+}
@@ -0,0 +1,16 @@
+package com.atp.printing.exception;
+
+public class DocumentAnalysisException extends RuntimeException {
+
+    // True when the document itself was fine but analysis capacity was exhausted
+    private final boolean retryable;
+
+    public DocumentAnalysisException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
@@ -77,6 +77,16 @@ public class GlobalExceptionHandler {
                 .body(ApiResponseDto.<Void>error(ex.getMessage()));
     }
 
+    @ExceptionHandler(InvalidStateTransitionException.class)
+    public ResponseEntity<ApiResponseDto<Void>> handleInvalidStateTransitionException(
+            InvalidStateTransitionException ex) {
+
+        log.warn("Invalid state transition: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponseDto.<Void>error(ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponseDto<Void>> handleGenericException(Exception ex) {
         log.error("Unexpected error", ex);
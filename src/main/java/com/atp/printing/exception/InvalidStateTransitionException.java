@@ -0,0 +1,7 @@
+package com.atp.printing.exception;
+
+public class InvalidStateTransitionException extends RuntimeException {
+    public InvalidStateTransitionException(String message) {
+        super(message);
+    }
+}
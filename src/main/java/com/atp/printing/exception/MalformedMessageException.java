@@ -0,0 +1,7 @@
+package com.atp.printing.exception;
+
+public class MalformedMessageException extends RuntimeException {
+    public MalformedMessageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,142 @@
+package com.atp.printing.export;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Arrow IPC stream format: the schema, then one record batch per flush. A batch never holds more
+ * than maxBatchRows rows, so memory is bounded by one batch of column buffers whatever the export
+ * size. Timestamps are microseconds without a time zone, as stored.
+ */
+public class ArrowTabularWriter implements TabularWriter {
+
+    private final OutputStream out;
+    private final int maxBatchRows;
+    private final BufferAllocator allocator = new RootAllocator();
+
+    private List<Column> columns;
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private int rows;
+
+    public ArrowTabularWriter(OutputStream out, int maxBatchRows) {
+        this.out = out;
+        this.maxBatchRows = maxBatchRows;
+    }
+
+    @Override
+    public void writeHeader(List<Column> columns) throws IOException {
+        this.columns = columns;
+        root = VectorSchemaRoot.create(new Schema(columns.stream().map(ArrowTabularWriter::field).toList()), allocator);
+        root.allocateNew();
+        writer = new ArrowStreamWriter(root, null, Channels.newChannel(out));
+        writer.start();
+    }
+
+    @Override
+    public void writeRow(Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            set(root.getVector(i), columns.get(i).type(), values[i]);
+        }
+        rows++;
+        if (rows == maxBatchRows) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBatch();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer != null) {
+                writeBatch();
+                // Writes the end-of-stream marker and closes the output
+                writer.close();
+            } else {
+                out.close();
+            }
+        } finally {
+            if (root != null) {
+                root.close();
+            }
+            allocator.close();
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        root.setRowCount(rows);
+        writer.writeBatch();
+        rows = 0;
+        root.allocateNew();
+    }
+
+    private void set(FieldVector vector, Column.Type type, Object value) {
+        if (value == null) {
+            if (vector instanceof BaseFixedWidthVector fixedWidth) {
+                fixedWidth.setNull(rows);
+            } else {
+                ((BaseVariableWidthVector) vector).setNull(rows);
+            }
+            return;
+        }
+
+        switch (type) {
+            case INT32 -> ((IntVector) vector).setSafe(rows, ((Number) value).intValue());
+            case INT64 -> ((BigIntVector) vector).setSafe(rows, ((Number) value).longValue());
+            case FLOAT64 -> ((Float8Vector) vector).setSafe(rows, ((Number) value).doubleValue());
+            case STRING -> ((VarCharVector) vector).setSafe(rows, value.toString().getBytes(StandardCharsets.UTF_8));
+            case TIMESTAMP -> {
+                LocalDateTime time = (LocalDateTime) value;
+                ((TimeStampMicroVector) vector).setSafe(rows,
+                        time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000);
+            }
+            case DATE -> ((DateDayVector) vector).setSafe(rows, (int) ((LocalDate) value).toEpochDay());
+        }
+    }
+
+    private static Field field(Column column) {
+        ArrowType type = switch (column.type()) {
+            case INT32 -> new ArrowType.Int(32, true);
+            case INT64 -> new ArrowType.Int(64, true);
+            case FLOAT64 -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case STRING -> ArrowType.Utf8.INSTANCE;
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+        };
+        return Field.nullable(column.name(), type);
+    }
+}
@@ -0,0 +1,20 @@
+package com.atp.printing.export;
+
+/**
+ * One exported column. The type matters to columnar formats; CSV only uses the name.
+ */
+public record Column(String name, Type type) {
+
+    public enum Type {
+        INT32,
+        INT64,
+        FLOAT64,
+        STRING,
+        TIMESTAMP,
+        DATE
+    }
+
+    public static Column of(String name, Type type) {
+        return new Column(name, type);
+    }
+}
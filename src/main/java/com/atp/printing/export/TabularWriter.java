@@ -0,0 +1,21 @@
+package com.atp.printing.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sink for row-oriented exports. Implementations must not buffer more than a bounded
+ * number of rows so exports run in constant memory.
+ */
+public interface TabularWriter extends Closeable {
+
+    void writeHeader(List<Column> columns) throws IOException;
+
+    void writeRow(Object... values) throws IOException;
+
+    /**
+     * Push buffered rows to the underlying stream
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,374 @@
+package com.atp.printing.fake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded HTTP server speaking the subset of the Cloudinary upload API the app uses
+ * (upload and destroy). The Cloudinary client is pointed at it through upload_prefix, so the
+ * real SDK request path, including multipart encoding and response parsing, is exercised.
+ * Delivery URLs it hands out can be downloaded, with Range support, for socket file transfers.
+ *
+ * Requests must be signed with the API secret as Cloudinary requires, which also lets browsers
+ * upload to it directly with parameters the app signed. Uploads carrying a notification_url
+ * are reported there afterwards, signed the way Cloudinary signs notifications.
+ *
+ * Only the size and digest of each uploaded file are kept, so memory does not grow with upload
+ * volume; downloads return generated bytes of that size. Every upload is reported as one page.
+ * Every call first goes through the {@link FaultInjector}: throttled calls get Cloudinary's
+ * 420 rate limit answer, failed calls a 500, and timed-out calls are held open and then dropped
+ * without a response.
+ */
+@Slf4j
+public class FakeCloudinaryServer {
+
+    private static final String DELIVERY_MARKER = "/upload/v1/";
+
+    // Cloudinary refuses signatures older than this
+    private static final long SIGNATURE_LIFETIME_SECONDS = 3600;
+
+    // Parameters Cloudinary leaves out of the string it signs
+    private static final Set<String> UNSIGNED_PARAMS = Set.of("file", "api_key", "signature", "resource_type", "cloud_name");
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HttpClient notificationClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String apiSecret;
+    private final FaultInjector faults;
+
+    // Uploaded public ids and their sizes in bytes
+    private final Map<String, Integer> stored = new ConcurrentHashMap<>();
+
+    public FakeCloudinaryServer(int port, int threads, String apiSecret, FaultInjector faults) throws IOException {
+        this.apiSecret = apiSecret;
+        this.faults = faults;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.notificationClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.server.setExecutor(executor);
+        this.server.createContext("/v1_1/", this::handle);
+        this.server.createContext("/", this::download);
+    }
+
+    public void start() {
+        server.start();
+        log.warn("Fake Cloudinary listening on {}", baseUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Value for the Cloudinary upload_prefix setting
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getStoredCount() {
+        return stored.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // /v1_1/{cloud}/{resource_type}/{action}
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            if (!"POST".equals(exchange.getRequestMethod()) || path.length != 5) {
+                respond(exchange, 404, Map.of("error", Map.of("message", "Not found")));
+                return;
+            }
+
+            if (!passFaults(exchange)) {
+                return;
+            }
+
+            String cloudName = path[2];
+            String resourceType = path[3];
+            Map<String, String> params = new HashMap<>();
+            MultipartForm.FilePart file = readForm(exchange, params);
+
+            if (!signatureValid(params)) {
+                respond(exchange, 401, Map.of("error", Map.of("message", "Invalid Signature")));
+                return;
+            }
+
+            switch (path[4]) {
+                case "upload" -> upload(exchange, cloudName, resourceType, params, file);
+                case "destroy" -> destroy(exchange, params);
+                default -> respond(exchange, 404, Map.of("error", Map.of("message", "Unknown action " + path[4])));
+            }
+        } catch (RuntimeException e) {
+            log.error("Fake Cloudinary request failed", e);
+        }
+    }
+
+    /**
+     * GET /{cloud}/{type}/upload/v1/{public_id}, honouring an open-ended Range header
+     */
+    private void download(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            int marker = path.indexOf(DELIVERY_MARKER);
+            Integer size = marker >= 0 ? stored.get(path.substring(marker + DELIVERY_MARKER.length())) : null;
+            if (!"GET".equals(exchange.getRequestMethod()) || size == null) {
+                respond(exchange, 404, Map.of("error", Map.of("message", "Resource not found")));
+                return;
+            }
+            if (!passFaults(exchange)) {
+                return;
+            }
+
+            long from = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+                from = Long.parseLong(range.substring(6, range.length() - 1));
+            }
+            if (from > size) {
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            if (range != null) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (size - 1) + "/" + size);
+            }
+            long length = size - from;
+            exchange.sendResponseHeaders(range != null ? 206 : 200, length > 0 ? length : -1);
+
+            byte[] block = new byte[8192];
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (long position = from; position < size; ) {
+                    int count = (int) Math.min(block.length, size - position);
+                    for (int i = 0; i < count; i++) {
+                        block[i] = (byte) ((position + i) * 31);
+                    }
+                    out.write(block, 0, count);
+                    position += count;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Fake Cloudinary download failed", e);
+        }
+    }
+
+    /**
+     * Apply the injected fault for this call
+     *
+     * @return true if the request should be served normally
+     */
+    private boolean passFaults(HttpExchange exchange) throws IOException {
+        FaultInjector.Decision decision = faults.decide();
+        if (!FaultInjector.await(decision)) {
+            return false;
+        }
+        switch (decision.outcome()) {
+            case THROTTLED -> {
+                respond(exchange, 420, Map.of("error", Map.of("message", "Rate Limit Exceeded")));
+                return false;
+            }
+            case ERROR -> {
+                respond(exchange, 500, Map.of("error", Map.of("message", "General Error")));
+                return false;
+            }
+            // Closing without sending headers drops the connection, as a stalled upstream would
+            case TIMEOUT -> {
+                return false;
+            }
+            default -> {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Cloudinary's request signature: SHA-1 of the sorted signed parameters followed by the secret
+     */
+    private boolean signatureValid(Map<String, String> params) {
+        String signature = params.get("signature");
+        String timestamp = params.get("timestamp");
+        if (signature == null || timestamp == null) {
+            return false;
+        }
+        try {
+            if (Instant.now().getEpochSecond() - Long.parseLong(timestamp) > SIGNATURE_LIFETIME_SECONDS) {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        String signed = new TreeMap<>(params).entrySet().stream()
+                .filter(param -> !UNSIGNED_PARAMS.contains(param.getKey()) && !param.getValue().isEmpty())
+                .map(param -> param.getKey() + "=" + param.getValue())
+                .collect(Collectors.joining("&"));
+        return MessageDigest.isEqual(sha1(signed + apiSecret).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void upload(HttpExchange exchange, String cloudName, String resourceType,
+                        Map<String, String> params, MultipartForm.FilePart file) throws IOException {
+        String publicId = params.get("public_id");
+        if (publicId == null || file == null) {
+            respond(exchange, 400, Map.of("error", Map.of("message", "Missing required parameter - file")));
+            return;
+        }
+
+        String filename = file.filename();
+        int dot = filename.lastIndexOf('.');
+        String format = dot >= 0 ? filename.substring(dot + 1).toLowerCase() : "";
+        if ("jpeg".equals(format)) {
+            format = "jpg";
+        }
+        String allowedFormats = params.get("allowed_formats");
+        if (allowedFormats != null && !Arrays.asList(allowedFormats.split(",")).contains(format)) {
+            respond(exchange, 400, Map.of("error", Map.of("message", "File format " + format + " not allowed")));
+            return;
+        }
+
+        String type = "auto".equals(resourceType) ? "image" : resourceType;
+        stored.put(publicId, file.size());
+
+        String path = "/" + cloudName + "/" + type + "/upload/v1/" + publicId;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("public_id", publicId);
+        result.put("version", 1);
+        result.put("resource_type", type);
+        result.put("type", "upload");
+        result.put("format", format);
+        result.put("pages", 1);
+        result.put("bytes", file.size());
+        result.put("etag", file.md5());
+        result.put("original_filename", dot >= 0 ? filename.substring(0, dot) : filename);
+        result.put("created_at", Instant.now().toString());
+        result.put("url", baseUrl() + path);
+        result.put("secure_url", baseUrl() + path);
+        respond(exchange, 200, result);
+
+        String notificationUrl = params.get("notification_url");
+        if (notificationUrl != null) {
+            Map<String, Object> notification = new LinkedHashMap<>(result);
+            notification.put("notification_type", "upload");
+            executor.execute(() -> sendNotification(notificationUrl, notification));
+        }
+    }
+
+    /**
+     * POST the upload result to its notification_url, signed as SHA-1 of body, timestamp and secret
+     */
+    private void sendNotification(String notificationUrl, Map<String, Object> notification) {
+        try {
+            String body = objectMapper.writeValueAsString(notification);
+            String timestamp = String.valueOf(Instant.now().getEpochSecond());
+            HttpRequest request = HttpRequest.newBuilder(URI.create(notificationUrl))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .header("X-Cld-Timestamp", timestamp)
+                    .header("X-Cld-Signature", sha1(body + timestamp + apiSecret))
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+
+            HttpResponse<Void> response = notificationClient.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                log.warn("Fake Cloudinary notification to {} got {}", notificationUrl, response.statusCode());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Fake Cloudinary notification to {} failed: {}", notificationUrl, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void destroy(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String publicId = params.get("public_id");
+        boolean removed = publicId != null && stored.remove(publicId) != null;
+        respond(exchange, 200, Map.of("result", removed ? "ok" : "not found"));
+    }
+
+    /**
+     * Read form fields into params
+     *
+     * @return the uploaded file part, or null if there was none
+     */
+    private MultipartForm.FilePart readForm(HttpExchange exchange, Map<String, String> params) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("multipart/form-data")) {
+            return MultipartForm.parse(body, MultipartForm.boundary(contentType), params);
+        }
+
+        for (String pair : new String(body, StandardCharsets.UTF_8).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        // A file sent as a form field is a remote URL or data URI
+        String file = params.get("file");
+        if (file == null) {
+            return null;
+        }
+        byte[] content = file.getBytes(StandardCharsets.UTF_8);
+        return new MultipartForm.FilePart("file", content.length, MultipartForm.md5(content, 0, content.length));
+    }
+
+    private static String sha1(String value) {
+        try {
+            return HEX.formatHex(MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.atp.printing.fake;
+
+import com.atp.printing.service.PaymentGateway;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Razorpay orders API. Order ids have the same shape as real ones,
+ * and checkout signatures are still computed with razorpay.secret, so clients complete payments
+ * exactly as they would against the real gateway.
+ *
+ * Calls go through a {@link FaultInjector} and fail the same way {@code RazorpayPaymentGateway}
+ * does when the SDK throws, so the payment path sees realistic latency and errors.
+ */
+@Slf4j
+public class FakePaymentGateway implements PaymentGateway {
+
+    private static final char[] ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final FaultInjector faults;
+    private final AtomicLong ordersCreated = new AtomicLong();
+
+    public FakePaymentGateway(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    @Override
+    public String createOrder(int amountInPaise, String currency, String receipt) {
+        FaultInjector.Decision decision = faults.decide();
+        if (!FaultInjector.await(decision)) {
+            throw new RuntimeException("Failed to create payment order", new InterruptedException());
+        }
+
+        switch (decision.outcome()) {
+            case THROTTLED -> throw new RuntimeException("Failed to create payment order: Too many requests");
+            case ERROR -> throw new RuntimeException("Failed to create payment order: BAD_REQUEST_ERROR");
+            case TIMEOUT -> throw new RuntimeException("Failed to create payment order: timeout");
+            default -> {
+            }
+        }
+
+        String orderId = "order_" + randomId(14);
+        ordersCreated.incrementAndGet();
+
+        log.debug("Fake order {} for {} {} ({})", orderId, amountInPaise, currency, receipt);
+        return orderId;
+    }
+
+    public long getOrdersCreated() {
+        return ordersCreated.get();
+    }
+
+    private static String randomId(int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] id = new char[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = ID_CHARS[random.nextInt(ID_CHARS.length)];
+        }
+        return new String(id);
+    }
+}
@@ -0,0 +1,82 @@
+package com.atp.printing.fake;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+
+/**
+ * Replaces the Cloudinary and Razorpay clients with local stand-ins, so the upload and payment
+ * paths can be driven offline (load tests, performance work). Never enable in production.
+ */
+@Configuration
+@Profile("fake-providers")
+public class FakeProvidersConfig {
+
+    public static final String CLOUDINARY = "cloudinary";
+    public static final String RAZORPAY = "razorpay";
+
+    @Value("${cloudinary.cloud-name}")
+    private String cloudName;
+
+    @Value("${cloudinary.api-key}")
+    private String apiKey;
+
+    @Value("${cloudinary.api-secret}")
+    private String apiSecret;
+
+    @Value("${cloudinary.timeout-seconds}")
+    private Integer timeoutSeconds;
+
+    @Bean
+    public FaultInjector cloudinaryFaults(Environment environment) {
+        return new FaultInjector(CLOUDINARY, faultSettings(environment, CLOUDINARY));
+    }
+
+    @Bean
+    public FaultInjector razorpayFaults(Environment environment) {
+        return new FaultInjector(RAZORPAY, faultSettings(environment, RAZORPAY));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public FakeCloudinaryServer fakeCloudinaryServer(
+            @Value("${app.fake-providers.cloudinary.port}") int port,
+            @Value("${app.fake-providers.cloudinary.threads}") int threads,
+            FaultInjector cloudinaryFaults) throws IOException {
+        return new FakeCloudinaryServer(port, threads, apiSecret, cloudinaryFaults);
+    }
+
+    @Bean
+    public FakePaymentGateway fakePaymentGateway(FaultInjector razorpayFaults) {
+        return new FakePaymentGateway(razorpayFaults);
+    }
+
+    @Bean
+    public Cloudinary cloudinary(FakeCloudinaryServer fakeCloudinaryServer) {
+        return new Cloudinary(ObjectUtils.asMap(
+                "cloud_name", cloudName,
+                "api_key", apiKey,
+                "api_secret", apiSecret,
+                "secure", true,
+                "timeout", timeoutSeconds,
+                "upload_prefix", fakeCloudinaryServer.baseUrl()
+        ));
+    }
+
+    private static FaultSettings faultSettings(Environment environment, String provider) {
+        String prefix = "app.fake-providers." + provider + ".";
+        return new FaultSettings(
+                environment.getProperty(prefix + "latency-median-ms", Long.class, 0L),
+                environment.getProperty(prefix + "latency-p99-ms", Long.class, 0L),
+                environment.getProperty(prefix + "error-rate", Double.class, 0.0),
+                environment.getProperty(prefix + "timeout-rate", Double.class, 0.0),
+                environment.getProperty(prefix + "timeout-ms", Long.class, 0L),
+                environment.getProperty(prefix + "max-requests-per-second", Integer.class, 0)
+        );
+    }
+}
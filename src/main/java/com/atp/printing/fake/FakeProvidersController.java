@@ -0,0 +1,56 @@
+package com.atp.printing.fake;
+
+import com.atp.printing.dto.ApiResponseDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Changes fake provider behaviour while the service is running, e.g. to start a timeout storm
+ * halfway through a load test step
+ */
+@Slf4j
+@RestController
+@Profile("fake-providers")
+@RequestMapping("/api/admin/fake-providers")
+@RequiredArgsConstructor
+public class FakeProvidersController {
+
+    private final FaultInjector cloudinaryFaults;
+    private final FaultInjector razorpayFaults;
+
+    @GetMapping
+    public ResponseEntity<ApiResponseDto<Map<String, FaultSettings>>> getSettings() {
+        return ResponseEntity.ok(ApiResponseDto.success(Map.of(
+                FakeProvidersConfig.CLOUDINARY, cloudinaryFaults.getSettings(),
+                FakeProvidersConfig.RAZORPAY, razorpayFaults.getSettings())));
+    }
+
+    @PutMapping("/{provider}")
+    public ResponseEntity<ApiResponseDto<FaultSettings>> updateSettings(
+            @PathVariable String provider,
+            @RequestBody FaultSettings settings) {
+
+        FaultInjector faults = switch (provider) {
+            case FakeProvidersConfig.CLOUDINARY -> cloudinaryFaults;
+            case FakeProvidersConfig.RAZORPAY -> razorpayFaults;
+            default -> null;
+        };
+
+        if (faults == null) {
+            return ResponseEntity.status(404).body(ApiResponseDto.error("Unknown provider: " + provider));
+        }
+
+        faults.update(settings);
+        return ResponseEntity.ok(ApiResponseDto.success(settings));
+    }
+}
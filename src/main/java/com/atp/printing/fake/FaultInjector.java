@@ -0,0 +1,120 @@
+package com.atp.printing.fake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how a fake provider answers each call: after how long, and whether it succeeds,
+ * fails, times out or is throttled. Settings can be replaced at runtime to start or stop a
+ * fault storm in the middle of a load test.
+ */
+@Slf4j
+public class FaultInjector {
+
+    public enum Outcome {
+        OK,
+        ERROR,
+        TIMEOUT,
+        THROTTLED
+    }
+
+    /**
+     * @param delayMs time to wait before answering (the full hang time for TIMEOUT)
+     */
+    public record Decision(Outcome outcome, long delayMs) {
+    }
+
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.3263;
+
+    private final String provider;
+    private volatile FaultSettings settings;
+
+    // Token bucket for throttling, refilled at maxRequestsPerSecond
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public FaultInjector(String provider, FaultSettings settings) {
+        this.provider = provider;
+        update(settings);
+    }
+
+    public FaultSettings getSettings() {
+        return settings;
+    }
+
+    public void update(FaultSettings settings) {
+        synchronized (this) {
+            this.settings = settings;
+            this.tokens = settings.maxRequestsPerSecond();
+        }
+        log.warn("Fake {} faults: {}", provider, settings);
+    }
+
+    public Decision decide() {
+        FaultSettings current = settings;
+
+        if (!tryAcquire(current.maxRequestsPerSecond())) {
+            return new Decision(Outcome.THROTTLED, 0);
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < current.timeoutRate()) {
+            return new Decision(Outcome.TIMEOUT, current.timeoutMs());
+        }
+
+        long delay = sampleLatency(current);
+        if (roll < current.timeoutRate() + current.errorRate()) {
+            return new Decision(Outcome.ERROR, delay);
+        }
+        return new Decision(Outcome.OK, delay);
+    }
+
+    /**
+     * Sleep for the decision's delay
+     *
+     * @return false if the thread was interrupted
+     */
+    public static boolean await(Decision decision) {
+        if (decision.delayMs() <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(decision.delayMs());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized boolean tryAcquire(int ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(ratePerSecond, tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+        refilledAt = now;
+
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private static long sampleLatency(FaultSettings settings) {
+        long median = settings.latencyMedianMs();
+        if (median <= 0) {
+            return 0;
+        }
+        if (settings.latencyP99Ms() <= median) {
+            return median;
+        }
+
+        double sigma = Math.log((double) settings.latencyP99Ms() / median) / Z_99;
+        return Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.atp.printing.fake;
+
+/**
+ * Behaviour of a fake provider.
+ *
+ * @param latencyMedianMs      median added latency; 0 disables latency injection
+ * @param latencyP99Ms         99th percentile of the added latency, drawn from a log-normal
+ *                             distribution; equal to the median for a fixed delay
+ * @param errorRate            fraction of calls answered with a server error
+ * @param timeoutRate          fraction of calls that hang for timeoutMs and then fail without a response
+ * @param timeoutMs            how long a timed-out call hangs
+ * @param maxRequestsPerSecond calls above this rate are throttled; 0 means unlimited
+ */
+public record FaultSettings(
+        long latencyMedianMs,
+        long latencyP99Ms,
+        double errorRate,
+        double timeoutRate,
+        long timeoutMs,
+        int maxRequestsPerSecond
+) {
+
+    public static final FaultSettings NONE = new FaultSettings(0, 0, 0, 0, 0, 0);
+
+    public FaultSettings {
+        if (latencyMedianMs < 0 || latencyP99Ms < 0 || timeoutMs < 0 || maxRequestsPerSecond < 0) {
+            throw new IllegalArgumentException("Fault settings must not be negative");
+        }
+        if (errorRate < 0 || timeoutRate < 0 || errorRate + timeoutRate > 1) {
+            throw new IllegalArgumentException("errorRate and timeoutRate must be fractions adding up to at most 1");
+        }
+    }
+}
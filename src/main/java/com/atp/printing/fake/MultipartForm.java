@@ -0,0 +1,117 @@
+package com.atp.printing.fake;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Minimal multipart/form-data reader for the fake provider servers. Text fields are decoded,
+ * file parts are only measured and fingerprinted.
+ */
+final class MultipartForm {
+
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private MultipartForm() {
+    }
+
+    static String boundary(String contentType) {
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.startsWith("boundary=")) {
+                String boundary = trimmed.substring("boundary=".length());
+                return boundary.startsWith("\"") ? boundary.substring(1, boundary.length() - 1) : boundary;
+            }
+        }
+        throw new IllegalArgumentException("No boundary in " + contentType);
+    }
+
+    /**
+     * Put every text field into fields
+     *
+     * @return the file part, or null if there was none
+     */
+    static FilePart parse(byte[] body, String boundary, Map<String, String> fields) {
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        FilePart file = null;
+
+        int start = indexOf(body, delimiter, 0);
+        while (start >= 0) {
+            int partStart = start + delimiter.length;
+            // "--" after the delimiter closes the body
+            if (partStart + 1 < body.length && body[partStart] == '-' && body[partStart + 1] == '-') {
+                break;
+            }
+            partStart += 2;
+
+            int next = indexOf(body, delimiter, partStart);
+            if (next < 0) {
+                break;
+            }
+
+            int headersEnd = indexOf(body, HEADER_END, partStart);
+            if (headersEnd > 0 && headersEnd < next) {
+                String headers = new String(body, partStart, headersEnd - partStart, StandardCharsets.UTF_8);
+                int contentStart = headersEnd + HEADER_END.length;
+                // Content is followed by CRLF before the next delimiter
+                int contentLength = Math.max(0, next - 2 - contentStart);
+
+                String name = dispositionParam(headers, "name");
+                String filename = dispositionParam(headers, "filename");
+                if (filename != null) {
+                    file = new FilePart(filename, contentLength, md5(body, contentStart, contentLength));
+                } else if (name != null) {
+                    fields.put(name, new String(body, contentStart, contentLength, StandardCharsets.UTF_8));
+                }
+            }
+            start = next;
+        }
+        return file;
+    }
+
+    static String md5(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, offset, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static String dispositionParam(String headers, String param) {
+        String key = " " + param + "=\"";
+        int at = headers.indexOf(key);
+        if (at < 0) {
+            key = ";" + param + "=\"";
+            at = headers.indexOf(key);
+        }
+        if (at < 0) {
+            return null;
+        }
+        int valueStart = at + key.length();
+        int valueEnd = headers.indexOf('"', valueStart);
+        return valueEnd > valueStart ? headers.substring(valueStart, valueEnd) : "";
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param md5 hex digest of the content, as Cloudinary reports it in etag
+     */
+    record FilePart(String filename, int size, String md5) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.atp.printing.logging;
+
+import org.slf4j.MDC;
+
+/**
+ * MDC keys shared by the request filter, the WebSocket handler and the JSON log layout.
+ * traceId and spanId are added by Micrometer Tracing.
+ */
+public final class LogContext {
+
+    public static final String SESSION_ID = "sessionId";
+    public static final String PRINTER_ID = "printerId";
+
+    private LogContext() {
+    }
+
+    public static void putSession(String sessionId) {
+        if (sessionId != null) {
+            MDC.put(SESSION_ID, sessionId);
+        }
+    }
+
+    public static String getSession() {
+        return MDC.get(SESSION_ID);
+    }
+
+    public static void putPrinter(Object printerId) {
+        if (printerId != null) {
+            MDC.put(PRINTER_ID, printerId.toString());
+        }
+    }
+
+    public static void clear() {
+        MDC.remove(SESSION_ID);
+        MDC.remove(PRINTER_ID);
+    }
+}
@@ -0,0 +1,30 @@
+package com.atp.printing.logging;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets one in N calls through per key, for per-request INFO logs on endpoints that are
+ * polled or called on every heartbeat. Errors should never go through the sampler.
+ */
+@Component
+public class LogSampler {
+
+    private final int sampleEvery;
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public LogSampler(@Value("${app.logging.hot-path-sample-every}") int sampleEvery) {
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    public boolean sample(String key) {
+        if (sampleEvery == 1) {
+            return true;
+        }
+        return counters.computeIfAbsent(key, k -> new AtomicLong()).getAndIncrement() % sampleEvery == 0;
+    }
+}
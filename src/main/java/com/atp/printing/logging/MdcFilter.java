@@ -0,0 +1,58 @@
+package com.atp.printing.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Puts the session id of the request into the MDC, from the /api/session/{sessionId} path or
+ * the sessionId parameter. The printer id is added by JwtAuthenticationFilter once the token
+ * has been validated. Both are cleared when the request completes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class MdcFilter extends OncePerRequestFilter {
+
+    private static final String SESSION_PATH = "/api/session/";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        try {
+            LogContext.putSession(sessionId(request));
+            filterChain.doFilter(request, response);
+        } finally {
+            LogContext.clear();
+        }
+    }
+
+    private static String sessionId(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (path.startsWith(SESSION_PATH) && path.length() > SESSION_PATH.length()) {
+            int end = path.indexOf('/', SESSION_PATH.length());
+            String segment = path.substring(SESSION_PATH.length(), end < 0 ? path.length() : end);
+            if (!"create".equals(segment)) {
+                return segment;
+            }
+        }
+
+        // Only looks at the query string, so multipart bodies are not parsed here
+        String query = request.getQueryString();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("sessionId=")) {
+                    return param.substring("sessionId=".length());
+                }
+            }
+        }
+        return null;
+    }
+}
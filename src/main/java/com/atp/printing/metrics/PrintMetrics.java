@@ -0,0 +1,297 @@
+package com.atp.printing.metrics;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.event.SessionStatusChangedEvent;
+import com.atp.printing.websocket.message.PrinterEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the print lifecycle: upload, provider calls, payment, dispatch and printer heartbeats.
+ *
+ * Meter names are kept here so dashboards and alerts have one place to look. Percentile
+ * histograms and SLO buckets for the print.* timers are configured in application.yml under
+ * management.metrics.distribution. Every histogram bucket set is repeated per tag combination,
+ * so print.* meters are never tagged by printer: the fleet may reach tens of thousands. Per-printer
+ * detail is in the logs (printerId in the MDC) and in the usage rollups.
+ */
+@Component
+public class PrintMetrics {
+
+    public static final String UPLOAD = "print.upload";
+    public static final String CLOUDINARY = "print.cloudinary.requests";
+    public static final String RAZORPAY = "print.razorpay.requests";
+    public static final String QR_CODE = "print.qrcode.generation";
+    public static final String DISPATCH = "print.job.dispatch";
+    public static final String PAYMENT_TO_PRINT = "print.payment.to.print";
+    public static final String PAYMENTS = "print.payments";
+    public static final String TRANSITIONS = "print.session.transitions";
+    public static final String JOB_PAGES = "print.job.pages";
+    public static final String HEARTBEAT_INTERVAL = "print.printer.heartbeat.interval";
+    public static final String HEARTBEAT_LAG = "print.printer.heartbeat.lag";
+    public static final String PRINTERS_CONNECTED = "print.printers.connected";
+    public static final String AWAITING_PRINT = "print.sessions.awaiting.print";
+    public static final String PRINTER_MESSAGES = "print.printer.messages";
+    public static final String PRINTER_HANDSHAKES = "print.printer.handshakes";
+    public static final String FILE_TRANSFERS = "print.file.transfers";
+    public static final String FILE_TRANSFER_BYTES = "print.file.transfer.bytes";
+    public static final String DOCUMENT_ANALYSIS = "print.document.analysis";
+    public static final String STORED_OBJECTS = "print.stored.objects";
+    public static final String RENDITIONS = "print.renditions";
+    public static final String DIRECT_UPLOADS = "print.upload.direct";
+    public static final String UPLOAD_ADMISSION = "print.upload.admission";
+    public static final String UPLOAD_QUEUE_WAIT = "print.upload.queue.wait";
+    public static final String UPLOADS_ACTIVE = "print.uploads.active";
+    public static final String UPLOADS_QUEUED = "print.uploads.queued";
+    public static final String SESSION_WRITES = "print.session.writes";
+    public static final String SESSIONS_PENDING = "print.sessions.pending";
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+
+    // Last heartbeat (System.nanoTime) of each connected printer
+    private final Map<Long, Long> lastHeartbeat = new ConcurrentHashMap<>();
+
+    // Paid sessions that have not started printing yet, by session id
+    private final Map<String, Long> paidAt = new ConcurrentHashMap<>();
+
+    // Registered up front so counting a printer message is a single increment
+    private final Map<PrinterEvent, Counter> printerMessages = new EnumMap<>(PrinterEvent.class);
+    private final Counter unknownPrinterMessages;
+    private final Counter malformedPrinterMessages;
+
+    public PrintMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        Gauge.builder(PRINTERS_CONNECTED, lastHeartbeat, Map::size)
+                .description("Printers with an open WebSocket connection")
+                .register(registry);
+        Gauge.builder(HEARTBEAT_LAG, this, PrintMetrics::maxHeartbeatAgeSeconds)
+                .description("Seconds since the stalest connected printer last sent a heartbeat")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder(AWAITING_PRINT, paidAt, Map::size)
+                .description("Paid sessions not yet sent to a printer")
+                .register(registry);
+
+        for (PrinterEvent event : PrinterEvent.values()) {
+            printerMessages.put(event, printerMessageCounter(event.wireName()));
+        }
+        unknownPrinterMessages = printerMessageCounter(UNKNOWN);
+        malformedPrinterMessages = printerMessageCounter("malformed");
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void recordUpload(Timer.Sample sample, String outcome) {
+        sample.stop(registry.timer(UPLOAD, Tags.of("outcome", outcome)));
+    }
+
+    public void recordCloudinary(Timer.Sample sample, String operation, String outcome) {
+        sample.stop(registry.timer(CLOUDINARY, Tags.of("operation", operation, "outcome", outcome)));
+    }
+
+    public void recordRazorpay(Timer.Sample sample, String operation, String outcome) {
+        sample.stop(registry.timer(RAZORPAY, Tags.of("operation", operation, "outcome", outcome)));
+    }
+
+    public void recordQrCode(Timer.Sample sample, String outcome) {
+        sample.stop(registry.timer(QR_CODE, Tags.of("outcome", outcome)));
+    }
+
+    public void recordDispatch(Timer.Sample sample, String outcome) {
+        sample.stop(registry.timer(DISPATCH, Tags.of("outcome", outcome)));
+    }
+
+    /**
+     * Count a payment verification by result (captured, duplicate, rejected or error)
+     */
+    public void countPayment(String outcome) {
+        registry.counter(PAYMENTS, "outcome", outcome).increment();
+    }
+
+    public void printerConnected(Long printerId) {
+        lastHeartbeat.put(printerId, System.nanoTime());
+    }
+
+    public void printerDisconnected(Long printerId) {
+        lastHeartbeat.remove(printerId);
+    }
+
+    /**
+     * Record the time since the printer's previous heartbeat
+     */
+    public void recordHeartbeat(Long printerId) {
+        long now = System.nanoTime();
+        Long previous = lastHeartbeat.put(printerId, now);
+
+        if (previous != null) {
+            registry.timer(HEARTBEAT_INTERVAL).record(now - previous, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Count a printer socket handshake by result (accepted, throttled, full or unauthorized)
+     */
+    public void countHandshake(String outcome) {
+        registry.counter(PRINTER_HANDSHAKES, "outcome", outcome).increment();
+    }
+
+    /**
+     * Count a document streamed over the printer socket by how it ended (success, or the reason it did not)
+     */
+    public void countTransfer(String outcome) {
+        registry.counter(FILE_TRANSFERS, "outcome", outcome).increment();
+    }
+
+    public void countTransferBytes(int bytes) {
+        registry.counter(FILE_TRANSFER_BYTES).increment(bytes);
+    }
+
+    /**
+     * Count an uploaded document by how its page count was obtained (counted or cached) or why not
+     */
+    public void countDocumentAnalysis(String outcome) {
+        registry.counter(DOCUMENT_ANALYSIS, "outcome", outcome).increment();
+    }
+
+    /**
+     * Count a stored document operation (uploaded, deduplicated or deleted)
+     */
+    public void countStoredObject(String outcome) {
+        registry.counter(STORED_OBJECTS, "outcome", outcome).increment();
+    }
+
+    /**
+     * Count a direct-to-storage upload step (signed, completed, or why a completion was rejected)
+     */
+    public void countDirectUpload(String outcome) {
+        registry.counter(DIRECT_UPLOADS, "outcome", outcome).increment();
+    }
+
+    public void trackUploadAdmission(AtomicInteger active, AtomicInteger queued) {
+        Gauge.builder(UPLOADS_ACTIVE, active, AtomicInteger::get)
+                .description("Uploads being received")
+                .register(registry);
+        Gauge.builder(UPLOADS_QUEUED, queued, AtomicInteger::get)
+                .description("Uploads waiting for a slot")
+                .register(registry);
+    }
+
+    /**
+     * Count an upload admission decision (admitted, or refused by client, session, queue_full or queue_timeout)
+     */
+    public void countUploadAdmission(String outcome) {
+        registry.counter(UPLOAD_ADMISSION, "outcome", outcome).increment();
+    }
+
+    /**
+     * Time an upload spent queued for a slot, by whether it got one
+     */
+    public void recordUploadQueueWait(Timer.Sample sample, String outcome) {
+        sample.stop(registry.timer(UPLOAD_QUEUE_WAIT, Tags.of("outcome", outcome)));
+    }
+
+    public void trackPendingSessions(Map<String, ?> pending) {
+        Gauge.builder(SESSIONS_PENDING, pending, Map::size)
+                .description("Created sessions not yet written to the database")
+                .register(registry);
+    }
+
+    /**
+     * Time a batched insert of new sessions, tagged by outcome and counted per session
+     */
+    public void recordSessionWrite(Timer.Sample sample, int sessions, String outcome) {
+        sample.stop(registry.timer(SESSION_WRITES, Tags.of("outcome", outcome)));
+        registry.counter(SESSION_WRITES + ".sessions", "outcome", outcome).increment(sessions);
+    }
+
+    /**
+     * Time a print-ready rendition by outcome (rendered, or the reason it was not)
+     */
+    public void recordRendition(Timer.Sample sample, String outcome) {
+        sample.stop(registry.timer(RENDITIONS, Tags.of("outcome", outcome)));
+    }
+
+    public void countPrinterMessage(PrinterEvent event) {
+        printerMessages.get(event).increment();
+    }
+
+    public void countUnknownPrinterMessage() {
+        unknownPrinterMessages.increment();
+    }
+
+    public void countMalformedPrinterMessage() {
+        malformedPrinterMessages.increment();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSessionStatusChanged(SessionStatusChangedEvent event) {
+        if (!event.isStatusChange()) {
+            return;
+        }
+
+        Session.SessionStatus to = event.toStatus();
+
+        registry.counter(TRANSITIONS, Tags.of("from", event.fromStatus().name(), "to", to.name()))
+                .increment();
+
+        switch (to) {
+            case PAID -> paidAt.put(event.sessionId(), System.nanoTime());
+            case PRINTING -> recordPaymentToPrint(event.sessionId());
+            case COMPLETED -> {
+                // Fast printers may skip PRINTING
+                recordPaymentToPrint(event.sessionId());
+                if (event.pageCount() != null) {
+                    DistributionSummary.builder(JOB_PAGES)
+                            .register(registry)
+                            .record(event.pageCount());
+                }
+            }
+            case FAILED, EXPIRED -> paidAt.remove(event.sessionId());
+            default -> {
+            }
+        }
+    }
+
+    private void recordPaymentToPrint(String sessionId) {
+        Long paid = paidAt.remove(sessionId);
+        if (paid != null) {
+            registry.timer(PAYMENT_TO_PRINT).record(System.nanoTime() - paid, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Counter printerMessageCounter(String event) {
+        return Counter.builder(PRINTER_MESSAGES)
+                .description("Messages received from printer agents, by event")
+                .tag("event", event)
+                .register(registry);
+    }
+
+    private double maxHeartbeatAgeSeconds() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (Long at : lastHeartbeat.values()) {
+            oldest = Math.max(oldest, now - at);
+        }
+        return oldest / 1e9;
+    }
+}
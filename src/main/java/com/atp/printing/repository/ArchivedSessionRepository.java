@@ -0,0 +1,63 @@
+package com.atp.printing.repository;
+
+import com.atp.printing.entity.ArchivedSession;
+import com.atp.printing.repository.projection.SessionSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ArchivedSessionRepository extends JpaRepository<ArchivedSession, Long> {
+
+    String SESSION_COLUMNS = "id, session_id, printer_id, file_url, file_name, file_key, content_hash, page_count, " +
+            "color_mode, status, amount, payment_status, expires_at, created_at, updated_at, version";
+
+    String PAYMENT_COLUMNS = "id, session_id, razorpay_order_id, razorpay_payment_id, razorpay_signature, amount, " +
+            "currency, status, payment_method, error_message, created_at, completed_at";
+
+    /**
+     * Find archived session by session ID
+     */
+    Optional<ArchivedSession> findBySessionId(String sessionId);
+
+    /**
+     * Page through archived sessions of a printer, newest first, starting after the cursor
+     */
+    @Query("SELECT a.id AS id, a.sessionId AS sessionId, a.printerId AS printerId, a.fileName AS fileName, " +
+            "a.pageCount AS pageCount, a.colorMode AS colorMode, a.status AS status, " +
+            "a.paymentStatus AS paymentStatus, a.amount AS amount, a.createdAt AS createdAt, " +
+            "a.updatedAt AS updatedAt FROM ArchivedSession a WHERE a.printerId = :printerId " +
+            "AND (a.createdAt < :cursorCreatedAt OR (a.createdAt = :cursorCreatedAt AND a.id < :cursorId)) " +
+            "ORDER BY a.createdAt DESC, a.id DESC")
+    List<SessionSummary> findByPrinterIdBefore(@Param("printerId") Long printerId,
+                                               @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                               @Param("cursorId") Long cursorId,
+                                               Pageable pageable);
+
+    /**
+     * Move the payments of the given sessions into payments_archive
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (DELETE FROM payments WHERE session_id IN (:sessionIds) " +
+            "RETURNING " + PAYMENT_COLUMNS + ") " +
+            "INSERT INTO payments_archive (" + PAYMENT_COLUMNS + ", archived_at) " +
+            "SELECT " + PAYMENT_COLUMNS + ", :now FROM moved", nativeQuery = true)
+    int movePayments(@Param("sessionIds") List<Long> sessionIds, @Param("now") LocalDateTime now);
+
+    /**
+     * Move the given sessions into sessions_archive. Their payments must have been moved first.
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (DELETE FROM sessions WHERE id IN (:sessionIds) " +
+            "RETURNING " + SESSION_COLUMNS + ") " +
+            "INSERT INTO sessions_archive (" + SESSION_COLUMNS + ", archived_at) " +
+            "SELECT " + SESSION_COLUMNS + ", :now FROM moved", nativeQuery = true)
+    int moveSessions(@Param("sessionIds") List<Long> sessionIds, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,41 @@
+package com.atp.printing.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+
+/**
+ * Position in a (createdAt DESC, id DESC) ordered result, passed to keyset queries
+ * as "return rows strictly after this one". Serialised as an opaque token for clients.
+ */
+public record KeysetCursor(LocalDateTime createdAt, Long id) {
+
+    /**
+     * Cursor that sorts before every real row, used to fetch the first page
+     */
+    public static final KeysetCursor FIRST =
+            new KeysetCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new KeysetCursor(
+                    LocalDateTime.parse(raw.substring(0, separator), DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                    Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public String encode() {
+        String raw = createdAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,18 +1,36 @@
 package com.atp.printing.repository;
 
 import com.atp.printing.entity.Payment;
+import com.atp.printing.repository.projection.PaymentSummary;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
+    String SUMMARY_SELECT = "SELECT p.id AS id, p.session.sessionId AS sessionId, " +
+            "p.razorpayOrderId AS razorpayOrderId, p.razorpayPaymentId AS razorpayPaymentId, " +
+            "p.amount AS amount, p.currency AS currency, p.status AS status, p.paymentMethod AS paymentMethod, " +
+            "p.createdAt AS createdAt, p.completedAt AS completedAt FROM Payment p ";
+
+    String KEYSET_AFTER = "(p.createdAt < :cursorCreatedAt OR (p.createdAt = :cursorCreatedAt AND p.id < :cursorId)) ";
+
+    String KEYSET_ORDER = "ORDER BY p.createdAt DESC, p.id DESC";
+
     /**
      * Find payment by Razorpay order ID
      */
@@ -29,9 +47,44 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Optional<Payment> findBySessionId(Long sessionId);
 
     /**
-     * Find all payments by status
+     * Capture a payment by Razorpay order ID, only if it belongs to the session and has not
+     * been settled yet
+     *
+     * @return number of rows updated, 0 if the order is unknown, another session's or already settled
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.razorpayPaymentId = :paymentId, p.razorpaySignature = :signature, " +
+            "p.status = com.atp.printing.entity.Payment.PaymentStatus.CAPTURED, p.completedAt = :now " +
+            "WHERE p.razorpayOrderId = :orderId " +
+            "AND p.session.id = (SELECT s.id FROM Session s WHERE s.sessionId = :sessionId) AND p.status IN (" +
+            "com.atp.printing.entity.Payment.PaymentStatus.CREATED, " +
+            "com.atp.printing.entity.Payment.PaymentStatus.AUTHORIZED)")
+    int markCaptured(@Param("sessionId") String sessionId,
+                     @Param("orderId") String orderId,
+                     @Param("paymentId") String paymentId,
+                     @Param("signature") String signature,
+                     @Param("now") LocalDateTime now);
+
+    /**
+     * Fail every unsettled payment of a session
      */
-    List<Payment> findByStatus(Payment.PaymentStatus status);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = com.atp.printing.entity.Payment.PaymentStatus.FAILED, " +
+            "p.errorMessage = :errorMessage " +
+            "WHERE p.session.id = (SELECT s.id FROM Session s WHERE s.sessionId = :sessionId) AND p.status IN (" +
+            "com.atp.printing.entity.Payment.PaymentStatus.CREATED, " +
+            "com.atp.printing.entity.Payment.PaymentStatus.AUTHORIZED)")
+    int markFailedForSession(@Param("sessionId") String sessionId,
+                             @Param("errorMessage") String errorMessage);
+
+    /**
+     * Page through payments by status, newest first, starting after the cursor
+     */
+    @Query(SUMMARY_SELECT + "WHERE p.status = :status AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<PaymentSummary> findByStatusBefore(@Param("status") Payment.PaymentStatus status,
+                                            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                            @Param("cursorId") Long cursorId,
+                                            Pageable pageable);
 
     /**
      * Find payments by session ID ordered by creation date
@@ -40,28 +93,47 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findBySessionIdOrderByCreatedAtDesc(@Param("sessionId") Long sessionId);
 
     /**
-     * Find all successful payments
+     * Page through successful payments, newest first, starting after the cursor
+     */
+    @Query(SUMMARY_SELECT + "WHERE p.status = com.atp.printing.entity.Payment.PaymentStatus.CAPTURED AND " +
+            KEYSET_AFTER + KEYSET_ORDER)
+    List<PaymentSummary> findSuccessfulPaymentsBefore(@Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                      @Param("cursorId") Long cursorId,
+                                                      Pageable pageable);
+
+    /**
+     * Page through payments within date range, newest first, starting after the cursor
      */
-    @Query("SELECT p FROM Payment p WHERE p.status = 'CAPTURED'")
-    List<Payment> findAllSuccessfulPayments();
+    @Query(SUMMARY_SELECT + "WHERE p.createdAt BETWEEN :startDate AND :endDate AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<PaymentSummary> findPaymentsBetweenDatesBefore(@Param("startDate") LocalDateTime startDate,
+                                                        @Param("endDate") LocalDateTime endDate,
+                                                        @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                        @Param("cursorId") Long cursorId,
+                                                        Pageable pageable);
 
     /**
-     * Find payments within date range
+     * Stream payments within date range for exports. Must be consumed inside a transaction
+     * and closed by the caller.
      */
-    @Query("SELECT p FROM Payment p WHERE p.createdAt BETWEEN :startDate AND :endDate")
-    List<Payment> findPaymentsBetweenDates(@Param("startDate") LocalDateTime startDate,
-                                           @Param("endDate") LocalDateTime endDate);
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query(SUMMARY_SELECT + "WHERE p.createdAt BETWEEN :startDate AND :endDate ORDER BY p.id")
+    Stream<PaymentSummary> streamPaymentsBetweenDates(@Param("startDate") LocalDateTime startDate,
+                                                      @Param("endDate") LocalDateTime endDate);
 
     /**
      * Calculate total revenue
      */
-    @Query("SELECT SUM(p.amount) FROM Payment p WHERE p.status = 'CAPTURED'")
+    @Query("SELECT SUM(p.amount) FROM Payment p WHERE p.status = com.atp.printing.entity.Payment.PaymentStatus.CAPTURED")
     Double calculateTotalRevenue();
 
     /**
      * Calculate revenue for a specific period
      */
-    @Query("SELECT SUM(p.amount) FROM Payment p WHERE p.status = 'CAPTURED' AND p.completedAt BETWEEN :startDate AND :endDate")
+    @Query("SELECT SUM(p.amount) FROM Payment p WHERE p.status = com.atp.printing.entity.Payment.PaymentStatus.CAPTURED " +
+            "AND p.completedAt BETWEEN :startDate AND :endDate")
     Double calculateRevenueBetweenDates(@Param("startDate") LocalDateTime startDate,
                                         @Param("endDate") LocalDateTime endDate);
 
@@ -71,14 +143,18 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Long countByStatus(Payment.PaymentStatus status);
 
     /**
-     * Find failed payments
+     * Page through failed payments, newest first, starting after the cursor
      */
-    @Query("SELECT p FROM Payment p WHERE p.status = 'FAILED' ORDER BY p.createdAt DESC")
-    List<Payment> findFailedPayments();
+    @Query(SUMMARY_SELECT + "WHERE p.status = com.atp.printing.entity.Payment.PaymentStatus.FAILED AND " +
+            KEYSET_AFTER + KEYSET_ORDER)
+    List<PaymentSummary> findFailedPaymentsBefore(@Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                  @Param("cursorId") Long cursorId,
+                                                  Pageable pageable);
 
     /**
      * Find pending payments older than specified time
      */
-    @Query("SELECT p FROM Payment p WHERE p.status = 'CREATED' AND p.createdAt < :threshold")
+    @Query("SELECT p FROM Payment p WHERE p.status = com.atp.printing.entity.Payment.PaymentStatus.CREATED " +
+            "AND p.createdAt < :threshold")
     List<Payment> findStalePendingPayments(@Param("threshold") LocalDateTime threshold);
 }
\ No newline at end of file
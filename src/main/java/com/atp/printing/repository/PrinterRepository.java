@@ -1,12 +1,15 @@
 package com.atp.printing.repository;
 
 import com.atp.printing.entity.Printer;
+import com.atp.printing.repository.projection.PrinterPricingView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +21,18 @@ public interface PrinterRepository extends JpaRepository<Printer, Long> {
      */
     Optional<Printer> findByJwtToken(String jwtToken);
 
+    /**
+     * Name, prices and colour support of every printer, for the in-memory catalog
+     */
+    @Query("SELECT p.id AS id, p.name AS name, p.pricePerPageBw AS pricePerPageBw, " +
+            "p.pricePerPageColor AS pricePerPageColor, p.colorSupported AS colorSupported FROM Printer p")
+    List<PrinterPricingView> findAllPricing();
+
+    @Query("SELECT p.id AS id, p.name AS name, p.pricePerPageBw AS pricePerPageBw, " +
+            "p.pricePerPageColor AS pricePerPageColor, p.colorSupported AS colorSupported " +
+            "FROM Printer p WHERE p.id = :printerId")
+    Optional<PrinterPricingView> findPricingById(@Param("printerId") Long printerId);
+
     /**
      * Find all printers by status
      */
@@ -29,6 +44,39 @@ public interface PrinterRepository extends JpaRepository<Printer, Long> {
     @Query("SELECT p FROM Printer p WHERE p.lastHeartbeat < :threshold")
     List<Printer> findInactivePrinters(@Param("threshold") LocalDateTime threshold);
 
+    /**
+     * Mark printers that haven't sent heartbeat since threshold as OFFLINE, whatever state they
+     * were last in (a stale BUSY or ERROR printer is offline too), returning their IDs
+     */
+    @Query(value = "UPDATE printers SET status = 'OFFLINE', updated_at = now() " +
+            "WHERE status <> 'OFFLINE' AND last_heartbeat < :threshold RETURNING id", nativeQuery = true)
+    List<Long> markInactivePrintersOffline(@Param("threshold") LocalDateTime threshold);
+
+    /**
+     * Record a heartbeat and mark the printer ONLINE without reading the row first
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Printer p SET p.lastHeartbeat = :now, p.updatedAt = :now, " +
+            "p.status = com.atp.printing.entity.Printer.PrinterStatus.ONLINE WHERE p.id = :printerId")
+    int updateHeartbeat(@Param("printerId") Long printerId, @Param("now") LocalDateTime now);
+
+    /**
+     * Record a heartbeat for many printers at once and mark them ONLINE
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Printer p SET p.lastHeartbeat = :now, p.updatedAt = :now, " +
+            "p.status = com.atp.printing.entity.Printer.PrinterStatus.ONLINE WHERE p.id IN :printerIds")
+    int updateHeartbeats(@Param("printerIds") Collection<Long> printerIds, @Param("now") LocalDateTime now);
+
+    /**
+     * Set the printer status without reading the row first
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Printer p SET p.status = :status, p.updatedAt = :now WHERE p.id = :printerId")
+    int updateStatus(@Param("printerId") Long printerId,
+                     @Param("status") Printer.PrinterStatus status,
+                     @Param("now") LocalDateTime now);
+
     /**
      * Find printer by name
      */
@@ -37,7 +85,7 @@ public interface PrinterRepository extends JpaRepository<Printer, Long> {
     /**
      * Find all online printers
      */
-    @Query("SELECT p FROM Printer p WHERE p.status = 'ONLINE'")
+    @Query("SELECT p FROM Printer p WHERE p.status = com.atp.printing.entity.Printer.PrinterStatus.ONLINE")
     List<Printer> findAllOnlinePrinters();
 
     /**
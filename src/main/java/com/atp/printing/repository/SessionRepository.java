@@ -1,34 +1,119 @@
 package com.atp.printing.repository;
 
 import com.atp.printing.entity.Session;
+import com.atp.printing.repository.projection.ExpiredSessionView;
+import com.atp.printing.repository.projection.SessionFileView;
+import com.atp.printing.repository.projection.SessionStateView;
+import com.atp.printing.repository.projection.SessionSummary;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface SessionRepository extends JpaRepository<Session, Long> {
 
+    String SUMMARY_SELECT = "SELECT s.id AS id, s.sessionId AS sessionId, s.printer.id AS printerId, " +
+            "s.fileName AS fileName, s.pageCount AS pageCount, s.colorMode AS colorMode, s.status AS status, " +
+            "s.paymentStatus AS paymentStatus, s.amount AS amount, s.createdAt AS createdAt, " +
+            "s.updatedAt AS updatedAt FROM Session s ";
+
+    String KEYSET_AFTER = "(s.createdAt < :cursorCreatedAt OR (s.createdAt = :cursorCreatedAt AND s.id < :cursorId)) ";
+
+    String KEYSET_ORDER = "ORDER BY s.createdAt DESC, s.id DESC";
+
     /**
      * Find session by session ID
      */
     Optional<Session> findBySessionId(String sessionId);
 
     /**
-     * Find all sessions by status
+     * Page through sessions by status, newest first, starting after the cursor
      */
-    List<Session> findByStatus(Session.SessionStatus status);
+    @Query(SUMMARY_SELECT + "WHERE s.status = :status AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<SessionSummary> findByStatusBefore(@Param("status") Session.SessionStatus status,
+                                            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                            @Param("cursorId") Long cursorId,
+                                            Pageable pageable);
 
     /**
      * Find expired sessions that are not completed, expired, or failed
      */
-    @Query("SELECT s FROM Session s WHERE s.expiresAt < :now AND s.status NOT IN ('COMPLETED', 'EXPIRED', 'FAILED')")
+    @Query("SELECT s FROM Session s WHERE s.expiresAt < :now AND s.status NOT IN (" +
+            "com.atp.printing.entity.Session.SessionStatus.COMPLETED, " +
+            "com.atp.printing.entity.Session.SessionStatus.EXPIRED, " +
+            "com.atp.printing.entity.Session.SessionStatus.FAILED)")
     List<Session> findExpiredSessions(@Param("now") LocalDateTime now);
 
+    /**
+     * Mark every live session past its expiry as EXPIRED in one statement, returning the affected rows
+     */
+    @Query(value = "WITH expired AS (" +
+            "SELECT id, status FROM sessions " +
+            "WHERE expires_at < :now AND status NOT IN ('COMPLETED', 'EXPIRED', 'FAILED') FOR UPDATE) " +
+            "UPDATE sessions s SET status = 'EXPIRED', updated_at = :now, version = s.version + 1 " +
+            "FROM expired e WHERE s.id = e.id " +
+            "RETURNING s.id AS \"id\", s.session_id AS \"sessionId\", s.printer_id AS \"printerId\", " +
+            "s.file_key AS \"fileKey\", s.content_hash AS \"contentHash\", " +
+            "e.status::text AS \"previousStatus\"", nativeQuery = true)
+    List<ExpiredSessionView> expireSessionsBefore(@Param("now") LocalDateTime now);
+
+    /**
+     * Read the lifecycle state of a session without loading the entity
+     */
+    @Query("SELECT s.status AS status, s.paymentStatus AS paymentStatus, s.printer.id AS printerId, " +
+            "s.pageCount AS pageCount, s.amount AS amount FROM Session s WHERE s.sessionId = :sessionId")
+    Optional<SessionStateView> findStateBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * Read the owner, status and file location of a session without loading the entity
+     */
+    @Query("SELECT s.printer.id AS printerId, s.status AS status, s.fileUrl AS fileUrl, " +
+            "s.contentHash AS contentHash, s.colorMode AS colorMode FROM Session s WHERE s.sessionId = :sessionId")
+    Optional<SessionFileView> findFileBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * Set the session status only if it is still the expected one
+     *
+     * @return number of rows updated, 0 if the session is missing or was moved by someone else
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Session s SET s.status = :target, s.updatedAt = :now, s.version = s.version + 1 " +
+            "WHERE s.sessionId = :sessionId AND s.status = :expected")
+    int compareAndSetStatus(@Param("sessionId") String sessionId,
+                            @Param("expected") Session.SessionStatus expected,
+                            @Param("target") Session.SessionStatus target,
+                            @Param("now") LocalDateTime now);
+
+    /**
+     * Set status and payment status together, only if both are still the expected ones
+     *
+     * @return number of rows updated, 0 if the session is missing or was moved by someone else
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Session s SET s.status = :targetStatus, s.paymentStatus = :targetPaymentStatus, " +
+            "s.updatedAt = :now, s.version = s.version + 1 " +
+            "WHERE s.sessionId = :sessionId AND s.status = :expectedStatus " +
+            "AND s.paymentStatus = :expectedPaymentStatus")
+    int compareAndSetState(@Param("sessionId") String sessionId,
+                           @Param("expectedStatus") Session.SessionStatus expectedStatus,
+                           @Param("expectedPaymentStatus") Session.PaymentStatus expectedPaymentStatus,
+                           @Param("targetStatus") Session.SessionStatus targetStatus,
+                           @Param("targetPaymentStatus") Session.PaymentStatus targetPaymentStatus,
+                           @Param("now") LocalDateTime now);
+
     /**
      * Find sessions by printer ID and status
      */
@@ -44,33 +129,61 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
                                      @Param("since") LocalDateTime since);
 
     /**
-     * Find all sessions by printer ID
+     * Page through sessions of a printer, newest first, starting after the cursor
+     */
+    @Query(SUMMARY_SELECT + "WHERE s.printer.id = :printerId AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<SessionSummary> findByPrinterIdBefore(@Param("printerId") Long printerId,
+                                               @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                               @Param("cursorId") Long cursorId,
+                                               Pageable pageable);
+
+    /**
+     * Page through sessions by payment status, newest first, starting after the cursor
      */
-    @Query("SELECT s FROM Session s WHERE s.printer.id = :printerId ORDER BY s.createdAt DESC")
-    List<Session> findByPrinterId(@Param("printerId") Long printerId);
+    @Query(SUMMARY_SELECT + "WHERE s.paymentStatus = :paymentStatus AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<SessionSummary> findByPaymentStatusBefore(@Param("paymentStatus") Session.PaymentStatus paymentStatus,
+                                                   @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                   @Param("cursorId") Long cursorId,
+                                                   Pageable pageable);
 
     /**
-     * Find sessions by payment status
+     * Page through sessions created since a point in time, newest first, starting after the cursor
      */
-    List<Session> findByPaymentStatus(Session.PaymentStatus paymentStatus);
+    @Query(SUMMARY_SELECT + "WHERE s.createdAt > :since AND " + KEYSET_AFTER + KEYSET_ORDER)
+    List<SessionSummary> findRecentSessionsBefore(@Param("since") LocalDateTime since,
+                                                  @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                  @Param("cursorId") Long cursorId,
+                                                  Pageable pageable);
 
     /**
-     * Find recent sessions (last 24 hours)
+     * Stream sessions created within a date range for exports. Must be consumed inside a transaction
+     * and closed by the caller.
      */
-    @Query("SELECT s FROM Session s WHERE s.createdAt > :since ORDER BY s.createdAt DESC")
-    List<Session> findRecentSessions(@Param("since") LocalDateTime since);
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query(SUMMARY_SELECT + "WHERE s.createdAt BETWEEN :startDate AND :endDate ORDER BY s.id")
+    Stream<SessionSummary> streamSessionsBetweenDates(@Param("startDate") LocalDateTime startDate,
+                                                      @Param("endDate") LocalDateTime endDate);
 
     /**
      * Count active sessions
      */
-    @Query("SELECT COUNT(s) FROM Session s WHERE s.status IN ('ACTIVE', 'UPLOADED', 'PAID', 'PRINTING')")
+    @Query("SELECT COUNT(s) FROM Session s WHERE s.status IN (" +
+            "com.atp.printing.entity.Session.SessionStatus.ACTIVE, " +
+            "com.atp.printing.entity.Session.SessionStatus.UPLOADED, " +
+            "com.atp.printing.entity.Session.SessionStatus.PAID, " +
+            "com.atp.printing.entity.Session.SessionStatus.PRINTING)")
     Long countActiveSessions();
 
     /**
-     * Find sessions that need cleanup (completed/failed more than 24 hours ago)
+     * Find IDs of a batch of finished sessions last updated before threshold, locking them for archival.
+     * Rows locked by a concurrent mover are skipped.
      */
-    @Query("SELECT s FROM Session s WHERE s.status IN ('COMPLETED', 'FAILED') AND s.updatedAt < :threshold")
-    List<Session> findSessionsForCleanup(@Param("threshold") LocalDateTime threshold);
+    @Query(value = "SELECT id FROM sessions WHERE status IN ('COMPLETED', 'FAILED', 'EXPIRED') " +
+            "AND updated_at < :threshold ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> findSessionsForCleanup(@Param("threshold") LocalDateTime threshold, @Param("limit") int limit);
 
     /**
      * Check if session exists by session ID
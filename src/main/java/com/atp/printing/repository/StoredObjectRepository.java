@@ -0,0 +1,86 @@
+package com.atp.printing.repository;
+
+import com.atp.printing.entity.StoredObject;
+import com.atp.printing.repository.projection.StoredObjectView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StoredObjectRepository extends JpaRepository<StoredObject, String> {
+
+    String VIEW_COLUMNS = "public_id AS \"publicId\", url AS \"url\", ref_count AS \"refCount\"";
+
+    /**
+     * Take a reference on the object with this content, if there is one
+     */
+    @Query(value = "UPDATE stored_objects SET ref_count = ref_count + 1, last_used_at = :now " +
+            "WHERE content_hash = :contentHash RETURNING " + VIEW_COLUMNS, nativeQuery = true)
+    Optional<StoredObjectView> acquire(@Param("contentHash") String contentHash, @Param("now") LocalDateTime now);
+
+    /**
+     * Record a freshly uploaded object with one reference. If a concurrent upload of the same
+     * content got there first, take a reference on that one instead and return its location.
+     */
+    @Query(value = "INSERT INTO stored_objects " +
+            "(content_hash, public_id, url, size_bytes, ref_count, created_at, last_used_at) " +
+            "VALUES (:contentHash, :publicId, :url, :sizeBytes, 1, :now, :now) " +
+            "ON CONFLICT (content_hash) DO UPDATE SET " +
+            "ref_count = stored_objects.ref_count + 1, last_used_at = EXCLUDED.last_used_at " +
+            "RETURNING " + VIEW_COLUMNS, nativeQuery = true)
+    StoredObjectView insertOrAcquire(@Param("contentHash") String contentHash,
+                                     @Param("publicId") String publicId,
+                                     @Param("url") String url,
+                                     @Param("sizeBytes") long sizeBytes,
+                                     @Param("now") LocalDateTime now);
+
+    /**
+     * Drop one reference. The row stays locked until the transaction ends, so nobody can take a
+     * reference between the count reaching zero and {@link #deleteUnreferenced}.
+     */
+    @Query(value = "UPDATE stored_objects SET ref_count = ref_count - 1 " +
+            "WHERE content_hash = :contentHash RETURNING " + VIEW_COLUMNS, nativeQuery = true)
+    Optional<StoredObjectView> release(@Param("contentHash") String contentHash);
+
+    @Modifying
+    @Query(value = "DELETE FROM stored_objects WHERE content_hash = :contentHash AND ref_count <= 0",
+            nativeQuery = true)
+    int deleteUnreferenced(@Param("contentHash") String contentHash);
+
+    /**
+     * URL of the print-ready rendition of a document in a colour mode, if it has been made
+     */
+    @Query(value = "SELECT url FROM renditions " +
+            "WHERE content_hash = :contentHash AND color_mode = CAST(:colorMode AS color_mode)", nativeQuery = true)
+    Optional<String> findRenditionUrl(@Param("contentHash") String contentHash, @Param("colorMode") String colorMode);
+
+    /**
+     * Record a rendition. Fails if the stored object is gone.
+     *
+     * @return 0 if a rendition for this document and colour mode already exists
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO renditions (content_hash, color_mode, public_id, url, size_bytes, created_at) " +
+            "VALUES (:contentHash, CAST(:colorMode AS color_mode), :publicId, :url, :sizeBytes, :now) " +
+            "ON CONFLICT (content_hash, color_mode) DO NOTHING", nativeQuery = true)
+    int insertRendition(@Param("contentHash") String contentHash,
+                        @Param("colorMode") String colorMode,
+                        @Param("publicId") String publicId,
+                        @Param("url") String url,
+                        @Param("sizeBytes") long sizeBytes,
+                        @Param("now") LocalDateTime now);
+
+    /**
+     * Remove the renditions of a document, returning their public ids
+     */
+    @Query(value = "DELETE FROM renditions WHERE content_hash = :contentHash RETURNING public_id", nativeQuery = true)
+    List<String> deleteRenditions(@Param("contentHash") String contentHash);
+}
@@ -0,0 +1,57 @@
+package com.atp.printing.repository;
+
+import com.atp.printing.entity.UsageRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UsageRollupRepository extends JpaRepository<UsageRollup, Long> {
+
+    /**
+     * Add counter deltas to a bucket, creating it if needed
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO usage_rollups " +
+            "(printer_id, granularity, bucket_start, revenue, pages, jobs, failures, updated_at) " +
+            "VALUES (:printerId, :granularity, :bucketStart, :revenue, :pages, :jobs, :failures, now()) " +
+            "ON CONFLICT (printer_id, granularity, bucket_start) DO UPDATE SET " +
+            "revenue = usage_rollups.revenue + EXCLUDED.revenue, " +
+            "pages = usage_rollups.pages + EXCLUDED.pages, " +
+            "jobs = usage_rollups.jobs + EXCLUDED.jobs, " +
+            "failures = usage_rollups.failures + EXCLUDED.failures, " +
+            "updated_at = now()", nativeQuery = true)
+    int addToBucket(@Param("printerId") Long printerId,
+                    @Param("granularity") String granularity,
+                    @Param("bucketStart") LocalDateTime bucketStart,
+                    @Param("revenue") double revenue,
+                    @Param("pages") long pages,
+                    @Param("jobs") long jobs,
+                    @Param("failures") long failures);
+
+    /**
+     * Find all buckets of a granularity within a time range
+     */
+    @Query("SELECT r FROM UsageRollup r WHERE r.granularity = :granularity " +
+            "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<UsageRollup> findBuckets(@Param("granularity") UsageRollup.Granularity granularity,
+                                  @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to);
+
+    /**
+     * Find buckets of a granularity for one printer within a time range
+     */
+    @Query("SELECT r FROM UsageRollup r WHERE r.printerId = :printerId AND r.granularity = :granularity " +
+            "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<UsageRollup> findPrinterBuckets(@Param("printerId") Long printerId,
+                                         @Param("granularity") UsageRollup.Granularity granularity,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to);
+}
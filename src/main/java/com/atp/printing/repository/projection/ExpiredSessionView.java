@@ -0,0 +1,19 @@
+package com.atp.printing.repository.projection;
+
+/**
+ * Row returned by the bulk expiry update, carrying what is needed to release stored files
+ */
+public interface ExpiredSessionView {
+
+    Long getId();
+
+    String getSessionId();
+
+    Long getPrinterId();
+
+    String getFileKey();
+
+    String getContentHash();
+
+    String getPreviousStatus();
+}
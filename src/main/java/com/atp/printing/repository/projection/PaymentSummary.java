@@ -0,0 +1,31 @@
+package com.atp.printing.repository.projection;
+
+import com.atp.printing.entity.Payment;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only view of a payment row used by list and report queries
+ */
+public interface PaymentSummary {
+
+    Long getId();
+
+    String getSessionId();
+
+    String getRazorpayOrderId();
+
+    String getRazorpayPaymentId();
+
+    Double getAmount();
+
+    String getCurrency();
+
+    Payment.PaymentStatus getStatus();
+
+    String getPaymentMethod();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getCompletedAt();
+}
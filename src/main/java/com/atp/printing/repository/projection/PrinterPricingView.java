@@ -0,0 +1,17 @@
+package com.atp.printing.repository.projection;
+
+/**
+ * What sessions need from a printer: its name, prices and colour support
+ */
+public interface PrinterPricingView {
+
+    Long getId();
+
+    String getName();
+
+    Double getPricePerPageBw();
+
+    Double getPricePerPageColor();
+
+    Boolean getColorSupported();
+}
@@ -0,0 +1,19 @@
+package com.atp.printing.repository.projection;
+
+import com.atp.printing.entity.Session;
+
+/**
+ * Where a session's document lives and who may fetch it, read before streaming it to a printer
+ */
+public interface SessionFileView {
+
+    Long getPrinterId();
+
+    Session.SessionStatus getStatus();
+
+    String getFileUrl();
+
+    String getContentHash();
+
+    Session.ColorMode getColorMode();
+}
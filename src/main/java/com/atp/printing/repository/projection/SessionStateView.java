@@ -0,0 +1,19 @@
+package com.atp.printing.repository.projection;
+
+import com.atp.printing.entity.Session;
+
+/**
+ * Current lifecycle state of a session, read before a compare-and-set transition
+ */
+public interface SessionStateView {
+
+    Session.SessionStatus getStatus();
+
+    Session.PaymentStatus getPaymentStatus();
+
+    Long getPrinterId();
+
+    Integer getPageCount();
+
+    Double getAmount();
+}
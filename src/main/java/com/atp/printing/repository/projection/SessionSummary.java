@@ -0,0 +1,33 @@
+package com.atp.printing.repository.projection;
+
+import com.atp.printing.entity.Session;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only view of a session row used by list and report queries
+ */
+public interface SessionSummary {
+
+    Long getId();
+
+    String getSessionId();
+
+    Long getPrinterId();
+
+    String getFileName();
+
+    Integer getPageCount();
+
+    Session.ColorMode getColorMode();
+
+    Session.SessionStatus getStatus();
+
+    Session.PaymentStatus getPaymentStatus();
+
+    Double getAmount();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
@@ -0,0 +1,13 @@
+package com.atp.printing.repository.projection;
+
+/**
+ * Location and reference count of a stored document, returned by reference count updates
+ */
+public interface StoredObjectView {
+
+    String getPublicId();
+
+    String getUrl();
+
+    Integer getRefCount();
+}
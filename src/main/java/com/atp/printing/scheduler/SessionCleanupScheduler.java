@@ -1,7 +1,11 @@
 package com.atp.printing.scheduler;
 
+import com.atp.printing.service.PrinterCatalog;
 import com.atp.printing.service.PrinterService;
+import com.atp.printing.service.SessionArchiveService;
 import com.atp.printing.service.SessionService;
+import com.atp.printing.service.UsageAggregationService;
+import com.atp.printing.tracing.PrintTracing;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,6 +19,10 @@ public class SessionCleanupScheduler {
 
     private final SessionService sessionService;
     private final PrinterService printerService;
+    private final PrinterCatalog printerCatalog;
+    private final UsageAggregationService usageAggregationService;
+    private final SessionArchiveService sessionArchiveService;
+    private final PrintTracing printTracing;
 
     @Value("${app.printer.heartbeat-timeout-minutes}")
     private Integer printerHeartbeatTimeout;
@@ -27,13 +35,25 @@ public class SessionCleanupScheduler {
         log.info("Starting expired sessions cleanup");
 
         try {
-            sessionService.cleanupExpiredSessions();
+            printTracing.trace("scheduler.cleanup-expired-sessions", sessionService::cleanupExpiredSessions);
             log.info("Expired sessions cleanup completed");
         } catch (Exception e) {
             log.error("Failed to cleanup expired sessions", e);
         }
     }
 
+    /**
+     * Move finished sessions to the archive tables
+     */
+    @Scheduled(cron = "${app.session.archive-cron}")
+    public void archiveFinishedSessions() {
+        try {
+            printTracing.trace("scheduler.archive-sessions", sessionArchiveService::archiveFinishedSessions);
+        } catch (Exception e) {
+            log.error("Failed to archive finished sessions", e);
+        }
+    }
+
     /**
      * Check printer heartbeats every 5 minutes
      */
@@ -42,12 +62,37 @@ public class SessionCleanupScheduler {
         log.debug("Checking printer heartbeats");
 
         try {
-            printerService.markInactivePrinters(printerHeartbeatTimeout);
+            printTracing.trace("scheduler.check-heartbeats",
+                    () -> printerService.markInactivePrinters(printerHeartbeatTimeout));
         } catch (Exception e) {
             log.error("Failed to check printer heartbeats", e);
         }
     }
 
+    /**
+     * Reload printer names, prices and colour support, picking up changes made on other instances
+     */
+    @Scheduled(fixedDelayString = "${app.printer.catalog-refresh-ms}")
+    public void refreshPrinterCatalog() {
+        try {
+            printerCatalog.refresh();
+        } catch (Exception e) {
+            log.error("Failed to refresh printer catalog", e);
+        }
+    }
+
+    /**
+     * Flush in-memory usage counters to the rollup table
+     */
+    @Scheduled(fixedDelayString = "${app.stats.flush-interval-ms}")
+    public void flushUsageAggregates() {
+        try {
+            usageAggregationService.flush();
+        } catch (Exception e) {
+            log.error("Failed to flush usage aggregates", e);
+        }
+    }
+
     /**
      * Log system statistics every hour
      */
@@ -4,22 +4,36 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import com.atp.printing.logging.LogContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final String ROLE_PRINTER = "PRINTER";
+    private static final String ROLE_ADMIN = "ADMIN";
+
     private final JwtUtil jwtUtil;
 
+    /**
+     * The printer socket authenticates in its handshake interceptor, after admission control,
+     * so a reconnect storm is throttled before any token is parsed
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/ws/");
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
@@ -37,16 +51,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             final String username = jwtUtil.extractUsername(jwt);
 
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (jwtUtil.validatePrinterToken(jwt)) {
+                // The role comes from the signed type claim, so a printer token can never act as admin
+                String tokenType = jwtUtil.extractValidTokenType(jwt);
+                if (ROLE_PRINTER.equals(tokenType) || ROLE_ADMIN.equals(tokenType)) {
                     UsernamePasswordAuthenticationToken authToken =
                             new UsernamePasswordAuthenticationToken(
                                     username,
                                     null,
-                                    new ArrayList<>()
+                                    List.of(new SimpleGrantedAuthority("ROLE_" + tokenType))
                             );
 
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
+                    if (ROLE_PRINTER.equals(tokenType)) {
+                        // Printer tokens use the printer id as subject
+                        LogContext.putPrinter(username);
+                    }
                 }
             }
         } catch (Exception e) {
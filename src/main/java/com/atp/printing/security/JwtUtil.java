@@ -39,6 +39,15 @@ public class JwtUtil {
         return createToken(claims, printerId.toString(), printerExpiration);
     }
 
+    /**
+     * Token for an operator signed in with the admin credential. Only these carry ROLE_ADMIN.
+     */
+    public String generateAdminToken(String username) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("type", "ADMIN");
+        return createToken(claims, username, expiration);
+    }
+
     public String generateUserToken(String username) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("type", "USER");
@@ -96,6 +105,40 @@ public class JwtUtil {
         return extractExpiration(token).before(new Date());
     }
 
+    /**
+     * Printer id from a valid, unexpired printer token, parsing the token once
+     *
+     * @return the printer id, or null if the token is not a valid printer token
+     */
+    public Long extractValidPrinterId(String token) {
+        try {
+            Claims claims = extractAllClaims(token);
+            if (!"PRINTER".equals(claims.get("type", String.class)) || claims.getExpiration().before(new Date())) {
+                return null;
+            }
+            return claims.get("printerId", Long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Type claim of a valid, unexpired token, parsing the token once
+     *
+     * @return PRINTER, ADMIN or USER, or null if the token is not valid
+     */
+    public String extractValidTokenType(String token) {
+        try {
+            Claims claims = extractAllClaims(token);
+            if (claims.getExpiration().before(new Date())) {
+                return null;
+            }
+            return claims.get("type", String.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public Boolean validatePrinterToken(String token) {
         try {
             String tokenType = extractTokenType(token);
@@ -0,0 +1,42 @@
+package com.atp.printing.security;
+
+/**
+ * Token bucket allowing bursts of up to capacity and refilling at a steady rate per second
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerSecond;
+
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.tokens = capacity;
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Seconds until the next token is available, rounded up; 0 if one is available now
+     */
+    public synchronized long secondsUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / refillPerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) / 1e9 * refillPerSecond);
+        refilledAt = now;
+    }
+}
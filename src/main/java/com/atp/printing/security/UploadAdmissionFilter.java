@@ -0,0 +1,237 @@
+package com.atp.printing.security;
+
+import com.atp.printing.dto.ApiResponseDto;
+import com.atp.printing.logging.LogContext;
+import com.atp.printing.metrics.PrintMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for uploads, applied before the multipart body is read so a refused
+ * upload costs neither heap nor a Cloudinary call:
+ * <ol>
+ *     <li>a token bucket per client IP and one per session cap how fast uploads, and direct
+ *     upload signatures, are handed out</li>
+ *     <li>proxied uploads (POST /api/upload) then take one of maxConcurrent slots. When none is
+ *     free they queue for up to queueTimeoutMs; when maxQueued are already waiting they are
+ *     refused straight away rather than tying up another servlet thread</li>
+ * </ol>
+ * The session is read from the path or query string only, since reading the multipart body is
+ * what this filter exists to avoid. POST /api/upload with sessionId only as a form field is
+ * still admitted, but skips the per-session bucket; clients should send it in the query.
+ *
+ * Refusals are 429 with Retry-After. Limits can be replaced at runtime; buckets are then
+ * started afresh with the new rates. Runs after the security filter chain, whose CORS filter
+ * adds the headers a browser needs to read a refusal and its Retry-After.
+ */
+@Slf4j
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 10)
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String UPLOAD_PATH = "/api/upload";
+    private static final String SESSION_PATH = "/api/session/";
+    private static final String UPLOAD_REQUEST_SUFFIX = "/upload-request";
+
+    private final PrintMetrics printMetrics;
+    private final ObjectMapper objectMapper;
+    private final int maxTrackedClients;
+
+    private final ResizableSemaphore slots;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile UploadLimits limits;
+    private volatile Map<String, TokenBucket> clientBuckets;
+    private volatile Map<String, TokenBucket> sessionBuckets;
+
+    public UploadAdmissionFilter(PrintMetrics printMetrics,
+                                 ObjectMapper objectMapper,
+                                 @Value("${app.upload.admission.per-client-burst}") int perClientBurst,
+                                 @Value("${app.upload.admission.per-client-per-second}") double perClientPerSecond,
+                                 @Value("${app.upload.admission.per-session-burst}") int perSessionBurst,
+                                 @Value("${app.upload.admission.per-session-per-second}") double perSessionPerSecond,
+                                 @Value("${app.upload.admission.max-concurrent}") int maxConcurrent,
+                                 @Value("${app.upload.admission.max-queued}") int maxQueued,
+                                 @Value("${app.upload.admission.queue-timeout-ms}") long queueTimeoutMs,
+                                 @Value("${app.upload.admission.max-tracked-clients}") int maxTrackedClients) {
+        this.printMetrics = printMetrics;
+        this.objectMapper = objectMapper;
+        this.maxTrackedClients = maxTrackedClients;
+        this.slots = new ResizableSemaphore(maxConcurrent);
+        this.limits = new UploadLimits(perClientBurst, perClientPerSecond, perSessionBurst, perSessionPerSecond,
+                maxConcurrent, maxQueued, queueTimeoutMs);
+        this.clientBuckets = newBucketMap();
+        this.sessionBuckets = newBucketMap();
+        printMetrics.trackUploadAdmission(active, queued);
+    }
+
+    public UploadLimits getLimits() {
+        return limits;
+    }
+
+    public synchronized void update(UploadLimits updated) {
+        slots.resize(updated.maxConcurrent() - limits.maxConcurrent());
+        limits = updated;
+        clientBuckets = newBucketMap();
+        sessionBuckets = newBucketMap();
+        log.warn("Upload limits: {}", updated);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        return !isUpload(path) && !(path.startsWith(SESSION_PATH) && path.endsWith(UPLOAD_REQUEST_SUFFIX));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        UploadLimits current = limits;
+
+        // Set by MdcFilter from the path or query string; never read from the multipart body. An
+        // upload that names its session only in the form is limited per client and by the slots
+        String sessionId = LogContext.getSession();
+
+        TokenBucket client = bucket(clientBuckets, request.getRemoteAddr(),
+                current.perClientBurst(), current.perClientPerSecond());
+        if (!client.tryAcquire()) {
+            reject(response, client.secondsUntilAvailable(), "client", "Too many uploads from this device, please wait");
+            return;
+        }
+
+        if (sessionId != null) {
+            TokenBucket session = bucket(sessionBuckets, sessionId,
+                    current.perSessionBurst(), current.perSessionPerSecond());
+            if (!session.tryAcquire()) {
+                reject(response, session.secondsUntilAvailable(), "session", "Too many uploads for this session, please wait");
+                return;
+            }
+        }
+
+        if (!isUpload(request.getRequestURI())) {
+            printMetrics.countUploadAdmission("admitted");
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String refusal = acquireSlot(current);
+        if (refusal != null) {
+            reject(response, 1, refusal, "The service is busy, please retry");
+            return;
+        }
+        printMetrics.countUploadAdmission("admitted");
+        active.incrementAndGet();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            active.decrementAndGet();
+            slots.release();
+        }
+    }
+
+    /**
+     * @return null once a slot is held, otherwise why none was given
+     */
+    private String acquireSlot(UploadLimits current) {
+        if (slots.tryAcquire()) {
+            return null;
+        }
+        if (queued.incrementAndGet() > current.maxQueued()) {
+            queued.decrementAndGet();
+            return "queue_full";
+        }
+
+        Timer.Sample sample = printMetrics.start();
+        try {
+            boolean acquired = slots.tryAcquire(current.queueTimeoutMs(), TimeUnit.MILLISECONDS);
+            printMetrics.recordUploadQueueWait(sample, acquired ? "admitted" : "timeout");
+            return acquired ? null : "queue_timeout";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            printMetrics.recordUploadQueueWait(sample, "interrupted");
+            return "interrupted";
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterSeconds, String outcome, String message)
+            throws IOException {
+        printMetrics.countUploadAdmission(outcome);
+        log.debug("Refused upload: {}", outcome);
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfterSeconds)));
+        writeError(response, HttpStatus.TOO_MANY_REQUESTS, message);
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ApiResponseDto.error(message));
+    }
+
+    private static boolean isUpload(String path) {
+        return UPLOAD_PATH.equals(path);
+    }
+
+    private static TokenBucket bucket(Map<String, TokenBucket> buckets, String key, int burst, double perSecond) {
+        return buckets.computeIfAbsent(key, ignored -> new TokenBucket(burst, perSecond));
+    }
+
+    /**
+     * Least recently used first, so clients that went quiet are forgotten once maxTrackedClients
+     * is reached; a forgotten client simply starts again with a full bucket
+     */
+    private Map<String, TokenBucket> newBucketMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxTrackedClients;
+            }
+        });
+    }
+
+    /**
+     * Semaphore whose number of permits can change while permits are held
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        void resize(int delta) {
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+    }
+}
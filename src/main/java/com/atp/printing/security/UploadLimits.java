@@ -0,0 +1,35 @@
+package com.atp.printing.security;
+
+/**
+ * Limits applied to uploads before their body is read.
+ *
+ * @param perClientBurst      uploads one client IP may make back to back
+ * @param perClientPerSecond  steady upload rate allowed per client IP
+ * @param perSessionBurst     uploads one session may make back to back
+ * @param perSessionPerSecond steady upload rate allowed per session
+ * @param maxConcurrent       uploads being received at once across the instance
+ * @param maxQueued           uploads waiting for a slot; further ones are refused at once
+ * @param queueTimeoutMs      how long a queued upload waits for a slot before it is refused
+ */
+public record UploadLimits(
+        int perClientBurst,
+        double perClientPerSecond,
+        int perSessionBurst,
+        double perSessionPerSecond,
+        int maxConcurrent,
+        int maxQueued,
+        long queueTimeoutMs
+) {
+
+    public UploadLimits {
+        if (perClientBurst < 1 || perSessionBurst < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("Bursts and maxConcurrent must be at least 1");
+        }
+        if (perClientPerSecond <= 0 || perSessionPerSecond <= 0) {
+            throw new IllegalArgumentException("Upload rates must be positive");
+        }
+        if (maxQueued < 0 || queueTimeoutMs < 0) {
+            throw new IllegalArgumentException("maxQueued and queueTimeoutMs must not be negative");
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.atp.printing.service;
 
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.tracing.PrintTracing;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 @Slf4j
@@ -17,7 +26,14 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class CloudinaryService {
 
+    private static final String DIRECT_UPLOAD_FOLDER = "direct";
+
+    // Formats storage can count pages of
+    private static final String DIRECT_UPLOAD_FORMATS = "pdf,jpg,png";
+
     private final Cloudinary cloudinary;
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
 
     @Value("${cloudinary.upload.folder}")
     private String uploadFolder;
@@ -28,22 +44,26 @@ public class CloudinaryService {
     public Map<String, Object> uploadFile(MultipartFile file) throws IOException {
         log.info("Uploading file to Cloudinary: {}", file.getOriginalFilename());
 
+        Timer.Sample sample = printMetrics.start();
         try {
             String publicId = uploadFolder + "/" + UUID.randomUUID();
 
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                    file.getBytes(),
-                    ObjectUtils.asMap(
-                            "public_id", publicId,
-                            "resource_type", "auto",
-                            "folder", uploadFolder
-                    )
-            );
-
+            Map<String, Object> uploadResult = printTracing.trace("cloudinary.upload", null, null,
+                    () -> cloudinary.uploader().upload(
+                            file.getBytes(),
+                            ObjectUtils.asMap(
+                                    "public_id", publicId,
+                                    "resource_type", "auto",
+                                    "folder", uploadFolder
+                            )
+                    ));
+
+            printMetrics.recordCloudinary(sample, "upload", PrintMetrics.SUCCESS);
             log.info("File uploaded successfully to Cloudinary: {}", uploadResult.get("secure_url"));
             return uploadResult;
 
         } catch (IOException e) {
+            printMetrics.recordCloudinary(sample, "upload", PrintMetrics.FAILURE);
             log.error("Failed to upload file to Cloudinary", e);
             throw new IOException("Failed to upload file to Cloudinary", e);
         }
@@ -55,38 +75,106 @@ public class CloudinaryService {
     public Map<String, Object> uploadFile(byte[] fileBytes, String filename) throws IOException {
         log.info("Uploading file to Cloudinary: {}", filename);
 
+        Timer.Sample sample = printMetrics.start();
         try {
             String publicId = uploadFolder + "/" + UUID.randomUUID() + "-" + filename;
 
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                    fileBytes,
-                    ObjectUtils.asMap(
-                            "public_id", publicId,
-                            "resource_type", "auto",
-                            "folder", uploadFolder
-                    )
-            );
-
+            Map<String, Object> uploadResult = printTracing.trace("cloudinary.upload", null, null,
+                    () -> cloudinary.uploader().upload(
+                            fileBytes,
+                            ObjectUtils.asMap(
+                                    "public_id", publicId,
+                                    "resource_type", "auto",
+                                    "folder", uploadFolder
+                            )
+                    ));
+
+            printMetrics.recordCloudinary(sample, "upload", PrintMetrics.SUCCESS);
             log.info("File uploaded successfully: {}", uploadResult.get("secure_url"));
             return uploadResult;
 
         } catch (IOException e) {
+            printMetrics.recordCloudinary(sample, "upload", PrintMetrics.FAILURE);
             log.error("Failed to upload file", e);
             throw new IOException("Failed to upload file", e);
         }
     }
 
+    /**
+     * Form fields for a browser upload straight to Cloudinary, signed so that the file can only
+     * be stored under this public id, in an allowed format, with completion reported to
+     * notificationUrl. Cloudinary accepts the signature for an hour.
+     *
+     * @param key public id below the direct upload folder
+     */
+    public Map<String, Object> signDirectUpload(String key, String notificationUrl) {
+        Map<String, Object> params = new TreeMap<>();
+        params.put("public_id", uploadFolder + "/" + DIRECT_UPLOAD_FOLDER + "/" + key);
+        params.put("allowed_formats", DIRECT_UPLOAD_FORMATS);
+        params.put("notification_url", notificationUrl);
+        params.put("timestamp", Instant.now().getEpochSecond());
+        params.put("signature", cloudinary.apiSignRequest(params, cloudinary.config.apiSecret));
+        params.put("api_key", cloudinary.config.apiKey);
+        return params;
+    }
+
+    /**
+     * Endpoint signed direct uploads are posted to
+     */
+    public String getDirectUploadUrl() {
+        return cloudinary.cloudinaryApiUrl("upload", ObjectUtils.asMap("resource_type", "image"));
+    }
+
+    /**
+     * @return the key a direct upload was signed for, or null if the public id is not a direct upload
+     */
+    public String extractDirectUploadKey(String publicId) {
+        String prefix = uploadFolder + "/" + DIRECT_UPLOAD_FOLDER + "/";
+        return publicId != null && publicId.startsWith(prefix) ? publicId.substring(prefix.length()) : null;
+    }
+
+    /**
+     * Check an upload notification came from Cloudinary: X-Cld-Signature is the SHA-1 of the body,
+     * X-Cld-Timestamp and the API secret
+     */
+    public boolean verifyNotification(String body, String timestamp, String signature, long maxAgeSeconds) {
+        if (timestamp == null || signature == null) {
+            return false;
+        }
+        try {
+            if (Instant.now().getEpochSecond() - Long.parseLong(timestamp) > maxAgeSeconds) {
+                log.warn("Rejected stale Cloudinary notification from {}", timestamp);
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        try {
+            byte[] expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(
+                    (body + timestamp + cloudinary.config.apiSecret).getBytes(StandardCharsets.UTF_8)))
+                    .getBytes(StandardCharsets.US_ASCII);
+            return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
     /**
      * Delete file from Cloudinary
      */
     public void deleteFile(String publicId) throws IOException {
         log.info("Deleting file from Cloudinary: {}", publicId);
 
+        Timer.Sample sample = printMetrics.start();
         try {
-            Map result = cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
+            Map result = printTracing.trace("cloudinary.destroy", null, null,
+                    () -> cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap()));
+            printMetrics.recordCloudinary(sample, "destroy", PrintMetrics.SUCCESS);
             log.info("File deleted from Cloudinary: {}", result);
 
         } catch (IOException e) {
+            printMetrics.recordCloudinary(sample, "destroy", PrintMetrics.FAILURE);
             log.error("Failed to delete file from Cloudinary", e);
             throw new IOException("Failed to delete file", e);
         }
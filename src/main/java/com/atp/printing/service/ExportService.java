@@ -0,0 +1,221 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.UsageRollup;
+import com.atp.printing.export.ArrowTabularWriter;
+import com.atp.printing.export.Column;
+import com.atp.printing.export.CsvTabularWriter;
+import com.atp.printing.export.TabularWriter;
+import com.atp.printing.repository.PaymentRepository;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.UsageRollupRepository;
+import com.atp.printing.repository.projection.PaymentSummary;
+import com.atp.printing.repository.projection.SessionSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Streams sessions, payments and printer usage out of the database for analytics.
+ *
+ * Rows are read through a server-side cursor (fetch-size hinted stream queries returning
+ * projections, so nothing is kept in the persistence context) and written in bounded batches,
+ * as gzip CSV or as columnar Arrow IPC record batches.
+ * The number of concurrent exports is capped so they cannot take over the connection pool.
+ */
+@Slf4j
+@Service
+public class ExportService {
+
+    public enum Dataset {
+        SESSIONS,
+        PAYMENTS,
+        PRINTER_USAGE
+    }
+
+    public enum Format {
+        CSV,
+        ARROW
+    }
+
+    private static final List<Column> SESSION_COLUMNS = List.of(
+            Column.of("id", Column.Type.INT64),
+            Column.of("session_id", Column.Type.STRING),
+            Column.of("printer_id", Column.Type.INT64),
+            Column.of("file_name", Column.Type.STRING),
+            Column.of("page_count", Column.Type.INT32),
+            Column.of("color_mode", Column.Type.STRING),
+            Column.of("status", Column.Type.STRING),
+            Column.of("payment_status", Column.Type.STRING),
+            Column.of("amount", Column.Type.FLOAT64),
+            Column.of("created_at", Column.Type.TIMESTAMP),
+            Column.of("updated_at", Column.Type.TIMESTAMP));
+
+    private static final List<Column> PAYMENT_COLUMNS = List.of(
+            Column.of("id", Column.Type.INT64),
+            Column.of("session_id", Column.Type.STRING),
+            Column.of("razorpay_order_id", Column.Type.STRING),
+            Column.of("razorpay_payment_id", Column.Type.STRING),
+            Column.of("amount", Column.Type.FLOAT64),
+            Column.of("currency", Column.Type.STRING),
+            Column.of("status", Column.Type.STRING),
+            Column.of("payment_method", Column.Type.STRING),
+            Column.of("created_at", Column.Type.TIMESTAMP),
+            Column.of("completed_at", Column.Type.TIMESTAMP));
+
+    private static final List<Column> USAGE_COLUMNS = List.of(
+            Column.of("printer_id", Column.Type.INT64),
+            Column.of("day", Column.Type.DATE),
+            Column.of("revenue", Column.Type.FLOAT64),
+            Column.of("pages", Column.Type.INT64),
+            Column.of("jobs", Column.Type.INT64),
+            Column.of("failures", Column.Type.INT64));
+
+    private final SessionRepository sessionRepository;
+    private final PaymentRepository paymentRepository;
+    private final UsageRollupRepository usageRollupRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Semaphore exportSlots;
+
+    @Value("${app.export.batch-size}")
+    private Integer batchSize;
+
+    public ExportService(SessionRepository sessionRepository,
+                         PaymentRepository paymentRepository,
+                         UsageRollupRepository usageRollupRepository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${app.export.max-concurrent}") Integer maxConcurrentExports) {
+        this.sessionRepository = sessionRepository;
+        this.paymentRepository = paymentRepository;
+        this.usageRollupRepository = usageRollupRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.exportSlots = new Semaphore(maxConcurrentExports);
+    }
+
+    /**
+     * Reserve an export slot. {@link #export} releases it, but the caller must also release it
+     * if the export may never run.
+     *
+     * @return the reserved slot, or null if the maximum number of exports is already running
+     */
+    public ExportSlot tryStartExport() {
+        return exportSlots.tryAcquire() ? new ExportSlot(exportSlots) : null;
+    }
+
+    /**
+     * Write a dataset as (optionally gzipped) CSV or as an Arrow IPC stream, and release the export slot.
+     * Arrow output is already compact and is never gzipped.
+     */
+    public void export(ExportSlot slot, Dataset dataset, Format format, LocalDateTime from, LocalDateTime to,
+                       boolean gzip, OutputStream out) throws IOException {
+        log.info("Exporting {} as {} between {} and {}", dataset, format, from, to);
+
+        try (TabularWriter writer = format == Format.ARROW
+                ? new ArrowTabularWriter(out, batchSize)
+                : new CsvTabularWriter(out, gzip)) {
+            long rows = readOnlyTransaction.execute(status -> {
+                try {
+                    return switch (dataset) {
+                        case SESSIONS -> writeSessions(from, to, writer);
+                        case PAYMENTS -> writePayments(from, to, writer);
+                        case PRINTER_USAGE -> writePrinterUsage(from, to, writer);
+                    };
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            log.info("Exported {} {} rows", rows, dataset);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            slot.release();
+        }
+    }
+
+    private long writeSessions(LocalDateTime from, LocalDateTime to, TabularWriter writer) throws IOException {
+        writer.writeHeader(SESSION_COLUMNS);
+
+        long rows = 0;
+        try (Stream<SessionSummary> sessions = sessionRepository.streamSessionsBetweenDates(from, to)) {
+            Iterator<SessionSummary> it = sessions.iterator();
+            while (it.hasNext()) {
+                SessionSummary s = it.next();
+                writer.writeRow(s.getId(), s.getSessionId(), s.getPrinterId(), s.getFileName(), s.getPageCount(),
+                        s.getColorMode(), s.getStatus(), s.getPaymentStatus(), s.getAmount(),
+                        s.getCreatedAt(), s.getUpdatedAt());
+                rows = endRow(rows, writer);
+            }
+        }
+        return rows;
+    }
+
+    private long writePayments(LocalDateTime from, LocalDateTime to, TabularWriter writer) throws IOException {
+        writer.writeHeader(PAYMENT_COLUMNS);
+
+        long rows = 0;
+        try (Stream<PaymentSummary> payments = paymentRepository.streamPaymentsBetweenDates(from, to)) {
+            Iterator<PaymentSummary> it = payments.iterator();
+            while (it.hasNext()) {
+                PaymentSummary p = it.next();
+                writer.writeRow(p.getId(), p.getSessionId(), p.getRazorpayOrderId(), p.getRazorpayPaymentId(),
+                        p.getAmount(), p.getCurrency(), p.getStatus(), p.getPaymentMethod(),
+                        p.getCreatedAt(), p.getCompletedAt());
+                rows = endRow(rows, writer);
+            }
+        }
+        return rows;
+    }
+
+    private long writePrinterUsage(LocalDateTime from, LocalDateTime to, TabularWriter writer) throws IOException {
+        writer.writeHeader(USAGE_COLUMNS);
+
+        long rows = 0;
+        for (UsageRollup r : usageRollupRepository.findBuckets(UsageRollup.Granularity.DAY, from, to)) {
+            writer.writeRow(r.getPrinterId(), r.getBucketStart().toLocalDate(), r.getRevenue(), r.getPages(),
+                    r.getJobs(), r.getFailures());
+            rows = endRow(rows, writer);
+        }
+        return rows;
+    }
+
+    private long endRow(long rows, TabularWriter writer) throws IOException {
+        long written = rows + 1;
+        if (written % batchSize == 0) {
+            writer.flush();
+        }
+        return written;
+    }
+
+    /**
+     * One reserved export. Released once, by whichever comes first of the export finishing and
+     * the request ending without it.
+     */
+    public static final class ExportSlot {
+
+        private final Semaphore slots;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportSlot(Semaphore slots) {
+            this.slots = slots;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+    }
+}
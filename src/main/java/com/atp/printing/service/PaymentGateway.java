@@ -0,0 +1,15 @@
+package com.atp.printing.service;
+
+/**
+ * Creates orders with the payment provider. Checkout signatures are verified locally by
+ * {@link PaymentService}, so order creation is the only provider round trip on the payment path.
+ */
+public interface PaymentGateway {
+
+    /**
+     * Create an order and return the provider's order id
+     *
+     * @throws RuntimeException if the provider rejects the order or cannot be reached
+     */
+    String createOrder(int amountInPaise, String currency, String receipt);
+}
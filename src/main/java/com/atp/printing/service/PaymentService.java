@@ -4,9 +4,10 @@ import com.atp.printing.dto.PaymentCompleteDto;
 import com.atp.printing.dto.PaymentOrderResponseDto;
 import com.atp.printing.entity.Payment;
 import com.atp.printing.entity.Session;
+import com.atp.printing.exception.InvalidStateTransitionException;
+import com.atp.printing.metrics.PrintMetrics;
 import com.atp.printing.repository.PaymentRepository;
-import com.razorpay.Order;
-import com.razorpay.RazorpayClient;
+import com.atp.printing.tracing.PrintTracing;
 import com.razorpay.RazorpayException;
 import com.razorpay.Utils;
 import lombok.RequiredArgsConstructor;
@@ -27,7 +28,9 @@ public class PaymentService {
 
     private final PaymentRepository paymentRepository;
     private final SessionService sessionService;
-    private final RazorpayClient razorpayClient;
+    private final PaymentGateway paymentGateway;
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
 
     @Value("${razorpay.key-id}")
     private String razorpayKeyId;
@@ -35,54 +38,71 @@ public class PaymentService {
     @Value("${razorpay.secret}")
     private String razorpaySecret;
 
+    /**
+     * Create an order for the amount computed when the document was uploaded
+     *
+     * @param expectedAmountInPaise the amount the client showed the customer, or null; an order
+     *                              is refused if it differs from the session's amount
+     */
     @Transactional
-    public PaymentOrderResponseDto createOrder(String sessionId, Integer amountInPaise) {
+    public PaymentOrderResponseDto createOrder(String sessionId, Integer expectedAmountInPaise) {
         log.info("Creating Razorpay order for session: {}", sessionId);
 
         Session session = sessionService.findBySessionId(sessionId);
+        printTracing.tagCurrent(sessionId, session.getPrinter().getId());
 
         if (session.getPaymentStatus() == Session.PaymentStatus.PAID) {
             throw new RuntimeException("Payment already completed for this session");
         }
+        if (!SessionStateMachine.canTransition(session.getStatus(), Session.SessionStatus.PAID)) {
+            throw new RuntimeException("Session is " + session.getStatus() + " and cannot be paid for");
+        }
+        if (session.getAmount() == null) {
+            throw new RuntimeException("No document uploaded for this session");
+        }
 
-        try {
-            // Create Razorpay order
-            JSONObject orderRequest = new JSONObject();
-            orderRequest.put("amount", amountInPaise);
-            orderRequest.put("currency", "INR");
-            orderRequest.put("receipt", "order_" + sessionId);
-
-            Order order = razorpayClient.orders.create(orderRequest);
-
-            // Save payment record
-            Payment payment = Payment.builder()
-                    .session(session)
-                    .razorpayOrderId(order.get("id"))
-                    .amount(amountInPaise / 100.0)
-                    .currency("INR")
-                    .status(Payment.PaymentStatus.CREATED)
-                    .build();
-
-            paymentRepository.save(payment);
-
-            log.info("Razorpay order created: {}", order.get("id"));
-
-            return PaymentOrderResponseDto.builder()
-                    .orderId(order.get("id"))
-                    .amount(amountInPaise)
-                    .currency("INR")
-                    .key(razorpayKeyId)
-                    .build();
-
-        } catch (RazorpayException e) {
-            log.error("Failed to create Razorpay order", e);
-            throw new RuntimeException("Failed to create payment order", e);
+        int amountInPaise = (int) Math.round(session.getAmount() * 100);
+        if (expectedAmountInPaise != null && expectedAmountInPaise != amountInPaise) {
+            log.warn("Order for session {} requested {} paise, session amount is {}",
+                    sessionId, expectedAmountInPaise, amountInPaise);
+            throw new RuntimeException("Amount does not match the uploaded document");
         }
+
+        // Create Razorpay order
+        String orderId = paymentGateway.createOrder(amountInPaise, "INR", "order_" + sessionId);
+
+        // Save payment record
+        Payment payment = Payment.builder()
+                .session(session)
+                .razorpayOrderId(orderId)
+                .amount(amountInPaise / 100.0)
+                .currency("INR")
+                .status(Payment.PaymentStatus.CREATED)
+                .build();
+
+        paymentRepository.save(payment);
+
+        log.info("Razorpay order created: {}", orderId);
+
+        return PaymentOrderResponseDto.builder()
+                .orderId(orderId)
+                .amount(amountInPaise)
+                .currency("INR")
+                .key(razorpayKeyId)
+                .build();
     }
 
-    @Transactional
+    /**
+     * @throws InvalidStateTransitionException if the payment is genuine but the session can no
+     *                                         longer be printed; the capture and the refund marker
+     *                                         are kept
+     * @throws RuntimeException                if the payment could not be recorded; the capture is
+     *                                         rolled back with it and the client may retry
+     */
+    @Transactional(noRollbackFor = InvalidStateTransitionException.class)
     public boolean verifyPayment(String sessionId, PaymentCompleteDto dto) {
         log.info("Verifying payment for session: {}", sessionId);
+        printTracing.tagCurrent(sessionId, null);
 
         try {
             // Verify signature
@@ -93,32 +113,67 @@ public class PaymentService {
 
             if (!generatedSignature.equals(dto.getRazorpay_signature())) {
                 log.error("Payment signature verification failed for session: {}", sessionId);
+                printMetrics.countPayment("rejected");
                 return false;
             }
 
-            // Update payment record
-            Payment payment = paymentRepository.findByRazorpayOrderId(dto.getRazorpay_order_id())
+            // A valid signature only proves the order was paid, not that it was this session's
+            Payment order = paymentRepository.findByRazorpayOrderId(dto.getRazorpay_order_id())
                     .orElseThrow(() -> new RuntimeException("Payment not found"));
+            if (!order.getSession().getSessionId().equals(sessionId)) {
+                log.error("Order {} belongs to session {}, not {}", dto.getRazorpay_order_id(),
+                        order.getSession().getSessionId(), sessionId);
+                printMetrics.countPayment("rejected");
+                return false;
+            }
+
+            // Update payment record, only if it hasn't been settled already
+            int captured = paymentRepository.markCaptured(
+                    sessionId,
+                    dto.getRazorpay_order_id(),
+                    dto.getRazorpay_payment_id(),
+                    dto.getRazorpay_signature(),
+                    LocalDateTime.now()
+            );
 
-            payment.setRazorpayPaymentId(dto.getRazorpay_payment_id());
-            payment.setRazorpaySignature(dto.getRazorpay_signature());
-            payment.setStatus(Payment.PaymentStatus.CAPTURED);
-            payment.setCompletedAt(LocalDateTime.now());
-            paymentRepository.save(payment);
+            if (captured == 0) {
+                Payment payment = paymentRepository.findByRazorpayOrderId(dto.getRazorpay_order_id())
+                        .orElseThrow(() -> new RuntimeException("Payment not found"));
+
+                if (payment.getStatus() != Payment.PaymentStatus.CAPTURED
+                        || !dto.getRazorpay_payment_id().equals(payment.getRazorpayPaymentId())) {
+                    log.error("Payment {} for session {} is already {}", payment.getId(), sessionId, payment.getStatus());
+                    printMetrics.countPayment("rejected");
+                    return false;
+                }
+                log.info("Payment already captured for session: {}", sessionId);
+                printMetrics.countPayment("duplicate");
+            } else {
+                printMetrics.countPayment("captured");
+            }
 
-            // Update session payment status
-            sessionService.updatePaymentStatus(sessionId, Session.PaymentStatus.PAID);
+            // Update session payment status; the payment stays recorded either way
+            if (!sessionService.acceptPayment(sessionId)) {
+                printMetrics.countPayment("refund_required");
+                throw new InvalidStateTransitionException(
+                        "Session can no longer be printed, the payment will be refunded");
+            }
 
             log.info("Payment verified successfully for session: {}", sessionId);
             return true;
 
-        } catch (Exception e) {
+        } catch (InvalidStateTransitionException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // A repository or state machine call may already have marked the transaction
+            // rollback-only, so returning normally would only fail later at commit
             log.error("Payment verification failed", e);
-            return false;
+            printMetrics.countPayment("error");
+            throw e;
         }
     }
 
-    private String generateSignature(String orderId, String paymentId) {
+    String generateSignature(String orderId, String paymentId) {
         try {
             String payload = orderId + "|" + paymentId;
             Mac mac = Mac.getInstance("HmacSHA256");
@@ -157,15 +212,7 @@ public class PaymentService {
 
     @Transactional
     public void handlePaymentFailure(String sessionId, String errorMessage) {
-        Payment payment = paymentRepository.findBySessionId(
-                sessionService.findBySessionId(sessionId).getId()
-        ).orElse(null);
-
-        if (payment != null) {
-            payment.setStatus(Payment.PaymentStatus.FAILED);
-            payment.setErrorMessage(errorMessage);
-            paymentRepository.save(payment);
-        }
+        paymentRepository.markFailedForSession(sessionId, errorMessage);
 
         sessionService.updatePaymentStatus(sessionId, Session.PaymentStatus.FAILED);
         log.warn("Payment failed for session: {} - {}", sessionId, errorMessage);
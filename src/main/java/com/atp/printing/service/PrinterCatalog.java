@@ -0,0 +1,98 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.event.PrinterChangedEvent;
+import com.atp.printing.repository.PrinterRepository;
+import com.atp.printing.repository.projection.PrinterPricingView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory snapshot of what sessions need from each printer: name, prices and colour support.
+ *
+ * The whole snapshot is replaced on a timer, so changes made on other instances show up within
+ * app.printer.catalog-refresh-ms; changes made on this one are applied as soon as they commit.
+ * A printer missing from the snapshot, e.g. one registered elsewhere since the last refresh,
+ * is loaded on demand.
+ */
+@Slf4j
+@Component
+public class PrinterCatalog {
+
+    private static final List<String> BW_ONLY = List.of("BW");
+    private static final List<String> BW_AND_COLOR = List.of("BW", "Color");
+
+    private final PrinterRepository printerRepository;
+
+    // Replaced, never modified, so readers need no lock
+    private volatile Map<Long, PrinterInfo> printers = Map.of();
+
+    public PrinterCatalog(PrinterRepository printerRepository) {
+        this.printerRepository = printerRepository;
+    }
+
+    /**
+     * @throws RuntimeException if there is no such printer
+     */
+    public PrinterInfo get(Long printerId) {
+        PrinterInfo printer = printers.get(printerId);
+        if (printer != null) {
+            return printer;
+        }
+        return load(printerId);
+    }
+
+    public void refresh() {
+        Map<Long, PrinterInfo> loaded = new HashMap<>();
+        for (PrinterPricingView view : printerRepository.findAllPricing()) {
+            loaded.put(view.getId(), PrinterInfo.of(view));
+        }
+        printers = Map.copyOf(loaded);
+        log.debug("Printer catalog refreshed with {} printers", loaded.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPrinterChanged(PrinterChangedEvent event) {
+        load(event.printerId());
+    }
+
+    private PrinterInfo load(Long printerId) {
+        PrinterInfo printer = printerRepository.findPricingById(printerId)
+                .map(PrinterInfo::of)
+                .orElseThrow(() -> new RuntimeException("Printer not found with ID: " + printerId));
+
+        synchronized (this) {
+            Map<Long, PrinterInfo> updated = new HashMap<>(printers);
+            updated.put(printerId, printer);
+            printers = Map.copyOf(updated);
+        }
+        return printer;
+    }
+
+    public record PrinterInfo(
+            Long id,
+            String name,
+            Double pricePerPageBw,
+            Double pricePerPageColor,
+            boolean colorSupported
+    ) {
+
+        static PrinterInfo of(PrinterPricingView view) {
+            return new PrinterInfo(view.getId(), view.getName(), view.getPricePerPageBw(),
+                    view.getPricePerPageColor(), Boolean.TRUE.equals(view.getColorSupported()));
+        }
+
+        public double pricePerPage(Session.ColorMode colorMode) {
+            return colorMode == Session.ColorMode.COLOR ? pricePerPageColor : pricePerPageBw;
+        }
+
+        public List<String> colorOptions() {
+            return colorSupported ? BW_AND_COLOR : BW_ONLY;
+        }
+    }
+}
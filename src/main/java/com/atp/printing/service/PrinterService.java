@@ -3,14 +3,17 @@ package com.atp.printing.service;
 import com.atp.printing.dto.PrinterRegistrationDto;
 import com.atp.printing.dto.PrinterResponseDto;
 import com.atp.printing.entity.Printer;
+import com.atp.printing.event.PrinterChangedEvent;
 import com.atp.printing.repository.PrinterRepository;
 import com.atp.printing.security.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Slf4j
@@ -20,6 +23,7 @@ public class PrinterService {
 
     private final PrinterRepository printerRepository;
     private final JwtUtil jwtUtil;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public PrinterResponseDto registerPrinter(PrinterRegistrationDto dto) {
@@ -34,12 +38,14 @@ public class PrinterService {
                 .status(Printer.PrinterStatus.OFFLINE)
                 .build();
 
+        // Id comes from the pooled sequence, so no row is written until the token is set below
         printer = printerRepository.save(printer);
 
         // Generate JWT token for printer
         String jwtToken = jwtUtil.generatePrinterToken(printer.getId(), printer.getName());
         printer.setJwtToken(jwtToken);
         printer = printerRepository.save(printer);
+        eventPublisher.publishEvent(new PrinterChangedEvent(printer.getId()));
 
         log.info("Printer registered successfully with ID: {}", printer.getId());
 
@@ -55,24 +61,32 @@ public class PrinterService {
 
     @Transactional
     public void updateHeartbeat(String token) {
-        Long printerId = jwtUtil.extractPrinterId(token);
-        Printer printer = printerRepository.findById(printerId)
-                .orElseThrow(() -> new RuntimeException("Printer not found"));
+        updateHeartbeat(jwtUtil.extractPrinterId(token));
+    }
 
-        printer.setLastHeartbeat(LocalDateTime.now());
-        printer.setStatus(Printer.PrinterStatus.ONLINE);
-        printerRepository.save(printer);
+    @Transactional
+    public void updateHeartbeat(Long printerId) {
+        if (printerRepository.updateHeartbeat(printerId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Printer not found");
+        }
 
         log.debug("Updated heartbeat for printer: {}", printerId);
     }
 
+    /**
+     * Record presence for every printer the keepalive heard from since the last flush
+     */
     @Transactional
-    public void updateStatus(Long printerId, Printer.PrinterStatus status) {
-        Printer printer = printerRepository.findById(printerId)
-                .orElseThrow(() -> new RuntimeException("Printer not found"));
+    public void updateHeartbeats(Collection<Long> printerIds) {
+        int updated = printerRepository.updateHeartbeats(printerIds, LocalDateTime.now());
+        log.debug("Updated heartbeat for {} printers", updated);
+    }
 
-        printer.setStatus(status);
-        printerRepository.save(printer);
+    @Transactional
+    public void updateStatus(Long printerId, Printer.PrinterStatus status) {
+        if (printerRepository.updateStatus(printerId, status, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Printer not found");
+        }
 
         log.info("Updated printer {} status to {}", printerId, status);
     }
@@ -94,14 +108,10 @@ public class PrinterService {
     @Transactional
     public void markInactivePrinters(int timeoutMinutes) {
         LocalDateTime threshold = LocalDateTime.now().minusMinutes(timeoutMinutes);
-        List<Printer> inactivePrinters = printerRepository.findInactivePrinters(threshold);
-
-        for (Printer printer : inactivePrinters) {
-            if (printer.getStatus() == Printer.PrinterStatus.ONLINE) {
-                printer.setStatus(Printer.PrinterStatus.OFFLINE);
-                printerRepository.save(printer);
-                log.warn("Marked printer {} as OFFLINE due to inactivity", printer.getId());
-            }
+        List<Long> offlinePrinterIds = printerRepository.markInactivePrintersOffline(threshold);
+
+        if (!offlinePrinterIds.isEmpty()) {
+            log.warn("Marked printers {} as OFFLINE due to inactivity", offlinePrinterIds);
         }
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.atp.printing.service;
 
+import com.atp.printing.metrics.PrintMetrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.glxn.qrgen.javase.QRCode;
 import org.springframework.stereotype.Service;
@@ -9,21 +12,27 @@ import java.util.Base64;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class QRCodeService {
 
+    private final PrintMetrics printMetrics;
+
     /**
      * Generate QR code as byte array
      */
     public byte[] generateQRCodeBytes(String data, int width, int height) {
         log.debug("Generating QR code for data: {}", data);
 
+        Timer.Sample sample = printMetrics.start();
         try {
             ByteArrayOutputStream stream = QRCode.from(data)
                     .withSize(width, height)
                     .stream();
 
+            printMetrics.recordQrCode(sample, PrintMetrics.SUCCESS);
             return stream.toByteArray();
         } catch (Exception e) {
+            printMetrics.recordQrCode(sample, PrintMetrics.FAILURE);
             log.error("Failed to generate QR code", e);
             throw new RuntimeException("Failed to generate QR code", e);
         }
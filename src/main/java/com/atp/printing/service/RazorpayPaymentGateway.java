@@ -0,0 +1,45 @@
+package com.atp.printing.service;
+
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.tracing.PrintTracing;
+import com.razorpay.Order;
+import com.razorpay.RazorpayClient;
+import com.razorpay.RazorpayException;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+@Slf4j
+@Service
+@Profile("!fake-providers")
+@RequiredArgsConstructor
+public class RazorpayPaymentGateway implements PaymentGateway {
+
+    private final RazorpayClient razorpayClient;
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
+
+    @Override
+    public String createOrder(int amountInPaise, String currency, String receipt) {
+        JSONObject orderRequest = new JSONObject();
+        orderRequest.put("amount", amountInPaise);
+        orderRequest.put("currency", currency);
+        orderRequest.put("receipt", receipt);
+
+        Timer.Sample sample = printMetrics.start();
+        try {
+            Order order = printTracing.trace("razorpay.order.create", null, null,
+                    () -> razorpayClient.orders.create(orderRequest));
+            printMetrics.recordRazorpay(sample, "create_order", PrintMetrics.SUCCESS);
+            return order.get("id");
+
+        } catch (RazorpayException e) {
+            printMetrics.recordRazorpay(sample, "create_order", PrintMetrics.FAILURE);
+            log.error("Failed to create Razorpay order", e);
+            throw new RuntimeException("Failed to create payment order", e);
+        }
+    }
+}
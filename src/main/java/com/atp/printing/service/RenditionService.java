@@ -0,0 +1,302 @@
+package com.atp.printing.service;
+
+import com.atp.printing.document.DocumentType;
+import com.atp.printing.document.PrintRenderer;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.StoredObject;
+import com.atp.printing.event.DocumentUploadedEvent;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.StoredObjectRepository;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes print-ready renditions of uploaded documents so kiosks can spool them straight away.
+ *
+ * Images become an A4 PDF (see {@link PrintRenderer}), grey for black and white jobs. PDFs are
+ * already print-ready, so they are sent to printers as uploaded.
+ *
+ * Renditions are made after the upload commits and are cached per content hash and colour mode
+ * in the renditions table: the same document uploaded again, by anyone, is never rendered twice.
+ * Fetching the source, uploading the result and recording it block on the network and the
+ * database, so they run on a small bounded pool of plain threads; when its queue is full the
+ * rendition is skipped. Only the decode and scaling are handed to the fork-join pool, whose
+ * workers also split each image into bands and so are never parked on I/O. Memory is bounded by
+ * the I/O threads times the source size cap plus the fork-join parallelism times the per-image
+ * decode cap. Until a rendition exists, printers get the original.
+ */
+@Slf4j
+@Service
+public class RenditionService {
+
+    private final StoredObjectRepository storedObjectRepository;
+    private final CloudinaryService cloudinaryService;
+    private final PrintMetrics printMetrics;
+    private final PrintRenderer renderer;
+    private final int maxSourceBytes;
+    private final Duration originTimeout;
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor io;
+    private final ForkJoinPool pool;
+
+    // Renditions being made, so concurrent uploads of one document render it once
+    private final Set<RenditionKey> inFlight = ConcurrentHashMap.newKeySet();
+
+    public RenditionService(StoredObjectRepository storedObjectRepository,
+                            CloudinaryService cloudinaryService,
+                            PrintMetrics printMetrics,
+                            @Value("${app.rendition.io-threads}") int ioThreads,
+                            @Value("${app.rendition.queue-size}") int queueSize,
+                            @Value("${app.rendition.parallelism}") int parallelism,
+                            @Value("${app.rendition.dpi}") int dpi,
+                            @Value("${app.rendition.max-source-pixels}") long maxSourcePixels,
+                            @Value("${app.rendition.max-source-bytes}") int maxSourceBytes,
+                            @Value("${app.rendition.jpeg-quality}") float jpegQuality,
+                            @Value("${cloudinary.timeout-seconds}") int originTimeoutSeconds) {
+        this.storedObjectRepository = storedObjectRepository;
+        this.cloudinaryService = cloudinaryService;
+        this.printMetrics = printMetrics;
+        this.renderer = new PrintRenderer(dpi, maxSourcePixels, jpegQuality);
+        this.maxSourceBytes = maxSourceBytes;
+        this.originTimeout = Duration.ofSeconds(originTimeoutSeconds);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(originTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.io = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("rendition-io-"));
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        io.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentUploaded(DocumentUploadedEvent event) {
+        if (event.type() != DocumentType.IMAGE || event.contentHash() == null) {
+            return;
+        }
+
+        RenditionKey key = new RenditionKey(event.contentHash(), event.colorMode());
+        if (!inFlight.add(key)) {
+            return;
+        }
+        if (storedObjectRepository.findRenditionUrl(key.contentHash(), key.colorMode().name()).isPresent()) {
+            inFlight.remove(key);
+            return;
+        }
+
+        log.debug("Rendering {} for session {}", key, event.sessionId());
+        try {
+            io.execute(() -> {
+                try {
+                    render(key);
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            printMetrics.recordRendition(printMetrics.start(), "rejected");
+            log.debug("Rendition queue is full, printers will get the original of {}", key.contentHash());
+        }
+    }
+
+    /**
+     * URL printers should fetch a document from: its rendition in the job's colour mode if one
+     * has been made, otherwise empty and the original applies
+     */
+    public Optional<String> findPrintUrl(String contentHash, Session.ColorMode colorMode) {
+        if (contentHash == null || colorMode == null) {
+            return Optional.empty();
+        }
+        return storedObjectRepository.findRenditionUrl(contentHash, colorMode.name());
+    }
+
+    private void render(RenditionKey key) {
+        Timer.Sample sample = printMetrics.start();
+        try {
+            Optional<String> sourceUrl = storedObjectRepository.findById(key.contentHash()).map(StoredObject::getUrl);
+            if (sourceUrl.isEmpty()) {
+                printMetrics.recordRendition(sample, "released");
+                return;
+            }
+
+            byte[] source = download(sourceUrl.get());
+            byte[] pdf = renderOnPool(source, key.colorMode() == Session.ColorMode.BW);
+
+            Map<String, Object> uploadResult = cloudinaryService.uploadFile(pdf,
+                    key.contentHash().substring(0, 16) + "-" + key.colorMode().name().toLowerCase() + ".pdf");
+            String publicId = (String) uploadResult.get("public_id");
+            String url = (String) uploadResult.get("secure_url");
+
+            if (!record(key, publicId, url, pdf.length)) {
+                deleteRemote(publicId);
+                printMetrics.recordRendition(sample, "released");
+                return;
+            }
+
+            printMetrics.recordRendition(sample, "rendered");
+            log.info("Rendered {} document {} to a {} byte print-ready PDF", key.colorMode(), key.contentHash(), pdf.length);
+
+        } catch (IOException | RuntimeException e) {
+            printMetrics.recordRendition(sample, PrintMetrics.FAILURE);
+            log.warn("Could not render document {}, printers will get the original", key.contentHash(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false if the document was released while rendering
+     */
+    private boolean record(RenditionKey key, String publicId, String url, long size) {
+        try {
+            if (storedObjectRepository.insertRendition(key.contentHash(), key.colorMode().name(),
+                    publicId, url, size, LocalDateTime.now()) == 0) {
+                // Rendered concurrently by another instance; keep theirs
+                deleteRemote(publicId);
+            }
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    private byte[] renderOnPool(byte[] source, boolean grayscale) throws IOException, InterruptedException {
+        try {
+            return pool.submit(() -> renderer.render(source, grayscale)).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Fetch the source within the origin timeout. The request timeout only covers the response
+     * headers, so the whole exchange, body included, is bounded here as well.
+     */
+    private byte[] download(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(originTimeout).GET().build();
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(request,
+                answer -> answer.statusCode() == 200
+                        ? new LimitedBody(maxSourceBytes)
+                        : HttpResponse.BodySubscribers.replacing(null));
+
+        HttpResponse<byte[]> response;
+        try {
+            response = exchange.get(originTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            exchange.cancel(true);
+            throw new HttpTimeoutException("Origin did not send the document within " + originTimeout);
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+
+        if (response.statusCode() != 200) {
+            throw new IOException("Origin returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private void deleteRemote(String publicId) {
+        try {
+            cloudinaryService.deleteFile(publicId);
+        } catch (Exception e) {
+            log.error("Failed to delete rendition {}", publicId, e);
+        }
+    }
+
+    private record RenditionKey(String contentHash, Session.ColorMode colorMode) {
+    }
+
+    /**
+     * Collects a response body, failing once it passes maxBytes rather than buffering the rest
+     */
+    private static final class LimitedBody implements HttpResponse.BodySubscriber<byte[]> {
+
+        private final int maxBytes;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        LimitedBody(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                if (body.isDone()) {
+                    return;
+                }
+                if (bytes.size() + buffer.remaining() > maxBytes) {
+                    subscription.cancel();
+                    body.completeExceptionally(new IOException("Document exceeds " + maxBytes + " bytes"));
+                    return;
+                }
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                bytes.write(chunk, 0, chunk.length);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(bytes.toByteArray());
+        }
+    }
+}
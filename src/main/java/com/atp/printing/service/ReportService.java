@@ -0,0 +1,108 @@
+package com.atp.printing.service;
+
+import com.atp.printing.dto.CursorPageDto;
+import com.atp.printing.entity.Payment;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.ArchivedSession;
+import com.atp.printing.repository.ArchivedSessionRepository;
+import com.atp.printing.repository.KeysetCursor;
+import com.atp.printing.repository.PaymentRepository;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.PaymentSummary;
+import com.atp.printing.repository.projection.SessionSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ReportService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final SessionRepository sessionRepository;
+    private final PaymentRepository paymentRepository;
+    private final ArchivedSessionRepository archivedSessionRepository;
+
+    public CursorPageDto<SessionSummary> getPrinterSessions(Long printerId, String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(sessionRepository.findByPrinterIdBefore(printerId, from.createdAt(), from.id(), probe(size)),
+                size, s -> new KeysetCursor(s.getCreatedAt(), s.getId()));
+    }
+
+    public CursorPageDto<SessionSummary> getRecentSessions(LocalDateTime since, String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(sessionRepository.findRecentSessionsBefore(since, from.createdAt(), from.id(), probe(size)),
+                size, s -> new KeysetCursor(s.getCreatedAt(), s.getId()));
+    }
+
+    public CursorPageDto<SessionSummary> getSessionsByStatus(Session.SessionStatus status, String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(sessionRepository.findByStatusBefore(status, from.createdAt(), from.id(), probe(size)),
+                size, s -> new KeysetCursor(s.getCreatedAt(), s.getId()));
+    }
+
+    public CursorPageDto<PaymentSummary> getPaymentsBetweenDates(LocalDateTime startDate, LocalDateTime endDate,
+                                                                 String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(paymentRepository.findPaymentsBetweenDatesBefore(
+                        startDate, endDate, from.createdAt(), from.id(), probe(size)),
+                size, p -> new KeysetCursor(p.getCreatedAt(), p.getId()));
+    }
+
+    public CursorPageDto<PaymentSummary> getPaymentsByStatus(Payment.PaymentStatus status, String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(paymentRepository.findByStatusBefore(status, from.createdAt(), from.id(), probe(size)),
+                size, p -> new KeysetCursor(p.getCreatedAt(), p.getId()));
+    }
+
+    public CursorPageDto<SessionSummary> getArchivedPrinterSessions(Long printerId, String cursor, Integer limit) {
+        KeysetCursor from = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        return toPage(archivedSessionRepository.findByPrinterIdBefore(printerId, from.createdAt(), from.id(), probe(size)),
+                size, s -> new KeysetCursor(s.getCreatedAt(), s.getId()));
+    }
+
+    public ArchivedSession getArchivedSession(String sessionId) {
+        return archivedSessionRepository.findBySessionId(sessionId)
+                .orElseThrow(() -> new RuntimeException("Archived session not found"));
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Ask for one row more than the page size so we know whether another page exists
+     */
+    private static Pageable probe(int size) {
+        return PageRequest.of(0, size + 1);
+    }
+
+    private static <T> CursorPageDto<T> toPage(List<T> rows, int size, Function<T, KeysetCursor> cursorOf) {
+        boolean hasMore = rows.size() > size;
+        List<T> items = hasMore ? rows.subList(0, size) : rows;
+
+        return CursorPageDto.<T>builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? cursorOf.apply(items.get(items.size() - 1)).encode() : null)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.atp.printing.service;
+
+import com.atp.printing.repository.ArchivedSessionRepository;
+import com.atp.printing.repository.SessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves finished sessions and their payments from the live tables to the archive tables,
+ * one bounded batch per transaction, so hot queries only ever touch recent and in-flight rows.
+ */
+@Slf4j
+@Service
+public class SessionArchiveService {
+
+    private final SessionRepository sessionRepository;
+    private final ArchivedSessionRepository archivedSessionRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.session.archive-after-hours}")
+    private Integer archiveAfterHours;
+
+    @Value("${app.session.archive-batch-size}")
+    private Integer batchSize;
+
+    @Value("${app.session.archive-max-batches}")
+    private Integer maxBatches;
+
+    public SessionArchiveService(SessionRepository sessionRepository,
+                                 ArchivedSessionRepository archivedSessionRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.sessionRepository = sessionRepository;
+        this.archivedSessionRepository = archivedSessionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Archive sessions that finished more than the configured number of hours ago
+     *
+     * @return number of sessions archived
+     */
+    public int archiveFinishedSessions() {
+        LocalDateTime threshold = LocalDateTime.now().minusHours(archiveAfterHours);
+        int total = 0;
+
+        for (int batch = 0; batch < maxBatches; batch++) {
+            Integer moved = transactionTemplate.execute(status -> archiveBatch(threshold));
+            total += moved;
+
+            if (moved < batchSize) {
+                break;
+            }
+        }
+
+        if (total > 0) {
+            log.info("Archived {} finished sessions", total);
+        }
+        return total;
+    }
+
+    private int archiveBatch(LocalDateTime threshold) {
+        List<Long> sessionIds = sessionRepository.findSessionsForCleanup(threshold, batchSize);
+        if (sessionIds.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int payments = archivedSessionRepository.movePayments(sessionIds, now);
+        int sessions = archivedSessionRepository.moveSessions(sessionIds, now);
+
+        log.debug("Archived batch of {} sessions and {} payments", sessions, payments);
+        return sessions;
+    }
+}
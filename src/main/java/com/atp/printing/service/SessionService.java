@@ -1,21 +1,37 @@
 package com.atp.printing.service;
 
+import com.atp.printing.document.ContentKeys;
+import com.atp.printing.document.DocumentAnalysis;
+import com.atp.printing.document.DocumentAnalyzer;
+import com.atp.printing.document.DocumentType;
 import com.atp.printing.dto.*;
-import com.atp.printing.entity.Printer;
 import com.atp.printing.entity.Session;
+import com.atp.printing.event.DocumentReleasedEvent;
+import com.atp.printing.event.DocumentUploadedEvent;
+import com.atp.printing.exception.InvalidStateTransitionException;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.ArchivedSessionRepository;
 import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.ExpiredSessionView;
+import com.atp.printing.repository.projection.StoredObjectView;
+import com.atp.printing.tracing.PrintTracing;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Slf4j
@@ -23,10 +39,25 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class SessionService {
 
+    // Cloudinary accepts an upload signature for an hour
+    private static final long UPLOAD_SIGNATURE_LIFETIME_SECONDS = 3600;
+
+    private static final Set<String> DIRECT_UPLOAD_CONTENT_TYPES = Set.of(
+            "application/pdf", "image/jpeg", "image/jpg", "image/png");
+
     private final SessionRepository sessionRepository;
-    private final PrinterService printerService;
+    private final ArchivedSessionRepository archivedSessionRepository;
+    private final PrinterCatalog printerCatalog;
+    private final SessionWriter sessionWriter;
     private final CloudinaryService cloudinaryService;
+    private final DocumentAnalyzer documentAnalyzer;
+    private final StoredObjectService storedObjectService;
     private final QRCodeService qrCodeService;
+    private final SessionStateMachine sessionStateMachine;
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${app.base-url}")
     private String baseUrl;
@@ -37,22 +68,28 @@ public class SessionService {
     @Value("${app.session.expiration-minutes}")
     private Integer sessionExpirationMinutes;
 
-    @Transactional
+    @Value("${app.upload.callback-base-url}")
+    private String uploadCallbackBaseUrl;
+
+    @Value("${app.upload.max-bytes}")
+    private Long uploadMaxBytes;
+
+    /**
+     * Create a session without a database round trip: the printer comes from the catalog and
+     * the row is written by the {@link SessionWriter} shortly after. The numeric id is not known
+     * until then, so it is left out of the response.
+     */
     public SessionResponseDto createSession(Long printerId) {
-        log.info("Creating session for printer: {}", printerId);
+        log.debug("Creating session for printer: {}", printerId);
 
-        Printer printer = printerService.findById(printerId);
+        PrinterCatalog.PrinterInfo printer = printerCatalog.get(printerId);
         String sessionId = UUID.randomUUID().toString();
+        printTracing.tagCurrent(sessionId, printerId);
 
-        Session session = Session.builder()
-                .sessionId(sessionId)
-                .printer(printer)
-                .status(Session.SessionStatus.ACTIVE)
-                .paymentStatus(Session.PaymentStatus.PENDING)
-                .expiresAt(LocalDateTime.now().plusMinutes(sessionExpirationMinutes))
-                .build();
-
-        session = sessionRepository.save(session);
+        LocalDateTime now = LocalDateTime.now();
+        SessionWriter.PendingSession session = new SessionWriter.PendingSession(
+                sessionId, printerId, now, now.plusMinutes(sessionExpirationMinutes));
+        sessionWriter.submit(session);
 
         // Generate QR code URL
         String qrUrl = frontendUrl + "/session/" + sessionId;
@@ -60,58 +97,84 @@ public class SessionService {
         log.info("Session created with ID: {}", sessionId);
 
         return SessionResponseDto.builder()
-                .id(session.getId())
                 .sessionId(sessionId)
-                .printerName(printer.getName())
-                .pricePerPage(printer.getPricePerPageBw())
-                .colorOptions(printer.getColorSupported() ?
-                        Arrays.asList("BW", "Color") : Arrays.asList("BW"))
-                .expiresAt(session.getExpiresAt())
-                .status(session.getStatus().name())
+                .printerName(printer.name())
+                .pricePerPage(printer.pricePerPageBw())
+                .colorOptions(printer.colorOptions())
+                .expiresAt(session.expiresAt())
+                .status(Session.SessionStatus.ACTIVE.name())
                 .qrUrl(qrUrl)
                 .build();
     }
 
     public SessionResponseDto getSessionDetails(String sessionId) {
+        // A session created moments ago may not have its row yet
+        SessionWriter.PendingSession pending = sessionWriter.find(sessionId).orElse(null);
+        if (pending != null) {
+            PrinterCatalog.PrinterInfo printer = printerCatalog.get(pending.printerId());
+            return SessionResponseDto.builder()
+                    .sessionId(sessionId)
+                    .printerName(printer.name())
+                    .pricePerPage(printer.pricePerPageBw())
+                    .colorOptions(printer.colorOptions())
+                    .expiresAt(pending.expiresAt())
+                    .status(Session.SessionStatus.ACTIVE.name())
+                    .build();
+        }
+
         Session session = sessionRepository.findBySessionId(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
 
-        Printer printer = session.getPrinter();
+        PrinterCatalog.PrinterInfo printer = printerCatalog.get(session.getPrinter().getId());
 
         return SessionResponseDto.builder()
                 .id(session.getId())
                 .sessionId(sessionId)
-                .printerName(printer.getName())
-                .pricePerPage(printer.getPricePerPageBw())
-                .colorOptions(printer.getColorSupported() ?
-                        Arrays.asList("BW", "Color") : Arrays.asList("BW"))
+                .printerName(printer.name())
+                .pricePerPage(printer.pricePerPageBw())
+                .colorOptions(printer.colorOptions())
                 .expiresAt(session.getExpiresAt())
                 .status(session.getStatus().name())
                 .build();
     }
 
-    @Transactional
+    /**
+     * Store the session's document. The page count, and so the amount, is worked out here
+     * from the file itself.
+     *
+     * Page counting and the uploads to storage run before any transaction, so none of them holds
+     * a pooled connection. A short transaction then takes the reference on the stored document
+     * and points the session at it; if it fails, the uploads it would have referenced are deleted.
+     */
     public UploadResponseDto uploadFile(String sessionId, MultipartFile file,
-                                        Integer pageCount, Session.ColorMode colorMode) throws IOException {
-        log.info("Uploading file for session: {}", sessionId);
+                                        Session.ColorMode colorMode) throws IOException {
+        log.debug("Uploading file for session: {}", sessionId);
 
-        Session session = sessionRepository.findBySessionId(sessionId)
+        Session session = loadSession(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
 
-        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
-            throw new RuntimeException("Session has expired");
+        Timer.Sample sample = printMetrics.start();
+        Long printerId = session.getPrinter().getId();
+        printTracing.tagCurrent(sessionId, printerId);
+        try {
+            UploadResponseDto response = printTracing.trace("print.upload.store", sessionId, printerId,
+                    () -> storeUpload(session, file, colorMode));
+            printMetrics.recordUpload(sample, PrintMetrics.SUCCESS);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            printMetrics.recordUpload(sample, PrintMetrics.FAILURE);
+            throw e;
         }
+    }
 
-        // Upload file to Cloudinary
-        Map<String, Object> uploadResult = cloudinaryService.uploadFile(file);
-        String cloudinaryUrl = (String) uploadResult.get("secure_url");
-        String publicId = (String) uploadResult.get("public_id");
+    private UploadResponseDto storeUpload(Session session, MultipartFile file,
+                                          Session.ColorMode colorMode) throws IOException {
+        String sessionId = session.getSessionId();
 
-        // Calculate amount
-        Printer printer = session.getPrinter();
-        double pricePerPage = colorMode == Session.ColorMode.COLOR ?
-                printer.getPricePerPageColor() : printer.getPricePerPageBw();
-        double amount = pageCount * pricePerPage;
+        // Checked again in the transaction; this only spares the work for a session that is done
+        assertCanUpload(session);
+
+        DocumentAnalysis analysis = documentAnalyzer.analyze(file);
 
         // Generate QR code and upload to Cloudinary
         String qrData = frontendUrl + "/session/" + sessionId;
@@ -120,30 +183,274 @@ public class SessionService {
                 qrCodeBytes,
                 "qr-" + sessionId + ".png"
         );
-        String qrCodeUrl = (String) qrUploadResult.get("secure_url");
+        String qrCodePublicId = (String) qrUploadResult.get("public_id");
+
+        StoredObjectService.Upload upload = null;
+        StoredObjectView stored;
+        try {
+            upload = storedObjectService.uploadIfAbsent(analysis.contentHash(), file);
+            stored = attach(sessionId, file.getOriginalFilename(), analysis, colorMode, upload);
+            if (stored == null) {
+                // The stored copy was released after it was looked up, so this upload needs its own
+                upload = storedObjectService.upload(file);
+                stored = attach(sessionId, file.getOriginalFilename(), analysis, colorMode, upload);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing references the uploads now
+            deleteRemote(qrCodePublicId);
+            if (upload != null) {
+                deleteRemote(upload.publicId());
+            }
+            throw e;
+        }
+
+        if (upload != null && !upload.publicId().equals(stored.getPublicId())) {
+            log.info("Stored document {} was uploaded concurrently, discarding {}",
+                    analysis.contentHash(), upload.publicId());
+            deleteRemote(upload.publicId());
+        }
+
+        log.info("File uploaded successfully to Cloudinary: {}", stored.getUrl());
+
+        return UploadResponseDto.builder()
+                .uploadUrl(stored.getUrl())
+                .fileKey(stored.getPublicId())
+                .expiresIn(0L) // Not applicable for Cloudinary
+                .build();
+    }
+
+    /**
+     * The upload's transaction: reference the stored document and point the session at it
+     *
+     * @return null if there was no upload and the stored copy has been released since
+     */
+    private StoredObjectView attach(String sessionId, String fileName, DocumentAnalysis analysis,
+                                    Session.ColorMode colorMode, StoredObjectService.Upload upload) {
+        return transactionTemplate.execute(status -> {
+            Session session = sessionRepository.findBySessionId(sessionId)
+                    .orElseThrow(() -> new RuntimeException("Session not found"));
+            assertCanUpload(session);
+
+            StoredObjectView stored = storedObjectService.acquire(analysis.contentHash(), upload);
+            if (stored != null) {
+                attachDocument(session, fileName, analysis, colorMode, stored);
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Sign an upload the client sends straight to Cloudinary, so no document bytes pass through
+     * this service. Storage reports the finished upload to {@link #completeDirectUpload}, which
+     * moves the session to UPLOADED; clients follow it on the status endpoint.
+     */
+    public UploadResponseDto generateUploadUrl(String sessionId, UploadRequestDto dto) {
+        Session session = loadSession(sessionId)
+                .orElseThrow(() -> new RuntimeException("Session not found"));
+
+        assertCanUpload(session);
+        if (!DIRECT_UPLOAD_CONTENT_TYPES.contains(dto.getContentType())) {
+            throw new IllegalArgumentException("Direct uploads accept PDF, JPG and PNG");
+        }
+
+        // The colour mode travels in the signed public id, so storage hands it back on completion
+        String key = sessionId + "/" + dto.getColorMode().name().toLowerCase() + "/" + UUID.randomUUID();
+        Map<String, Object> params = cloudinaryService.signDirectUpload(key,
+                uploadCallbackBaseUrl + "/api/session/" + sessionId + "/upload-callback");
+
+        long sessionSecondsLeft = Duration.between(LocalDateTime.now(), session.getExpiresAt()).getSeconds();
+        printMetrics.countDirectUpload("signed");
+        log.info("Signed direct upload of {} for session {}", dto.getFilename(), sessionId);
+
+        return UploadResponseDto.builder()
+                .uploadUrl(cloudinaryService.getDirectUploadUrl())
+                .fileKey((String) params.get("public_id"))
+                .expiresIn(Math.min(sessionSecondsLeft, UPLOAD_SIGNATURE_LIFETIME_SECONDS))
+                .uploadParams(params)
+                .build();
+    }
+
+    /**
+     * Attach a document the client uploaded straight to storage, from storage's signed upload
+     * notification. Pages, size, format and digest are storage's own figures, never the client's.
+     * Notifications may be repeated; a document already attached is left as it is. Uploads that
+     * cannot be attached are deleted from storage.
+     */
+    @Transactional
+    public void completeDirectUpload(String sessionId, StorageNotificationDto notification) {
+        String key = cloudinaryService.extractDirectUploadKey(notification.getPublicId());
+        String[] parts = key == null ? new String[0] : key.split("/");
+        if (parts.length != 3 || !parts[0].equals(sessionId)) {
+            printMetrics.countDirectUpload("unknown");
+            throw new IllegalArgumentException("Upload " + notification.getPublicId() + " was not signed for this session");
+        }
+
+        Session.ColorMode colorMode = Session.ColorMode.valueOf(parts[1].toUpperCase());
+        String contentHash = ContentKeys.ofStorageEtag(notification.getEtag());
+
+        Session session = loadSession(sessionId).orElse(null);
+        if (session != null && (notification.getPublicId().equals(session.getFileKey())
+                || (contentHash != null && contentHash.equals(session.getContentHash())
+                && colorMode == session.getColorMode()))) {
+            log.debug("Direct upload {} already attached to session {}", notification.getPublicId(), sessionId);
+            if (!notification.getPublicId().equals(session.getFileKey())) {
+                // A copy of the attached document, or a repeated notification for one deduplicated earlier
+                deleteRemote(notification.getPublicId());
+            }
+            return;
+        }
+
+        String rejection = directUploadRejection(session, notification);
+        if (rejection != null) {
+            log.warn("Rejected direct upload {} for session {}: {}", notification.getPublicId(), sessionId, rejection);
+            printMetrics.countDirectUpload("rejected");
+            deleteRemote(notification.getPublicId());
+            return;
+        }
+
+        Timer.Sample sample = printMetrics.start();
+        Long printerId = session.getPrinter().getId();
+        printTracing.tagCurrent(sessionId, printerId);
+
+        DocumentType type = "pdf".equals(notification.getFormat()) ? DocumentType.PDF : DocumentType.IMAGE;
+        DocumentAnalysis analysis = new DocumentAnalysis(contentHash, type,
+                type == DocumentType.PDF ? notification.getPages() : 1);
+        String fileName = notification.getOriginalFilename() + "." + notification.getFormat();
+
+        try {
+            StoredObjectView stored = storedObjectService.adopt(analysis.contentHash(),
+                    notification.getPublicId(), notification.getSecureUrl(), notification.getBytes());
+            attachDocument(session, fileName, analysis, colorMode, stored);
+            printMetrics.recordUpload(sample, PrintMetrics.SUCCESS);
+        } catch (RuntimeException e) {
+            printMetrics.recordUpload(sample, PrintMetrics.FAILURE);
+            throw e;
+        }
+
+        printMetrics.countDirectUpload("completed");
+        log.info("Direct upload {} attached to session {}", notification.getPublicId(), sessionId);
+    }
+
+    /**
+     * @return why the upload cannot be attached to the session, or null if it can
+     */
+    private String directUploadRejection(Session session, StorageNotificationDto notification) {
+        if (session == null) {
+            return "session not found";
+        }
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            return "session has expired";
+        }
+        if (!SessionStateMachine.canTransition(session.getStatus(), Session.SessionStatus.UPLOADED)
+                && session.getStatus() != Session.SessionStatus.UPLOADED) {
+            return "session is " + session.getStatus();
+        }
+        if (!Set.of("pdf", "jpg", "png").contains(notification.getFormat())) {
+            return "format " + notification.getFormat() + " is not supported";
+        }
+        if (notification.getBytes() == null || notification.getBytes() > uploadMaxBytes) {
+            return "file is larger than " + uploadMaxBytes + " bytes";
+        }
+        if (ContentKeys.ofStorageEtag(notification.getEtag()) == null) {
+            return "storage reported no MD5 digest";
+        }
+        if ("pdf".equals(notification.getFormat())
+                && (notification.getPages() == null || notification.getPages() < 1)) {
+            return "storage reported no page count";
+        }
+        return null;
+    }
+
+    /**
+     * Read a session that is about to be changed, writing it first if it is still pending
+     */
+    private Optional<Session> loadSession(String sessionId) {
+        sessionWriter.awaitWritten(sessionId);
+        return sessionRepository.findBySessionId(sessionId);
+    }
+
+    private void assertCanUpload(Session session) {
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("Session has expired");
+        }
+        sessionStateMachine.assertCanEnter(session.getStatus(), Session.SessionStatus.UPLOADED);
+    }
+
+    /**
+     * Point the session at a stored document and price it
+     */
+    private void attachDocument(Session session, String fileName, DocumentAnalysis analysis,
+                                Session.ColorMode colorMode, StoredObjectView stored) {
+        String sessionId = session.getSessionId();
+
+        // Calculate amount
+        PrinterCatalog.PrinterInfo printer = printerCatalog.get(session.getPrinter().getId());
+        double amount = analysis.pageCount() * printer.pricePerPage(colorMode);
+
+        // A replaced document is released once this upload commits. When it is the same document,
+        // the reference just taken keeps it alive.
+        if (session.getFileKey() != null) {
+            eventPublisher.publishEvent(new DocumentReleasedEvent(
+                    sessionId, session.getContentHash(), session.getFileKey()));
+        }
 
         // Update session
-        session.setFileName(file.getOriginalFilename());
-        session.setFileUrl(cloudinaryUrl);
-        session.setFileKey(publicId);
-        session.setPageCount(pageCount);
+        session.setFileName(fileName);
+        session.setFileUrl(stored.getUrl());
+        session.setFileKey(stored.getPublicId());
+        session.setContentHash(analysis.contentHash());
+        session.setPageCount(analysis.pageCount());
         session.setColorMode(colorMode);
         session.setAmount(amount);
-        session.setStatus(Session.SessionStatus.UPLOADED);
         sessionRepository.save(session);
 
-        log.info("File uploaded successfully to Cloudinary: {}", cloudinaryUrl);
+        // Through the state machine, so ACTIVE -> UPLOADED is published like every other transition.
+        // A replacement upload leaves an UPLOADED session where it is.
+        if (session.getStatus() != Session.SessionStatus.UPLOADED
+                && !sessionStateMachine.transition(sessionId, Session.SessionStatus.ACTIVE, Session.SessionStatus.UPLOADED)) {
+            throw new InvalidStateTransitionException(
+                    "Session cannot move from " + session.getStatus() + " to " + Session.SessionStatus.UPLOADED);
+        }
 
-        return UploadResponseDto.builder()
-                .uploadUrl(cloudinaryUrl)
-                .fileKey(publicId)
-                .expiresIn(0L) // Not applicable for Cloudinary
-                .build();
+        eventPublisher.publishEvent(new DocumentUploadedEvent(
+                sessionId, analysis.contentHash(), analysis.type(), colorMode));
+    }
+
+    private void deleteRemote(String publicId) {
+        try {
+            cloudinaryService.deleteFile(publicId);
+        } catch (IOException e) {
+            log.error("Failed to delete rejected upload {}", publicId, e);
+        }
     }
 
     public SessionStatusDto getSessionStatus(String sessionId) {
-        Session session = sessionRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+        SessionWriter.PendingSession pending = sessionWriter.find(sessionId).orElse(null);
+        if (pending != null) {
+            return SessionStatusDto.builder()
+                    .sessionId(sessionId)
+                    .status(Session.SessionStatus.ACTIVE.name())
+                    .paymentStatus(Session.PaymentStatus.PENDING.name())
+                    .createdAt(pending.createdAt())
+                    .build();
+        }
+
+        Session session = sessionRepository.findBySessionId(sessionId).orElse(null);
+        if (session == null) {
+            // Finished sessions are moved to the archive after a day
+            return archivedSessionRepository.findBySessionId(sessionId)
+                    .map(archived -> SessionStatusDto.builder()
+                            .sessionId(sessionId)
+                            .status(archived.getStatus().name())
+                            .paymentStatus(archived.getPaymentStatus().name())
+                            .fileName(archived.getFileName())
+                            .pageCount(archived.getPageCount())
+                            .amount(archived.getAmount())
+                            .createdAt(archived.getCreatedAt())
+                            .updatedAt(archived.getUpdatedAt())
+                            .build())
+                    .orElseThrow(() -> new RuntimeException("Session not found"));
+        }
 
         return SessionStatusDto.builder()
                 .sessionId(sessionId)
@@ -157,53 +464,58 @@ public class SessionService {
                 .build();
     }
 
-    @Transactional
     public void updateSessionStatus(String sessionId, Session.SessionStatus status) {
-        Session session = sessionRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+        if (!sessionStateMachine.transition(sessionId, status)) {
+            log.debug("Session {} already in status {}", sessionId, status);
+        }
+    }
 
-        session.setStatus(status);
-        sessionRepository.save(session);
+    /**
+     * Move the session to the target status only if it is still in the expected one
+     *
+     * @return true if this call made the transition
+     */
+    public boolean transitionStatus(String sessionId, Session.SessionStatus expected, Session.SessionStatus target) {
+        boolean updated = sessionStateMachine.transition(sessionId, expected, target);
 
-        log.info("Updated session {} status to {}", sessionId, status);
+        if (!updated) {
+            log.warn("Session {} was not in status {}, not moving to {}", sessionId, expected, target);
+        }
+        return updated;
     }
 
-    @Transactional
-    public void updatePaymentStatus(String sessionId, Session.PaymentStatus paymentStatus) {
-        Session session = sessionRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+    /**
+     * Record a captured payment for the session
+     *
+     * @return true if the session is paid, false if it could no longer be printed and the
+     * payment must be refunded
+     */
+    public boolean acceptPayment(String sessionId) {
+        return sessionStateMachine.acceptPayment(sessionId);
+    }
 
-        session.setPaymentStatus(paymentStatus);
-        if (paymentStatus == Session.PaymentStatus.PAID) {
-            session.setStatus(Session.SessionStatus.PAID);
+    public void updatePaymentStatus(String sessionId, Session.PaymentStatus paymentStatus) {
+        if (!sessionStateMachine.transitionPayment(sessionId, paymentStatus)) {
+            log.debug("Session {} payment already {}", sessionId, paymentStatus);
         }
-        sessionRepository.save(session);
-
-        log.info("Updated session {} payment status to {}", sessionId, paymentStatus);
     }
 
     public Session findBySessionId(String sessionId) {
-        return sessionRepository.findBySessionId(sessionId)
+        return loadSession(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
     }
 
     @Transactional
     public void cleanupExpiredSessions() {
-        List<Session> expiredSessions = sessionRepository.findExpiredSessions(LocalDateTime.now());
+        // Mark sessions as expired in one statement, then release their files
+        List<ExpiredSessionView> expiredSessions = sessionStateMachine.expireSessions(LocalDateTime.now());
 
-        for (Session session : expiredSessions) {
-            // Delete file from Cloudinary if exists
+        for (ExpiredSessionView session : expiredSessions) {
+            // Release the session's document once the expiry commits
             if (session.getFileKey() != null) {
-                try {
-                    cloudinaryService.deleteFile(session.getFileKey());
-                } catch (Exception e) {
-                    log.error("Failed to delete file for expired session: {}", session.getSessionId(), e);
-                }
+                eventPublisher.publishEvent(new DocumentReleasedEvent(
+                        session.getSessionId(), session.getContentHash(), session.getFileKey()));
             }
-
-            // Mark session as expired
-            session.setStatus(Session.SessionStatus.EXPIRED);
-            sessionRepository.save(session);
         }
 
         if (!expiredSessions.isEmpty()) {
@@ -215,13 +527,10 @@ public class SessionService {
     public void deleteSession(String sessionId) {
         Session session = findBySessionId(sessionId);
 
-        // Delete file from Cloudinary
+        // Release the session's document once the delete commits
         if (session.getFileKey() != null) {
-            try {
-                cloudinaryService.deleteFile(session.getFileKey());
-            } catch (Exception e) {
-                log.error("Failed to delete file for session: {}", sessionId, e);
-            }
+            eventPublisher.publishEvent(new DocumentReleasedEvent(
+                    sessionId, session.getContentHash(), session.getFileKey()));
         }
 
         sessionRepository.delete(session);
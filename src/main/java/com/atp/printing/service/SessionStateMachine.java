@@ -0,0 +1,273 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.Session.PaymentStatus;
+import com.atp.printing.entity.Session.SessionStatus;
+import com.atp.printing.event.SessionStatusChangedEvent;
+import com.atp.printing.exception.InvalidStateTransitionException;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.ExpiredSessionView;
+import com.atp.printing.repository.projection.SessionStateView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Owns every change to a session's status and payment status.
+ *
+ * Transitions are applied as compare-and-set updates against the status that was read,
+ * so concurrent callers never overwrite each other: the loser re-reads and either finds
+ * the target already reached, retries from the new state, or gets an illegal transition.
+ * Both graphs are acyclic, so the retry loop is bounded by the number of states.
+ *
+ * An illegal transition is found before anything is written, so it does not mark a caller's
+ * transaction rollback-only; a caller that handles it can still commit its own work.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SessionStateMachine {
+
+    private static final Map<SessionStatus, Set<SessionStatus>> STATUS_TRANSITIONS = new EnumMap<>(SessionStatus.class);
+    private static final Map<PaymentStatus, Set<PaymentStatus>> PAYMENT_TRANSITIONS = new EnumMap<>(PaymentStatus.class);
+
+    static {
+        STATUS_TRANSITIONS.put(SessionStatus.ACTIVE,
+                EnumSet.of(SessionStatus.UPLOADED, SessionStatus.FAILED, SessionStatus.EXPIRED));
+        STATUS_TRANSITIONS.put(SessionStatus.UPLOADED,
+                EnumSet.of(SessionStatus.PAID, SessionStatus.FAILED, SessionStatus.EXPIRED));
+        // A fast printer may report COMPLETED before the server has recorded PRINTING
+        STATUS_TRANSITIONS.put(SessionStatus.PAID,
+                EnumSet.of(SessionStatus.PRINTING, SessionStatus.COMPLETED, SessionStatus.FAILED, SessionStatus.EXPIRED));
+        STATUS_TRANSITIONS.put(SessionStatus.PRINTING,
+                EnumSet.of(SessionStatus.COMPLETED, SessionStatus.FAILED, SessionStatus.EXPIRED));
+        STATUS_TRANSITIONS.put(SessionStatus.COMPLETED, EnumSet.noneOf(SessionStatus.class));
+        STATUS_TRANSITIONS.put(SessionStatus.FAILED, EnumSet.noneOf(SessionStatus.class));
+        STATUS_TRANSITIONS.put(SessionStatus.EXPIRED, EnumSet.noneOf(SessionStatus.class));
+
+        PAYMENT_TRANSITIONS.put(PaymentStatus.PENDING,
+                EnumSet.of(PaymentStatus.PAID, PaymentStatus.FAILED, PaymentStatus.REFUND_REQUIRED));
+        // A failed attempt can be retried with a new order
+        PAYMENT_TRANSITIONS.put(PaymentStatus.FAILED, EnumSet.of(PaymentStatus.PAID, PaymentStatus.REFUND_REQUIRED));
+        PAYMENT_TRANSITIONS.put(PaymentStatus.PAID, EnumSet.of(PaymentStatus.REFUNDED));
+        // Money captured for a session that could no longer be printed
+        PAYMENT_TRANSITIONS.put(PaymentStatus.REFUND_REQUIRED, EnumSet.of(PaymentStatus.REFUNDED));
+        PAYMENT_TRANSITIONS.put(PaymentStatus.REFUNDED, EnumSet.noneOf(PaymentStatus.class));
+    }
+
+    private final SessionRepository sessionRepository;
+    private final SessionWriter sessionWriter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public static boolean canTransition(SessionStatus from, SessionStatus to) {
+        return STATUS_TRANSITIONS.getOrDefault(from, Collections.emptySet()).contains(to);
+    }
+
+    public static boolean canTransition(PaymentStatus from, PaymentStatus to) {
+        return PAYMENT_TRANSITIONS.getOrDefault(from, Collections.emptySet()).contains(to);
+    }
+
+    /**
+     * Check that a session in the given status may move to (or stay in) the target status
+     */
+    public void assertCanEnter(SessionStatus current, SessionStatus target) {
+        if (current != target && !canTransition(current, target)) {
+            throw new InvalidStateTransitionException(
+                    "Session cannot move from " + current + " to " + target);
+        }
+    }
+
+    /**
+     * Move a session to the target status from whatever status it is in now
+     *
+     * @return true if this call made the transition, false if the session was already there
+     */
+    @Transactional(noRollbackFor = InvalidStateTransitionException.class)
+    public boolean transition(String sessionId, SessionStatus target) {
+        for (int attempt = 0; attempt <= SessionStatus.values().length; attempt++) {
+            SessionStateView state = loadState(sessionId);
+            SessionStatus from = state.getStatus();
+
+            if (from == target) {
+                return false;
+            }
+            assertCanEnter(from, target);
+
+            LocalDateTime now = LocalDateTime.now();
+            if (sessionRepository.compareAndSetStatus(sessionId, from, target, now) > 0) {
+                publish(sessionId, state, target, state.getPaymentStatus(), now);
+                return true;
+            }
+            log.debug("Lost transition race on session {} from {}, retrying", sessionId, from);
+        }
+
+        throw new IllegalStateException("Session " + sessionId + " did not settle while moving to " + target);
+    }
+
+    /**
+     * Move a session to the target status only if it is currently in the expected one
+     *
+     * @return true if this call made the transition
+     */
+    @Transactional(noRollbackFor = InvalidStateTransitionException.class)
+    public boolean transition(String sessionId, SessionStatus expected, SessionStatus target) {
+        if (!canTransition(expected, target)) {
+            throw new InvalidStateTransitionException(
+                    "Session cannot move from " + expected + " to " + target);
+        }
+
+        SessionStateView state = loadState(sessionId);
+        if (state.getStatus() != expected) {
+            return false;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (sessionRepository.compareAndSetStatus(sessionId, expected, target, now) == 0) {
+            return false;
+        }
+
+        publish(sessionId, state, target, state.getPaymentStatus(), now);
+        return true;
+    }
+
+    /**
+     * Record a captured payment. The session moves to PAID if it still can; a session that expired
+     * or failed before the money arrived keeps the payment as REFUND_REQUIRED instead, so it is
+     * never printed and never silently kept.
+     *
+     * @return true if the session is paid, false if the payment must be refunded
+     */
+    @Transactional(noRollbackFor = InvalidStateTransitionException.class)
+    public boolean acceptPayment(String sessionId) {
+        for (int attempt = 0; attempt <= PaymentStatus.values().length + SessionStatus.values().length; attempt++) {
+            SessionStateView state = loadState(sessionId);
+            PaymentStatus fromPayment = state.getPaymentStatus();
+            SessionStatus fromStatus = state.getStatus();
+
+            if (fromPayment == PaymentStatus.PAID) {
+                return true;
+            }
+            if (fromPayment == PaymentStatus.REFUND_REQUIRED) {
+                return false;
+            }
+
+            boolean payable = canTransition(fromStatus, SessionStatus.PAID);
+            PaymentStatus targetPayment = payable ? PaymentStatus.PAID : PaymentStatus.REFUND_REQUIRED;
+            SessionStatus targetStatus = payable ? SessionStatus.PAID : fromStatus;
+            if (!canTransition(fromPayment, targetPayment)) {
+                throw new InvalidStateTransitionException(
+                        "Session payment cannot move from " + fromPayment + " to " + targetPayment);
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            if (sessionRepository.compareAndSetState(sessionId, fromStatus, fromPayment,
+                    targetStatus, targetPayment, now) > 0) {
+                if (!payable) {
+                    log.warn("Payment received for session {} in status {}, marked for refund", sessionId, fromStatus);
+                }
+                publish(sessionId, state, targetStatus, targetPayment, now);
+                return payable;
+            }
+            log.debug("Lost payment race on session {} from {}/{}, retrying", sessionId, fromStatus, fromPayment);
+        }
+
+        throw new IllegalStateException("Session " + sessionId + " did not settle while accepting a payment");
+    }
+
+    /**
+     * Apply a payment status change. A successful payment also moves the session to PAID, and is
+     * refused if the session can no longer be paid for; see {@link #acceptPayment}.
+     *
+     * @return true if this call made the transition, false if the payment status was already there
+     */
+    @Transactional(noRollbackFor = InvalidStateTransitionException.class)
+    public boolean transitionPayment(String sessionId, PaymentStatus target) {
+        // Either graph can advance under us, so allow a retry for every state in both
+        for (int attempt = 0; attempt <= PaymentStatus.values().length + SessionStatus.values().length; attempt++) {
+            SessionStateView state = loadState(sessionId);
+            PaymentStatus fromPayment = state.getPaymentStatus();
+            SessionStatus fromStatus = state.getStatus();
+
+            if (fromPayment == target) {
+                return false;
+            }
+            if (!canTransition(fromPayment, target)) {
+                throw new InvalidStateTransitionException(
+                        "Session payment cannot move from " + fromPayment + " to " + target);
+            }
+
+            SessionStatus targetStatus = fromStatus;
+            if (target == PaymentStatus.PAID) {
+                assertCanEnter(fromStatus, SessionStatus.PAID);
+                targetStatus = SessionStatus.PAID;
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            if (sessionRepository.compareAndSetState(sessionId, fromStatus, fromPayment,
+                    targetStatus, target, now) > 0) {
+                publish(sessionId, state, targetStatus, target, now);
+                return true;
+            }
+            log.debug("Lost payment transition race on session {} from {}, retrying", sessionId, fromPayment);
+        }
+
+        throw new IllegalStateException("Session " + sessionId + " did not settle while moving payment to " + target);
+    }
+
+    /**
+     * Expire every live session past its expiry time in one statement
+     */
+    @Transactional
+    public List<ExpiredSessionView> expireSessions(LocalDateTime now) {
+        List<ExpiredSessionView> expired = sessionRepository.expireSessionsBefore(now);
+
+        for (ExpiredSessionView session : expired) {
+            eventPublisher.publishEvent(new SessionStatusChangedEvent(
+                    session.getSessionId(),
+                    session.getPrinterId(),
+                    SessionStatus.valueOf(session.getPreviousStatus()),
+                    SessionStatus.EXPIRED,
+                    null,
+                    null,
+                    null,
+                    null,
+                    now
+            ));
+        }
+        return expired;
+    }
+
+    private SessionStateView loadState(String sessionId) {
+        // A session created moments ago may not have its row yet
+        sessionWriter.awaitWritten(sessionId);
+        return sessionRepository.findStateBySessionId(sessionId)
+                .orElseThrow(() -> new RuntimeException("Session not found"));
+    }
+
+    private void publish(String sessionId, SessionStateView from, SessionStatus toStatus,
+                         PaymentStatus toPaymentStatus, LocalDateTime now) {
+        log.info("Session {} moved {}/{} -> {}/{}", sessionId,
+                from.getStatus(), from.getPaymentStatus(), toStatus, toPaymentStatus);
+
+        eventPublisher.publishEvent(new SessionStatusChangedEvent(
+                sessionId,
+                from.getPrinterId(),
+                from.getStatus(),
+                toStatus,
+                from.getPaymentStatus(),
+                toPaymentStatus,
+                from.getPageCount(),
+                from.getAmount(),
+                now
+        ));
+    }
+}
@@ -0,0 +1,246 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.PrinterRepository;
+import com.atp.printing.repository.SessionRepository;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts new sessions in batches, off the request path.
+ *
+ * Session creation hands the new session over and returns without touching the database. A
+ * single writer thread inserts whatever is queued every flush-interval-ms, batch-size rows per
+ * transaction (one JDBC batch). Until its row is committed a session is served from the pending
+ * map, so reads on this instance see it at once, and anything about to change it calls
+ * {@link #awaitWritten}, which writes that session on its own first.
+ *
+ * Read-your-writes holds on the creating instance only: another instance has no pending entry
+ * and reports the session as not found until its row is committed. Deployments running more
+ * than one instance without session affinity must set async to false, so sessions are
+ * inserted on the request thread as they are created.
+ *
+ * When max-pending sessions are waiting the creating thread writes the queue itself, so a slow
+ * database slows session creation down instead of growing the heap. Pending sessions are
+ * written on shutdown; a crash loses at most one interval of unscanned sessions, which their
+ * customers simply scan again.
+ */
+@Slf4j
+@Component
+public class SessionWriter {
+
+    private final SessionRepository sessionRepository;
+    private final PrinterRepository printerRepository;
+    private final PrintMetrics printMetrics;
+    private final TransactionTemplate writeTransaction;
+    private final boolean async;
+    private final int batchSize;
+    private final int maxPending;
+    private final ScheduledExecutorService flusher;
+
+    private final Map<String, PendingSession> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<PendingSession> queue = new ConcurrentLinkedQueue<>();
+
+    // Held while a batch is written, so awaitWritten can wait for a session a flush has taken
+    private final Object writeLock = new Object();
+
+    public SessionWriter(SessionRepository sessionRepository,
+                         PrinterRepository printerRepository,
+                         PrintMetrics printMetrics,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${app.session.writer.async}") boolean async,
+                         @Value("${app.session.writer.flush-interval-ms}") long flushIntervalMs,
+                         @Value("${app.session.writer.batch-size}") int batchSize,
+                         @Value("${app.session.writer.max-pending}") int maxPending) {
+        this.sessionRepository = sessionRepository;
+        this.printerRepository = printerRepository;
+        this.printMetrics = printMetrics;
+        // Never joins a caller's transaction: a written session must not roll back with it
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.async = async;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        printMetrics.trackPendingSessions(pending);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("session-writer-"));
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    public void submit(PendingSession session) {
+        if (!async) {
+            insert(List.of(session));
+            return;
+        }
+        pending.put(session.sessionId(), session);
+        queue.add(session);
+
+        if (pending.size() > maxPending) {
+            log.warn("{} sessions waiting to be written, writing on the request thread", pending.size());
+            flush();
+        }
+    }
+
+    /**
+     * The session as created, if its row has not been written yet
+     */
+    public Optional<PendingSession> find(String sessionId) {
+        return Optional.ofNullable(pending.get(sessionId));
+    }
+
+    /**
+     * Make sure the session's row exists before it is read from or changed in the database.
+     * Writes only this session, or waits for the one batch a flush has already taken it into.
+     */
+    public void awaitWritten(String sessionId) {
+        PendingSession session = pending.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        if (queue.remove(session)) {
+            // Claimed from the queue, so no flush can be writing it as well
+            if (!writeOne(session)) {
+                queue.add(session);
+            }
+        } else {
+            awaitBatchInFlight();
+        }
+        if (pending.containsKey(sessionId)) {
+            throw new RuntimeException("Session is not saved yet, please retry");
+        }
+    }
+
+    /**
+     * Write every queued session. Sessions that could not be written for a transient reason stay
+     * queued for the next attempt.
+     */
+    public void flush() {
+        while (!queue.isEmpty()) {
+            synchronized (writeLock) {
+                List<PendingSession> batch = new ArrayList<>(batchSize);
+                PendingSession next;
+                while (batch.size() < batchSize && (next = queue.poll()) != null) {
+                    batch.add(next);
+                }
+                if (batch.isEmpty() || !write(batch)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Batches are taken from the queue and written under the lock, so once it is free the
+     * batch holding a session that was no longer queued has been written or put back
+     */
+    private void awaitBatchInFlight() {
+        synchronized (writeLock) {
+            // Acquiring the lock is the wait
+        }
+    }
+
+    /**
+     * @return false if the batch was put back because the database could not be written
+     */
+    private boolean write(List<PendingSession> batch) {
+        Timer.Sample sample = printMetrics.start();
+        try {
+            insert(batch);
+            printMetrics.recordSessionWrite(sample, batch.size(), PrintMetrics.SUCCESS);
+        } catch (DataIntegrityViolationException e) {
+            // One bad row fails the whole batch; write them one by one to find it
+            log.warn("Batch of {} sessions was refused, writing them one at a time", batch.size());
+            printMetrics.recordSessionWrite(sample, batch.size(), PrintMetrics.FAILURE);
+            for (int i = 0; i < batch.size(); i++) {
+                if (!writeOne(batch.get(i))) {
+                    queue.addAll(batch.subList(i, batch.size()));
+                    return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} sessions, will retry", batch.size(), e);
+            printMetrics.recordSessionWrite(sample, batch.size(), PrintMetrics.FAILURE);
+            queue.addAll(batch);
+            return false;
+        }
+        batch.forEach(session -> pending.remove(session.sessionId()));
+        return true;
+    }
+
+    /**
+     * @return false if the database could not be written; a session the database refuses is dropped
+     */
+    private boolean writeOne(PendingSession session) {
+        try {
+            insert(List.of(session));
+        } catch (DataIntegrityViolationException e) {
+            log.error("Dropped session {} for printer {}: {}", session.sessionId(), session.printerId(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to write session {}, will retry", session.sessionId(), e);
+            return false;
+        }
+        pending.remove(session.sessionId());
+        return true;
+    }
+
+    private void insert(List<PendingSession> batch) {
+        writeTransaction.executeWithoutResult(status -> {
+            List<Session> sessions = new ArrayList<>(batch.size());
+            for (PendingSession session : batch) {
+                sessions.add(Session.builder()
+                        .sessionId(session.sessionId())
+                        .printer(printerRepository.getReferenceById(session.printerId()))
+                        .status(Session.SessionStatus.ACTIVE)
+                        .paymentStatus(Session.PaymentStatus.PENDING)
+                        .expiresAt(session.expiresAt())
+                        .build());
+            }
+            sessionRepository.saveAll(sessions);
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Session writer flush failed", e);
+        }
+    }
+
+    /**
+     * A created session whose row may not be written yet
+     */
+    public record PendingSession(
+            String sessionId,
+            Long printerId,
+            LocalDateTime createdAt,
+            LocalDateTime expiresAt
+    ) {
+    }
+}
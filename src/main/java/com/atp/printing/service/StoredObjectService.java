@@ -0,0 +1,181 @@
+package com.atp.printing.service;
+
+import com.atp.printing.document.ContentKeys;
+import com.atp.printing.event.DocumentReleasedEvent;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.StoredObjectRepository;
+import com.atp.printing.repository.projection.StoredObjectView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Content-addressed document storage with reference counting.
+ *
+ * Uploads are keyed by their content; see {@link ContentKeys} for the two key namespaces. A
+ * document some session already references is not uploaded again: the new session takes a
+ * reference on the existing object. The remote object is deleted only when the last reference
+ * is released.
+ *
+ * Each upload gets its own public id, never one derived from the hash, so a copy being deleted
+ * after its last release can never be confused with a fresh upload of the same content.
+ */
+@Slf4j
+@Service
+public class StoredObjectService {
+
+    private final StoredObjectRepository storedObjectRepository;
+    private final CloudinaryService cloudinaryService;
+    private final PrintMetrics printMetrics;
+    private final TransactionTemplate releaseTransaction;
+
+    public StoredObjectService(StoredObjectRepository storedObjectRepository,
+                               CloudinaryService cloudinaryService,
+                               PrintMetrics printMetrics,
+                               PlatformTransactionManager transactionManager) {
+        this.storedObjectRepository = storedObjectRepository;
+        this.cloudinaryService = cloudinaryService;
+        this.printMetrics = printMetrics;
+        this.releaseTransaction = new TransactionTemplate(transactionManager);
+        this.releaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Upload the document unless a copy with the same content is stored already. Called before
+     * the transaction that takes the reference, so no connection is held while the bytes go to
+     * storage; see {@link #acquire}.
+     *
+     * @return the new upload, or null if the content is stored already
+     */
+    public Upload uploadIfAbsent(String contentHash, MultipartFile file) throws IOException {
+        if (storedObjectRepository.existsById(contentHash)) {
+            return null;
+        }
+        return upload(file);
+    }
+
+    public Upload upload(MultipartFile file) throws IOException {
+        Map<String, Object> uploadResult = cloudinaryService.uploadFile(file);
+        return new Upload((String) uploadResult.get("public_id"), (String) uploadResult.get("secure_url"), file.getSize());
+    }
+
+    /**
+     * Take a reference on the document with this content, recording the upload if it is the first
+     * copy. Joins the caller's transaction, so the reference commits or rolls back with the session
+     * holding it. Nothing is deleted here: when the stored document is not the upload, the upload
+     * is surplus and the caller deletes it once the transaction is over.
+     *
+     * @return the stored document, or null if there is no upload and the stored copy has been
+     * released since {@link #uploadIfAbsent} found it
+     */
+    @Transactional
+    public StoredObjectView acquire(String contentHash, Upload upload) {
+        Optional<StoredObjectView> existing = storedObjectRepository.acquire(contentHash, LocalDateTime.now());
+        if (existing.isPresent()) {
+            log.info("Reusing stored document {} ({} references)", contentHash, existing.get().getRefCount());
+            printMetrics.countStoredObject("deduplicated");
+            return existing.get();
+        }
+        if (upload == null) {
+            return null;
+        }
+
+        StoredObjectView stored = storedObjectRepository.insertOrAcquire(
+                contentHash, upload.publicId(), upload.url(), upload.size(), LocalDateTime.now());
+        // A concurrent upload of the same content may have been recorded first
+        printMetrics.countStoredObject(upload.publicId().equals(stored.getPublicId()) ? "uploaded" : "deduplicated");
+        return stored;
+    }
+
+    /**
+     * Take a reference on a document the client uploaded to storage itself. If the same content
+     * is stored already, that copy is referenced and the new upload deleted.
+     */
+    @Transactional
+    public StoredObjectView adopt(String contentHash, String publicId, String url, long size) {
+        Optional<StoredObjectView> existing = storedObjectRepository.acquire(contentHash, LocalDateTime.now());
+        if (existing.isPresent()) {
+            log.info("Reusing stored document {} ({} references), discarding {}",
+                    contentHash, existing.get().getRefCount(), publicId);
+            printMetrics.countStoredObject("deduplicated");
+            deleteRemote(publicId);
+            return existing.get();
+        }
+        return record(contentHash, publicId, url, size);
+    }
+
+    private StoredObjectView record(String contentHash, String publicId, String url, long size) {
+        StoredObjectView stored = storedObjectRepository.insertOrAcquire(
+                contentHash, publicId, url, size, LocalDateTime.now());
+
+        if (!publicId.equals(stored.getPublicId())) {
+            // A concurrent upload of the same content was recorded first; ours is surplus
+            log.info("Stored document {} was uploaded concurrently, discarding {}", contentHash, publicId);
+            printMetrics.countStoredObject("deduplicated");
+            deleteRemote(publicId);
+        } else {
+            printMetrics.countStoredObject("uploaded");
+        }
+        return stored;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentReleased(DocumentReleasedEvent event) {
+        if (event.contentHash() != null) {
+            release(event.contentHash());
+        } else if (event.fileKey() != null) {
+            deleteRemote(event.fileKey());
+        }
+    }
+
+    /**
+     * Drop one reference, deleting the remote object and its renditions once nothing references it
+     */
+    public void release(String contentHash) {
+        List<String> deleted = releaseTransaction.execute(status -> {
+            Optional<StoredObjectView> released = storedObjectRepository.release(contentHash);
+            if (released.isEmpty()) {
+                log.warn("Released unknown stored document {}", contentHash);
+                return List.of();
+            }
+            if (released.get().getRefCount() > 0) {
+                return List.of();
+            }
+            List<String> publicIds = new ArrayList<>(storedObjectRepository.deleteRenditions(contentHash));
+            storedObjectRepository.deleteUnreferenced(contentHash);
+            publicIds.add(released.get().getPublicId());
+            return publicIds;
+        });
+
+        if (!deleted.isEmpty()) {
+            printMetrics.countStoredObject("deleted");
+            deleted.forEach(this::deleteRemote);
+        }
+    }
+
+    private void deleteRemote(String publicId) {
+        try {
+            cloudinaryService.deleteFile(publicId);
+        } catch (Exception e) {
+            log.error("Failed to delete stored document {}", publicId, e);
+        }
+    }
+
+    /**
+     * A document in storage that no reference has been taken on yet
+     */
+    public record Upload(String publicId, String url, long size) {
+    }
+}
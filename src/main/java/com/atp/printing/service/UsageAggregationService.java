@@ -0,0 +1,228 @@
+package com.atp.printing.service;
+
+import com.atp.printing.dto.UsageBucketDto;
+import com.atp.printing.dto.UsageStatsDto;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.UsageRollup;
+import com.atp.printing.entity.UsageRollup.Granularity;
+import com.atp.printing.event.SessionStatusChangedEvent;
+import com.atp.printing.repository.UsageRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Maintains revenue, page, job and failure counters per printer and per hour/day bucket.
+ * Failures count print jobs that ended FAILED.
+ *
+ * Committed session transitions are added to in-memory adders, which are drained into
+ * usage_rollups on a fixed delay. Dashboard reads combine the stored buckets with the
+ * not-yet-flushed deltas, so they cost O(buckets) and are never behind by a flush interval.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsageAggregationService {
+
+    private final UsageRollupRepository usageRollupRepository;
+
+    // Deltas not yet written to usage_rollups
+    private final ConcurrentMap<BucketKey, UsageCounters> pending = new ConcurrentHashMap<>();
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSessionStatusChanged(SessionStatusChangedEvent event) {
+        if (event.printerId() == null) {
+            return;
+        }
+
+        // Failures are failed print jobs, as in the V6 backfill; a failed payment can still be retried
+        if (event.isPaymentStatusChange()
+                && event.toPaymentStatus() == Session.PaymentStatus.PAID && event.amount() != null) {
+            record(event, counters -> counters.revenue.add(event.amount()));
+        }
+
+        if (event.isStatusChange()) {
+            if (event.toStatus() == Session.SessionStatus.COMPLETED) {
+                int pages = event.pageCount() != null ? event.pageCount() : 0;
+                record(event, counters -> {
+                    counters.jobs.increment();
+                    counters.pages.add(pages);
+                });
+            } else if (event.toStatus() == Session.SessionStatus.FAILED) {
+                record(event, counters -> counters.failures.increment());
+            }
+        }
+    }
+
+    /**
+     * Write accumulated deltas to usage_rollups. A bucket whose write fails keeps its deltas
+     * for the next flush.
+     */
+    public void flush() {
+        LocalDateTime now = LocalDateTime.now();
+        int written = 0;
+
+        for (Map.Entry<BucketKey, UsageCounters> entry : pending.entrySet()) {
+            BucketKey key = entry.getKey();
+            UsageCounters counters = entry.getValue();
+
+            // Buckets that closed more than an hour ago no longer receive events, so they are
+            // detached before being drained for the last time. Updates run inside compute(), so
+            // once the remove returns no late event can still reach these counters.
+            if (key.end().plusHours(1).isBefore(now)) {
+                pending.remove(key, counters);
+            }
+
+            UsageSnapshot delta = counters.drain();
+            if (delta.isEmpty()) {
+                continue;
+            }
+
+            try {
+                usageRollupRepository.addToBucket(key.printerId(), key.granularity().name(), key.bucketStart(),
+                        delta.revenue(), delta.pages(), delta.jobs(), delta.failures());
+                written++;
+            } catch (Exception e) {
+                log.error("Failed to flush usage bucket {}, keeping deltas for next flush", key, e);
+                update(key, retained -> retained.add(delta));
+            }
+        }
+
+        if (written > 0) {
+            log.debug("Flushed {} usage buckets", written);
+        }
+    }
+
+    /**
+     * Usage for one printer, or all printers when printerId is null, bucketed by the given granularity
+     */
+    public UsageStatsDto getUsage(Long printerId, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = truncate(from, granularity);
+
+        List<UsageRollup> stored = printerId != null
+                ? usageRollupRepository.findPrinterBuckets(printerId, granularity, start, to)
+                : usageRollupRepository.findBuckets(granularity, start, to);
+
+        Map<LocalDateTime, UsageSnapshot> merged = new TreeMap<>();
+        for (UsageRollup rollup : stored) {
+            merged.merge(rollup.getBucketStart(),
+                    new UsageSnapshot(rollup.getRevenue(), rollup.getPages(), rollup.getJobs(), rollup.getFailures()),
+                    UsageSnapshot::plus);
+        }
+
+        pending.forEach((key, counters) -> {
+            if (key.granularity() == granularity
+                    && (printerId == null || printerId.equals(key.printerId()))
+                    && !key.bucketStart().isBefore(start)
+                    && key.bucketStart().isBefore(to)) {
+                merged.merge(key.bucketStart(), counters.peek(), UsageSnapshot::plus);
+            }
+        });
+
+        List<UsageBucketDto> buckets = new ArrayList<>(merged.size());
+        UsageSnapshot total = UsageSnapshot.EMPTY;
+        for (Map.Entry<LocalDateTime, UsageSnapshot> bucket : merged.entrySet()) {
+            UsageSnapshot value = bucket.getValue();
+            total = total.plus(value);
+            buckets.add(UsageBucketDto.builder()
+                    .bucketStart(bucket.getKey())
+                    .revenue(value.revenue())
+                    .pages(value.pages())
+                    .jobs(value.jobs())
+                    .failures(value.failures())
+                    .build());
+        }
+
+        return UsageStatsDto.builder()
+                .printerId(printerId)
+                .granularity(granularity.name())
+                .from(start)
+                .to(to)
+                .totalRevenue(total.revenue())
+                .totalPages(total.pages())
+                .totalJobs(total.jobs())
+                .totalFailures(total.failures())
+                .buckets(buckets)
+                .build();
+    }
+
+    private void record(SessionStatusChangedEvent event, Consumer<UsageCounters> update) {
+        LocalDateTime at = event.occurredAt() != null ? event.occurredAt() : LocalDateTime.now();
+        for (Granularity granularity : Granularity.values()) {
+            update(new BucketKey(event.printerId(), granularity, truncate(at, granularity)), update);
+        }
+    }
+
+    /**
+     * Apply an update while holding the bucket's map entry, so it cannot land in counters that
+     * flush() has already detached and drained
+     */
+    private void update(BucketKey key, Consumer<UsageCounters> update) {
+        pending.compute(key, (k, counters) -> {
+            UsageCounters target = counters != null ? counters : new UsageCounters();
+            update.accept(target);
+            return target;
+        });
+    }
+
+    private static LocalDateTime truncate(LocalDateTime time, Granularity granularity) {
+        return time.truncatedTo(granularity == Granularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+    }
+
+    private record BucketKey(Long printerId, Granularity granularity, LocalDateTime bucketStart) {
+
+        LocalDateTime end() {
+            return granularity == Granularity.HOUR ? bucketStart.plusHours(1) : bucketStart.plusDays(1);
+        }
+    }
+
+    private record UsageSnapshot(double revenue, long pages, long jobs, long failures) {
+
+        static final UsageSnapshot EMPTY = new UsageSnapshot(0, 0, 0, 0);
+
+        boolean isEmpty() {
+            return revenue == 0 && pages == 0 && jobs == 0 && failures == 0;
+        }
+
+        UsageSnapshot plus(UsageSnapshot other) {
+            return new UsageSnapshot(revenue + other.revenue, pages + other.pages,
+                    jobs + other.jobs, failures + other.failures);
+        }
+    }
+
+    private static final class UsageCounters {
+        private final DoubleAdder revenue = new DoubleAdder();
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder jobs = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        UsageSnapshot peek() {
+            return new UsageSnapshot(revenue.sum(), pages.sum(), jobs.sum(), failures.sum());
+        }
+
+        UsageSnapshot drain() {
+            return new UsageSnapshot(revenue.sumThenReset(), pages.sumThenReset(),
+                    jobs.sumThenReset(), failures.sumThenReset());
+        }
+
+        void add(UsageSnapshot delta) {
+            revenue.add(delta.revenue());
+            pages.add(delta.pages());
+            jobs.add(delta.jobs());
+            failures.add(delta.failures());
+        }
+    }
+}
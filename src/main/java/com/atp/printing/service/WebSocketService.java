@@ -2,16 +2,27 @@ package com.atp.printing.service;
 
 import com.atp.printing.dto.WebSocketMessageDto;
 import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.tracing.PrintTracing;
+import com.atp.printing.websocket.BinaryFrameCodec;
+import com.atp.printing.websocket.PrinterConnection;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
@@ -20,58 +31,152 @@ public class WebSocketService {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final S3Service s3Service;
+    private final RenditionService renditionService;
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
+    private final BinaryFrameCodec frameCodec;
 
-    // Map of printer ID to WebSocket session
-    private final Map<Long, WebSocketSession> printerSessions = new ConcurrentHashMap<>();
+    private static final CloseStatus SUPERSEDED = new CloseStatus(4000, "Superseded by a newer connection");
 
-    public void registerPrinterSession(Long printerId, WebSocketSession session) {
-        printerSessions.put(printerId, session);
-        log.info("Registered WebSocket session for printer: {}", printerId);
+    // Map of printer ID to its open connection; each printer has at most one
+    private final Map<Long, PrinterConnection> printerSessions = new ConcurrentHashMap<>();
+
+    // Incremented for every registration, so a connection can tell whether it still owns its printer
+    private final AtomicLong generations = new AtomicLong();
+
+    @Value("${app.websocket.idle-timeout-ms}")
+    private Long idleTimeoutMs;
+
+    @Value("${app.websocket.send-time-limit-ms}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.send-buffer-size-limit}")
+    private int sendBufferSizeLimit;
+
+    /**
+     * Make this session the printer's only connection, closing the one it replaces
+     */
+    public PrinterConnection registerPrinterSession(Long printerId, WebSocketSession session) {
+        PrinterConnection connection = new PrinterConnection(printerId, session, generations.incrementAndGet(),
+                sendTimeLimitMs, sendBufferSizeLimit);
+        PrinterConnection previous = printerSessions.put(printerId, connection);
+        printMetrics.printerConnected(printerId);
+
+        if (previous != null) {
+            log.info("Printer {} reconnected, closing connection generation {}", printerId, previous.getGeneration());
+            previous.close(SUPERSEDED);
+        }
+        log.info("Registered WebSocket session for printer: {} (generation {})", printerId, connection.getGeneration());
+        return connection;
     }
 
-    public void unregisterPrinterSession(Long printerId) {
-        printerSessions.remove(printerId);
+    /**
+     * Remove a connection if it still owns its printer. A close event arriving late from a
+     * superseded socket leaves the newer connection in place.
+     *
+     * @return true if the connection was removed
+     */
+    public boolean unregisterPrinterSession(PrinterConnection connection) {
+        Long printerId = connection.getPrinterId();
+        PrinterConnection current = printerSessions.get(printerId);
+        if (current == null || current.getGeneration() != connection.getGeneration()
+                || !printerSessions.remove(printerId, current)) {
+            return false;
+        }
+
+        printMetrics.printerDisconnected(printerId);
         log.info("Unregistered WebSocket session for printer: {}", printerId);
+        return true;
+    }
+
+    /**
+     * Drop a connection the keepalive gave up on and close its socket
+     */
+    public void evict(PrinterConnection connection, CloseStatus status) {
+        unregisterPrinterSession(connection);
+        connection.close(status);
+    }
+
+    public boolean isRegistered(Long printerId) {
+        return printerSessions.containsKey(printerId);
+    }
+
+    public int getConnectionCount() {
+        return printerSessions.size();
+    }
+
+    public Collection<PrinterConnection> getConnections() {
+        return printerSessions.values();
     }
 
     public void sendPrintJob(Session session) {
         Long printerId = session.getPrinter().getId();
-        WebSocketSession webSocketSession = printerSessions.get(printerId);
+        printTracing.trace("print.job.dispatch", session.getSessionId(), printerId, () -> {
+            dispatchPrintJob(session, printerId);
+            return null;
+        });
+    }
+
+    private void dispatchPrintJob(Session session, Long printerId) {
+        PrinterConnection connection = printerSessions.get(printerId);
 
-        if (webSocketSession == null || !webSocketSession.isOpen()) {
+        Timer.Sample sample = printMetrics.start();
+        if (connection == null || !isAlive(connection)) {
             log.error("No active WebSocket session for printer: {}", printerId);
+            printMetrics.recordDispatch(sample, "offline");
             throw new RuntimeException("Printer is offline");
         }
 
         try {
-            // Generate download URL for the file
-            String downloadUrl = s3Service.generatePresignedDownloadUrl(session.getFileKey());
+            // Prefer the print-ready rendition, which is always a PDF
+            Optional<String> renditionUrl = renditionService.findPrintUrl(session.getContentHash(), session.getColorMode());
+            String downloadUrl = renditionUrl
+                    .orElseGet(() -> s3Service.generatePresignedDownloadUrl(session.getFileKey()));
+            String fileName = renditionUrl.isPresent() ? asPdfName(session.getFileName()) : session.getFileName();
 
             // Create message
             WebSocketMessageDto message = WebSocketMessageDto.builder()
                     .event("print_job")
                     .sessionId(session.getSessionId())
                     .downloadUrl(downloadUrl)
-                    .fileName(session.getFileName())
+                    .fileName(fileName)
                     .pageCount(session.getPageCount())
                     .colorMode(session.getColorMode().name())
+                    .traceparent(printTracing.currentTraceparent())
                     .build();
 
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            webSocketSession.sendMessage(new TextMessage(jsonMessage));
+            if (BinaryFrameCodec.isBinary(connection.getSession())) {
+                frameCodec.sendPrintJob(connection, message);
+            } else {
+                String jsonMessage = objectMapper.writeValueAsString(message);
+                connection.send(new TextMessage(jsonMessage));
+            }
 
+            printMetrics.recordDispatch(sample, PrintMetrics.SUCCESS);
             log.info("Sent print job to printer {} for session: {}", printerId, session.getSessionId());
 
         } catch (IOException e) {
+            printMetrics.recordDispatch(sample, PrintMetrics.FAILURE);
             log.error("Failed to send print job to printer: {}", printerId, e);
             throw new RuntimeException("Failed to send print job", e);
         }
     }
 
+    private static String asPdfName(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        int dot = fileName.lastIndexOf('.');
+        return (dot > 0 ? fileName.substring(0, dot) : fileName) + ".pdf";
+    }
+
+    /**
+     * Send an event as JSON. Binary agents accept text frames for events without a binary layout.
+     */
     public void sendMessage(Long printerId, String event, Object data) {
-        WebSocketSession session = printerSessions.get(printerId);
+        PrinterConnection connection = printerSessions.get(printerId);
 
-        if (session == null || !session.isOpen()) {
+        if (connection == null || !isAlive(connection)) {
             log.warn("Cannot send message - no active session for printer: {}", printerId);
             return;
         }
@@ -83,7 +188,7 @@ public class WebSocketService {
                     .build();
 
             String jsonMessage = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(jsonMessage));
+            connection.send(new TextMessage(jsonMessage));
 
             log.debug("Sent message to printer {}: {}", printerId, event);
 
@@ -93,13 +198,17 @@ public class WebSocketService {
     }
 
     public boolean isPrinterOnline(Long printerId) {
-        WebSocketSession session = printerSessions.get(printerId);
-        return session != null && session.isOpen();
+        PrinterConnection connection = printerSessions.get(printerId);
+        return connection != null && isAlive(connection);
     }
 
     public int getActivePrinterCount() {
         return (int) printerSessions.values().stream()
-                .filter(WebSocketSession::isOpen)
+                .filter(this::isAlive)
                 .count();
     }
+
+    private boolean isAlive(PrinterConnection connection) {
+        return connection.isAlive(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs));
+    }
 }
\ No newline at end of file
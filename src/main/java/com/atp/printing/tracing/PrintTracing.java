@@ -0,0 +1,129 @@
+package com.atp.printing.tracing;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spans for the print lifecycle on top of Micrometer Tracing (exported through the OpenTelemetry
+ * bridge). HTTP requests already get server spans from Spring; this adds child spans for provider
+ * calls and background work, tags spans with the session and printer, and carries the trace
+ * context across the printer WebSocket as a W3C traceparent.
+ */
+@Component
+@RequiredArgsConstructor
+public class PrintTracing {
+
+    public static final String SESSION_ID = "print.session.id";
+    public static final String PRINTER_ID = "print.printer.id";
+    public static final String TRACEPARENT = "traceparent";
+
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    @FunctionalInterface
+    public interface TracedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface TracedRunnable<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Run a call in a child span of the current one, tagged with the session and printer when known
+     */
+    public <T, E extends Exception> T trace(String name, String sessionId, Long printerId,
+                                            TracedCall<T, E> call) throws E {
+        Span span = tag(tracer.nextSpan().name(name), sessionId, printerId).start();
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            return call.call();
+        } catch (Exception e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    public <E extends Exception> void trace(String name, TracedRunnable<E> runnable) throws E {
+        trace(name, null, null, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a call in a span continuing the trace of a traceparent received from a printer agent.
+     * Starts a new trace if the traceparent is missing or invalid.
+     */
+    public <T, E extends Exception> T continueTrace(String traceparent, String name, String sessionId, Long printerId,
+                                                    TracedCall<T, E> call) throws E {
+        if (traceparent == null || traceparent.isBlank()) {
+            return trace(name, sessionId, printerId, call);
+        }
+
+        Span span = propagator.extract(Map.of(TRACEPARENT, traceparent), Map::get)
+                .name(name)
+                .kind(Span.Kind.CONSUMER)
+                .start();
+        tag(span, sessionId, printerId);
+
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            return call.call();
+        } catch (Exception e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Tag the current span, typically the HTTP server span, with the session and printer
+     */
+    public void tagCurrent(String sessionId, Long printerId) {
+        Span span = tracer.currentSpan();
+        if (span != null) {
+            tag(span, sessionId, printerId);
+        }
+    }
+
+    /**
+     * W3C traceparent of the current span, or null when nothing is being traced
+     */
+    public String currentTraceparent() {
+        Span span = tracer.currentSpan();
+        if (span == null) {
+            return null;
+        }
+
+        Map<String, String> carrier = new HashMap<>(2);
+        propagator.inject(span.context(), carrier, Map::put);
+        return carrier.get(TRACEPARENT);
+    }
+
+    /**
+     * Trace id of the current span, or null when nothing is being traced
+     */
+    public String currentTraceId() {
+        Span span = tracer.currentSpan();
+        return span != null ? span.context().traceId() : null;
+    }
+
+    private static Span tag(Span span, String sessionId, Long printerId) {
+        if (sessionId != null) {
+            span.tag(SESSION_ID, sessionId);
+        }
+        if (printerId != null) {
+            span.tag(PRINTER_ID, printerId.toString());
+        }
+        return span;
+    }
+}
@@ -0,0 +1,261 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.dto.WebSocketMessageDto;
+import com.atp.printing.exception.MalformedMessageException;
+import com.atp.printing.websocket.message.FileCredit;
+import com.atp.printing.websocket.message.FileRequest;
+import com.atp.printing.websocket.message.Heartbeat;
+import com.atp.printing.websocket.message.PrintStatus;
+import com.atp.printing.websocket.message.PrinterMessage;
+import com.atp.printing.websocket.message.PrinterStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary frames for the printer socket, used when the agent negotiates
+ * {@link #BINARY_PROTOCOL} as its WebSocket subprotocol. Agents that ask for nothing, or for
+ * {@link #JSON_PROTOCOL}, keep exchanging JSON text frames.
+ *
+ * Every frame starts with a version byte and a type byte, big-endian throughout:
+ * <pre>
+ * HEARTBEAT, HEARTBEAT_ACK, CONNECTED   (no body)
+ * PRINT_JOB       session uuid(16) | page count i32 | color u8 (0 BW, 1 COLOR) | trace(26)
+ *                 | file name u16+utf8 | download url u16+utf8
+ * PRINT_STATUS    session uuid(16) | trace(26) | status u8+ascii
+ * PRINTER_STATUS  status u8+ascii
+ *
+ * FILE_REQUEST    session uuid(16) | offset i64 | credits u16          (agent to server)
+ * FILE_CREDIT     session uuid(16) | credits u16                       (agent to server)
+ * FILE_BEGIN      session uuid(16) | offset i64 | size i64 (-1 unknown) | chunk size u32
+ * FILE_CHUNK      session uuid(16) | offset i64 | crc32 u32 | data (rest of the frame)
+ * FILE_END        session uuid(16) | size i64
+ * FILE_ERROR      session uuid(16) | reason u8+ascii
+ *
+ * trace           present u8 | trace id(16) | span id(8) | flags u8, zeroed when absent
+ * </pre>
+ * Inbound frames are read straight off the payload buffer; outbound frames are encoded into
+ * buffers borrowed from {@link FrameBufferPool}.
+ */
+@Component
+@RequiredArgsConstructor
+public class BinaryFrameCodec {
+
+    public static final String BINARY_PROTOCOL = "atp-print.v1.binary";
+    public static final String JSON_PROTOCOL = "atp-print.v1.json";
+
+    public static final byte VERSION = 1;
+
+    public static final byte HEARTBEAT = 0x01;
+    public static final byte HEARTBEAT_ACK = 0x02;
+    public static final byte CONNECTED = 0x03;
+    public static final byte PRINT_JOB = 0x10;
+    public static final byte PRINT_STATUS = 0x11;
+    public static final byte PRINTER_STATUS = 0x12;
+    public static final byte FILE_REQUEST = 0x13;
+    public static final byte FILE_CREDIT = 0x14;
+    public static final byte FILE_BEGIN = 0x20;
+    public static final byte FILE_CHUNK = 0x21;
+    public static final byte FILE_END = 0x22;
+    public static final byte FILE_ERROR = 0x23;
+
+    private static final int HEADER_LENGTH = 2;
+    private static final int UUID_LENGTH = 16;
+    private static final int TRACE_LENGTH = 26;
+    private static final int PRINT_JOB_FIXED_LENGTH = HEADER_LENGTH + UUID_LENGTH + 4 + 1 + TRACE_LENGTH + 2 + 2;
+
+    public static final int FILE_CHUNK_HEADER_LENGTH = HEADER_LENGTH + UUID_LENGTH + 8 + 4;
+
+    // 00-<32 hex trace id>-<16 hex span id>-<2 hex flags>
+    private static final int TRACEPARENT_LENGTH = 55;
+    private static final byte[] NO_TRACE = new byte[TRACE_LENGTH];
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final FrameBufferPool bufferPool;
+
+    public static boolean isBinary(WebSocketSession session) {
+        return BINARY_PROTOCOL.equals(session.getAcceptedProtocol());
+    }
+
+    /**
+     * Frame with no body, e.g. {@link #HEARTBEAT_ACK}
+     */
+    public BinaryMessage control(byte type) {
+        return new BinaryMessage(new byte[]{VERSION, type});
+    }
+
+    /**
+     * Decode an inbound frame
+     *
+     * @return the decoded message, or null if the frame type is not one agents send
+     * @throws MalformedMessageException if the header is wrong or the body is truncated
+     */
+    public PrinterMessage decode(ByteBuffer frame) {
+        if (frame.remaining() < HEADER_LENGTH || frame.get() != VERSION) {
+            throw new MalformedMessageException("Unsupported frame");
+        }
+
+        byte type = frame.get();
+        try {
+            return switch (type) {
+                case HEARTBEAT -> Heartbeat.INSTANCE;
+                case PRINT_STATUS -> readPrintStatus(frame);
+                case PRINTER_STATUS -> new PrinterStatus(readShortString(frame));
+                case FILE_REQUEST -> new FileRequest(readUuid(frame), frame.getLong(),
+                        Short.toUnsignedInt(frame.getShort()));
+                case FILE_CREDIT -> new FileCredit(readUuid(frame), Short.toUnsignedInt(frame.getShort()));
+                default -> null;
+            };
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new MalformedMessageException("Truncated frame of type " + type);
+        }
+    }
+
+    /**
+     * Encode a print_status frame as an agent would. The server only decodes these.
+     */
+    public void writePrintStatus(ByteBuffer buffer, String sessionId, String status, String traceparent) {
+        buffer.put(VERSION).put(PRINT_STATUS);
+        writeUuid(buffer, sessionId);
+        writeTrace(buffer, traceparent);
+        writeShortString(buffer, status);
+    }
+
+    /**
+     * Encode a print job into a pooled buffer and send it as one binary frame
+     */
+    public void sendPrintJob(PrinterConnection connection, WebSocketMessageDto job) throws IOException {
+        byte[] fileName = utf8(job.getFileName());
+        byte[] downloadUrl = utf8(job.getDownloadUrl());
+
+        ByteBuffer buffer = bufferPool.acquire(PRINT_JOB_FIXED_LENGTH + fileName.length + downloadUrl.length);
+        buffer.put(VERSION).put(PRINT_JOB);
+        writeUuid(buffer, job.getSessionId());
+        buffer.putInt(job.getPageCount() != null ? job.getPageCount() : 0);
+        buffer.put((byte) ("COLOR".equals(job.getColorMode()) ? 1 : 0));
+        writeTrace(buffer, job.getTraceparent());
+        writeString(buffer, fileName);
+        writeString(buffer, downloadUrl);
+
+        // The send may be queued, so the connection releases the buffer once it is written
+        connection.send(new PooledFrame(buffer.flip(), bufferPool));
+    }
+
+    public BinaryMessage fileBegin(String sessionId, long offset, long size, int chunkSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + UUID_LENGTH + 8 + 8 + 4);
+        buffer.put(VERSION).put(FILE_BEGIN);
+        writeUuid(buffer, sessionId);
+        buffer.putLong(offset).putLong(size).putInt(chunkSize);
+        return new BinaryMessage(buffer.flip());
+    }
+
+    /**
+     * Write a chunk header in front of data already placed at {@link #FILE_CHUNK_HEADER_LENGTH},
+     * leaving the buffer ready to send
+     */
+    public void writeFileChunkHeader(ByteBuffer buffer, String sessionId, long offset, int crc, int length) {
+        buffer.clear();
+        buffer.put(VERSION).put(FILE_CHUNK);
+        writeUuid(buffer, sessionId);
+        buffer.putLong(offset).putInt(crc);
+        buffer.limit(FILE_CHUNK_HEADER_LENGTH + length).position(0);
+    }
+
+    public BinaryMessage fileEnd(String sessionId, long size) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + UUID_LENGTH + 8);
+        buffer.put(VERSION).put(FILE_END);
+        writeUuid(buffer, sessionId);
+        buffer.putLong(size);
+        return new BinaryMessage(buffer.flip());
+    }
+
+    public BinaryMessage fileError(String sessionId, String reason) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + UUID_LENGTH + 1 + reason.length());
+        buffer.put(VERSION).put(FILE_ERROR);
+        writeUuid(buffer, sessionId);
+        writeShortString(buffer, reason);
+        return new BinaryMessage(buffer.flip());
+    }
+
+    private static PrintStatus readPrintStatus(ByteBuffer frame) {
+        String sessionId = readUuid(frame);
+        String traceparent = readTrace(frame);
+        String status = readShortString(frame);
+        return new PrintStatus(sessionId, status, traceparent);
+    }
+
+    private static void writeUuid(ByteBuffer buffer, String value) {
+        UUID uuid = UUID.fromString(value);
+        buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static String readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    private static void writeTrace(ByteBuffer buffer, String traceparent) {
+        if (traceparent == null || traceparent.length() != TRACEPARENT_LENGTH) {
+            buffer.put(NO_TRACE);
+            return;
+        }
+        buffer.put((byte) 1)
+                .putLong(HEX.fromHexDigitsToLong(traceparent, 3, 19))
+                .putLong(HEX.fromHexDigitsToLong(traceparent, 19, 35))
+                .putLong(HEX.fromHexDigitsToLong(traceparent, 36, 52))
+                .put((byte) HEX.fromHexDigits(traceparent, 53, 55));
+    }
+
+    private static String readTrace(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            buffer.position(buffer.position() + TRACE_LENGTH - 1);
+            return null;
+        }
+        return "00-" + HEX.toHexDigits(buffer.getLong()) + HEX.toHexDigits(buffer.getLong())
+                + "-" + HEX.toHexDigits(buffer.getLong())
+                + "-" + HEX.toHexDigits(buffer.get());
+    }
+
+    private static void writeShortString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > 0xFF) {
+            throw new IllegalArgumentException("Value too long for frame");
+        }
+        buffer.put((byte) bytes.length).put(bytes);
+    }
+
+    private static String readShortString(ByteBuffer buffer) {
+        int length = Byte.toUnsignedInt(buffer.get());
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.US_ASCII);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Value too long for frame");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,392 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.SessionFileView;
+import com.atp.printing.service.RenditionService;
+import com.atp.printing.websocket.message.FileCredit;
+import com.atp.printing.websocket.message.FileRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Streams a session's document to its printer over the printer socket, for kiosks that cannot
+ * reach the file URL themselves.
+ *
+ * The agent asks with a file_request naming the offset to start from (non-zero when resuming
+ * after a reconnect) and how many chunks it can buffer. Each chunk spends one credit and the
+ * server stops when credits run out, until the agent grants more with file_credit. Chunks carry
+ * their offset and a CRC32 of their data.
+ *
+ * Memory is bounded by design: a chunk's pooled buffer is held until the chunk is written, at
+ * most the outstanding credits' worth per transfer and never more than the connection's send
+ * buffer limit, the origin is read as a stream, and the number of transfers is capped. Chunks
+ * are sent from a small transfer pool one frame at a time, so pings, acks and print jobs
+ * interleave with bulk data instead of queueing behind a file.
+ *
+ * The origin is asked asynchronously with a request timeout, so no transfer thread waits for it
+ * to answer. A body that stalls mid-read does hold one; idle expiry runs on its own thread and
+ * closes the stream under it.
+ */
+@Slf4j
+@Component
+public class FileTransferManager {
+
+    private final SessionRepository sessionRepository;
+    private final RenditionService renditionService;
+    private final BinaryFrameCodec frameCodec;
+    private final PrintMetrics printMetrics;
+    private final int chunkSize;
+    private final int maxTransfers;
+    private final int maxCredits;
+    private final long idleTimeoutMs;
+    private final HttpClient httpClient;
+    private final Duration originTimeout;
+    private final FrameBufferPool chunkBuffers;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService expiry;
+
+    private final Map<TransferKey, FileTransfer> transfers = new ConcurrentHashMap<>();
+
+    public FileTransferManager(SessionRepository sessionRepository,
+                               RenditionService renditionService,
+                               BinaryFrameCodec frameCodec,
+                               PrintMetrics printMetrics,
+                               @Value("${app.websocket.transfer.chunk-size}") int chunkSize,
+                               @Value("${app.websocket.transfer.max-transfers}") int maxTransfers,
+                               @Value("${app.websocket.transfer.max-credits}") int maxCredits,
+                               @Value("${app.websocket.transfer.threads}") int threads,
+                               @Value("${app.websocket.transfer.idle-timeout-ms}") long idleTimeoutMs,
+                               @Value("${cloudinary.timeout-seconds}") int originTimeoutSeconds) {
+        this.sessionRepository = sessionRepository;
+        this.renditionService = renditionService;
+        this.frameCodec = frameCodec;
+        this.printMetrics = printMetrics;
+        this.chunkSize = chunkSize;
+        this.maxTransfers = maxTransfers;
+        this.maxCredits = maxCredits;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.originTimeout = Duration.ofSeconds(originTimeoutSeconds);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(originTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.chunkBuffers = new FrameBufferPool(BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH + chunkSize, maxTransfers);
+        this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("file-transfer-"));
+        this.expiry = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("file-transfer-expiry-"));
+    }
+
+    @PostConstruct
+    public void start() {
+        expiry.scheduleWithFixedDelay(this::expireIdleTransfers, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        transfers.values().forEach(transfer -> finish(transfer, "cancelled"));
+        expiry.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Begin streaming, replacing any earlier transfer of the same document to this printer
+     */
+    public void start(PrinterConnection connection, FileRequest request) throws IOException {
+        TransferKey key = new TransferKey(connection.getPrinterId(), request.sessionId());
+        FileTransfer previous = transfers.get(key);
+        if (previous != null) {
+            finish(previous, "replaced");
+        }
+
+        SessionFileView file = sessionRepository.findFileBySessionId(request.sessionId()).orElse(null);
+        if (file == null || !connection.getPrinterId().equals(file.getPrinterId()) || file.getFileUrl() == null) {
+            reject(connection, request.sessionId(), "not_found");
+            return;
+        }
+        if (file.getStatus() != Session.SessionStatus.PAID && file.getStatus() != Session.SessionStatus.PRINTING) {
+            reject(connection, request.sessionId(), "not_printable");
+            return;
+        }
+        if (request.offset() < 0) {
+            reject(connection, request.sessionId(), "bad_offset");
+            return;
+        }
+        if (request.credits() <= 0) {
+            reject(connection, request.sessionId(), "bad_credits");
+            return;
+        }
+        if (transfers.size() >= maxTransfers) {
+            reject(connection, request.sessionId(), "busy");
+            return;
+        }
+
+        // The same document the print job pointed at: the rendition when there is one
+        String sourceUrl = renditionService.findPrintUrl(file.getContentHash(), file.getColorMode())
+                .orElse(file.getFileUrl());
+
+        FileTransfer transfer = new FileTransfer(key, connection, request.offset(), addCredits(0, request.credits(), maxCredits));
+        transfers.put(key, transfer);
+        log.info("Streaming session {} to printer {} from offset {}", key.sessionId(), key.printerId(), request.offset());
+        open(transfer, sourceUrl);
+    }
+
+    public void credit(PrinterConnection connection, FileCredit credit) {
+        FileTransfer transfer = transfers.get(new TransferKey(connection.getPrinterId(), credit.sessionId()));
+        if (transfer == null || transfer.connection != connection) {
+            return;
+        }
+        if (credit.credits() <= 0) {
+            log.warn("Ignored file_credit of {} from printer {}", credit.credits(), connection.getPrinterId());
+            return;
+        }
+
+        boolean resume;
+        synchronized (transfer) {
+            transfer.credits = addCredits(transfer.credits, credit.credits(), maxCredits);
+            transfer.touch();
+            resume = !transfer.pumping && !transfer.finished && transfer.credits > 0;
+            transfer.pumping |= resume;
+        }
+        if (resume) {
+            executor.execute(() -> pump(transfer));
+        }
+    }
+
+    /**
+     * Stop every transfer on a connection that closed; the agent resumes with a new request
+     */
+    public void cancelAll(PrinterConnection connection) {
+        for (FileTransfer transfer : transfers.values()) {
+            if (transfer.connection == connection) {
+                finish(transfer, "cancelled");
+            }
+        }
+    }
+
+    /**
+     * Ask the origin for the document; the answer is handled on the transfer pool
+     */
+    private void open(FileTransfer transfer, String fileUrl) {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(fileUrl)).timeout(originTimeout).GET();
+            if (transfer.offset > 0) {
+                request.header("Range", "bytes=" + transfer.offset + "-");
+            }
+            CompletableFuture<HttpResponse<InputStream>> response =
+                    httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            synchronized (transfer) {
+                transfer.opening = response;
+            }
+            response.whenCompleteAsync((answer, error) -> opened(transfer, answer, error), executor);
+
+        } catch (RuntimeException e) {
+            fail(transfer, "origin_failed", e);
+        }
+    }
+
+    private void opened(FileTransfer transfer, HttpResponse<InputStream> response, Throwable error) {
+        if (error != null) {
+            fail(transfer, "origin_failed", error);
+            return;
+        }
+
+        InputStream source = response.body();
+        synchronized (transfer) {
+            if (transfer.finished) {
+                closeQuietly(transfer, source);
+                return;
+            }
+            // Set before the first read, so expiry can close it under a stalled reader
+            transfer.source = source;
+        }
+
+        try {
+            long size;
+            if (response.statusCode() == 206) {
+                size = response.headers().firstValue("Content-Range")
+                        .map(range -> Long.parseLong(range.substring(range.lastIndexOf('/') + 1)))
+                        .orElse(-1L);
+            } else if (response.statusCode() == 200) {
+                // Origin ignored the range, so skip to the offset ourselves
+                source.skipNBytes(transfer.offset);
+                size = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+            } else {
+                throw new IOException("Origin returned " + response.statusCode());
+            }
+
+            transfer.connection.send(frameCodec.fileBegin(transfer.key.sessionId(), transfer.offset, size, chunkSize));
+            pump(transfer);
+
+        } catch (IOException | RuntimeException e) {
+            fail(transfer, "origin_failed", e);
+        }
+    }
+
+    /**
+     * Send chunks while credits last. Only one pump runs per transfer, guarded by pumping.
+     */
+    private void pump(FileTransfer transfer) {
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                synchronized (transfer) {
+                    if (transfer.finished || transfer.credits <= 0) {
+                        transfer.pumping = false;
+                        return;
+                    }
+                    transfer.credits--;
+                }
+
+                ByteBuffer buffer = chunkBuffers.acquire(BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH + chunkSize);
+                int read = transfer.source.readNBytes(buffer.array(), BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH, chunkSize);
+                if (read == 0) {
+                    chunkBuffers.release(buffer);
+                    transfer.connection.send(frameCodec.fileEnd(transfer.key.sessionId(), transfer.offset));
+                    finish(transfer, PrintMetrics.SUCCESS);
+                    return;
+                }
+
+                crc.reset();
+                crc.update(buffer.array(), BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH, read);
+                frameCodec.writeFileChunkHeader(buffer, transfer.key.sessionId(), transfer.offset,
+                        (int) crc.getValue(), read);
+                // Released by the connection once written; a chunk may queue behind another send
+                transfer.connection.send(new PooledFrame(buffer, chunkBuffers));
+                transfer.offset += read;
+                transfer.touch();
+                printMetrics.countTransferBytes(read);
+
+                if (read < chunkSize) {
+                    transfer.connection.send(frameCodec.fileEnd(transfer.key.sessionId(), transfer.offset));
+                    finish(transfer, PrintMetrics.SUCCESS);
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(transfer, "transfer_failed", e);
+        }
+    }
+
+    /**
+     * Credits after a grant, kept within [0, maxCredits] whatever the agent sends
+     */
+    static int addCredits(int current, int granted, int maxCredits) {
+        return (int) Math.max(0, Math.min((long) current + granted, maxCredits));
+    }
+
+    private void expireIdleTransfers() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        for (FileTransfer transfer : transfers.values()) {
+            if (transfer.lastActivity < cutoff) {
+                log.warn("Transfer of session {} to printer {} stalled at offset {}",
+                        transfer.key.sessionId(), transfer.key.printerId(), transfer.offset);
+                fail(transfer, "idle", null);
+            }
+        }
+    }
+
+    private void fail(FileTransfer transfer, String reason, Throwable e) {
+        // Failures after a cancel are just the source being closed under the reader
+        if (transfer.finished) {
+            return;
+        }
+        if (e != null) {
+            log.warn("Transfer of session {} to printer {} failed: {}", transfer.key.sessionId(),
+                    transfer.key.printerId(), e.getMessage());
+        }
+        try {
+            transfer.connection.send(frameCodec.fileError(transfer.key.sessionId(), reason));
+        } catch (IOException | RuntimeException ignored) {
+            // The socket is gone too; the agent will resume after reconnecting
+        }
+        finish(transfer, reason);
+    }
+
+    private void finish(FileTransfer transfer, String outcome) {
+        InputStream source;
+        CompletableFuture<?> opening;
+        synchronized (transfer) {
+            if (transfer.finished) {
+                return;
+            }
+            transfer.finished = true;
+            source = transfer.source;
+            opening = transfer.opening;
+        }
+        transfers.remove(transfer.key, transfer);
+        printMetrics.countTransfer(outcome);
+
+        if (opening != null) {
+            opening.cancel(true);
+        }
+        if (source != null) {
+            closeQuietly(transfer, source);
+        }
+    }
+
+    private static void closeQuietly(FileTransfer transfer, InputStream source) {
+        try {
+            source.close();
+        } catch (IOException e) {
+            log.debug("Failed to close origin stream for session {}", transfer.key.sessionId());
+        }
+    }
+
+    private void reject(PrinterConnection connection, String sessionId, String reason) throws IOException {
+        log.warn("Refused to stream session {} to printer {}: {}", sessionId, connection.getPrinterId(), reason);
+        printMetrics.countTransfer(reason);
+        connection.send(frameCodec.fileError(sessionId, reason));
+    }
+
+    private record TransferKey(Long printerId, String sessionId) {
+    }
+
+    private static final class FileTransfer {
+        final TransferKey key;
+        final PrinterConnection connection;
+
+        // Guarded by this
+        int credits;
+        boolean pumping = true;
+        volatile boolean finished;
+        CompletableFuture<?> opening;
+        InputStream source;
+
+        // Only touched by the running pump
+        long offset;
+        volatile long lastActivity = System.nanoTime();
+
+        FileTransfer(TransferKey key, PrinterConnection connection, long offset, int credits) {
+            this.key = key;
+            this.connection = connection;
+            this.offset = offset;
+            this.credits = credits;
+        }
+
+        void touch() {
+            lastActivity = System.nanoTime();
+        }
+    }
+}
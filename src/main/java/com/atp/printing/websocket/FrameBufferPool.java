@@ -0,0 +1,47 @@
+package com.atp.printing.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed-size buffers for encoding outbound binary frames. A frame is encoded, sent and the
+ * buffer handed back once written (see {@link PooledFrame}), so the pool only needs to cover
+ * frames in flight, not open connections.
+ * When the pool is empty, or a frame does not fit, a one-off buffer is allocated instead.
+ */
+@Component
+public class FrameBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    public FrameBufferPool(@Value("${app.websocket.frame-buffer-size}") int bufferSize,
+                           @Value("${app.websocket.frame-buffer-pool-size}") int poolSize) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Borrow a cleared buffer of at least the given capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Return a buffer once the frame written into it has been sent
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.atp.printing.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A binary frame encoded into a pooled buffer. A send may be queued behind a slower one on the
+ * same connection, so the buffer goes back to its pool once the frame is actually written
+ * rather than when the send call returns. A frame dropped with its connection is never
+ * released and the pool allocates a replacement.
+ */
+public class PooledFrame {
+
+    private final BinaryMessage message;
+    private final ByteBuffer buffer;
+    private final FrameBufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public PooledFrame(ByteBuffer buffer, FrameBufferPool pool) {
+        this.message = new BinaryMessage(buffer);
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    BinaryMessage message() {
+        return message;
+    }
+
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(buffer);
+        }
+    }
+}
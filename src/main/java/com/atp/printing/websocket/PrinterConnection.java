@@ -0,0 +1,125 @@
+package com.atp.printing.websocket;
+
+import lombok.Getter;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A printer's open socket and when it was last heard from.
+ *
+ * Every send goes through here because a WebSocket session does not allow concurrent sends,
+ * and the keepalive pings from its own thread while requests dispatch jobs. The session is
+ * wrapped so a send that finds another in progress queues its frame instead of blocking; a
+ * printer that leaves a send stuck past the time limit, or lets the queue grow past the buffer
+ * limit, is closed as not reliable. Any inbound frame, pongs included, counts as the printer
+ * being seen.
+ */
+public class PrinterConnection {
+
+    @Getter
+    private final Long printerId;
+    @Getter
+    private final WebSocketSession session;
+    // Registration order across all printers; see WebSocketService.unregisterPrinterSession
+    @Getter
+    private final long generation;
+
+    // Frames handed to the session but not yet written, keyed by message identity
+    private final Map<WebSocketMessage<?>, PooledFrame> unwritten =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private volatile long lastSeenNanos = System.nanoTime();
+
+    public PrinterConnection(Long printerId, WebSocketSession session, long generation,
+                             int sendTimeLimitMs, int sendBufferSizeLimit) {
+        this.printerId = printerId;
+        this.session = new ConcurrentWebSocketSessionDecorator(new ReleasingSession(session),
+                sendTimeLimitMs, sendBufferSizeLimit);
+        this.generation = generation;
+    }
+
+    /**
+     * Send now, or queue behind a send already in progress. A slow printer is closed and the
+     * caller sees an IOException, as for any other failed send.
+     */
+    public void send(WebSocketMessage<?> message) throws IOException {
+        try {
+            session.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            close(e.getStatus());
+            throw new IOException("Printer " + printerId + " is not keeping up: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send a frame whose buffer goes back to its pool once written
+     */
+    public void send(PooledFrame frame) throws IOException {
+        unwritten.put(frame.message(), frame);
+        send(frame.message());
+    }
+
+    /**
+     * Send a protocol-level ping. Queued behind a stuck send it is also what notices the send
+     * has run past the time limit.
+     */
+    public void ping() throws IOException {
+        send(new PingMessage());
+    }
+
+    public void markSeen() {
+        lastSeenNanos = System.nanoTime();
+    }
+
+    public long idleNanos(long now) {
+        return now - lastSeenNanos;
+    }
+
+    /**
+     * Open and heard from within the timeout. A half-open socket stays open until the
+     * keepalive evicts it, so isOpen alone is not enough.
+     */
+    public boolean isAlive(long now, long idleTimeoutNanos) {
+        return session.isOpen() && idleNanos(now) < idleTimeoutNanos;
+    }
+
+    public void close(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            // The peer is usually gone already; the container still tears the session down
+        }
+    }
+
+    /**
+     * Hands pooled buffers back once their frame has been written to the socket
+     */
+    private final class ReleasingSession extends WebSocketSessionDecorator {
+
+        ReleasingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                PooledFrame frame = unwritten.remove(message);
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.security.JwtUtil;
+import com.atp.printing.security.TokenBucket;
+import com.atp.printing.service.WebSocketService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Admission control for /ws/printer, applied before the upgrade:
+ * <ol>
+ *     <li>a client IP whose recent handshakes carried bad tokens is refused without parsing,
+ *     each bad token spending from a small bucket per IP</li>
+ *     <li>the printer token is validated with a single parse</li>
+ *     <li>a token bucket caps the rate of validly signed handshakes, so a reconnect storm after
+ *     a network blip is spread out instead of hitting the database all at once. Only valid
+ *     tokens are charged, so unauthenticated traffic cannot lock real printers out</li>
+ *     <li>new printers are refused once max-connections sockets are registered; a printer
+ *     that is already registered may always reconnect, since it replaces its old socket</li>
+ * </ol>
+ * Rejections are plain HTTP responses. Retry-After carries random jitter so rejected agents
+ * do not come back in lockstep.
+ */
+@Slf4j
+@Component
+public class PrinterHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String PRINTER_ID = "printerId";
+
+    private final JwtUtil jwtUtil;
+    private final WebSocketService webSocketService;
+    private final PrintMetrics printMetrics;
+    private final TokenBucket handshakes;
+    private final Map<String, TokenBucket> failedHandshakes;
+    private final int failedBurst;
+    private final double failedPerSecond;
+    private final int maxConnections;
+    private final int retryJitterSeconds;
+
+    public PrinterHandshakeInterceptor(JwtUtil jwtUtil,
+                                       WebSocketService webSocketService,
+                                       PrintMetrics printMetrics,
+                                       @Value("${app.websocket.handshakes-per-second}") double handshakesPerSecond,
+                                       @Value("${app.websocket.handshake-burst}") int handshakeBurst,
+                                       @Value("${app.websocket.failed-handshake-burst}") int failedBurst,
+                                       @Value("${app.websocket.failed-handshakes-per-second}") double failedPerSecond,
+                                       @Value("${app.websocket.max-tracked-clients}") int maxTrackedClients,
+                                       @Value("${app.websocket.max-connections}") int maxConnections,
+                                       @Value("${app.websocket.retry-jitter-seconds}") int retryJitterSeconds) {
+        this.jwtUtil = jwtUtil;
+        this.webSocketService = webSocketService;
+        this.printMetrics = printMetrics;
+        this.handshakes = new TokenBucket(handshakeBurst, handshakesPerSecond);
+        this.failedBurst = failedBurst;
+        this.failedPerSecond = failedPerSecond;
+        // Least recently used first, so IPs that went quiet are forgotten with a full bucket
+        this.failedHandshakes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxTrackedClients;
+            }
+        });
+        this.maxConnections = maxConnections;
+        this.retryJitterSeconds = retryJitterSeconds;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String client = clientAddress(request);
+        TokenBucket failed = failedHandshakes.get(client);
+        long failedWait = failed != null ? failed.secondsUntilAvailable() : 0;
+        if (failedWait > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, failedWait, "unauthorized_throttled");
+            return false;
+        }
+
+        String token = extractToken(request);
+        Long printerId = token != null ? jwtUtil.extractValidPrinterId(token) : null;
+        if (printerId == null) {
+            log.warn("Rejected printer handshake with invalid token from {}", client);
+            failedHandshakes.computeIfAbsent(client, ignored -> new TokenBucket(failedBurst, failedPerSecond))
+                    .tryAcquire();
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            printMetrics.countHandshake("unauthorized");
+            return false;
+        }
+
+        if (!handshakes.tryAcquire()) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, handshakes.secondsUntilAvailable(), "throttled");
+            return false;
+        }
+
+        if (webSocketService.getConnectionCount() >= maxConnections && !webSocketService.isRegistered(printerId)) {
+            log.warn("Rejected printer {}: {} connections open", printerId, maxConnections);
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "full");
+            return false;
+        }
+
+        attributes.put(PRINTER_ID, printerId);
+        printMetrics.countHandshake("accepted");
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private void reject(ServerHttpResponse response, HttpStatus status, long retryAfterSeconds, String outcome) {
+        long retryAfter = retryAfterSeconds + ThreadLocalRandom.current().nextInt(retryJitterSeconds + 1);
+        response.setStatusCode(status);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        printMetrics.countHandshake(outcome);
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress remote = request.getRemoteAddress();
+        return remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+    }
+
+    private static String extractToken(ServerHttpRequest request) {
+        // Try to get token from query parameters
+        String query = request.getURI().getQuery();
+        if (query != null && query.contains("token=")) {
+            String[] params = query.split("&");
+            for (String param : params) {
+                if (param.startsWith("token=")) {
+                    return param.substring(6);
+                }
+            }
+        }
+
+        // Try to get from handshake headers
+        List<String> authHeaders = request.getHeaders().get(HttpHeaders.AUTHORIZATION);
+        if (authHeaders != null && !authHeaders.isEmpty()) {
+            String authHeader = authHeaders.get(0);
+            if (authHeader.startsWith("Bearer ")) {
+                return authHeader.substring(7);
+            }
+        }
+
+        return null;
+    }
+}
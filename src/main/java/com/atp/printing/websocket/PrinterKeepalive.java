@@ -0,0 +1,110 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.service.PrinterService;
+import com.atp.printing.service.WebSocketService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps printer sockets alive with protocol-level pings and evicts the ones that stop answering.
+ *
+ * One scheduler thread serves every connection. It runs apart from the application's
+ * @Scheduled jobs so a long archive run cannot delay pings into false evictions. Presence is
+ * written to printers.last_heartbeat in a single batched update per flush interval rather than
+ * once per heartbeat, so liveness costs frames, not queries.
+ */
+@Slf4j
+@Component
+public class PrinterKeepalive {
+
+    private static final CloseStatus IDLE = CloseStatus.SESSION_NOT_RELIABLE.withReason("Keepalive timeout");
+
+    private final WebSocketService webSocketService;
+    private final PrinterService printerService;
+    private final long pingIntervalMs;
+    private final long idleTimeoutNanos;
+    private final long presenceFlushMs;
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+    public PrinterKeepalive(WebSocketService webSocketService,
+                            PrinterService printerService,
+                            @Value("${app.websocket.ping-interval-ms}") long pingIntervalMs,
+                            @Value("${app.websocket.idle-timeout-ms}") long idleTimeoutMs,
+                            @Value("${app.websocket.presence-flush-ms}") long presenceFlushMs) {
+        this.webSocketService = webSocketService;
+        this.printerService = printerService;
+        this.pingIntervalMs = pingIntervalMs;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.presenceFlushMs = presenceFlushMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("printer-keepalive-");
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::pingPrinters, Duration.ofMillis(pingIntervalMs));
+        scheduler.scheduleWithFixedDelay(this::flushPresence, Duration.ofMillis(presenceFlushMs));
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Ping every connection, evicting those not heard from within the idle timeout
+     */
+    void pingPrinters() {
+        long now = System.nanoTime();
+
+        for (PrinterConnection connection : webSocketService.getConnections()) {
+            if (connection.idleNanos(now) >= idleTimeoutNanos) {
+                log.warn("Evicting printer {}: no frames for {} ms", connection.getPrinterId(),
+                        TimeUnit.NANOSECONDS.toMillis(connection.idleNanos(now)));
+                webSocketService.evict(connection, IDLE);
+                continue;
+            }
+
+            try {
+                connection.ping();
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Ping to printer {} failed: {}", connection.getPrinterId(), e.getMessage());
+                webSocketService.evict(connection, IDLE);
+            }
+        }
+    }
+
+    /**
+     * Record every live printer as heard from in one statement
+     */
+    void flushPresence() {
+        long now = System.nanoTime();
+        List<Long> alive = new ArrayList<>();
+        for (PrinterConnection connection : webSocketService.getConnections()) {
+            if (connection.isAlive(now, idleTimeoutNanos)) {
+                alive.add(connection.getPrinterId());
+            }
+        }
+
+        if (alive.isEmpty()) {
+            return;
+        }
+        try {
+            printerService.updateHeartbeats(alive);
+        } catch (Exception e) {
+            log.error("Failed to record presence for {} printers", alive.size(), e);
+        }
+    }
+}
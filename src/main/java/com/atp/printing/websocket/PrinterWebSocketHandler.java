@@ -1,59 +1,96 @@
 package com.atp.printing.websocket;
 
-import com.atp.printing.security.JwtUtil;
+import com.atp.printing.exception.MalformedMessageException;
+import com.atp.printing.logging.LogContext;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.tracing.PrintTracing;
 import com.atp.printing.service.PrinterService;
 import com.atp.printing.service.WebSocketService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.atp.printing.websocket.message.FileCredit;
+import com.atp.printing.websocket.message.FileRequest;
+import com.atp.printing.websocket.message.JsonMessageDecoder;
+import com.atp.printing.websocket.message.PrintStatus;
+import com.atp.printing.websocket.message.PrinterEvent;
+import com.atp.printing.websocket.message.PrinterMessage;
+import com.atp.printing.websocket.message.PrinterStatus;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Printer agent socket. Agents that negotiate {@link BinaryFrameCodec#BINARY_PROTOCOL} exchange
+ * heartbeats, print jobs and status updates as binary frames; everyone else speaks JSON text.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class PrinterWebSocketHandler extends TextWebSocketHandler {
+public class PrinterWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+
+    private static final List<String> SUB_PROTOCOLS =
+            List.of(BinaryFrameCodec.BINARY_PROTOCOL, BinaryFrameCodec.JSON_PROTOCOL);
+
+    private static final TextMessage CONNECTED = new TextMessage("{\"event\":\"connected\",\"status\":\"success\"}");
+    private static final TextMessage HEARTBEAT_ACK = new TextMessage("{\"event\":\"heartbeat_ack\"}");
 
-    private final JwtUtil jwtUtil;
     private final PrinterService printerService;
     private final WebSocketService webSocketService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PrintMetrics printMetrics;
+    private final PrintTracing printTracing;
+    private final BinaryFrameCodec frameCodec;
+    private final JsonMessageDecoder jsonDecoder;
+    private final FileTransferManager fileTransferManager;
+
+    private final Map<PrinterEvent, MessageHandler> handlers = buildHandlers();
 
-    // Map session ID to printer ID
-    private final Map<String, Long> sessionToPrinter = new ConcurrentHashMap<>();
+    // Map session ID to the printer connection registered for it
+    private final Map<String, PrinterConnection> sessionToPrinter = new ConcurrentHashMap<>();
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        log.info("WebSocket connection established: {}", session.getId());
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
+    }
 
-        // Extract token from query parameters or headers
-        String token = extractToken(session);
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        log.info("WebSocket connection established: {} ({})", session.getId(), session.getAcceptedProtocol());
 
-        if (token == null || !jwtUtil.validatePrinterToken(token)) {
-            log.error("Invalid printer token for session: {}", session.getId());
+        // Authenticated by PrinterHandshakeInterceptor before the upgrade
+        Long printerId = (Long) session.getAttributes().get(PrinterHandshakeInterceptor.PRINTER_ID);
+        if (printerId == null) {
+            log.error("No printer ID found for session: {}", session.getId());
             session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Invalid token"));
             return;
         }
 
         try {
-            Long printerId = jwtUtil.extractPrinterId(token);
+            // A printer replacing a live socket is already ONLINE, so only a fresh connection
+            // needs the status write; later presence is flushed in batches by PrinterKeepalive
+            boolean reconnect = webSocketService.isPrinterOnline(printerId);
 
             // Register printer session
-            webSocketService.registerPrinterSession(printerId, session);
-            sessionToPrinter.put(session.getId(), printerId);
+            PrinterConnection connection = webSocketService.registerPrinterSession(printerId, session);
+            sessionToPrinter.put(session.getId(), connection);
 
-            // Update printer heartbeat
-            printerService.updateHeartbeat(token);
+            if (!reconnect) {
+                printerService.updateHeartbeat(printerId);
+            }
 
             // Send connection success message
-            session.sendMessage(new TextMessage("{\"event\":\"connected\",\"status\":\"success\"}"));
+            connection.send(BinaryFrameCodec.isBinary(session)
+                    ? frameCodec.control(BinaryFrameCodec.CONNECTED)
+                    : CONNECTED);
 
             log.info("Printer {} connected via WebSocket", printerId);
 
@@ -66,34 +103,63 @@ public class PrinterWebSocketHandler extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         String payload = message.getPayload();
-        log.debug("Received WebSocket message: {}", payload);
+        if (log.isTraceEnabled()) {
+            log.trace("Received WebSocket message: {}", payload);
+        }
 
-        try {
-            JsonNode jsonNode = objectMapper.readTree(payload);
-            String event = jsonNode.get("event").asText();
+        PrinterConnection connection = sessionToPrinter.get(session.getId());
+        if (connection == null) {
+            log.error("No printer ID found for session: {}", session.getId());
+            return;
+        }
+        connection.markSeen();
+        Long printerId = connection.getPrinterId();
 
-            Long printerId = sessionToPrinter.get(session.getId());
-            if (printerId == null) {
-                log.error("No printer ID found for session: {}", session.getId());
-                return;
-            }
+        try {
+            LogContext.putPrinter(printerId);
+            dispatch(connection, jsonDecoder.decode(payload), false);
+        } catch (MalformedMessageException e) {
+            printMetrics.countMalformedPrinterMessage();
+            log.warn("Malformed message from printer {}: {}", printerId, e.getMessage());
+        } catch (Exception e) {
+            log.error("Error handling WebSocket message", e);
+        } finally {
+            LogContext.clear();
+        }
+    }
 
-            switch (event) {
-                case "heartbeat":
-                    handleHeartbeat(printerId, session);
-                    break;
-                case "print_status":
-                    handlePrintStatus(jsonNode);
-                    break;
-                case "printer_status":
-                    handlePrinterStatus(printerId, jsonNode);
-                    break;
-                default:
-                    log.warn("Unknown event type: {}", event);
-            }
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        PrinterConnection connection = sessionToPrinter.get(session.getId());
+        if (connection == null) {
+            log.error("No printer ID found for session: {}", session.getId());
+            return;
+        }
+        connection.markSeen();
+        Long printerId = connection.getPrinterId();
 
+        try {
+            LogContext.putPrinter(printerId);
+            dispatch(connection, frameCodec.decode(message.getPayload()), true);
+        } catch (MalformedMessageException e) {
+            printMetrics.countMalformedPrinterMessage();
+            log.warn("Malformed frame from printer {}: {}", printerId, e.getMessage());
         } catch (Exception e) {
-            log.error("Error handling WebSocket message", e);
+            log.error("Error handling WebSocket frame", e);
+        } finally {
+            LogContext.clear();
+        }
+    }
+
+    /**
+     * Replies to the keepalive's pings; presence is derived from these rather than from heartbeats
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        PrinterConnection connection = sessionToPrinter.get(session.getId());
+        if (connection != null) {
+            connection.markSeen();
+            printMetrics.recordHeartbeat(connection.getPrinterId());
         }
     }
 
@@ -101,10 +167,12 @@ public class PrinterWebSocketHandler extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         log.info("WebSocket connection closed: {} - {}", session.getId(), status);
 
-        Long printerId = sessionToPrinter.remove(session.getId());
-        if (printerId != null) {
-            webSocketService.unregisterPrinterSession(printerId);
-            log.info("Printer {} disconnected", printerId);
+        PrinterConnection connection = sessionToPrinter.remove(session.getId());
+        if (connection != null) {
+            fileTransferManager.cancelAll(connection);
+            if (webSocketService.unregisterPrinterSession(connection)) {
+                log.info("Printer {} disconnected", connection.getPrinterId());
+            }
         }
     }
 
@@ -114,50 +182,63 @@ public class PrinterWebSocketHandler extends TextWebSocketHandler {
         session.close(CloseStatus.SERVER_ERROR);
     }
 
-    private String extractToken(WebSocketSession session) {
-        // Try to get token from query parameters
-        String query = session.getUri().getQuery();
-        if (query != null && query.contains("token=")) {
-            String[] params = query.split("&");
-            for (String param : params) {
-                if (param.startsWith("token=")) {
-                    return param.substring(6);
-                }
-            }
-        }
+    private Map<PrinterEvent, MessageHandler> buildHandlers() {
+        Map<PrinterEvent, MessageHandler> table = new EnumMap<>(PrinterEvent.class);
+        table.put(PrinterEvent.HEARTBEAT, (connection, message, binary) ->
+                handleHeartbeat(connection, binary));
+        table.put(PrinterEvent.PRINT_STATUS, (connection, message, binary) ->
+                handlePrintStatus(connection.getPrinterId(), (PrintStatus) message));
+        table.put(PrinterEvent.PRINTER_STATUS, (connection, message, binary) ->
+                handlePrinterStatus(connection.getPrinterId(), (PrinterStatus) message));
+        table.put(PrinterEvent.FILE_REQUEST, (connection, message, binary) ->
+                fileTransferManager.start(connection, (FileRequest) message));
+        table.put(PrinterEvent.FILE_CREDIT, (connection, message, binary) ->
+                fileTransferManager.credit(connection, (FileCredit) message));
+        return table;
+    }
 
-        // Try to get from handshake headers
-        var headers = session.getHandshakeHeaders();
-        var authHeaders = headers.get("Authorization");
-        if (authHeaders != null && !authHeaders.isEmpty()) {
-            String authHeader = authHeaders.get(0);
-            if (authHeader.startsWith("Bearer ")) {
-                return authHeader.substring(7);
-            }
+    private void dispatch(PrinterConnection connection, PrinterMessage message, boolean binary) throws Exception {
+        if (message == null) {
+            printMetrics.countUnknownPrinterMessage();
+            log.warn("Unknown event from printer {}", connection.getPrinterId());
+            return;
         }
 
-        return null;
+        printMetrics.countPrinterMessage(message.event());
+        handlers.get(message.event()).handle(connection, message, binary);
     }
 
-    private void handleHeartbeat(Long printerId, WebSocketSession session) throws Exception {
-        printerService.updateHeartbeat(printerService.findById(printerId).getJwtToken());
-        session.sendMessage(new TextMessage("{\"event\":\"heartbeat_ack\"}"));
-        log.debug("Heartbeat received from printer: {}", printerId);
+    /**
+     * Application heartbeats from older agents. They only refresh presence in memory, like a
+     * pong; PrinterKeepalive writes it to the database in batches.
+     */
+    private void handleHeartbeat(PrinterConnection connection, boolean binary) throws Exception {
+        printMetrics.recordHeartbeat(connection.getPrinterId());
+        connection.send(binary ? frameCodec.control(BinaryFrameCodec.HEARTBEAT_ACK) : HEARTBEAT_ACK);
+        log.debug("Heartbeat received from printer: {}", connection.getPrinterId());
     }
 
-    private void handlePrintStatus(JsonNode jsonNode) {
-        String sessionId = jsonNode.get("sessionId").asText();
-        String status = jsonNode.get("status").asText();
+    private void handlePrintStatus(Long printerId, PrintStatus message) {
+        String sessionId = message.sessionId();
+        LogContext.putSession(sessionId);
 
-        log.info("Print status update for session {}: {}", sessionId, status);
+        // Joins the trace of the print_job this status answers
+        printTracing.continueTrace(message.traceparent(), "printer.print_status", sessionId, printerId, () -> {
+            log.info("Print status update for session {}: {}", sessionId, message.status());
+            return null;
+        });
 
         // This will be handled by SessionService through the controller
         // The printer agent will call the REST API to update status
     }
 
-    private void handlePrinterStatus(Long printerId, JsonNode jsonNode) {
-        String status = jsonNode.get("status").asText();
-        log.info("Printer {} status update: {}", printerId, status);
+    private void handlePrinterStatus(Long printerId, PrinterStatus message) {
+        log.info("Printer {} status update: {}", printerId, message.status());
         // Update printer status if needed
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface MessageHandler {
+        void handle(PrinterConnection connection, PrinterMessage message, boolean binary) throws Exception;
+    }
+}
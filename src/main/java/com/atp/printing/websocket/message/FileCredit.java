@@ -0,0 +1,12 @@
+package com.atp.printing.websocket.message;
+
+/**
+ * Allow the server to send more chunks of a transfer, one per credit
+ */
+public record FileCredit(String sessionId, int credits) implements PrinterMessage {
+
+    @Override
+    public PrinterEvent event() {
+        return PrinterEvent.FILE_CREDIT;
+    }
+}
@@ -0,0 +1,15 @@
+package com.atp.printing.websocket.message;
+
+/**
+ * Ask the server to stream a session's document over the socket, starting at offset.
+ * An agent resuming after a reconnect sends the number of bytes it already has.
+ *
+ * @param credits chunks the agent can accept before it sends a {@link FileCredit}
+ */
+public record FileRequest(String sessionId, long offset, int credits) implements PrinterMessage {
+
+    @Override
+    public PrinterEvent event() {
+        return PrinterEvent.FILE_REQUEST;
+    }
+}
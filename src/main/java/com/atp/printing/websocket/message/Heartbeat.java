@@ -0,0 +1,12 @@
+package com.atp.printing.websocket.message;
+
+public record Heartbeat() implements PrinterMessage {
+
+    // Heartbeats carry no fields, so every decode returns this instance
+    public static final Heartbeat INSTANCE = new Heartbeat();
+
+    @Override
+    public PrinterEvent event() {
+        return PrinterEvent.HEARTBEAT;
+    }
+}
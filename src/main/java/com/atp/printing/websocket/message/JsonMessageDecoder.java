@@ -0,0 +1,112 @@
+package com.atp.printing.websocket.message;
+
+import com.atp.printing.exception.MalformedMessageException;
+import com.atp.printing.tracing.PrintTracing;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Decodes printer agent JSON text frames with a streaming parser. Only the fields the server
+ * reads are materialised; everything else is skipped. The event name is matched against the
+ * parser's buffer and a heartbeat decodes to a shared instance, so a heartbeat allocates little
+ * beyond the parser itself.
+ */
+@Component
+public class JsonMessageDecoder {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * @return the decoded message, or null if the event is not one the server handles
+     * @throws MalformedMessageException if the payload is not an object with the fields its event needs
+     */
+    public PrinterMessage decode(String payload) {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new MalformedMessageException("Expected a JSON object");
+            }
+
+            boolean hasEvent = false;
+            PrinterEvent event = null;
+            String sessionId = null;
+            String status = null;
+            String traceparent = null;
+            long offset = 0;
+            int credits = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "event" -> {
+                        requireString(value, field);
+                        hasEvent = true;
+                        event = PrinterEvent.fromWire(parser.getTextCharacters(), parser.getTextOffset(),
+                                parser.getTextLength());
+                    }
+                    case "sessionId" -> sessionId = readString(parser, value, field);
+                    case "status" -> status = readString(parser, value, field);
+                    case PrintTracing.TRACEPARENT -> traceparent = readString(parser, value, field);
+                    case "offset" -> offset = readNumber(parser, value, field);
+                    case "credits" -> credits = (int) readNumber(parser, value, field);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (!hasEvent) {
+                throw new MalformedMessageException("Missing event");
+            }
+            if (event == null) {
+                return null;
+            }
+
+            return switch (event) {
+                case HEARTBEAT -> Heartbeat.INSTANCE;
+                case PRINT_STATUS -> new PrintStatus(require(sessionId, "sessionId"), require(status, "status"),
+                        traceparent);
+                case PRINTER_STATUS -> new PrinterStatus(require(status, "status"));
+                case FILE_REQUEST -> new FileRequest(require(sessionId, "sessionId"), offset, credits);
+                case FILE_CREDIT -> new FileCredit(require(sessionId, "sessionId"), credits);
+            };
+        } catch (JsonProcessingException e) {
+            throw new MalformedMessageException("Invalid JSON: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String readString(JsonParser parser, JsonToken value, String field) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        requireString(value, field);
+        return parser.getText();
+    }
+
+    private static long readNumber(JsonParser parser, JsonToken value, String field) throws IOException {
+        if (value != JsonToken.VALUE_NUMBER_INT) {
+            throw new MalformedMessageException("Field " + field + " must be an integer");
+        }
+        return parser.getLongValue();
+    }
+
+    private static void requireString(JsonToken value, String field) {
+        if (value != JsonToken.VALUE_STRING) {
+            throw new MalformedMessageException("Field " + field + " must be a string");
+        }
+    }
+
+    private static String require(String value, String field) {
+        if (value == null) {
+            throw new MalformedMessageException("Missing " + field);
+        }
+        return value;
+    }
+}
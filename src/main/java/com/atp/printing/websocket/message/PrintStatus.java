@@ -0,0 +1,14 @@
+package com.atp.printing.websocket.message;
+
+/**
+ * Progress of a print job, reported by the agent that received it
+ *
+ * @param traceparent trace context echoed from the print_job, or null
+ */
+public record PrintStatus(String sessionId, String status, String traceparent) implements PrinterMessage {
+
+    @Override
+    public PrinterEvent event() {
+        return PrinterEvent.PRINT_STATUS;
+    }
+}
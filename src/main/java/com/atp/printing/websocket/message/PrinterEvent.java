@@ -0,0 +1,42 @@
+package com.atp.printing.websocket.message;
+
+import java.util.Arrays;
+
+/**
+ * Events a printer agent can send, with their JSON names
+ */
+public enum PrinterEvent {
+    HEARTBEAT("heartbeat"),
+    PRINT_STATUS("print_status"),
+    PRINTER_STATUS("printer_status"),
+    FILE_REQUEST("file_request"),
+    FILE_CREDIT("file_credit");
+
+    private static final PrinterEvent[] VALUES = values();
+
+    private final String wireName;
+    private final char[] wireChars;
+
+    PrinterEvent(String wireName) {
+        this.wireName = wireName;
+        this.wireChars = wireName.toCharArray();
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+
+    /**
+     * Look an event up by name straight from a parser's character buffer, without creating a String
+     *
+     * @return the event, or null if the name is not known
+     */
+    public static PrinterEvent fromWire(char[] chars, int offset, int length) {
+        for (PrinterEvent event : VALUES) {
+            if (Arrays.equals(event.wireChars, 0, event.wireChars.length, chars, offset, offset + length)) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.atp.printing.websocket.message;
+
+/**
+ * A decoded message from a printer agent, whichever protocol it arrived on
+ */
+public sealed interface PrinterMessage permits Heartbeat, PrintStatus, PrinterStatus, FileRequest, FileCredit {
+
+    PrinterEvent event();
+}
@@ -0,0 +1,9 @@
+package com.atp.printing.websocket.message;
+
+public record PrinterStatus(String status) implements PrinterMessage {
+
+    @Override
+    public PrinterEvent event() {
+        return PrinterEvent.PRINTER_STATUS;
+    }
+}
@@ -0,0 +1,4 @@
+-- A payment captured for a session that can no longer be printed (expired or failed before the
+-- payment arrived) is kept as REFUND_REQUIRED, so the money is accounted for and can be returned.
+
+ALTER TYPE session_payment_status ADD VALUE IF NOT EXISTS 'REFUND_REQUIRED' BEFORE 'REFUNDED';
@@ -0,0 +1,49 @@
+-- Baseline schema, matching what ddl-auto produced before migrations were introduced.
+-- Existing databases are baselined at this version and skip this script.
+
+CREATE TABLE IF NOT EXISTS printers (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name                VARCHAR(100)     NOT NULL,
+    location            VARCHAR(200),
+    jwt_token           VARCHAR(500)     NOT NULL UNIQUE,
+    status              VARCHAR(20)      NOT NULL,
+    last_heartbeat      TIMESTAMP(6),
+    price_per_page_bw   DOUBLE PRECISION,
+    price_per_page_color DOUBLE PRECISION,
+    color_supported     BOOLEAN,
+    max_pages_per_job   INTEGER,
+    created_at          TIMESTAMP(6)     NOT NULL,
+    updated_at          TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS sessions (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    session_id          VARCHAR(100)     NOT NULL UNIQUE,
+    printer_id          BIGINT           NOT NULL REFERENCES printers (id),
+    file_url            VARCHAR(500),
+    file_name           VARCHAR(255),
+    file_key            VARCHAR(500),
+    page_count          INTEGER,
+    color_mode          VARCHAR(20),
+    status              VARCHAR(20)      NOT NULL,
+    amount              DOUBLE PRECISION,
+    payment_status      VARCHAR(20)      NOT NULL,
+    expires_at          TIMESTAMP(6)     NOT NULL,
+    created_at          TIMESTAMP(6)     NOT NULL,
+    updated_at          TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS payments (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    session_id          BIGINT           NOT NULL REFERENCES sessions (id),
+    razorpay_order_id   VARCHAR(100) UNIQUE,
+    razorpay_payment_id VARCHAR(100) UNIQUE,
+    razorpay_signature  VARCHAR(255),
+    amount              DOUBLE PRECISION NOT NULL,
+    currency            VARCHAR(10),
+    status              VARCHAR(20)      NOT NULL,
+    payment_method      VARCHAR(50),
+    error_message       VARCHAR(500),
+    created_at          TIMESTAMP(6)     NOT NULL,
+    completed_at        TIMESTAMP(6)
+);
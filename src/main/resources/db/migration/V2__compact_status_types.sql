@@ -0,0 +1,20 @@
+-- Store status columns as 4-byte Postgres enums instead of VARCHAR(20).
+-- Check constraints generated by ddl-auto are dropped first since they compare against text.
+
+ALTER TABLE printers DROP CONSTRAINT IF EXISTS printers_status_check;
+ALTER TABLE sessions DROP CONSTRAINT IF EXISTS sessions_status_check;
+ALTER TABLE sessions DROP CONSTRAINT IF EXISTS sessions_payment_status_check;
+ALTER TABLE sessions DROP CONSTRAINT IF EXISTS sessions_color_mode_check;
+ALTER TABLE payments DROP CONSTRAINT IF EXISTS payments_status_check;
+
+CREATE TYPE printer_status AS ENUM ('ONLINE', 'OFFLINE', 'BUSY', 'ERROR');
+CREATE TYPE session_status AS ENUM ('ACTIVE', 'UPLOADED', 'PAID', 'PRINTING', 'COMPLETED', 'FAILED', 'EXPIRED');
+CREATE TYPE session_payment_status AS ENUM ('PENDING', 'PAID', 'FAILED', 'REFUNDED');
+CREATE TYPE color_mode AS ENUM ('BW', 'COLOR');
+CREATE TYPE payment_status AS ENUM ('CREATED', 'AUTHORIZED', 'CAPTURED', 'FAILED', 'REFUNDED');
+
+ALTER TABLE printers ALTER COLUMN status TYPE printer_status USING status::printer_status;
+ALTER TABLE sessions ALTER COLUMN status TYPE session_status USING status::session_status;
+ALTER TABLE sessions ALTER COLUMN payment_status TYPE session_payment_status USING payment_status::session_payment_status;
+ALTER TABLE sessions ALTER COLUMN color_mode TYPE color_mode USING color_mode::color_mode;
+ALTER TABLE payments ALTER COLUMN status TYPE payment_status USING status::payment_status;
@@ -0,0 +1,51 @@
+-- Indexes backing the scheduler, keyset list and report queries.
+
+-- Expiry sweep only ever looks at live sessions, which are a small fraction of the table
+CREATE INDEX IF NOT EXISTS idx_sessions_live_expires_at
+    ON sessions (expires_at)
+    WHERE status NOT IN ('COMPLETED', 'EXPIRED', 'FAILED');
+
+CREATE INDEX IF NOT EXISTS idx_sessions_status_expires_at
+    ON sessions (status, expires_at);
+
+-- Keyset pagination: (created_at DESC, id DESC) per printer, per status and globally
+CREATE INDEX IF NOT EXISTS idx_sessions_printer_created_at
+    ON sessions (printer_id, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_status_created_at
+    ON sessions (status, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_payment_status_created_at
+    ON sessions (payment_status, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_created_at
+    ON sessions (created_at DESC, id DESC);
+
+-- Cleanup of finished sessions
+CREATE INDEX IF NOT EXISTS idx_sessions_finished_updated_at
+    ON sessions (updated_at)
+    WHERE status IN ('COMPLETED', 'FAILED', 'EXPIRED');
+
+CREATE INDEX IF NOT EXISTS idx_payments_session_id
+    ON payments (session_id);
+
+CREATE INDEX IF NOT EXISTS idx_payments_status
+    ON payments (status, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_payments_status_completed_at
+    ON payments (status, completed_at);
+
+CREATE INDEX IF NOT EXISTS idx_payments_created_at
+    ON payments (created_at DESC, id DESC);
+
+-- Stale pending payments are a small subset
+CREATE INDEX IF NOT EXISTS idx_payments_created_pending
+    ON payments (created_at)
+    WHERE status = 'CREATED';
+
+CREATE INDEX IF NOT EXISTS idx_printers_last_heartbeat
+    ON printers (last_heartbeat);
+
+ANALYZE printers;
+ANALYZE sessions;
+ANALYZE payments;
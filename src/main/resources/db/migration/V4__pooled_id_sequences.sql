@@ -0,0 +1,18 @@
+-- Replace identity columns with sequences so Hibernate can pre-allocate ids
+-- (pooled optimizer, 50 per round trip) and batch inserts.
+-- Each sequence is moved a full block past the current max id.
+
+ALTER TABLE printers ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE printers ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS printers_seq INCREMENT BY 50;
+SELECT setval('printers_seq', COALESCE((SELECT MAX(id) FROM printers), 0) + 50);
+
+ALTER TABLE sessions ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE sessions ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS sessions_seq INCREMENT BY 50;
+SELECT setval('sessions_seq', COALESCE((SELECT MAX(id) FROM sessions), 0) + 50);
+
+ALTER TABLE payments ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE payments ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS payments_seq INCREMENT BY 50;
+SELECT setval('payments_seq', COALESCE((SELECT MAX(id) FROM payments), 0) + 50);
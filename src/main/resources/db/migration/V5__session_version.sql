@@ -0,0 +1,4 @@
+-- Optimistic version counter for sessions. Bulk transitions bump it as well,
+-- so an entity save racing a conditional update fails instead of overwriting it.
+
+ALTER TABLE sessions ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,53 @@
+-- Pre-aggregated usage counters per printer and time bucket, maintained by UsageAggregationService.
+-- Dashboard queries read O(buckets) rows from here instead of scanning sessions and payments.
+
+CREATE TABLE IF NOT EXISTS usage_rollups (
+    id           BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    printer_id   BIGINT           NOT NULL REFERENCES printers (id),
+    granularity  VARCHAR(8)       NOT NULL,
+    bucket_start TIMESTAMP(6)     NOT NULL,
+    revenue      DOUBLE PRECISION NOT NULL DEFAULT 0,
+    pages        BIGINT           NOT NULL DEFAULT 0,
+    jobs         BIGINT           NOT NULL DEFAULT 0,
+    failures     BIGINT           NOT NULL DEFAULT 0,
+    updated_at   TIMESTAMP(6)     NOT NULL,
+    CONSTRAINT uk_usage_rollups_bucket UNIQUE (printer_id, granularity, bucket_start)
+);
+
+CREATE INDEX IF NOT EXISTS idx_usage_rollups_granularity_bucket
+    ON usage_rollups (granularity, bucket_start);
+
+-- Backfill from existing rows so the dashboard is complete from the first deploy
+
+INSERT INTO usage_rollups (printer_id, granularity, bucket_start, revenue, pages, jobs, failures, updated_at)
+SELECT printer_id, granularity, bucket_start,
+       SUM(revenue), SUM(pages), SUM(jobs), SUM(failures), now()
+FROM (
+    SELECT s.printer_id, g.granularity,
+           date_trunc(lower(g.granularity), p.completed_at) AS bucket_start,
+           p.amount AS revenue, 0 AS pages, 0 AS jobs, 0 AS failures
+    FROM payments p
+    JOIN sessions s ON s.id = p.session_id
+    CROSS JOIN (VALUES ('HOUR'), ('DAY')) AS g (granularity)
+    WHERE p.status = 'CAPTURED' AND p.completed_at IS NOT NULL
+
+    UNION ALL
+
+    SELECT s.printer_id, g.granularity,
+           date_trunc(lower(g.granularity), s.updated_at),
+           0, COALESCE(s.page_count, 0), 1, 0
+    FROM sessions s
+    CROSS JOIN (VALUES ('HOUR'), ('DAY')) AS g (granularity)
+    WHERE s.status = 'COMPLETED' AND s.updated_at IS NOT NULL
+
+    UNION ALL
+
+    SELECT s.printer_id, g.granularity,
+           date_trunc(lower(g.granularity), s.updated_at),
+           0, 0, 0, 1
+    FROM sessions s
+    CROSS JOIN (VALUES ('HOUR'), ('DAY')) AS g (granularity)
+    WHERE s.status = 'FAILED' AND s.updated_at IS NOT NULL
+) usage
+GROUP BY printer_id, granularity, bucket_start
+ON CONFLICT (printer_id, granularity, bucket_start) DO NOTHING;
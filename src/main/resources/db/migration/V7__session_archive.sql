@@ -0,0 +1,49 @@
+-- Cold storage for finished sessions and their payments. SessionArchiveService moves rows here
+-- in batches so the live tables only hold recent and in-flight sessions.
+
+CREATE TABLE IF NOT EXISTS sessions_archive (
+    id              BIGINT                 PRIMARY KEY,
+    session_id      VARCHAR(100)           NOT NULL UNIQUE,
+    printer_id      BIGINT                 NOT NULL,
+    file_url        VARCHAR(500),
+    file_name       VARCHAR(255),
+    file_key        VARCHAR(500),
+    page_count      INTEGER,
+    color_mode      color_mode,
+    status          session_status         NOT NULL,
+    amount          DOUBLE PRECISION,
+    payment_status  session_payment_status NOT NULL,
+    expires_at      TIMESTAMP(6)           NOT NULL,
+    created_at      TIMESTAMP(6)           NOT NULL,
+    updated_at      TIMESTAMP(6),
+    version         BIGINT                 NOT NULL,
+    archived_at     TIMESTAMP(6)           NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_archive_printer_created_at
+    ON sessions_archive (printer_id, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_archive_created_at
+    ON sessions_archive (created_at DESC, id DESC);
+
+CREATE TABLE IF NOT EXISTS payments_archive (
+    id                  BIGINT           PRIMARY KEY,
+    session_id          BIGINT           NOT NULL,
+    razorpay_order_id   VARCHAR(100),
+    razorpay_payment_id VARCHAR(100),
+    razorpay_signature  VARCHAR(255),
+    amount              DOUBLE PRECISION NOT NULL,
+    currency            VARCHAR(10),
+    status              payment_status   NOT NULL,
+    payment_method      VARCHAR(50),
+    error_message       VARCHAR(500),
+    created_at          TIMESTAMP(6)     NOT NULL,
+    completed_at        TIMESTAMP(6),
+    archived_at         TIMESTAMP(6)     NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_payments_archive_session_id
+    ON payments_archive (session_id);
+
+CREATE INDEX IF NOT EXISTS idx_payments_archive_status_completed_at
+    ON payments_archive (status, completed_at);
@@ -0,0 +1,19 @@
+-- Content-addressed document store. One row per distinct uploaded document, keyed by its SHA-256,
+-- counting the sessions that reference it. StoredObjectService only deletes the remote object
+-- when the last reference is released.
+
+CREATE TABLE IF NOT EXISTS stored_objects (
+    content_hash  VARCHAR(64)  PRIMARY KEY,
+    public_id     VARCHAR(500) NOT NULL,
+    url           VARCHAR(500) NOT NULL,
+    size_bytes    BIGINT       NOT NULL,
+    ref_count     INTEGER      NOT NULL,
+    created_at    TIMESTAMP(6) NOT NULL,
+    last_used_at  TIMESTAMP(6) NOT NULL
+);
+
+-- Sessions uploaded before this migration keep content_hash NULL and own their file_key outright
+
+ALTER TABLE sessions ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+ALTER TABLE sessions_archive ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
@@ -0,0 +1,14 @@
+-- Print-ready renditions of stored documents, one per colour mode. RenditionService fills this
+-- after upload; print jobs and file transfers point printers at the rendition when there is one.
+-- Rows go with their stored object: StoredObjectService deletes them, and their remote copies,
+-- when the last reference is released.
+
+CREATE TABLE IF NOT EXISTS renditions (
+    content_hash  VARCHAR(64)  NOT NULL REFERENCES stored_objects (content_hash) ON DELETE CASCADE,
+    color_mode    color_mode   NOT NULL,
+    public_id     VARCHAR(500) NOT NULL,
+    url           VARCHAR(500) NOT NULL,
+    size_bytes    BIGINT       NOT NULL,
+    created_at    TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (content_hash, color_mode)
+);
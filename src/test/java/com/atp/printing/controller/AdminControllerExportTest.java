@@ -0,0 +1,105 @@
+package com.atp.printing.controller;
+
+import com.atp.printing.repository.PaymentRepository;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.UsageRollupRepository;
+import com.atp.printing.service.ExportService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class AdminControllerExportTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2026, 9, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2026, 10, 1, 0, 0);
+
+    private ExportService exportService;
+    private AdminController adminController;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ExportService(mock(SessionRepository.class), mock(PaymentRepository.class),
+                mock(UsageRollupRepository.class), mock(PlatformTransactionManager.class), 1);
+        ReflectionTestUtils.setField(exportService, "batchSize", 100);
+        adminController = new AdminController(null, exportService, null, null);
+    }
+
+    @Test
+    void exportThatRunsReleasesItsSlot() throws Exception {
+        MockHttpServletRequest request = asyncRequest();
+        ResponseEntity<StreamingResponseBody> response = export(request);
+        assertNull(exportService.tryStartExport());
+
+        startAsync(request, new TaskExecutorAdapter(new SyncTaskExecutor()), response.getBody());
+
+        assertNotNull(exportService.tryStartExport());
+    }
+
+    @Test
+    void exportThatNeverRunsReleasesItsSlotWhenTheRequestEnds() throws Exception {
+        MockHttpServletRequest request = asyncRequest();
+        ResponseEntity<StreamingResponseBody> response = export(request);
+
+        startAsync(request, new TaskExecutorAdapter(task -> {
+            throw new RejectedExecutionException("full");
+        }), response.getBody());
+        assertNull(exportService.tryStartExport());
+
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+
+        assertNotNull(exportService.tryStartExport());
+    }
+
+    @Test
+    void secondExportIsRefusedWhileTheFirstHoldsTheSlot() {
+        export(asyncRequest());
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, export(asyncRequest()).getStatusCode());
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(MockHttpServletRequest request) {
+        return adminController.export("sessions", FROM, TO, "csv", true, request);
+    }
+
+    private static MockHttpServletRequest asyncRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/admin/exports/sessions");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    /**
+     * What StreamingResponseBodyReturnValueHandler does with the body
+     */
+    private static void startAsync(MockHttpServletRequest request, AsyncTaskExecutor executor,
+                                   StreamingResponseBody body) throws Exception {
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, new MockHttpServletResponse()));
+        asyncManager.setTaskExecutor(executor);
+        asyncManager.startCallableProcessing(() -> {
+            body.writeTo(new ByteArrayOutputStream());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.atp.printing.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentKeysTest {
+
+    private static final byte[] DOCUMENT = "%PDF-1.7 one page".getBytes(UTF_8);
+
+    @Test
+    void proxiedAndDirectKeysForTheSameDocumentNeverMeet() throws Exception {
+        String proxied = ContentKeys.ofSha256(MessageDigest.getInstance("SHA-256").digest(DOCUMENT));
+        byte[] md5 = MessageDigest.getInstance("MD5").digest(DOCUMENT);
+        String direct = ContentKeys.ofStorageEtag(HexFormat.of().formatHex(md5));
+
+        assertEquals(64, proxied.length());
+        assertFalse(ContentKeys.isStorageKey(proxied));
+        assertTrue(ContentKeys.isStorageKey(direct));
+        assertNotEquals(proxied, direct);
+    }
+
+    @Test
+    void storageEtagsAreNormalised() {
+        assertEquals("md5:0123456789abcdef0123456789abcdef",
+                ContentKeys.ofStorageEtag("0123456789ABCDEF0123456789abcdef"));
+    }
+
+    @Test
+    void etagsThatAreNotMd5AreRefused() {
+        assertNull(ContentKeys.ofStorageEtag(null));
+        assertNull(ContentKeys.ofStorageEtag(""));
+        assertNull(ContentKeys.ofStorageEtag("null"));
+        assertNull(ContentKeys.ofStorageEtag("0123456789abcdef0123456789abcdef-2"));
+    }
+
+    @Test
+    void onlySha256DigestsMakeProxiedKeys() {
+        assertThrows(IllegalArgumentException.class, () -> ContentKeys.ofSha256(new byte[16]));
+    }
+}
@@ -0,0 +1,72 @@
+package com.atp.printing.document;
+
+import com.atp.printing.exception.DocumentAnalysisException;
+import com.atp.printing.metrics.PrintMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DocumentAnalyzerTest {
+
+    private static final String PDF = "%PDF-1.4\n"
+            + "1 0 obj\n<</Type/Catalog/Pages 2 0 R>>\nendobj\n"
+            + "2 0 obj\n<</Type/Pages/Kids[3 0 R 4 0 R]/Count 2>>\nendobj\n"
+            + "3 0 obj\n<</Type/Page/Parent 2 0 R>>\nendobj\n"
+            + "4 0 obj\n<</Type/Page/Parent 2 0 R>>\nendobj\n";
+
+    private final PrintMetrics printMetrics = new PrintMetrics(new SimpleMeterRegistry());
+    private final DocumentAnalyzer analyzer = new DocumentAnalyzer(printMetrics, 1, 1, 5000, 1 << 20, 16);
+
+    @AfterEach
+    void tearDown() {
+        analyzer.shutdown();
+    }
+
+    @Test
+    void pdfIsPricedFromItsPageTree() throws IOException {
+        DocumentAnalysis analysis = analyzer.analyze(file("two-pages.pdf", withXref(PDF)));
+
+        assertEquals(DocumentType.PDF, analysis.type());
+        assertEquals(2, analysis.pageCount());
+    }
+
+    @Test
+    void wordDocumentIsRefusedWhateverItClaims() {
+        // The page count in docProps/app.xml is whatever the client's word processor wrote
+        byte[] docx = {'P', 'K', 3, 4, 20, 0, 6, 0, 8, 0};
+
+        DocumentAnalysisException e = assertThrows(DocumentAnalysisException.class,
+                () -> analyzer.analyze(file("report.docx", docx)));
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void pdfWhosePageTreeCannotBeResolvedIsRefused() {
+        DocumentAnalysisException e = assertThrows(DocumentAnalysisException.class,
+                () -> analyzer.analyze(file("no-xref.pdf", PDF.getBytes(ISO_8859_1))));
+        assertFalse(e.isRetryable());
+    }
+
+    private static byte[] withXref(String body) {
+        StringBuilder pdf = new StringBuilder(body);
+        int xref = pdf.length();
+        pdf.append("xref\n0 5\n0000000000 65535 f \n");
+        for (int number = 1; number <= 4; number++) {
+            pdf.append(String.format("%010d 00000 n \n", body.indexOf("\n" + number + " 0 obj") + 1));
+        }
+        pdf.append("trailer\n<</Size 5/Root 1 0 R>>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        return pdf.toString().getBytes(ISO_8859_1);
+    }
+
+    private static MockMultipartFile file(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "application/octet-stream", content);
+    }
+}
@@ -0,0 +1,32 @@
+package com.atp.printing.document;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DocumentTypeTest {
+
+    @Test
+    void typeComesFromTheLeadingBytes() {
+        assertEquals(DocumentType.PDF, sniff("%PDF-1.7\n".getBytes(US_ASCII)));
+        assertEquals(DocumentType.DOCX, sniff(new byte[]{'P', 'K', 3, 4, 20, 0, 6, 0}));
+        assertEquals(DocumentType.IMAGE, sniff(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0}));
+        assertEquals(DocumentType.IMAGE, sniff(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}));
+    }
+
+    @Test
+    void declaredContentIsNotTrusted() {
+        assertNull(sniff("<html><body>%PDF-".getBytes(US_ASCII)));
+        assertNull(sniff("%PD".getBytes(US_ASCII)));
+        assertNull(sniff(new byte[0]));
+    }
+
+    private static DocumentType sniff(byte[] bytes) {
+        byte[] head = new byte[DocumentType.SNIFF_LENGTH];
+        int length = Math.min(bytes.length, head.length);
+        System.arraycopy(bytes, 0, head, 0, length);
+        return DocumentType.sniff(head, length);
+    }
+}
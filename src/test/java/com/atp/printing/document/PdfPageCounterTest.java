@@ -0,0 +1,273 @@
+package com.atp.printing.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PdfPageCounterTest {
+
+    private final PdfPageCounter counter = new PdfPageCounter(1 << 20);
+
+    @Test
+    void countIsTheRootPageTreeNodeCount() throws IOException {
+        // Leaves without /Type are still pages
+        Pdf pdf = new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(2, "<</Type/Pages/Kids[3 0 R 4 0 R]/Count 3>>")
+                .object(3, "<</Parent 2 0 R>>")
+                .object(4, "<</Type/Pages/Parent 2 0 R/Kids[5 0 R 6 0 R]/Count 2>>")
+                .object(5, "<</Parent 4 0 R/Contents(a \\) in a string /Type /Page)>>")
+                .object(6, "<</Parent 4 0 R>>");
+
+        assertEquals(3, counter.count(pdf.table("/Size 7/Root 1 0 R")));
+    }
+
+    @Test
+    void incrementalUpdateCountsOnlyTheCurrentPageTree() throws IOException {
+        Pdf pdf = new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(2, "<</Type/Pages/Kids[3 0 R 4 0 R 5 0 R 6 0 R]/Count 4>>")
+                .object(3, "<</Type/Page/Parent 2 0 R>>")
+                .object(4, "<</Type/Page/Parent 2 0 R>>")
+                .object(5, "<</Type/Page/Parent 2 0 R>>")
+                .object(6, "<</Type/Page/Parent 2 0 R>>");
+        int first = pdf.xref("/Size 7/Root 1 0 R");
+
+        // Three pages deleted, and a page object left outside the tree
+        pdf.object(2, "<</Type/Pages/Kids[3 0 R]/Count 1>>")
+                .object(7, "<</Type/Page/Parent 2 0 R>>");
+
+        assertEquals(1, counter.count(pdf.table("/Size 8/Root 1 0 R/Prev " + first)));
+    }
+
+    @Test
+    void pageTreeInsideACompressedObjectStreamIsFound() throws IOException {
+        Pdf pdf = new Pdf()
+                .object(3, "<</Parent 2 0 R>>")
+                .object(4, "<</Parent 2 0 R>>")
+                .objectStream(5, "/Filter/FlateDecode", Map.of(
+                        1, "<</Type/Catalog/Pages 2 0 R>>",
+                        2, "<</Type/Pages/Kids[3 0 R 4 0 R]/Count 2>>"));
+
+        assertEquals(2, counter.count(pdf.xrefStream(6, "/Root 1 0 R")));
+    }
+
+    @Test
+    void hybridFileReadsTheObjectsListedInItsCrossReferenceStream() throws IOException {
+        Pdf pdf = new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(3, "<</Parent 2 0 R>>")
+                .objectStream(4, "/Filter/FlateDecode", Map.of(2, "<</Type/Pages/Kids[3 0 R]/Count 1>>"));
+        int stream = pdf.xrefStreamOffset(5, "/Root 1 0 R");
+
+        assertEquals(1, counter.count(pdf.table("/Size 6/Root 1 0 R/XRefStm " + stream, 1, 3)));
+    }
+
+    @Test
+    void objectStreamWithAnUnsupportedFilterIsRefused() {
+        Pdf pdf = new Pdf()
+                .object(3, "<</Type/Page/Parent 2 0 R>>")
+                .objectStream(5, "/Filter/LZWDecode", Map.of(
+                        1, "<</Type/Catalog/Pages 2 0 R>>",
+                        2, "<</Type/Pages/Kids[3 0 R]/Count 1>>"));
+
+        assertThrows(IOException.class, () -> counter.count(pdf.xrefStream(6, "/Root 1 0 R")));
+    }
+
+    @Test
+    void fileWithoutAResolvablePageTreeIsRefused() {
+        assertThrows(IOException.class, () -> counter.count(singlePage().table("/Size 4")));
+        assertThrows(IOException.class, () -> counter.count(new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(2, "<</Type/Pages/Kids[3 0 R]>>")
+                .object(3, "<</Type/Page/Parent 2 0 R>>")
+                .table("/Size 4/Root 1 0 R")));
+        assertThrows(IOException.class, () -> counter.count(new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(2, "<</Type/Pages/Kids[3 0 R 3 0 R]/Count 1>>")
+                .object(3, "<</Type/Page/Parent 2 0 R>>")
+                .table("/Size 4/Root 1 0 R")));
+    }
+
+    @Test
+    void brokenCrossReferenceIsRefused() throws IOException {
+        byte[] valid = singlePage().table("/Size 4/Root 1 0 R");
+        assertEquals(1, counter.count(valid));
+
+        String text = new String(valid, ISO_8859_1);
+        int startxref = text.lastIndexOf("startxref");
+        byte[] truncated = text.substring(0, startxref).getBytes(ISO_8859_1);
+        byte[] misplaced = (text.substring(0, startxref) + "startxref\n9\n%%EOF\n").getBytes(ISO_8859_1);
+        // The catalog entry points one byte into the object
+        byte[] shifted = text.replaceFirst("(\\d{10}) 00000 n", String.format("%010d 00000 n", text.indexOf("1 0 obj") + 1))
+                .getBytes(ISO_8859_1);
+
+        assertThrows(IOException.class, () -> counter.count(truncated));
+        assertThrows(IOException.class, () -> counter.count(misplaced));
+        assertThrows(IOException.class, () -> counter.count(shifted));
+    }
+
+    @Test
+    void interruptedCountStops() {
+        byte[] pdf = singlePage().table("/Size 4/Root 1 0 R");
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> counter.count(pdf));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static Pdf singlePage() {
+        return new Pdf()
+                .object(1, "<</Type/Catalog/Pages 2 0 R>>")
+                .object(2, "<</Type/Pages/Kids[3 0 R]/Count 1>>")
+                .object(3, "<</Type/Page/Parent 2 0 R>>");
+    }
+
+    /**
+     * Writes PDF revisions, remembering where each object went for the cross-reference
+     */
+    private static final class Pdf {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<Integer, Integer> offsets = new LinkedHashMap<>();
+        private final Map<Integer, int[]> compressed = new LinkedHashMap<>();
+
+        Pdf() {
+            ascii("%PDF-1.7\n%\u00e2\u00e3\u00cf\u00d3\n");
+        }
+
+        Pdf object(int number, String body) {
+            offsets.put(number, out.size());
+            ascii(number + " 0 obj\n" + body + "\nendobj\n");
+            return this;
+        }
+
+        Pdf objectStream(int number, String filter, Map<Integer, String> objects) {
+            StringBuilder header = new StringBuilder();
+            StringBuilder body = new StringBuilder();
+            int index = 0;
+            for (Map.Entry<Integer, String> object : objects.entrySet()) {
+                header.append(object.getKey()).append(' ').append(body.length()).append(' ');
+                body.append(object.getValue()).append('\n');
+                compressed.put(object.getKey(), new int[]{number, index++});
+            }
+            byte[] data = (header + body.toString()).getBytes(ISO_8859_1);
+            if (filter.contains("FlateDecode")) {
+                data = deflate(data);
+            }
+            stream(number, "/Type/ObjStm/N " + objects.size() + "/First " + header.length() + filter, data);
+            return this;
+        }
+
+        /**
+         * A classic table listing the objects written since the last one
+         */
+        int xref(String trailer) {
+            return xref(trailer, offsets.keySet().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private int xref(String trailer, int... numbers) {
+            int at = out.size();
+            StringBuilder table = new StringBuilder("xref\n0 1\n0000000000 65535 f \n");
+            for (int number : numbers) {
+                table.append(number).append(" 1\n").append(String.format("%010d 00000 n \n", offsets.get(number)));
+            }
+            ascii(table + "trailer\n<<" + trailer + ">>\n");
+            offsets.clear();
+            return at;
+        }
+
+        byte[] table(String trailer) {
+            return end(xref(trailer));
+        }
+
+        byte[] table(String trailer, int... numbers) {
+            return end(xref(trailer, numbers));
+        }
+
+        /**
+         * A cross-reference stream with PNG Up prediction, listing every object so far
+         */
+        byte[] xrefStream(int number, String dictionary) {
+            return end(xrefStreamOffset(number, dictionary));
+        }
+
+        int xrefStreamOffset(int number, String dictionary) {
+            int at = out.size();
+            offsets.put(number, at);
+            int size = number + 1;
+
+            byte[] rows = new byte[size * 8];
+            byte[] previous = new byte[7];
+            for (int i = 0; i < size; i++) {
+                byte[] row = new byte[7];
+                int[] packed = compressed.get(i);
+                if (packed != null) {
+                    row[0] = 2;
+                    put(row, 1, 4, packed[0]);
+                    put(row, 5, 2, packed[1]);
+                } else if (offsets.containsKey(i)) {
+                    row[0] = 1;
+                    put(row, 1, 4, offsets.get(i));
+                }
+                rows[i * 8] = 2;
+                for (int b = 0; b < 7; b++) {
+                    rows[i * 8 + 1 + b] = (byte) (row[b] - previous[b]);
+                }
+                previous = row;
+            }
+
+            stream(number, "/Type/XRef/Size " + size + "/W[1 4 2]/Filter/FlateDecode"
+                    + "/DecodeParms<</Predictor 12/Columns 7>>" + dictionary, deflate(rows));
+            return at;
+        }
+
+        private void stream(int number, String dictionary, byte[] data) {
+            offsets.put(number, out.size());
+            ascii(number + " 0 obj\n<<" + dictionary + "/Length " + data.length + ">>\nstream\n");
+            out.writeBytes(data);
+            ascii("\nendstream\nendobj\n");
+        }
+
+        private byte[] end(int xref) {
+            ascii("startxref\n" + xref + "\n%%EOF\n");
+            return out.toByteArray();
+        }
+
+        private void ascii(String text) {
+            out.writeBytes(text.getBytes(ISO_8859_1));
+        }
+
+        private static void put(byte[] row, int offset, int width, int value) {
+            for (int i = width - 1; i >= 0; i--) {
+                row[offset + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+
+        private static byte[] deflate(byte[] data) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+            return compressed.toByteArray();
+        }
+    }
+}
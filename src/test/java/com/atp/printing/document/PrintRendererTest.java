@@ -0,0 +1,69 @@
+package com.atp.printing.document;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintRendererTest {
+
+    private final PrintRenderer renderer = new PrintRenderer(300, 16_000_000, 0.85f);
+
+    @Test
+    void imageBecomesASinglePagePdfInItsOrientation() throws IOException {
+        String landscape = render(renderer, png(1200, 800), false);
+        String portrait = render(renderer, png(800, 1200), false);
+
+        assertTrue(landscape.startsWith("%PDF-"));
+        assertTrue(landscape.contains("/MediaBox[0 0 841.89 595.28]"), landscape);
+        assertTrue(portrait.contains("/MediaBox[0 0 595.28 841.89]"), portrait);
+        assertTrue(landscape.contains("/ColorSpace/DeviceRGB"));
+        assertEquals(1, new PdfPageCounter(1 << 20).count(landscape.getBytes(ISO_8859_1)));
+    }
+
+    @Test
+    void blackAndWhiteJobsAreRenderedGrey() throws IOException {
+        assertTrue(render(renderer, png(600, 800), true).contains("/ColorSpace/DeviceGray"));
+    }
+
+    @Test
+    void smallImagesAreNotUpscaled() throws IOException {
+        assertTrue(render(renderer, png(120, 80), false).contains("/Width 120/Height 80"));
+    }
+
+    @Test
+    void largeImagesAreScaledDownToThePrinterResolution() throws IOException {
+        // 4000x3000 fitted to landscape A4 is drawn 745.7pt wide, 1554 pixels at 150 dpi
+        PrintRenderer lowResolution = new PrintRenderer(150, 1_000_000, 0.85f);
+
+        assertTrue(render(lowResolution, png(4000, 3000), false).contains("/Width 1554/Height 1165"));
+    }
+
+    @Test
+    void bytesThatAreNotAnImageAreRefused() {
+        assertThrows(IOException.class, () -> renderer.render("%PDF-1.7".getBytes(ISO_8859_1), false));
+    }
+
+    private static String render(PrintRenderer renderer, byte[] image, boolean grayscale) throws IOException {
+        return new String(renderer.render(image, grayscale), ISO_8859_1);
+    }
+
+    static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
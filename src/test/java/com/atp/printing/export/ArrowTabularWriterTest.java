@@ -0,0 +1,70 @@
+package com.atp.printing.export;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArrowTabularWriterTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            Column.of("id", Column.Type.INT64),
+            Column.of("pages", Column.Type.INT32),
+            Column.of("amount", Column.Type.FLOAT64),
+            Column.of("status", Column.Type.STRING),
+            Column.of("created_at", Column.Type.TIMESTAMP),
+            Column.of("day", Column.Type.DATE));
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_000);
+
+    @Test
+    void rowsAreWrittenInBatchesOfBoundedSize() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArrowTabularWriter writer = new ArrowTabularWriter(out, 2)) {
+            writer.writeHeader(COLUMNS);
+            writer.writeRow(1L, 3, 6.0, "COMPLETED", CREATED_AT, CREATED_AT.toLocalDate());
+            writer.writeRow(2L, 1, 2.0, "FAILED", CREATED_AT, CREATED_AT.toLocalDate());
+            writer.writeRow(3L, null, null, null, null, null);
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals(COLUMNS.stream().map(Column::name).toList(),
+                    root.getSchema().getFields().stream().map(Field::getName).toList());
+
+            while (reader.loadNextBatch()) {
+                batchSizes.add(root.getRowCount());
+                if (batchSizes.size() == 1) {
+                    assertEquals(1L, root.getVector("id").getObject(0));
+                    assertEquals(3, root.getVector("pages").getObject(0));
+                    assertEquals(6.0, root.getVector("amount").getObject(0));
+                    assertEquals("COMPLETED", root.getVector("status").getObject(0).toString());
+                    assertEquals(CREATED_AT, root.getVector("created_at").getObject(0));
+                    assertEquals(LocalDate.of(2024, 3, 1), LocalDate.ofEpochDay(
+                            ((Number) root.getVector("day").getObject(0)).longValue()));
+                } else {
+                    assertEquals(3L, root.getVector("id").getObject(0));
+                    assertNull(root.getVector("pages").getObject(0));
+                    assertNull(root.getVector("status").getObject(0));
+                    assertNull(root.getVector("created_at").getObject(0));
+                }
+            }
+        }
+
+        assertEquals(List.of(2, 1), batchSizes);
+    }
+}
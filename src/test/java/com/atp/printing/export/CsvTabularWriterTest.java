@@ -0,0 +1,49 @@
+package com.atp.printing.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvTabularWriterTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            Column.of("session_id", Column.Type.STRING),
+            Column.of("pages", Column.Type.INT32),
+            Column.of("file_name", Column.Type.STRING));
+
+    @Test
+    void valuesAreQuotedOnlyWhenTheyNeedIt() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvTabularWriter writer = new CsvTabularWriter(out, false)) {
+            writer.writeHeader(COLUMNS);
+            writer.writeRow("s-1", 3, "notes.pdf");
+            writer.writeRow("s-2", 1, "a, \"b\"\nc.pdf");
+            writer.writeRow("s-3", null, null);
+        }
+
+        assertEquals("session_id,pages,file_name\n"
+                + "s-1,3,notes.pdf\n"
+                + "s-2,1,\"a, \"\"b\"\"\nc.pdf\"\n"
+                + "s-3,,\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void gzipOutputDecompressesToTheSameRows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvTabularWriter writer = new CsvTabularWriter(out, true)) {
+            writer.writeHeader(COLUMNS);
+            writer.writeRow("s-1", 3, "notes.pdf");
+        }
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("session_id,pages,file_name\ns-1,3,notes.pdf\n", new String(in.readAllBytes(), UTF_8));
+        }
+    }
+}
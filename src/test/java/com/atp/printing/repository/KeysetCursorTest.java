@@ -0,0 +1,44 @@
+package com.atp.printing.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    @Test
+    void cursorSurvivesTheRoundTripThroughItsToken() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_000), 42L);
+
+        String token = cursor.encode();
+
+        assertEquals(cursor, KeysetCursor.decode(token));
+        assertFalse(token.contains("="), "tokens are unpadded so they can go in a query string as they are");
+    }
+
+    @Test
+    void missingTokenStartsAtTheFirstPage() {
+        assertSame(KeysetCursor.FIRST, KeysetCursor.decode(null));
+        assertSame(KeysetCursor.FIRST, KeysetCursor.decode(" "));
+    }
+
+    @Test
+    void firstCursorSortsBeforeEveryRealRow() {
+        LocalDateTime farFuture = LocalDateTime.of(2999, 1, 1, 0, 0);
+
+        assertTrue(KeysetCursor.FIRST.createdAt().isAfter(farFuture));
+        assertEquals(Long.MAX_VALUE, KeysetCursor.FIRST.id());
+    }
+
+    @Test
+    void tamperedTokensAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("MjAyNC0wMy0wMQ"));
+    }
+}
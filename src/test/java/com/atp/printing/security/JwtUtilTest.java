@@ -0,0 +1,60 @@
+package com.atp.printing.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "testSecretKeyForJwtSigningThatIsLongEnough1234567890";
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = jwtUtil(SECRET, 60_000L);
+    }
+
+    @Test
+    void printerTokensCarryTheirPrinter() {
+        String token = jwtUtil.generatePrinterToken(17L, "Library kiosk");
+
+        assertEquals(17L, jwtUtil.extractValidPrinterId(token));
+        assertEquals("PRINTER", jwtUtil.extractValidTokenType(token));
+    }
+
+    @Test
+    void adminTokensAreNotPrinterTokens() {
+        String token = jwtUtil.generateAdminToken("operator");
+
+        assertEquals("ADMIN", jwtUtil.extractValidTokenType(token));
+        assertNull(jwtUtil.extractValidPrinterId(token));
+    }
+
+    @Test
+    void tokensSignedWithAnotherKeyAreRefused() {
+        String forged = jwtUtil("anotherSecretKeyForJwtSigningThatIsLongEnough0987654321", 60_000L)
+                .generateAdminToken("operator");
+
+        assertNull(jwtUtil.extractValidTokenType(forged));
+        assertNull(jwtUtil.extractValidPrinterId(forged));
+    }
+
+    @Test
+    void expiredTokensAreRefused() {
+        String expired = jwtUtil(SECRET, -1_000L).generateAdminToken("operator");
+
+        assertNull(jwtUtil.extractValidTokenType(expired));
+    }
+
+    private static JwtUtil jwtUtil(String secret, long expiration) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", secret);
+        ReflectionTestUtils.setField(jwtUtil, "expiration", expiration);
+        ReflectionTestUtils.setField(jwtUtil, "printerExpiration", expiration);
+        return jwtUtil;
+    }
+}
@@ -0,0 +1,41 @@
+package com.atp.printing.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsAllowedThenRefused() {
+        TokenBucket bucket = new TokenBucket(3, 0.001);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void retryAfterReflectsTheRefillRate() {
+        TokenBucket bucket = new TokenBucket(1, 0.1);
+        assertEquals(0, bucket.secondsUntilAvailable());
+
+        bucket.tryAcquire();
+
+        long wait = bucket.secondsUntilAvailable();
+        assertTrue(wait >= 9 && wait <= 10, "waited " + wait);
+    }
+
+    @Test
+    void tokensRefillOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 1000);
+        assertTrue(bucket.tryAcquire());
+
+        Thread.sleep(5);
+
+        assertTrue(bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,102 @@
+package com.atp.printing.security;
+
+import com.atp.printing.logging.LogContext;
+import com.atp.printing.metrics.PrintMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class UploadAdmissionFilterTest {
+
+    private final UploadAdmissionFilter filter = filter(100, 1);
+
+    @AfterEach
+    void tearDown() {
+        LogContext.clear();
+    }
+
+    @Test
+    void proxiedUploadNamingItsSessionOnlyInTheFormIsLimitedPerClient() throws Exception {
+        UploadAdmissionFilter perClient = filter(2, 1);
+
+        // The per-session burst of 1 does not apply, as the filter cannot see the session
+        MockFilterChain chain = new MockFilterChain();
+        assertEquals(200, send(perClient, post("/api/upload", null), chain).getStatus());
+        assertNotNull(chain.getRequest());
+        assertEquals(200, send(perClient, post("/api/upload", null), new MockFilterChain()).getStatus());
+
+        MockHttpServletResponse refused = send(perClient, post("/api/upload", null), new MockFilterChain());
+        assertEquals(429, refused.getStatus());
+        assertNotNull(refused.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void proxiedUploadsAreLimitedPerSession() throws Exception {
+        assertEquals(200, send(post("/api/upload", "s-1"), new MockFilterChain()).getStatus());
+
+        MockHttpServletResponse refused = send(post("/api/upload", "s-1"), new MockFilterChain());
+        assertEquals(429, refused.getStatus());
+        assertNotNull(refused.getHeader(HttpHeaders.RETRY_AFTER));
+
+        assertEquals(200, send(post("/api/upload", "s-2"), new MockFilterChain()).getStatus());
+    }
+
+    @Test
+    void directUploadSignaturesShareTheSessionLimit() throws Exception {
+        assertEquals(200, send(post("/api/session/s-1/upload-request", "s-1"), new MockFilterChain()).getStatus());
+        assertEquals(429, send(post("/api/upload", "s-1"), new MockFilterChain()).getStatus());
+    }
+
+    @Test
+    void otherRequestsAreNotFiltered() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/upload");
+        MockFilterChain chain = new MockFilterChain();
+
+        assertEquals(200, send(request, chain).getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request, MockFilterChain chain)
+            throws ServletException, IOException {
+        return send(filter, request, chain);
+    }
+
+    private static MockHttpServletResponse send(UploadAdmissionFilter filter, MockHttpServletRequest request,
+                                                MockFilterChain chain) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        LogContext.clear();
+        return response;
+    }
+
+    private static UploadAdmissionFilter filter(int perClientBurst, int perSessionBurst) {
+        return new UploadAdmissionFilter(new PrintMetrics(new SimpleMeterRegistry()),
+                new ObjectMapper().findAndRegisterModules(),
+                perClientBurst, 0.001,
+                perSessionBurst, 0.001,
+                4, 4, 100, 1000);
+    }
+
+    /**
+     * A POST as it reaches the filter, with the session MdcFilter found in the path or query
+     */
+    private static MockHttpServletRequest post(String path, String sessionId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr("203.0.113.7");
+        if (sessionId != null) {
+            LogContext.putSession(sessionId);
+        }
+        return request;
+    }
+}
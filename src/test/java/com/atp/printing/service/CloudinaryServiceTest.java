@@ -0,0 +1,70 @@
+package com.atp.printing.service;
+
+import com.atp.printing.metrics.PrintMetrics;
+import com.cloudinary.Cloudinary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudinaryServiceTest {
+
+    private static final String API_SECRET = "testCloudinarySecret";
+    private static final String BODY = "{\"notification_type\":\"upload\",\"public_id\":\"atp-files/direct/s/bw/1\"}";
+
+    private CloudinaryService cloudinaryService;
+
+    @BeforeEach
+    void setUp() {
+        Cloudinary cloudinary = new Cloudinary(Map.of("cloud_name", "test", "api_key", "key", "api_secret", API_SECRET));
+        cloudinaryService = new CloudinaryService(cloudinary, new PrintMetrics(new SimpleMeterRegistry()), null);
+        ReflectionTestUtils.setField(cloudinaryService, "uploadFolder", "atp-files");
+    }
+
+    @Test
+    void notificationSignedWithTheApiSecretIsAccepted() throws Exception {
+        String timestamp = Long.toString(Instant.now().getEpochSecond());
+
+        assertTrue(cloudinaryService.verifyNotification(BODY, timestamp, sign(BODY, timestamp, API_SECRET), 300));
+    }
+
+    @Test
+    void tamperedOrForgedNotificationsAreRefused() throws Exception {
+        String timestamp = Long.toString(Instant.now().getEpochSecond());
+        String signature = sign(BODY, timestamp, API_SECRET);
+
+        assertFalse(cloudinaryService.verifyNotification(BODY.replace("bw", "color"), timestamp, signature, 300));
+        assertFalse(cloudinaryService.verifyNotification(BODY, timestamp, sign(BODY, timestamp, "guessed"), 300));
+        assertFalse(cloudinaryService.verifyNotification(BODY, timestamp, null, 300));
+    }
+
+    @Test
+    void staleNotificationsAreRefused() throws Exception {
+        String timestamp = Long.toString(Instant.now().minusSeconds(3600).getEpochSecond());
+
+        assertFalse(cloudinaryService.verifyNotification(BODY, timestamp, sign(BODY, timestamp, API_SECRET), 300));
+        assertFalse(cloudinaryService.verifyNotification(BODY, "yesterday", sign(BODY, "yesterday", API_SECRET), 300));
+    }
+
+    @Test
+    void onlyDirectUploadPublicIdsYieldAKey() {
+        assertEquals("s/bw/1", cloudinaryService.extractDirectUploadKey("atp-files/direct/s/bw/1"));
+        assertNull(cloudinaryService.extractDirectUploadKey("atp-files/s/bw/1"));
+        assertNull(cloudinaryService.extractDirectUploadKey(null));
+    }
+
+    private static String sign(String body, String timestamp, String secret) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest((body + timestamp + secret).getBytes(UTF_8)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.atp.printing.service;
+
+import com.atp.printing.dto.PaymentCompleteDto;
+import com.atp.printing.entity.Payment;
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.PaymentRepository;
+import com.atp.printing.tracing.PrintTracing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private static final String SECRET = "testRazorpaySecret";
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+    private static final String ORDER_ID = "order_NZ3kQ8v1xYb2Lm";
+    private static final String PAYMENT_ID = "pay_NZ3kV7hYt9Qw1s";
+
+    private PaymentRepository paymentRepository;
+    private SessionService sessionService;
+    private PaymentService paymentService;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        sessionService = mock(SessionService.class);
+        paymentService = new PaymentService(paymentRepository, sessionService, null,
+                new PrintMetrics(new SimpleMeterRegistry()), mock(PrintTracing.class));
+        ReflectionTestUtils.setField(paymentService, "razorpaySecret", SECRET);
+    }
+
+    @Test
+    void signatureIsTheHmacOfOrderAndPayment() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(UTF_8), "HmacSHA256"));
+        String expected = HexFormat.of().formatHex(mac.doFinal((ORDER_ID + "|" + PAYMENT_ID).getBytes(UTF_8)));
+
+        assertEquals(expected, paymentService.generateSignature(ORDER_ID, PAYMENT_ID));
+    }
+
+    @Test
+    void badSignatureIsRejectedBeforeTouchingThePayment() {
+        PaymentCompleteDto dto = new PaymentCompleteDto(PAYMENT_ID, ORDER_ID, "0".repeat(64));
+
+        assertFalse(paymentService.verifyPayment(SESSION_ID, dto));
+        verify(paymentRepository, never()).findByRazorpayOrderId(anyString());
+    }
+
+    @Test
+    void orderOfAnotherSessionIsRejected() {
+        givenOrder("another-session", Payment.PaymentStatus.CREATED, null);
+
+        assertFalse(paymentService.verifyPayment(SESSION_ID, signed()));
+        verify(paymentRepository, never()).markCaptured(any(), any(), any(), any(), any());
+        verify(sessionService, never()).acceptPayment(anyString());
+    }
+
+    @Test
+    void capturedOrderPaysItsSession() {
+        givenOrder(SESSION_ID, Payment.PaymentStatus.CREATED, null);
+        when(paymentRepository.markCaptured(eq(SESSION_ID), eq(ORDER_ID), eq(PAYMENT_ID), anyString(), any()))
+                .thenReturn(1);
+        when(sessionService.acceptPayment(SESSION_ID)).thenReturn(true);
+
+        assertTrue(paymentService.verifyPayment(SESSION_ID, signed()));
+    }
+
+    @Test
+    void repeatedVerificationOfTheSameCaptureIsAccepted() {
+        givenOrder(SESSION_ID, Payment.PaymentStatus.CAPTURED, PAYMENT_ID);
+        when(sessionService.acceptPayment(SESSION_ID)).thenReturn(true);
+
+        assertTrue(paymentService.verifyPayment(SESSION_ID, signed()));
+    }
+
+    @Test
+    void orderCapturedByAnotherPaymentIsRejected() {
+        givenOrder(SESSION_ID, Payment.PaymentStatus.CAPTURED, "pay_SomethingElse0");
+
+        assertFalse(paymentService.verifyPayment(SESSION_ID, signed()));
+        verify(sessionService, never()).acceptPayment(anyString());
+    }
+
+    private PaymentCompleteDto signed() {
+        return new PaymentCompleteDto(PAYMENT_ID, ORDER_ID, paymentService.generateSignature(ORDER_ID, PAYMENT_ID));
+    }
+
+    private void givenOrder(String sessionId, Payment.PaymentStatus status, String paymentId) {
+        Payment payment = Payment.builder()
+                .id(1L)
+                .session(Session.builder().sessionId(sessionId).build())
+                .razorpayOrderId(ORDER_ID)
+                .razorpayPaymentId(paymentId)
+                .amount(6.0)
+                .status(status)
+                .build();
+        when(paymentRepository.findByRazorpayOrderId(ORDER_ID)).thenReturn(Optional.of(payment));
+    }
+}
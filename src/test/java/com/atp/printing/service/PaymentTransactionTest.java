@@ -0,0 +1,181 @@
+package com.atp.printing.service;
+
+import com.atp.printing.dto.PaymentCompleteDto;
+import com.atp.printing.entity.Payment;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.Session.PaymentStatus;
+import com.atp.printing.entity.Session.SessionStatus;
+import com.atp.printing.exception.InvalidStateTransitionException;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.PaymentRepository;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.SessionStateView;
+import com.atp.printing.tracing.PrintTracing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * verifyPayment and the state machine share one transaction, so what one of them throws decides
+ * whether the other's writes commit. These go through real transaction proxies.
+ */
+class PaymentTransactionTest {
+
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+    private static final String ORDER_ID = "order_NZ3kQ8v1xYb2Lm";
+    private static final String PAYMENT_ID = "pay_NZ3kV7hYt9Qw1s";
+
+    private final RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    private SessionRepository sessionRepository;
+    private PaymentService paymentService;
+
+    @BeforeEach
+    void setUp() {
+        sessionRepository = mock(SessionRepository.class);
+        SessionStateMachine stateMachine = transactional(
+                new SessionStateMachine(sessionRepository, mock(SessionWriter.class), event -> { }));
+        SessionService sessionService = mock(SessionService.class);
+        when(sessionService.acceptPayment(anyString()))
+                .thenAnswer(invocation -> stateMachine.acceptPayment(invocation.getArgument(0)));
+
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByRazorpayOrderId(ORDER_ID)).thenReturn(Optional.of(Payment.builder()
+                .id(1L)
+                .session(Session.builder().sessionId(SESSION_ID).build())
+                .razorpayOrderId(ORDER_ID)
+                .status(Payment.PaymentStatus.CREATED)
+                .build()));
+        when(paymentRepository.markCaptured(eq(SESSION_ID), eq(ORDER_ID), eq(PAYMENT_ID), anyString(), any()))
+                .thenReturn(1);
+
+        PaymentService target = new PaymentService(paymentRepository, sessionService, null,
+                new PrintMetrics(new SimpleMeterRegistry()), mock(PrintTracing.class));
+        ReflectionTestUtils.setField(target, "razorpaySecret", "testRazorpaySecret");
+        paymentService = transactional(target);
+    }
+
+    @Test
+    void paymentForAnExpiredSessionCommitsTheCaptureForRefund() {
+        givenState(SessionStatus.EXPIRED, PaymentStatus.PENDING);
+        when(sessionRepository.compareAndSetState(eq(SESSION_ID), eq(SessionStatus.EXPIRED), eq(PaymentStatus.PENDING),
+                eq(SessionStatus.EXPIRED), eq(PaymentStatus.REFUND_REQUIRED), any())).thenReturn(1);
+
+        assertThrows(InvalidStateTransitionException.class, () -> paymentService.verifyPayment(SESSION_ID, signed()));
+        assertEquals(List.of("commit"), transactionManager.outcomes);
+    }
+
+    @Test
+    void illegalPaymentTransitionInsideTheStateMachineStillCommitsTheCapture() {
+        givenState(SessionStatus.UPLOADED, PaymentStatus.REFUNDED);
+
+        assertThrows(InvalidStateTransitionException.class, () -> paymentService.verifyPayment(SESSION_ID, signed()));
+        assertEquals(List.of("commit"), transactionManager.outcomes);
+    }
+
+    @Test
+    void otherFailuresPropagateAndRollBackTheCapture() {
+        when(sessionRepository.findStateBySessionId(SESSION_ID)).thenReturn(Optional.empty());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> paymentService.verifyPayment(SESSION_ID, signed()));
+        assertEquals("Session not found", e.getMessage());
+        assertEquals(List.of("rollback"), transactionManager.outcomes);
+    }
+
+    private PaymentCompleteDto signed() {
+        return new PaymentCompleteDto(PAYMENT_ID, ORDER_ID, paymentService.generateSignature(ORDER_ID, PAYMENT_ID));
+    }
+
+    private void givenState(SessionStatus status, PaymentStatus paymentStatus) {
+        SessionStateView state = mock(SessionStateView.class);
+        when(state.getStatus()).thenReturn(status);
+        when(state.getPaymentStatus()).thenReturn(paymentStatus);
+        when(sessionRepository.findStateBySessionId(SESSION_ID)).thenReturn(Optional.of(state));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T transactional(T target) {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        return (T) factory.getProxy();
+    }
+
+    /**
+     * Keeps a participant's rollback-only mark on the shared transaction, as a JPA transaction
+     * manager does, so a commit after it fails with UnexpectedRollbackException
+     */
+    private static final class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final List<String> outcomes = new ArrayList<>();
+        private Transaction active;
+
+        @Override
+        protected Object doGetTransaction() {
+            return active != null ? active : new Transaction();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return transaction == active;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            active = (Transaction) transaction;
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            outcomes.add("commit");
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            outcomes.add("rollback");
+        }
+
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+            ((Transaction) status.getTransaction()).rollbackOnly = true;
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            active = null;
+        }
+
+        private static final class Transaction implements SmartTransactionObject {
+
+            private boolean rollbackOnly;
+
+            @Override
+            public boolean isRollbackOnly() {
+                return rollbackOnly;
+            }
+
+            @Override
+            public void flush() {
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.atp.printing.service;
+
+import com.atp.printing.document.DocumentType;
+import com.atp.printing.entity.Session;
+import com.atp.printing.entity.StoredObject;
+import com.atp.printing.event.DocumentUploadedEvent;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.StoredObjectRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RenditionServiceTest {
+
+    private static final String IMAGE = "sha256:1111111111111111111111111111111111111111111111111111111111111111";
+    private static final String STALLED = "sha256:2222222222222222222222222222222222222222222222222222222222222222";
+    private static final String LARGE = "sha256:3333333333333333333333333333333333333333333333333333333333333333";
+
+    private final CountDownLatch unstall = new CountDownLatch(1);
+    private final ExecutorService originThreads = Executors.newCachedThreadPool();
+
+    private byte[] image;
+    private HttpServer origin;
+    private StoredObjectRepository storedObjectRepository;
+    private CloudinaryService cloudinaryService;
+    private RenditionService renditionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        image = png(300, 200);
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/image", exchange -> serve(exchange, image));
+        origin.createContext("/large", exchange -> serve(exchange, new byte[64 * 1024]));
+        origin.createContext("/stall", exchange -> {
+            exchange.sendResponseHeaders(200, image.length);
+            exchange.getResponseBody().write(image, 0, 16);
+            exchange.getResponseBody().flush();
+            try {
+                unstall.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        origin.setExecutor(originThreads);
+        origin.start();
+
+        storedObjectRepository = mock(StoredObjectRepository.class);
+        cloudinaryService = mock(CloudinaryService.class);
+        when(storedObjectRepository.findRenditionUrl(anyString(), anyString())).thenReturn(Optional.empty());
+        when(storedObjectRepository.insertRendition(anyString(), anyString(), anyString(), anyString(), anyLong(), any()))
+                .thenReturn(1);
+        when(cloudinaryService.uploadFile(any(byte[].class), anyString()))
+                .thenReturn(Map.of("public_id", "renditions/bw", "secure_url", "https://cdn/renditions/bw"));
+        givenSource(IMAGE, "/image");
+        givenSource(STALLED, "/stall");
+        givenSource(LARGE, "/large");
+
+        // One I/O thread, so a fetch that held it would hold up every later rendition
+        renditionService = new RenditionService(storedObjectRepository, cloudinaryService,
+                new PrintMetrics(new SimpleMeterRegistry()), 1, 4, 1, 150, 16_000_000, 32 * 1024, 0.85f, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        unstall.countDown();
+        renditionService.shutdown();
+        origin.stop(0);
+        originThreads.shutdownNow();
+    }
+
+    @Test
+    void uploadedImageIsRenderedAndRecorded() throws Exception {
+        renditionService.onDocumentUploaded(uploaded(IMAGE, DocumentType.IMAGE));
+
+        verify(storedObjectRepository, timeout(5000)).insertRendition(eq(IMAGE), eq("BW"), eq("renditions/bw"),
+                eq("https://cdn/renditions/bw"), anyLong(), any());
+        verify(cloudinaryService).uploadFile(argThat(
+                pdf -> new String(pdf, ISO_8859_1).contains("/ColorSpace/DeviceGray")), anyString());
+    }
+
+    @Test
+    void pdfIsSentAsUploaded() throws Exception {
+        renditionService.onDocumentUploaded(uploaded(IMAGE, DocumentType.PDF));
+
+        verify(cloudinaryService, after(300).never()).uploadFile(any(byte[].class), anyString());
+    }
+
+    @Test
+    void stalledOriginTimesOutAndFreesTheIoThread() throws Exception {
+        long started = System.nanoTime();
+        renditionService.onDocumentUploaded(uploaded(STALLED, DocumentType.IMAGE));
+        renditionService.onDocumentUploaded(uploaded(IMAGE, DocumentType.IMAGE));
+
+        verify(storedObjectRepository, timeout(5000)).insertRendition(eq(IMAGE), eq("BW"), anyString(), anyString(),
+                anyLong(), any());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        verify(storedObjectRepository, never()).insertRendition(eq(STALLED), anyString(), anyString(), anyString(),
+                anyLong(), any());
+    }
+
+    @Test
+    void sourceLargerThanTheCapIsNotRendered() throws Exception {
+        renditionService.onDocumentUploaded(uploaded(LARGE, DocumentType.IMAGE));
+        renditionService.onDocumentUploaded(uploaded(IMAGE, DocumentType.IMAGE));
+
+        verify(storedObjectRepository, timeout(5000)).insertRendition(eq(IMAGE), anyString(), anyString(), anyString(),
+                anyLong(), any());
+        verify(storedObjectRepository, never()).insertRendition(eq(LARGE), anyString(), anyString(), anyString(),
+                anyLong(), any());
+    }
+
+    private void givenSource(String contentHash, String path) {
+        when(storedObjectRepository.findById(contentHash)).thenReturn(Optional.of(StoredObject.builder()
+                .contentHash(contentHash)
+                .url("http://127.0.0.1:" + origin.getAddress().getPort() + path)
+                .build()));
+    }
+
+    private static DocumentUploadedEvent uploaded(String contentHash, DocumentType type) {
+        return new DocumentUploadedEvent("5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11", contentHash, type, Session.ColorMode.BW);
+    }
+
+    private static void serve(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,177 @@
+package com.atp.printing.service;
+
+import com.atp.printing.document.DocumentAnalysis;
+import com.atp.printing.document.DocumentAnalyzer;
+import com.atp.printing.document.DocumentType;
+import com.atp.printing.entity.Printer;
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.ArchivedSessionRepository;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.StoredObjectView;
+import com.atp.printing.tracing.PrintTracing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The upload does its slow work with no transaction open and cleans up storage when the short
+ * transaction at the end fails
+ */
+class SessionServiceUploadTest {
+
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+    private static final String CONTENT_HASH = "sha256:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String QR_CODE = "print-jobs/qr";
+    private static final String DOCUMENT = "print-jobs/document";
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "notes.pdf", "application/pdf", new byte[]{1});
+    private final StoredObjectService.Upload upload = new StoredObjectService.Upload(DOCUMENT, "https://cdn/document", 1);
+
+    private SessionRepository sessionRepository;
+    private CloudinaryService cloudinaryService;
+    private DocumentAnalyzer documentAnalyzer;
+    private StoredObjectService storedObjectService;
+    private SessionStateMachine sessionStateMachine;
+    private PlatformTransactionManager transactionManager;
+    private SessionService sessionService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sessionRepository = mock(SessionRepository.class);
+        cloudinaryService = mock(CloudinaryService.class);
+        documentAnalyzer = mock(DocumentAnalyzer.class);
+        storedObjectService = mock(StoredObjectService.class);
+        sessionStateMachine = mock(SessionStateMachine.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+
+        Session session = Session.builder()
+                .sessionId(SESSION_ID)
+                .printer(Printer.builder().id(1L).build())
+                .status(Session.SessionStatus.ACTIVE)
+                .paymentStatus(Session.PaymentStatus.PENDING)
+                .expiresAt(LocalDateTime.now().plusMinutes(10))
+                .build();
+        when(sessionRepository.findBySessionId(SESSION_ID)).thenReturn(Optional.of(session));
+
+        PrinterCatalog printerCatalog = mock(PrinterCatalog.class);
+        when(printerCatalog.get(1L)).thenReturn(new PrinterCatalog.PrinterInfo(1L, "Library", 2.0, 10.0, true));
+        QRCodeService qrCodeService = mock(QRCodeService.class);
+        when(qrCodeService.generateQRCode(anyString())).thenReturn(new byte[]{2});
+
+        when(documentAnalyzer.analyze(file)).thenReturn(new DocumentAnalysis(CONTENT_HASH, DocumentType.PDF, 3));
+        when(cloudinaryService.uploadFile(any(byte[].class), anyString())).thenReturn(Map.of("public_id", QR_CODE));
+        when(sessionStateMachine.transition(SESSION_ID, Session.SessionStatus.ACTIVE, Session.SessionStatus.UPLOADED))
+                .thenReturn(true);
+
+        sessionService = new SessionService(sessionRepository, mock(ArchivedSessionRepository.class), printerCatalog,
+                mock(SessionWriter.class), cloudinaryService, documentAnalyzer, storedObjectService, qrCodeService,
+                sessionStateMachine, new PrintMetrics(new SimpleMeterRegistry()),
+                new PrintTracing(Tracer.NOOP, Propagator.NOOP), mock(ApplicationEventPublisher.class),
+                new TransactionTemplate(transactionManager));
+    }
+
+    @Test
+    void countingAndUploadsHappenBeforeTheTransaction() throws Exception {
+        when(storedObjectService.uploadIfAbsent(CONTENT_HASH, file)).thenReturn(upload);
+        StoredObjectView stored = stored(DOCUMENT);
+        when(storedObjectService.acquire(CONTENT_HASH, upload)).thenReturn(stored);
+
+        sessionService.uploadFile(SESSION_ID, file, Session.ColorMode.BW);
+
+        InOrder order = inOrder(documentAnalyzer, cloudinaryService, storedObjectService, transactionManager);
+        order.verify(documentAnalyzer).analyze(file);
+        order.verify(cloudinaryService).uploadFile(any(byte[].class), anyString());
+        order.verify(storedObjectService).uploadIfAbsent(CONTENT_HASH, file);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(storedObjectService).acquire(CONTENT_HASH, upload);
+        order.verify(transactionManager).commit(any());
+        verify(cloudinaryService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void failedTransactionDeletesTheUploadsItWouldHaveReferenced() throws Exception {
+        when(storedObjectService.uploadIfAbsent(CONTENT_HASH, file)).thenReturn(upload);
+        StoredObjectView stored = stored(DOCUMENT);
+        when(storedObjectService.acquire(CONTENT_HASH, upload)).thenReturn(stored);
+        when(sessionStateMachine.transition(SESSION_ID, Session.SessionStatus.ACTIVE, Session.SessionStatus.UPLOADED))
+                .thenThrow(new IllegalStateException("database went away"));
+
+        assertThrows(IllegalStateException.class, () -> sessionService.uploadFile(SESSION_ID, file, Session.ColorMode.BW));
+
+        verify(transactionManager).rollback(any());
+        verify(cloudinaryService).deleteFile(QR_CODE);
+        verify(cloudinaryService).deleteFile(DOCUMENT);
+    }
+
+    @Test
+    void failedUploadDeletesTheQrCode() throws Exception {
+        when(storedObjectService.uploadIfAbsent(CONTENT_HASH, file)).thenThrow(new IOException("storage is down"));
+
+        assertThrows(IOException.class, () -> sessionService.uploadFile(SESSION_ID, file, Session.ColorMode.BW));
+
+        verify(transactionManager, never()).getTransaction(any());
+        verify(cloudinaryService).deleteFile(QR_CODE);
+    }
+
+    @Test
+    void uploadBeatenByAConcurrentCopyIsDeletedAfterCommit() throws Exception {
+        when(storedObjectService.uploadIfAbsent(CONTENT_HASH, file)).thenReturn(upload);
+        StoredObjectView stored = stored("print-jobs/earlier");
+        when(storedObjectService.acquire(CONTENT_HASH, upload)).thenReturn(stored);
+
+        assertEquals("print-jobs/earlier", sessionService.uploadFile(SESSION_ID, file, Session.ColorMode.BW).getFileKey());
+
+        InOrder order = inOrder(transactionManager, cloudinaryService);
+        order.verify(transactionManager).commit(any());
+        order.verify(cloudinaryService).deleteFile(DOCUMENT);
+        verify(cloudinaryService, never()).deleteFile(QR_CODE);
+    }
+
+    @Test
+    void storedCopyReleasedMeanwhileIsUploadedAgain() throws Exception {
+        when(storedObjectService.uploadIfAbsent(CONTENT_HASH, file)).thenReturn(null);
+        when(storedObjectService.acquire(eq(CONTENT_HASH), isNull())).thenReturn(null);
+        when(storedObjectService.upload(file)).thenReturn(upload);
+        StoredObjectView stored = stored(DOCUMENT);
+        when(storedObjectService.acquire(CONTENT_HASH, upload)).thenReturn(stored);
+
+        assertEquals(DOCUMENT, sessionService.uploadFile(SESSION_ID, file, Session.ColorMode.BW).getFileKey());
+
+        verify(transactionManager, times(2)).commit(any());
+        verify(sessionStateMachine).transition(SESSION_ID, Session.SessionStatus.ACTIVE, Session.SessionStatus.UPLOADED);
+    }
+
+    private static StoredObjectView stored(String publicId) {
+        StoredObjectView stored = mock(StoredObjectView.class);
+        when(stored.getPublicId()).thenReturn(publicId);
+        when(stored.getUrl()).thenReturn("https://cdn/" + publicId);
+        when(stored.getRefCount()).thenReturn(1);
+        return stored;
+    }
+}
@@ -0,0 +1,161 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.Session.PaymentStatus;
+import com.atp.printing.entity.Session.SessionStatus;
+import com.atp.printing.event.SessionStatusChangedEvent;
+import com.atp.printing.exception.InvalidStateTransitionException;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.SessionStateView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionStateMachineTest {
+
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+
+    private SessionRepository sessionRepository;
+    private final List<SessionStatusChangedEvent> events = new ArrayList<>();
+    private SessionStateMachine stateMachine;
+
+    @BeforeEach
+    void setUp() {
+        sessionRepository = mock(SessionRepository.class);
+        ApplicationEventPublisher publisher = event -> events.add((SessionStatusChangedEvent) event);
+        stateMachine = new SessionStateMachine(sessionRepository, mock(SessionWriter.class), publisher);
+    }
+
+    @Test
+    void sessionsOnlyMoveForward() {
+        assertTrue(SessionStateMachine.canTransition(SessionStatus.ACTIVE, SessionStatus.UPLOADED));
+        assertTrue(SessionStateMachine.canTransition(SessionStatus.UPLOADED, SessionStatus.PAID));
+        assertTrue(SessionStateMachine.canTransition(SessionStatus.PAID, SessionStatus.COMPLETED));
+
+        assertFalse(SessionStateMachine.canTransition(SessionStatus.ACTIVE, SessionStatus.PAID));
+        assertFalse(SessionStateMachine.canTransition(SessionStatus.PAID, SessionStatus.UPLOADED));
+        for (SessionStatus terminal : List.of(SessionStatus.COMPLETED, SessionStatus.FAILED, SessionStatus.EXPIRED)) {
+            for (SessionStatus target : SessionStatus.values()) {
+                assertFalse(SessionStateMachine.canTransition(terminal, target), terminal + " -> " + target);
+            }
+        }
+    }
+
+    @Test
+    void capturedMoneyIsEitherPaidOrRefunded() {
+        assertTrue(SessionStateMachine.canTransition(PaymentStatus.PENDING, PaymentStatus.PAID));
+        assertTrue(SessionStateMachine.canTransition(PaymentStatus.FAILED, PaymentStatus.PAID));
+        assertTrue(SessionStateMachine.canTransition(PaymentStatus.PENDING, PaymentStatus.REFUND_REQUIRED));
+        assertTrue(SessionStateMachine.canTransition(PaymentStatus.REFUND_REQUIRED, PaymentStatus.REFUNDED));
+
+        assertFalse(SessionStateMachine.canTransition(PaymentStatus.PAID, PaymentStatus.PENDING));
+        assertFalse(SessionStateMachine.canTransition(PaymentStatus.REFUND_REQUIRED, PaymentStatus.PAID));
+    }
+
+    @Test
+    void paymentForAnUploadedSessionMarksItPaid() {
+        givenState(SessionStatus.UPLOADED, PaymentStatus.PENDING);
+        when(sessionRepository.compareAndSetState(eq(SESSION_ID), eq(SessionStatus.UPLOADED), eq(PaymentStatus.PENDING),
+                eq(SessionStatus.PAID), eq(PaymentStatus.PAID), any())).thenReturn(1);
+
+        assertTrue(stateMachine.acceptPayment(SESSION_ID));
+
+        assertEquals(1, events.size());
+        assertEquals(SessionStatus.PAID, events.get(0).toStatus());
+        assertEquals(PaymentStatus.PAID, events.get(0).toPaymentStatus());
+    }
+
+    @Test
+    void paymentForAnExpiredSessionIsKeptForRefund() {
+        givenState(SessionStatus.EXPIRED, PaymentStatus.PENDING);
+        when(sessionRepository.compareAndSetState(eq(SESSION_ID), eq(SessionStatus.EXPIRED), eq(PaymentStatus.PENDING),
+                eq(SessionStatus.EXPIRED), eq(PaymentStatus.REFUND_REQUIRED), any())).thenReturn(1);
+
+        assertFalse(stateMachine.acceptPayment(SESSION_ID));
+
+        assertEquals(PaymentStatus.REFUND_REQUIRED, events.get(0).toPaymentStatus());
+        assertEquals(SessionStatus.EXPIRED, events.get(0).toStatus());
+    }
+
+    @Test
+    void lostRaceIsRetriedFromTheNewState() {
+        SessionStateView uploaded = state(SessionStatus.UPLOADED, PaymentStatus.PENDING);
+        SessionStateView expired = state(SessionStatus.EXPIRED, PaymentStatus.PENDING);
+        when(sessionRepository.findStateBySessionId(SESSION_ID))
+                .thenReturn(Optional.of(uploaded), Optional.of(expired));
+        // The session expired between the read and the update
+        when(sessionRepository.compareAndSetState(eq(SESSION_ID), eq(SessionStatus.UPLOADED), eq(PaymentStatus.PENDING),
+                eq(SessionStatus.PAID), eq(PaymentStatus.PAID), any())).thenReturn(0);
+        when(sessionRepository.compareAndSetState(eq(SESSION_ID), eq(SessionStatus.EXPIRED), eq(PaymentStatus.PENDING),
+                eq(SessionStatus.EXPIRED), eq(PaymentStatus.REFUND_REQUIRED), any())).thenReturn(1);
+
+        assertFalse(stateMachine.acceptPayment(SESSION_ID));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void expectedStateTransitionDoesNothingWhenTheSessionHasMovedOn() {
+        givenState(SessionStatus.PAID, PaymentStatus.PAID);
+
+        assertFalse(stateMachine.transition(SESSION_ID, SessionStatus.ACTIVE, SessionStatus.UPLOADED));
+        verify(sessionRepository, never()).compareAndSetStatus(any(), any(), any(), any());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void illegalTransitionsAreRefusedBeforeTouchingTheDatabase() {
+        givenState(SessionStatus.COMPLETED, PaymentStatus.PAID);
+
+        assertThrows(InvalidStateTransitionException.class,
+                () -> stateMachine.transition(SESSION_ID, SessionStatus.PRINTING));
+        verify(sessionRepository, never()).compareAndSetStatus(any(), any(), any(), any());
+    }
+
+    private void givenState(SessionStatus status, PaymentStatus paymentStatus) {
+        SessionStateView view = state(status, paymentStatus);
+        when(sessionRepository.findStateBySessionId(SESSION_ID)).thenReturn(Optional.of(view));
+    }
+
+    private static SessionStateView state(SessionStatus status, PaymentStatus paymentStatus) {
+        return new SessionStateView() {
+            @Override
+            public SessionStatus getStatus() {
+                return status;
+            }
+
+            @Override
+            public PaymentStatus getPaymentStatus() {
+                return paymentStatus;
+            }
+
+            @Override
+            public Long getPrinterId() {
+                return 7L;
+            }
+
+            @Override
+            public Integer getPageCount() {
+                return 3;
+            }
+
+            @Override
+            public Double getAmount() {
+                return 6.0;
+            }
+        };
+    }
+}
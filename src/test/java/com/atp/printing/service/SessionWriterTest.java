@@ -0,0 +1,155 @@
+package com.atp.printing.service;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.PrinterRepository;
+import com.atp.printing.repository.SessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class SessionWriterTest {
+
+    // Long enough that the background flush never runs during a test
+    private static final long FLUSH_INTERVAL_MS = 3_600_000;
+
+    private SessionRepository sessionRepository;
+    private final List<List<String>> writes = new ArrayList<>();
+    private final List<SessionWriter> writers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        sessionRepository = mock(SessionRepository.class);
+        doAnswer(invocation -> {
+            List<String> ids = new ArrayList<>();
+            for (Object session : (Iterable<?>) invocation.getArgument(0)) {
+                ids.add(((Session) session).getSessionId());
+            }
+            writes.add(ids);
+            return invocation.getArgument(0);
+        }).when(sessionRepository).saveAll(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        writers.forEach(SessionWriter::shutdown);
+    }
+
+    @Test
+    void pendingSessionsAreServedUntilWritten() {
+        SessionWriter writer = writer(true, 50);
+
+        writer.submit(pending("a"));
+
+        assertTrue(writer.find("a").isPresent());
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    void awaitingOneSessionWritesOnlyThatSession() {
+        SessionWriter writer = writer(true, 50);
+        writer.submit(pending("a"));
+        writer.submit(pending("b"));
+        writer.submit(pending("c"));
+
+        writer.awaitWritten("b");
+
+        assertEquals(List.of(List.of("b")), writes);
+        assertFalse(writer.find("b").isPresent());
+        assertTrue(writer.find("a").isPresent());
+        assertTrue(writer.find("c").isPresent());
+    }
+
+    @Test
+    void awaitingAWrittenSessionDoesNothing() {
+        SessionWriter writer = writer(true, 50);
+
+        writer.awaitWritten("unknown");
+
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    void flushWritesTheQueueInBatches() {
+        SessionWriter writer = writer(true, 2);
+        for (String id : List.of("a", "b", "c", "d", "e")) {
+            writer.submit(pending(id));
+        }
+
+        writer.flush();
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e")), writes);
+        assertFalse(writer.find("e").isPresent());
+    }
+
+    @Test
+    void sessionThatCouldNotBeWrittenStaysPending() {
+        SessionWriter writer = writer(true, 50);
+        writer.submit(pending("a"));
+        doThrow(new QueryTimeoutException("database is busy")).when(sessionRepository).saveAll(any());
+
+        assertThrows(RuntimeException.class, () -> writer.awaitWritten("a"));
+        assertTrue(writer.find("a").isPresent());
+    }
+
+    @Test
+    void synchronousWriterInsertsOnSubmit() {
+        SessionWriter writer = writer(false, 50);
+
+        writer.submit(pending("a"));
+
+        assertEquals(List.of(List.of("a")), writes);
+        assertFalse(writer.find("a").isPresent());
+    }
+
+    private SessionWriter writer(boolean async, int batchSize) {
+        SessionWriter writer = new SessionWriter(sessionRepository, mock(PrinterRepository.class),
+                new PrintMetrics(new SimpleMeterRegistry()), new NoTransactionManager(),
+                async, FLUSH_INTERVAL_MS, batchSize, 1000);
+        writers.add(writer);
+        return writer;
+    }
+
+    private static SessionWriter.PendingSession pending(String sessionId) {
+        LocalDateTime now = LocalDateTime.now();
+        return new SessionWriter.PendingSession(sessionId, 1L, now, now.plusMinutes(30));
+    }
+
+    /**
+     * Runs the writer's transaction callbacks without a database
+     */
+    private static final class NoTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.atp.printing.service;
+
+import com.atp.printing.event.DocumentReleasedEvent;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.StoredObjectRepository;
+import com.atp.printing.repository.projection.StoredObjectView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class StoredObjectServiceTest {
+
+    private static final String CONTENT_HASH = "sha256:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String PUBLIC_ID = "print-jobs/3b1f6c0e";
+    private static final String URL = "https://res.cloudinary.com/demo/raw/upload/print-jobs/3b1f6c0e";
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "notes.pdf", "application/pdf", new byte[]{1, 2, 3});
+
+    private StoredObjectRepository storedObjectRepository;
+    private CloudinaryService cloudinaryService;
+    private PlatformTransactionManager transactionManager;
+    private StoredObjectService storedObjectService;
+
+    @BeforeEach
+    void setUp() {
+        storedObjectRepository = mock(StoredObjectRepository.class);
+        cloudinaryService = mock(CloudinaryService.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        storedObjectService = new StoredObjectService(storedObjectRepository, cloudinaryService,
+                new PrintMetrics(new SimpleMeterRegistry()), transactionManager);
+    }
+
+    @Test
+    void contentStoredAlreadyIsNotUploadedAgain() throws Exception {
+        when(storedObjectRepository.existsById(CONTENT_HASH)).thenReturn(true);
+
+        assertNull(storedObjectService.uploadIfAbsent(CONTENT_HASH, file));
+        verifyNoInteractions(cloudinaryService);
+    }
+
+    @Test
+    void newContentIsUploaded() throws Exception {
+        when(cloudinaryService.uploadFile(file)).thenReturn(Map.of("public_id", PUBLIC_ID, "secure_url", URL));
+
+        assertEquals(new StoredObjectService.Upload(PUBLIC_ID, URL, 3), storedObjectService.uploadIfAbsent(CONTENT_HASH, file));
+    }
+
+    @Test
+    void acquireTakesAReferenceOnTheStoredCopy() {
+        StoredObjectView existing = view("print-jobs/earlier", 2);
+        when(storedObjectRepository.acquire(eq(CONTENT_HASH), any())).thenReturn(Optional.of(existing));
+
+        assertSame(existing, storedObjectService.acquire(CONTENT_HASH, new StoredObjectService.Upload(PUBLIC_ID, URL, 3)));
+        verify(storedObjectRepository, never()).insertOrAcquire(anyString(), anyString(), anyString(), anyLong(), any());
+        // The caller deletes the surplus upload once its transaction is over
+        verifyNoInteractions(cloudinaryService);
+    }
+
+    @Test
+    void acquireRecordsTheFirstCopyWithOneReference() {
+        StoredObjectView recorded = view(PUBLIC_ID, 1);
+        when(storedObjectRepository.acquire(eq(CONTENT_HASH), any())).thenReturn(Optional.empty());
+        when(storedObjectRepository.insertOrAcquire(eq(CONTENT_HASH), eq(PUBLIC_ID), eq(URL), eq(3L), any()))
+                .thenReturn(recorded);
+
+        assertSame(recorded, storedObjectService.acquire(CONTENT_HASH, new StoredObjectService.Upload(PUBLIC_ID, URL, 3)));
+    }
+
+    @Test
+    void acquireWithoutAnUploadReportsACopyReleasedMeanwhile() {
+        when(storedObjectRepository.acquire(eq(CONTENT_HASH), any())).thenReturn(Optional.empty());
+
+        assertNull(storedObjectService.acquire(CONTENT_HASH, null));
+        verify(storedObjectRepository, never()).insertOrAcquire(anyString(), anyString(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void adoptingContentStoredAlreadyDeletesTheDirectUpload() throws Exception {
+        StoredObjectView existing = view("print-jobs/earlier", 2);
+        when(storedObjectRepository.acquire(eq(CONTENT_HASH), any())).thenReturn(Optional.of(existing));
+
+        assertSame(existing, storedObjectService.adopt(CONTENT_HASH, PUBLIC_ID, URL, 3));
+        verify(cloudinaryService).deleteFile(PUBLIC_ID);
+    }
+
+    @Test
+    void adoptionBeatenByAConcurrentUploadDeletesItsOwnCopy() throws Exception {
+        StoredObjectView winner = view("print-jobs/earlier", 2);
+        when(storedObjectRepository.acquire(eq(CONTENT_HASH), any())).thenReturn(Optional.empty());
+        when(storedObjectRepository.insertOrAcquire(eq(CONTENT_HASH), eq(PUBLIC_ID), eq(URL), eq(3L), any()))
+                .thenReturn(winner);
+
+        assertSame(winner, storedObjectService.adopt(CONTENT_HASH, PUBLIC_ID, URL, 3));
+        verify(cloudinaryService).deleteFile(PUBLIC_ID);
+    }
+
+    @Test
+    void releaseKeepsADocumentOthersStillReference() {
+        StoredObjectView remaining = view(PUBLIC_ID, 1);
+        when(storedObjectRepository.release(CONTENT_HASH)).thenReturn(Optional.of(remaining));
+
+        storedObjectService.release(CONTENT_HASH);
+
+        verify(storedObjectRepository, never()).deleteUnreferenced(anyString());
+        verify(storedObjectRepository, never()).deleteRenditions(anyString());
+        verifyNoInteractions(cloudinaryService);
+    }
+
+    @Test
+    void lastReleaseDeletesTheDocumentAndItsRenditionsAfterCommit() throws Exception {
+        StoredObjectView released = view(PUBLIC_ID, 0);
+        when(storedObjectRepository.release(CONTENT_HASH)).thenReturn(Optional.of(released));
+        when(storedObjectRepository.deleteRenditions(CONTENT_HASH)).thenReturn(List.of("renditions/bw"));
+
+        storedObjectService.release(CONTENT_HASH);
+
+        InOrder order = inOrder(storedObjectRepository, transactionManager, cloudinaryService);
+        order.verify(storedObjectRepository).deleteUnreferenced(CONTENT_HASH);
+        order.verify(transactionManager).commit(any());
+        order.verify(cloudinaryService).deleteFile("renditions/bw");
+        order.verify(cloudinaryService).deleteFile(PUBLIC_ID);
+    }
+
+    @Test
+    void failedRemoteDeleteDoesNotFailTheRelease() throws Exception {
+        StoredObjectView released = view(PUBLIC_ID, 0);
+        when(storedObjectRepository.release(CONTENT_HASH)).thenReturn(Optional.of(released));
+        when(storedObjectRepository.deleteRenditions(CONTENT_HASH)).thenReturn(List.of("renditions/bw"));
+        doThrow(new IOException("storage is down")).when(cloudinaryService).deleteFile("renditions/bw");
+
+        storedObjectService.release(CONTENT_HASH);
+
+        verify(cloudinaryService).deleteFile(PUBLIC_ID);
+    }
+
+    @Test
+    void releasingAnUnknownDocumentDeletesNothing() {
+        when(storedObjectRepository.release(CONTENT_HASH)).thenReturn(Optional.empty());
+
+        storedObjectService.release(CONTENT_HASH);
+
+        verifyNoInteractions(cloudinaryService);
+    }
+
+    @Test
+    void documentFromBeforeDeduplicationIsDeletedByItsKey() throws Exception {
+        storedObjectService.onDocumentReleased(new DocumentReleasedEvent("5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11", null, PUBLIC_ID));
+
+        verify(storedObjectRepository, never()).release(anyString());
+        verify(cloudinaryService).deleteFile(PUBLIC_ID);
+    }
+
+    private static StoredObjectView view(String publicId, int refCount) {
+        StoredObjectView view = mock(StoredObjectView.class);
+        when(view.getPublicId()).thenReturn(publicId);
+        when(view.getUrl()).thenReturn("https://res.cloudinary.com/demo/raw/upload/" + publicId);
+        when(view.getRefCount()).thenReturn(refCount);
+        return view;
+    }
+}
@@ -0,0 +1,121 @@
+package com.atp.printing.service;
+
+import com.atp.printing.dto.UsageStatsDto;
+import com.atp.printing.entity.Session.PaymentStatus;
+import com.atp.printing.entity.Session.SessionStatus;
+import com.atp.printing.entity.UsageRollup.Granularity;
+import com.atp.printing.event.SessionStatusChangedEvent;
+import com.atp.printing.repository.UsageRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UsageAggregationServiceTest {
+
+    private static final long PRINTER_ID = 7L;
+
+    private final LocalDateTime now = LocalDateTime.now();
+    private UsageRollupRepository repository;
+    private UsageAggregationService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UsageRollupRepository.class);
+        service = new UsageAggregationService(repository);
+    }
+
+    @Test
+    void unflushedDeltasAreIncludedInReads() {
+        service.onSessionStatusChanged(paid(4, 8.0));
+        service.onSessionStatusChanged(completed(4));
+        service.onSessionStatusChanged(printFailed());
+
+        UsageStatsDto usage = usage();
+
+        assertEquals(8.0, usage.getTotalRevenue(), 0.0001);
+        assertEquals(4L, usage.getTotalPages());
+        assertEquals(1L, usage.getTotalJobs());
+        assertEquals(1L, usage.getTotalFailures());
+    }
+
+    @Test
+    void failedPaymentsAreNotPrintFailures() {
+        service.onSessionStatusChanged(event(SessionStatus.UPLOADED, SessionStatus.UPLOADED,
+                PaymentStatus.PENDING, PaymentStatus.FAILED, 2, 4.0));
+
+        assertEquals(0L, usage().getTotalFailures());
+    }
+
+    @Test
+    void flushWritesEachBucketOnceAndDrainsIt() {
+        service.onSessionStatusChanged(completed(3));
+        service.onSessionStatusChanged(completed(2));
+
+        service.flush();
+        service.flush();
+
+        verify(repository).addToBucket(eq(PRINTER_ID), eq("HOUR"), eq(now.truncatedTo(ChronoUnit.HOURS)),
+                eq(0.0), eq(5L), eq(2L), eq(0L));
+        verify(repository).addToBucket(eq(PRINTER_ID), eq("DAY"), eq(now.truncatedTo(ChronoUnit.DAYS)),
+                eq(0.0), eq(5L), eq(2L), eq(0L));
+        assertEquals(0L, usage().getTotalPages());
+    }
+
+    @Test
+    void failedFlushKeepsTheDeltasForTheNextOne() {
+        service.onSessionStatusChanged(completed(3));
+        when(repository.addToBucket(any(), anyString(), any(), anyDouble(), anyLong(), anyLong(), anyLong()))
+                .thenThrow(new RuntimeException("database is down"));
+
+        service.flush();
+
+        assertEquals(3L, usage().getTotalPages());
+        verify(repository, times(2)).addToBucket(any(), anyString(), any(), anyDouble(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void eventsWithoutAPrinterAreIgnored() {
+        service.onSessionStatusChanged(new SessionStatusChangedEvent("s", null, SessionStatus.PRINTING,
+                SessionStatus.COMPLETED, PaymentStatus.PAID, PaymentStatus.PAID, 3, 6.0, now));
+
+        service.flush();
+
+        verify(repository, never()).addToBucket(any(), anyString(), any(), anyDouble(), anyLong(), anyLong(), anyLong());
+    }
+
+    private UsageStatsDto usage() {
+        return service.getUsage(PRINTER_ID, Granularity.HOUR, now.minusDays(1), now.plusDays(1));
+    }
+
+    private SessionStatusChangedEvent paid(int pages, double amount) {
+        return event(SessionStatus.UPLOADED, SessionStatus.PAID, PaymentStatus.PENDING, PaymentStatus.PAID, pages, amount);
+    }
+
+    private SessionStatusChangedEvent completed(int pages) {
+        return event(SessionStatus.PRINTING, SessionStatus.COMPLETED, PaymentStatus.PAID, PaymentStatus.PAID, pages, 0.0);
+    }
+
+    private SessionStatusChangedEvent printFailed() {
+        return event(SessionStatus.PRINTING, SessionStatus.FAILED, PaymentStatus.PAID, PaymentStatus.PAID, 1, 0.0);
+    }
+
+    private SessionStatusChangedEvent event(SessionStatus from, SessionStatus to,
+                                            PaymentStatus fromPayment, PaymentStatus toPayment,
+                                            int pages, double amount) {
+        return new SessionStatusChangedEvent("s", PRINTER_ID, from, to, fromPayment, toPayment, pages, amount, now);
+    }
+}
@@ -0,0 +1,92 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.exception.MalformedMessageException;
+import com.atp.printing.websocket.message.FileCredit;
+import com.atp.printing.websocket.message.FileRequest;
+import com.atp.printing.websocket.message.Heartbeat;
+import com.atp.printing.websocket.message.PrintStatus;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryFrameCodecTest {
+
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+    private static final String TRACEPARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    private final BinaryFrameCodec codec = new BinaryFrameCodec(new FrameBufferPool(4096, 4));
+
+    @Test
+    void printStatusSurvivesTheRoundTrip() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        codec.writePrintStatus(frame, SESSION_ID, "COMPLETED", TRACEPARENT);
+
+        assertEquals(new PrintStatus(SESSION_ID, "COMPLETED", TRACEPARENT), codec.decode(frame.flip()));
+    }
+
+    @Test
+    void printStatusWithoutTraceDecodesWithoutOne() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        codec.writePrintStatus(frame, SESSION_ID, "FAILED", null);
+
+        assertEquals(new PrintStatus(SESSION_ID, "FAILED", null), codec.decode(frame.flip()));
+    }
+
+    @Test
+    void flowControlFramesCarryUnsignedCredits() {
+        ByteBuffer request = header(BinaryFrameCodec.FILE_REQUEST, 26);
+        uuid(request).putLong(65536).putShort((short) 0xFFFF);
+        ByteBuffer credit = header(BinaryFrameCodec.FILE_CREDIT, 18);
+        uuid(credit).putShort((short) 4);
+
+        assertEquals(new FileRequest(SESSION_ID, 65536, 0xFFFF), codec.decode(request.flip()));
+        assertEquals(new FileCredit(SESSION_ID, 4), codec.decode(credit.flip()));
+    }
+
+    @Test
+    void controlFramesDecode() {
+        assertSame(Heartbeat.INSTANCE, codec.decode(header(BinaryFrameCodec.HEARTBEAT, 0).flip()));
+        assertNull(codec.decode(header(BinaryFrameCodec.FILE_CHUNK, 0).flip()));
+    }
+
+    @Test
+    void fileChunkHeaderFramesTheDataAlreadyInTheBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH + 16);
+        buffer.position(BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH);
+        buffer.put(new byte[]{1, 2, 3});
+
+        codec.writeFileChunkHeader(buffer, SESSION_ID, 4096, 0xCAFEBABE, 3);
+
+        assertEquals(0, buffer.position());
+        assertEquals(BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH + 3, buffer.limit());
+        assertEquals(BinaryFrameCodec.VERSION, buffer.get(0));
+        assertEquals(BinaryFrameCodec.FILE_CHUNK, buffer.get(1));
+        assertEquals(4096, buffer.getLong(18));
+        assertEquals(0xCAFEBABE, buffer.getInt(26));
+    }
+
+    @Test
+    void badFramesAreRefused() {
+        assertThrows(MalformedMessageException.class, () -> codec.decode(ByteBuffer.wrap(new byte[]{2, 1})));
+        assertThrows(MalformedMessageException.class, () -> codec.decode(ByteBuffer.wrap(new byte[]{1})));
+
+        ByteBuffer truncated = header(BinaryFrameCodec.FILE_CREDIT, 18);
+        truncated.putLong(1);
+        assertThrows(MalformedMessageException.class, () -> codec.decode(truncated.flip()));
+    }
+
+    private static ByteBuffer header(byte type, int bodyLength) {
+        return ByteBuffer.allocate(2 + bodyLength).put(BinaryFrameCodec.VERSION).put(type);
+    }
+
+    private static ByteBuffer uuid(ByteBuffer buffer) {
+        UUID uuid = UUID.fromString(SESSION_ID);
+        return buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+}
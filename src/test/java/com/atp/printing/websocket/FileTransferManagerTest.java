@@ -0,0 +1,281 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.entity.Session;
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.repository.SessionRepository;
+import com.atp.printing.repository.projection.SessionFileView;
+import com.atp.printing.service.RenditionService;
+import com.atp.printing.websocket.message.FileCredit;
+import com.atp.printing.websocket.message.FileRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileTransferManagerTest {
+
+    private static final int MAX_CREDITS = 16;
+    private static final int CHUNK_SIZE = 16;
+    private static final String FIRST = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+    private static final String SECOND = "0b7c1f2e-3a4d-4e5f-8a9b-0c1d2e3f4a5b";
+
+    private final byte[] document = new byte[100];
+    private final CountDownLatch unstall = new CountDownLatch(1);
+    private final ExecutorService originThreads = Executors.newCachedThreadPool();
+    private final List<Frame> sent = new CopyOnWriteArrayList<>();
+
+    private HttpServer origin;
+    private SessionRepository sessionRepository;
+    private PrinterConnection connection;
+    private FileTransferManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < document.length; i++) {
+            document[i] = (byte) i;
+        }
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/doc", exchange -> serve(exchange, true));
+        origin.createContext("/ignores-range", exchange -> serve(exchange, false));
+        origin.createContext("/stall", exchange -> await(exchange));
+        origin.createContext("/trickle", exchange -> {
+            exchange.sendResponseHeaders(200, document.length);
+            exchange.getResponseBody().write(document, 0, CHUNK_SIZE);
+            exchange.getResponseBody().flush();
+            await(exchange);
+        });
+        origin.setExecutor(originThreads);
+        origin.start();
+
+        sessionRepository = mock(SessionRepository.class);
+        connection = mock(PrinterConnection.class);
+        when(connection.getPrinterId()).thenReturn(1L);
+        doAnswer(invocation -> sent.add(Frame.of(invocation.<WebSocketMessage<?>>getArgument(0))))
+                .when(connection).send(any(WebSocketMessage.class));
+        doAnswer(invocation -> sent.add(Frame.of(invocation.<PooledFrame>getArgument(0).message())))
+                .when(connection).send(any(PooledFrame.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        unstall.countDown();
+        if (manager != null) {
+            manager.stop();
+        }
+        origin.stop(0);
+        originThreads.shutdownNow();
+    }
+
+    @Test
+    void grantsAddUpToTheCap() {
+        assertEquals(4, FileTransferManager.addCredits(0, 4, MAX_CREDITS));
+        assertEquals(12, FileTransferManager.addCredits(4, 8, MAX_CREDITS));
+        assertEquals(MAX_CREDITS, FileTransferManager.addCredits(12, 8, MAX_CREDITS));
+    }
+
+    @Test
+    void hugeGrantsDoNotOverflowIntoANegativeBalance() {
+        assertEquals(MAX_CREDITS, FileTransferManager.addCredits(MAX_CREDITS, Integer.MAX_VALUE, MAX_CREDITS));
+    }
+
+    @Test
+    void balanceNeverGoesBelowZero() {
+        assertEquals(0, FileTransferManager.addCredits(2, Integer.MIN_VALUE, MAX_CREDITS));
+    }
+
+    @Test
+    void chunksStopWhenCreditsRunOutAndContinueOnAGrant() throws Exception {
+        manager = manager(4, 60_000);
+        givenDocument(FIRST, "/doc");
+
+        manager.start(connection, new FileRequest(FIRST, 0, 2));
+        waitFor(() -> chunks(FIRST).size() == 2);
+        Thread.sleep(200);
+        assertEquals(2, chunks(FIRST).size());
+
+        manager.credit(connection, new FileCredit(FIRST, 8));
+        waitFor(() -> last(FIRST).type == BinaryFrameCodec.FILE_END);
+
+        assertEquals(BinaryFrameCodec.FILE_BEGIN, first(FIRST).type);
+        assertArrayEquals(document, reassemble(FIRST, 0));
+    }
+
+    @Test
+    void resumeStartsFromTheRequestedOffset() throws Exception {
+        manager = manager(4, 60_000);
+        givenDocument(FIRST, "/doc");
+        givenDocument(SECOND, "/ignores-range");
+
+        manager.start(connection, new FileRequest(FIRST, 48, MAX_CREDITS));
+        manager.start(connection, new FileRequest(SECOND, 48, MAX_CREDITS));
+        waitFor(() -> last(FIRST).type == BinaryFrameCodec.FILE_END && last(SECOND).type == BinaryFrameCodec.FILE_END);
+
+        byte[] rest = Arrays.copyOfRange(document, 48, document.length);
+        assertArrayEquals(rest, reassemble(FIRST, 48));
+        assertArrayEquals(rest, reassemble(SECOND, 48));
+    }
+
+    @Test
+    void unansweredOriginHoldsNoTransferThreadAndTimesOut() throws Exception {
+        manager = manager(1, 60_000);
+        givenDocument(FIRST, "/stall");
+        givenDocument(SECOND, "/doc");
+
+        manager.start(connection, new FileRequest(FIRST, 0, MAX_CREDITS));
+        manager.start(connection, new FileRequest(SECOND, 0, MAX_CREDITS));
+        waitFor(() -> last(SECOND).type == BinaryFrameCodec.FILE_END);
+        assertTrue(frames(FIRST).isEmpty());
+
+        waitFor(() -> last(FIRST).type == BinaryFrameCodec.FILE_ERROR);
+        assertEquals("origin_failed", last(FIRST).reason());
+    }
+
+    @Test
+    void stalledBodyIsExpiredAndItsThreadFreed() throws Exception {
+        manager = manager(1, 300);
+        givenDocument(FIRST, "/trickle");
+        givenDocument(SECOND, "/doc");
+
+        manager.start(connection, new FileRequest(FIRST, 0, MAX_CREDITS));
+        waitFor(() -> chunks(FIRST).size() == 1);
+        waitFor(() -> last(FIRST).type == BinaryFrameCodec.FILE_ERROR);
+        assertEquals("idle", last(FIRST).reason());
+
+        manager.start(connection, new FileRequest(SECOND, 0, MAX_CREDITS));
+        waitFor(() -> last(SECOND).type == BinaryFrameCodec.FILE_END);
+        assertArrayEquals(document, reassemble(SECOND, 0));
+    }
+
+    private FileTransferManager manager(int threads, long idleTimeoutMs) {
+        FileTransferManager manager = new FileTransferManager(sessionRepository, mock(RenditionService.class),
+                new BinaryFrameCodec(new FrameBufferPool(4096, 4)), new PrintMetrics(new SimpleMeterRegistry()),
+                CHUNK_SIZE, 8, MAX_CREDITS, threads, idleTimeoutMs, 1);
+        manager.start();
+        return manager;
+    }
+
+    private void givenDocument(String sessionId, String path) {
+        SessionFileView file = mock(SessionFileView.class);
+        when(file.getPrinterId()).thenReturn(1L);
+        when(file.getStatus()).thenReturn(Session.SessionStatus.PAID);
+        when(file.getFileUrl()).thenReturn("http://127.0.0.1:" + origin.getAddress().getPort() + path);
+        when(sessionRepository.findFileBySessionId(sessionId)).thenReturn(Optional.of(file));
+    }
+
+    private void serve(HttpExchange exchange, boolean honourRange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int from = 0;
+        if (honourRange && range != null) {
+            from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + from + "-" + (document.length - 1) + "/" + document.length);
+            exchange.sendResponseHeaders(206, document.length - from);
+        } else {
+            exchange.sendResponseHeaders(200, document.length);
+        }
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(document, from, document.length - from);
+        }
+    }
+
+    private void await(HttpExchange exchange) {
+        try {
+            unstall.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.close();
+    }
+
+    private byte[] reassemble(String sessionId, long offset) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        long expected = offset;
+        for (Frame chunk : chunks(sessionId)) {
+            assertEquals(expected, chunk.payload.getLong(18));
+            byte[] bytes = Arrays.copyOfRange(chunk.bytes(), BinaryFrameCodec.FILE_CHUNK_HEADER_LENGTH, chunk.bytes().length);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            assertEquals((int) crc.getValue(), chunk.payload.getInt(26));
+            data.writeBytes(bytes);
+            expected += bytes.length;
+        }
+        assertEquals(expected, last(sessionId).payload.getLong(18));
+        return data.toByteArray();
+    }
+
+    private List<Frame> frames(String sessionId) {
+        return sent.stream().filter(frame -> frame.sessionId().equals(sessionId)).toList();
+    }
+
+    private List<Frame> chunks(String sessionId) {
+        return frames(sessionId).stream().filter(frame -> frame.type == BinaryFrameCodec.FILE_CHUNK).toList();
+    }
+
+    private Frame first(String sessionId) {
+        return frames(sessionId).get(0);
+    }
+
+    private Frame last(String sessionId) {
+        List<Frame> frames = frames(sessionId);
+        return frames.isEmpty() ? new Frame((byte) 0, ByteBuffer.allocate(0)) : frames.get(frames.size() - 1);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private record Frame(byte type, ByteBuffer payload) {
+
+        static Frame of(WebSocketMessage<?> message) {
+            ByteBuffer source = ((ByteBuffer) message.getPayload()).duplicate();
+            ByteBuffer copy = ByteBuffer.allocate(source.remaining()).put(source).flip();
+            return new Frame(copy.get(1), copy);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(payload.array(), payload.limit());
+        }
+
+        String sessionId() {
+            return payload.limit() < 18 ? "" : new UUID(payload.getLong(2), payload.getLong(10)).toString();
+        }
+
+        String reason() {
+            int length = payload.get(18);
+            return new String(payload.array(), 19, length, StandardCharsets.US_ASCII);
+        }
+    }
+}
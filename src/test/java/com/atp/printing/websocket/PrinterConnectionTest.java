@@ -0,0 +1,111 @@
+package com.atp.printing.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PrinterConnectionTest {
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        sender.shutdownNow();
+    }
+
+    @Test
+    void pooledBuffersAreReturnedOnceWritten() throws IOException {
+        WebSocketSession session = openSession();
+        FrameBufferPool pool = new FrameBufferPool(64, 1);
+        PrinterConnection connection = new PrinterConnection(1L, session, 1, 1000, 1024);
+
+        ByteBuffer buffer = pool.acquire(64);
+        connection.send(new PooledFrame(buffer.flip(), pool));
+
+        assertSame(buffer, pool.acquire(64));
+    }
+
+    @Test
+    void queuedPooledFrameKeepsItsBufferUntilWritten() throws Exception {
+        WebSocketSession session = openSession();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof TextMessage) {
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(session).sendMessage(any());
+
+        FrameBufferPool pool = new FrameBufferPool(64, 1);
+        PrinterConnection connection = new PrinterConnection(1L, session, 1, 60_000, 1024);
+        Future<?> stuck = sender.submit(() -> {
+            connection.send(new TextMessage("stuck"));
+            return null;
+        });
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        ByteBuffer buffer = pool.acquire(64);
+        connection.send(new PooledFrame(buffer.flip(), pool));
+        assertNotSame(buffer, pool.acquire(64));
+
+        release.countDown();
+        stuck.get(5, TimeUnit.SECONDS);
+        assertSame(buffer, pool.acquire(64));
+    }
+
+    @Test
+    void slowConsumerIsClosedInsteadOfQueueingWithoutLimit() throws Exception {
+        WebSocketSession session = openSession();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(session).sendMessage(any());
+
+        PrinterConnection connection = new PrinterConnection(1L, session, 1, 60_000, 16);
+        sender.submit(() -> {
+            connection.send(new TextMessage("stuck"));
+            return null;
+        });
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        try {
+            assertThrows(IOException.class, () -> connection.send(new BinaryMessage(new byte[64])));
+            verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static WebSocketSession openSession() {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("printer-1");
+        return session;
+    }
+}
@@ -0,0 +1,108 @@
+package com.atp.printing.websocket;
+
+import com.atp.printing.metrics.PrintMetrics;
+import com.atp.printing.security.JwtUtil;
+import com.atp.printing.service.WebSocketService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketHandler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PrinterHandshakeInterceptorTest {
+
+    private static final String ATTACKER = "198.51.100.9";
+    private static final String KIOSK = "203.0.113.7";
+
+    private JwtUtil jwtUtil;
+    private WebSocketService webSocketService;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", "testSecretKeyForJwtSigningThatIsLongEnough1234567890");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 60_000L);
+        ReflectionTestUtils.setField(jwtUtil, "printerExpiration", 60_000L);
+        webSocketService = mock(WebSocketService.class);
+    }
+
+    @Test
+    void validTokenIsAdmitted() throws IOException {
+        PrinterHandshakeInterceptor interceptor = interceptor(10, 10);
+        Map<String, Object> attributes = new HashMap<>();
+
+        assertTrue(interceptor.beforeHandshake(request(KIOSK, jwtUtil.generatePrinterToken(5L, "kiosk")),
+                new ServletServerHttpResponse(new MockHttpServletResponse()), mock(WebSocketHandler.class), attributes));
+        assertEquals(5L, attributes.get(PrinterHandshakeInterceptor.PRINTER_ID));
+    }
+
+    @Test
+    void badTokensDoNotSpendTheSharedHandshakeBudget() throws IOException {
+        PrinterHandshakeInterceptor interceptor = interceptor(1, 2);
+
+        assertEquals(401, handshake(interceptor, ATTACKER, "forged").getStatus());
+        assertEquals(401, handshake(interceptor, ATTACKER, "forged").getStatus());
+        assertEquals(429, handshake(interceptor, ATTACKER, "forged").getStatus());
+
+        assertEquals(200, handshake(interceptor, KIOSK, jwtUtil.generatePrinterToken(5L, "kiosk")).getStatus());
+    }
+
+    @Test
+    void validTokensShareTheHandshakeBudget() throws IOException {
+        PrinterHandshakeInterceptor interceptor = interceptor(1, 2);
+        assertEquals(200, handshake(interceptor, KIOSK, jwtUtil.generatePrinterToken(5L, "kiosk")).getStatus());
+
+        MockHttpServletResponse throttled = handshake(interceptor, KIOSK, jwtUtil.generatePrinterToken(6L, "kiosk"));
+
+        assertEquals(429, throttled.getStatus());
+        assertNotNull(throttled.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void newPrintersAreRefusedWhenFullButKnownOnesMayReconnect() throws IOException {
+        PrinterHandshakeInterceptor interceptor = interceptor(10, 10);
+        when(webSocketService.getConnectionCount()).thenReturn(100);
+        when(webSocketService.isRegistered(5L)).thenReturn(true);
+
+        assertEquals(503, handshake(interceptor, KIOSK, jwtUtil.generatePrinterToken(6L, "new")).getStatus());
+        assertEquals(200, handshake(interceptor, KIOSK, jwtUtil.generatePrinterToken(5L, "known")).getStatus());
+    }
+
+    private PrinterHandshakeInterceptor interceptor(int handshakeBurst, int failedBurst) {
+        return new PrinterHandshakeInterceptor(jwtUtil, webSocketService, new PrintMetrics(new SimpleMeterRegistry()),
+                0.001, handshakeBurst, failedBurst, 0.001, 1000, 100, 0);
+    }
+
+    private MockHttpServletResponse handshake(PrinterHandshakeInterceptor interceptor, String address, String token)
+            throws IOException {
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+        interceptor.beforeHandshake(request(address, token), response, mock(WebSocketHandler.class), new HashMap<>());
+        response.flush();
+        return servletResponse;
+    }
+
+    private static ServletServerHttpRequest request(String address, String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws/printer");
+        request.setRemoteAddr(address);
+        request.setRemoteHost(address);
+        request.setQueryString("token=" + token);
+        return new ServletServerHttpRequest(request);
+    }
+}
@@ -0,0 +1,52 @@
+package com.atp.printing.websocket.message;
+
+import com.atp.printing.exception.MalformedMessageException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonMessageDecoderTest {
+
+    private static final String SESSION_ID = "5f0c6f53-8f0e-4d2b-a9a4-2d7f0f6c1b11";
+
+    private final JsonMessageDecoder decoder = new JsonMessageDecoder();
+
+    @Test
+    void heartbeatsDecodeToTheSharedInstance() {
+        assertSame(Heartbeat.INSTANCE, decoder.decode("{\"event\":\"heartbeat\"}"));
+    }
+
+    @Test
+    void fieldsTheServerDoesNotReadAreSkipped() {
+        PrinterMessage message = decoder.decode("{\"agent\":{\"version\":[1,2],\"os\":\"linux\"},"
+                + "\"status\":\"COMPLETED\",\"event\":\"print_status\",\"sessionId\":\"" + SESSION_ID + "\"}");
+
+        assertEquals(new PrintStatus(SESSION_ID, "COMPLETED", null), message);
+    }
+
+    @Test
+    void fileRequestsCarryOffsetAndCredits() {
+        PrinterMessage message = decoder.decode("{\"event\":\"file_request\",\"sessionId\":\"" + SESSION_ID
+                + "\",\"offset\":131072,\"credits\":8}");
+
+        assertEquals(new FileRequest(SESSION_ID, 131072, 8), message);
+    }
+
+    @Test
+    void unknownEventsAreIgnored() {
+        assertNull(decoder.decode("{\"event\":\"firmware_update\"}"));
+    }
+
+    @Test
+    void malformedMessagesAreRefused() {
+        assertThrows(MalformedMessageException.class, () -> decoder.decode("[]"));
+        assertThrows(MalformedMessageException.class, () -> decoder.decode("{\"sessionId\":\"x\"}"));
+        assertThrows(MalformedMessageException.class, () -> decoder.decode("{\"event\":\"print_status\"}"));
+        assertThrows(MalformedMessageException.class, () -> decoder.decode("{\"event\":\"file_credit\","
+                + "\"sessionId\":\"" + SESSION_ID + "\",\"credits\":\"lots\"}"));
+        assertThrows(MalformedMessageException.class, () -> decoder.decode("{\"event\":"));
+    }
+}